@@ -67,6 +67,47 @@ public class Constants {
 	public static final String REG_SPACE_FOR_SPEED = "helios.rindle.reg.space4speed";
 	/** The default value for the registry period map space-for-speed setting on the registry map */
 	public static final boolean DEFAULT_REG_SPACE_FOR_SPEED = true;
+	/** The config property name for the number of single-writer registry shards. 0 disables sharding. */
+	public static final String REG_SHARDS = "helios.rindle.reg.shards";
+	/** The default number of registry shards (not sharded) */
+	public static final int DEFAULT_REG_SHARDS = 0;
+	/** The config property name for the ring size of each registry shard. If the provided value
+	 is not a power of 2, the next highest power of 2 will be used */
+	public static final String REG_SHARD_RING_SIZE = "helios.rindle.reg.shard.ringsize";
+	/** The default ring size of each registry shard */
+	public static final int DEFAULT_REG_SHARD_RING_SIZE = 16384;
+	
+	// ===========================================================================================	
+	//		Admission Control Config
+	// ===========================================================================================
+	/** The config property name for enabling ingestion admission control */
+	public static final String ADMISSION_ENABLED = "helios.rindle.admission.enabled";
+	/** The default admission control enablement */
+	public static final boolean DEFAULT_ADMISSION_ENABLED = false;
+	/** The config property name for the maximum number of values admitted per second across all clients. 0 is unlimited. */
+	public static final String ADMISSION_GLOBAL_RATE = "helios.rindle.admission.rate.global";
+	/** The default global admission rate (unlimited) */
+	public static final long DEFAULT_ADMISSION_GLOBAL_RATE = 0L;
+	/** The config property name for the maximum number of values admitted per second per client. 0 is unlimited. */
+	public static final String ADMISSION_CLIENT_RATE = "helios.rindle.admission.rate.client";
+	/** The default per client admission rate (unlimited) */
+	public static final long DEFAULT_ADMISSION_CLIENT_RATE = 0L;
+	/** The config property name for the maximum number of new metric aggregators created per second. 0 is unlimited. */
+	public static final String ADMISSION_NEW_METRIC_RATE = "helios.rindle.admission.rate.newmetric";
+	/** The default new metric creation rate (unlimited) */
+	public static final long DEFAULT_ADMISSION_NEW_METRIC_RATE = 0L;
+	/** The config property name for the policy applied to values over the limits. One of SHED, QUEUE or BLOCK. */
+	public static final String ADMISSION_POLICY = "helios.rindle.admission.policy";
+	/** The default admission policy */
+	public static final String DEFAULT_ADMISSION_POLICY = "SHED";
+	/** The config property name for the size of the deferred value queue used by the QUEUE policy */
+	public static final String ADMISSION_QUEUE_SIZE = "helios.rindle.admission.queuesize";
+	/** The default size of the deferred value queue */
+	public static final int DEFAULT_ADMISSION_QUEUE_SIZE = 65536;
+	/** The config property name for the maximum ms a submitter is blocked under the BLOCK policy before the value is shed */
+	public static final String ADMISSION_MAX_BLOCK = "helios.rindle.admission.maxblock";
+	/** The default maximum block time in ms */
+	public static final long DEFAULT_ADMISSION_MAX_BLOCK = 1000L;
 	
 	// ===========================================================================================	
 	//		JMX Config
@@ -86,6 +127,31 @@ public class Constants {
 	
 	
 	
+	// ===========================================================================================	
+	//		GlobalId Cache Config
+	// ===========================================================================================
+	/** The config property name for the maximum number of entries in each of the submitter's name, opaque key and pair global id caches */
+	public static final String GID_CACHE_MAX_SIZE = "helios.rindle.submit.gidcache.maxsize";
+	/** The default maximum number of entries in each global id cache */
+	public static final long DEFAULT_GID_CACHE_MAX_SIZE = 100000;
+	/** The config property name for the concurrency level of the submitter's global id caches */
+	public static final String GID_CACHE_CONCURRENCY = "helios.rindle.submit.gidcache.concurrency";
+	/** The default concurrency level of the submitter's global id caches */
+	public static final int DEFAULT_GID_CACHE_CONCURRENCY = CORES;
+	/** The config property name for enabling asynchronous resolution of unseen metric names, buffering their values until resolved */
+	public static final String ASYNC_RESOLVE_ENABLED = "helios.rindle.submit.asyncresolve";
+	/** The default asynchronous name resolution enablement */
+	public static final boolean DEFAULT_ASYNC_RESOLVE_ENABLED = false;
+	/** The config property name for the maximum number of values buffered per unresolved name. Further values are dropped. */
+	public static final String ASYNC_RESOLVE_BUFFER = "helios.rindle.submit.asyncresolve.buffer";
+	/** The default maximum number of values buffered per unresolved name */
+	public static final int DEFAULT_ASYNC_RESOLVE_BUFFER = 64;
+	/** The config property name for the maximum number of names resolved in one store call */
+	public static final String ASYNC_RESOLVE_BATCH = "helios.rindle.submit.asyncresolve.batch";
+	/** The default maximum number of names resolved in one store call */
+	public static final int DEFAULT_ASYNC_RESOLVE_BATCH = 256;
+	
+	
 	// ===========================================================================================	
 	//		Period Config
 	// ===========================================================================================
@@ -102,6 +168,36 @@ public class Constants {
 	/** The default maximum period */
 	public static final int DEFAULT_PERIOD_TIMER_TICK_SIZE = 512;
 
+	// ===========================================================================================	
+	//		Aggregator Config
+	// ===========================================================================================
+	/** The config property name for creating aggregators in lock-free mode, where count, min, max and sum are updated with CAS loops */
+	public static final String AGG_LOCK_FREE = "helios.rindle.agg.lockfree";
+	/** The default aggregator lock-free mode */
+	public static final boolean DEFAULT_AGG_LOCK_FREE = false;
+	/** The config property name for the number of per-thread cells allocated for a striped aggregator (rounded up to a power of 2) */
+	public static final String AGG_STRIPES = "helios.rindle.agg.stripes";
+	/** The default number of per-thread cells allocated for a striped aggregator */
+	public static final int DEFAULT_AGG_STRIPES = CORES;
+	/** The config property name for the comma separated coarser periods in seconds that aggregators roll their finest granularity buckets up into. 
+	 * The finest granularity is always rolled, even when empty, so aggregators are reset on every flush of the finest granularity. */
+	public static final String AGG_ROLLUP_PERIODS = "helios.rindle.agg.rollups";
+	/** The default roll-up periods */
+	public static final String DEFAULT_AGG_ROLLUP_PERIODS = "";
+	/** The config property name for allocating aggregator records from a slab arena instead of one allocation per aggregator.
+	 * Slab allocated records are not freed by the GC, and are returned to the arena when the aggregator is removed from the registry. */
+	public static final String AGG_SLAB = "helios.rindle.agg.slab";
+	/** The default aggregator slab allocation */
+	public static final boolean DEFAULT_AGG_SLAB = false;
+	/** The config property name for the number of aggregator records in each slab (rounded up to a power of 2) */
+	public static final String AGG_SLAB_SLOTS = "helios.rindle.agg.slab.slots";
+	/** The default number of aggregator records in each slab */
+	public static final int DEFAULT_AGG_SLAB_SLOTS = 65536;
+	/** The config property name for the number of finest granularity buckets older than the current bucket that an event time aggregator keeps open for late values */
+	public static final String AGG_EVENT_TIME_LATENESS = "helios.rindle.agg.eventtime.lateness";
+	/** The default number of buckets kept open for late values */
+	public static final int DEFAULT_AGG_EVENT_TIME_LATENESS = 2;
+
 	// ===========================================================================================	
 	//		Raw Container Config
 	// ===========================================================================================
@@ -118,6 +214,26 @@ public class Constants {
 	/** The default initial number of slots to be added when a container resizes */
 	public static final int DEFAULT_RESIZE_SLOTS_ALLOC = 128;
 
+	// ===========================================================================================	
+	//		Quantile Sketch and Distinct Counter Config
+	// ===========================================================================================
+	/** The config property name for the relative accuracy of the quantile sketch */
+	public static final String SKETCH_ACCURACY = "helios.rindle.sketch.accuracy";
+	/** The default relative accuracy of the quantile sketch (2%) */
+	public static final float DEFAULT_SKETCH_ACCURACY = 0.02f;
+	/** The config property name for the number of quantile sketch buckets for each of positive and negative values */
+	public static final String SKETCH_BUCKETS = "helios.rindle.sketch.buckets";
+	/** The default number of quantile sketch buckets for each of positive and negative values */
+	public static final int DEFAULT_SKETCH_BUCKETS = 1024;
+	/** The config property name for the smallest magnitude the quantile sketch distinguishes from zero */
+	public static final String SKETCH_MIN_VALUE = "helios.rindle.sketch.minvalue";
+	/** The default smallest magnitude the quantile sketch distinguishes from zero */
+	public static final float DEFAULT_SKETCH_MIN_VALUE = 0.001f;
+	/** The config property name for the precision of the HyperLogLog distinct value counter, the log2 of its number of one byte registers (4 to 18) */
+	public static final String SKETCH_HLL_PRECISION = "helios.rindle.sketch.hll.precision";
+	/** The default HyperLogLog precision, 4096 registers with a standard error of around 1.6% */
+	public static final int DEFAULT_SKETCH_HLL_PRECISION = 12;
+
 	// ===========================================================================================	
 	//		Chronicle Store Config
 	// ===========================================================================================	
@@ -206,6 +322,18 @@ public class Constants {
 	public static final String RING_BUFFER_WAIT_STRAT_ARGS = "helios.events.async.disruptor.waitstrat.args";
 	/** The optional wait strategy class ctor parameters */
 	public static final String DEFAULT_RING_BUFFER_WAIT_STRAT_ARGS = "";
+	
+	// ===========================================================================================	
+	//		Ingestion Pipeline Config
+	// ===========================================================================================
+	/** The config property name to enable the ring buffer ingestion pipeline between submitters and the registry */
+	public static final String INGEST_ASYNC_ENABLED = "helios.rindle.ingest.async";
+	/** The default ring buffer ingestion pipeline enablement */
+	public static final boolean DEFAULT_INGEST_ASYNC_ENABLED = false;
+	/** The config property name for the number of ingestion consumers, each owning a partition of the global ids */
+	public static final String INGEST_CONSUMERS = "helios.rindle.ingest.consumers";
+	/** The default number of ingestion consumers */
+	public static final int DEFAULT_INGEST_CONSUMERS = CORES;
 
 	// ===========================================================================================	
 	//		Netty Unified Protocol Server Config
@@ -218,6 +346,93 @@ public class Constants {
 	public static final String NETTY_REMOTING_INTERFACE = "helios.netty.listen.iface";
 	/** The default JMXMP listener port */
 	public static final String DEFAULT_NETTY_REMOTING_INTERFACE = "0.0.0.0";
+	/** The config property name for the maximum size in bytes of a single length-prefixed DataPoints frame */
+	public static final String NETTY_MAX_FRAME = "helios.netty.maxframe";
+	/** The default maximum frame size */
+	public static final int DEFAULT_NETTY_MAX_FRAME = 1048576;
+	/** The config property name for the number of Netty worker (I/O) threads */
+	public static final String NETTY_WORKER_THREADS = "helios.netty.workers";
+	/** The default number of Netty worker threads */
+	public static final int DEFAULT_NETTY_WORKER_THREADS = CORES * 2;
+	/** The config property name for the number of threads applying received DataPoints to the registry */
+	public static final String NETTY_EXEC_THREADS = "helios.netty.exec.threads";
+	/** The default number of DataPoints execution threads */
+	public static final int DEFAULT_NETTY_EXEC_THREADS = CORES;
+	/** The config property name for the maximum bytes queued per connection before reads on that connection are suspended */
+	public static final String NETTY_CHANNEL_MAX_MEM = "helios.netty.channel.maxmem";
+	/** The default maximum bytes queued per connection */
+	public static final long DEFAULT_NETTY_CHANNEL_MAX_MEM = 1048576;
+	/** The config property name for the maximum bytes queued across all connections before reads are suspended */
+	public static final String NETTY_TOTAL_MAX_MEM = "helios.netty.total.maxmem";
+	/** The default maximum bytes queued across all connections */
+	public static final long DEFAULT_NETTY_TOTAL_MAX_MEM = 67108864;
+	
+	
+	// ===========================================================================================	
+	//		Thrift StreamNormalizer Server Config
+	// ===========================================================================================
+	/** The config property name for the port number the thrift StreamNormalizer server will listen on. -1 will disable. */
+	public static final String THRIFT_PORT = "helios.thrift.listen.port";
+	/** The default thrift StreamNormalizer server port (disabled) */
+	public static final int DEFAULT_THRIFT_PORT = -1;
+	/** The config property name for the interface the thrift StreamNormalizer server will bind to */
+	public static final String THRIFT_INTERFACE = "helios.thrift.listen.iface";
+	/** The default thrift StreamNormalizer server interface */
+	public static final String DEFAULT_THRIFT_INTERFACE = "0.0.0.0";
+	/** The config property name for the number of thrift selector threads */
+	public static final String THRIFT_SELECTOR_THREADS = "helios.thrift.selectors";
+	/** The default number of thrift selector threads */
+	public static final int DEFAULT_THRIFT_SELECTOR_THREADS = 2;
+	/** The config property name for the number of thrift worker threads */
+	public static final String THRIFT_WORKER_THREADS = "helios.thrift.workers";
+	/** The default number of thrift worker threads */
+	public static final int DEFAULT_THRIFT_WORKER_THREADS = CORES;
+	/** The config property name for the maximum thrift frame size in bytes */
+	public static final String THRIFT_MAX_FRAME = "helios.thrift.maxframe";
+	/** The default maximum thrift frame size */
+	public static final int DEFAULT_THRIFT_MAX_FRAME = 16384000;
+	
+	
+	// ===========================================================================================	
+	//		Statsd UDP Listener Config
+	// ===========================================================================================
+	/** The config property name for the UDP port the statsd line listener will bind to. -1 will disable. */
+	public static final String STATSD_PORT = "helios.statsd.listen.port";
+	/** The default statsd listener port (disabled) */
+	public static final int DEFAULT_STATSD_PORT = -1;
+	/** The config property name for the interface the statsd line listener will bind to */
+	public static final String STATSD_INTERFACE = "helios.statsd.listen.iface";
+	/** The default statsd listener interface */
+	public static final String DEFAULT_STATSD_INTERFACE = "0.0.0.0";
+	/** The config property name for the maximum statsd datagram size in bytes. Datagrams filling this size are dropped as overflowed. */
+	public static final String STATSD_MAX_DATAGRAM = "helios.statsd.maxdatagram";
+	/** The default maximum statsd datagram size */
+	public static final int DEFAULT_STATSD_MAX_DATAGRAM = 8192;
+	/** The config property name for the maximum number of names in the statsd listener's name cache */
+	public static final String STATSD_NAME_CACHE_SIZE = "helios.statsd.namecache.maxsize";
+	/** The default maximum number of names in the statsd listener's name cache */
+	public static final int DEFAULT_STATSD_NAME_CACHE_SIZE = 100000;
+	
+	
+	// ===========================================================================================	
+	//		Shared Memory IPC Ring Config
+	// ===========================================================================================
+	/** The config property name for the shared memory ring file co-located agents write data points to. Blank will disable. */
+	public static final String IPC_RING_FILE = "helios.rindle.ipc.ring.file";
+	/** The default shared memory ring file (disabled) */
+	public static final String DEFAULT_IPC_RING_FILE = "";
+	/** The config property name for the number of records in the shared memory ring, rounded up to a power of 2 */
+	public static final String IPC_RING_CAPACITY = "helios.rindle.ipc.ring.capacity";
+	/** The default number of records in the shared memory ring */
+	public static final int DEFAULT_IPC_RING_CAPACITY = 65536;
+	/** The config property name for the maximum number of records the ring reader drains per batch */
+	public static final String IPC_RING_BATCH = "helios.rindle.ipc.ring.batch";
+	/** The default maximum number of records the ring reader drains per batch */
+	public static final int DEFAULT_IPC_RING_BATCH = 1024;
+	/** The config property name for the nanos the ring reader parks for when the ring is empty */
+	public static final String IPC_RING_IDLE_PARK = "helios.rindle.ipc.ring.idlepark";
+	/** The default nanos the ring reader parks for when the ring is empty */
+	public static final long DEFAULT_IPC_RING_IDLE_PARK = 50000L;
 	
 	
 	// ===========================================================================================	
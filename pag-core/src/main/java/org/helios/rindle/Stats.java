@@ -26,17 +26,77 @@ package org.helios.rindle;
 
 import java.util.Arrays;
 
+import org.helios.rindle.util.unsafe.DeAllocateMe;
 import org.helios.rindle.util.unsafe.UnsafeAdapter;
 
 /**
  * <p>Title: Stats</p>
  * <p>Description: Statistical helper methods</p> 
+ * <p>Medians and percentiles of off-heap arrays are computed by introselect on a per-thread off-heap scratch copy,
+ * so a query neither allocates a heap array nor sorts. Selection is a quickselect with a median of three pivot and a
+ * three way partition, so runs of equal values do not degrade it, and it falls back to a heap sort of the remaining
+ * range if the partitions stay unbalanced. Doubles are selected as longs after mapping their bits to an order
+ * preserving long. Percentiles use the nearest rank definition.</p>
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.rindle.Stats</code></p>
  */
 
 public class Stats {
+	/** Ranges this size or smaller are finished with an insertion sort */
+	private static final int INSERTION_THRESHOLD = 16;
+	/** The number of partitioning passes allowed per bit of the range size before a selection falls back to a heap sort */
+	private static final int DEPTH_FACTOR = 2;
+	/** The per-thread off-heap scratch buffer */
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+	
+	/**
+	 * <p>Title: Scratch</p>
+	 * <p>Description: An off-heap buffer that values are copied into and selected in place. Grows to the largest array
+	 * selected by the owning thread and is freed when the thread's reference is collected.</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.rindle.Stats.Scratch</code></p>
+	 */
+	private static class Scratch implements DeAllocateMe {
+		/** The address of the buffer */
+		private final long[] address = new long[1];
+		/** The number of long slots in the buffer */
+		private int slots = 0;
+		
+		/**
+		 * {@inheritDoc}
+		 * @see org.helios.rindle.util.unsafe.DeAllocateMe#getAddresses()
+		 */
+		@Override
+		public long[][] getAddresses() {
+			return new long[][]{address};
+		}
+		
+		/**
+		 * Returns the address of the buffer, growing it to at least the passed number of slots
+		 * @param size The number of long slots needed
+		 * @return the address of the buffer
+		 */
+		private long ensure(int size) {
+			if(size > slots) {
+				if(slots==0) {
+					address[0] = UnsafeAdapter.allocateAlignedMemory(((long)size) << 3);
+					UnsafeAdapter.registerForDeAlloc(this);
+				} else {
+					address[0] = UnsafeAdapter.reallocateAlignedMemory(address[0], ((long)size) << 3);
+				}
+				slots = size;
+			}
+			return address[0];
+		}
+	}
+
 
 	/**
 	 * Returns the median value in the long array at the passed address
@@ -47,12 +107,13 @@ public class Stats {
 	public static long medianl(long address, int size) {
 		if(size==0) return 0;
 		if(size==1) return UnsafeAdapter.getLong(address);
-		long[] arr = UnsafeAdapter.getLongArray(address, size);
-		Arrays.sort(arr);
+		final long scratch = copyLongs(address, size);
+		final int mid = size >>> 1;
+		select(scratch, 0, size-1, mid);
 		if(size%2==1) {
-			return arr[(size/2)-1];
+			return UnsafeAdapter.getLong(scratch + (mid << 3));
 		}
-		return (long)miniMedian(arr[(size/2)-1], arr[(size/2)]);
+		return (long)miniMedian(maxOf(scratch, mid), UnsafeAdapter.getLong(scratch + (mid << 3)));
 	}
 	
 	/**
@@ -64,12 +125,310 @@ public class Stats {
 	public static double mediand(long address, int size) {
 		if(size==0) return 0;
 		if(size==1) return UnsafeAdapter.getDouble(address);
-		double[] arr = UnsafeAdapter.getDoubleArray(address, size);
-		Arrays.sort(arr);
+		final long scratch = copyDoubles(address, size);
+		final int mid = size >>> 1;
+		select(scratch, 0, size-1, mid);
+		final double upper = toDouble(UnsafeAdapter.getLong(scratch + (mid << 3)));
 		if(size%2==1) {
-			return arr[(size/2)-1];
+			return upper;
+		}
+		return miniMedian(toDouble(maxOf(scratch, mid)), upper);
+	}
+	
+	/**
+	 * Returns the nearest rank percentile of the long array at the passed address
+	 * @param address The address of the long array
+	 * @param size The size of the targetted array
+	 * @param percentile The percentile, from 0 to 100
+	 * @return the percentile value, or 0 if the array is empty
+	 */
+	public static long percentilel(long address, int size, double percentile) {
+		return percentilesl(address, size, percentile)[0];
+	}
+	
+	/**
+	 * Returns the nearest rank percentile of the double array at the passed address
+	 * @param address The address of the double array
+	 * @param size The size of the targetted array
+	 * @param percentile The percentile, from 0 to 100
+	 * @return the percentile value, or 0 if the array is empty
+	 */
+	public static double percentiled(long address, int size, double percentile) {
+		return percentilesd(address, size, percentile)[0];
+	}
+	
+	/**
+	 * Returns several nearest rank percentiles of the long array at the passed address.
+	 * The array is copied to the scratch buffer once, and each percentile, in ascending order, is selected from the
+	 * range left above the previous one.
+	 * @param address The address of the long array
+	 * @param size The size of the targetted array
+	 * @param percentiles The percentiles, from 0 to 100, in any order
+	 * @return the percentile values, parallel to the passed percentiles, all 0 if the array is empty
+	 */
+	public static long[] percentilesl(long address, int size, double...percentiles) {
+		final long[] values = new long[percentiles.length];
+		if(size==0) return values;
+		final long scratch = copyLongs(address, size);
+		selectRanks(scratch, size, percentiles, values);
+		return values;
+	}
+	
+	/**
+	 * Returns several nearest rank percentiles of the double array at the passed address.
+	 * The array is copied to the scratch buffer once, and each percentile, in ascending order, is selected from the
+	 * range left above the previous one.
+	 * @param address The address of the double array
+	 * @param size The size of the targetted array
+	 * @param percentiles The percentiles, from 0 to 100, in any order
+	 * @return the percentile values, parallel to the passed percentiles, all 0 if the array is empty
+	 */
+	public static double[] percentilesd(long address, int size, double...percentiles) {
+		final double[] values = new double[percentiles.length];
+		if(size==0) return values;
+		final long scratch = copyDoubles(address, size);
+		final long[] selected = new long[percentiles.length];
+		selectRanks(scratch, size, percentiles, selected);
+		for(int i = 0; i < selected.length; i++) {
+			values[i] = toDouble(selected[i]);
+		}
+		return values;
+	}
+	
+	/**
+	 * Returns the nearest rank index of a percentile
+	 * @param percentile The percentile, from 0 to 100
+	 * @param size The number of values
+	 * @return the index of the percentile in the sorted values
+	 */
+	public static int rank(double percentile, int size) {
+		if(Double.isNaN(percentile)) throw new IllegalArgumentException("The passed percentile was NaN");
+		if(percentile <= 0D) return 0;
+		if(percentile >= 100D) return size-1;
+		return Math.max(0, (int)Math.ceil(percentile / 100D * size) - 1);
+	}
+	
+	/**
+	 * Selects the ranks of the passed percentiles in the scratch buffer, in ascending rank order
+	 * @param scratch The address of the scratch buffer
+	 * @param size The number of values
+	 * @param percentiles The percentiles
+	 * @param values The array to write the selected values to, parallel to the percentiles
+	 */
+	private static void selectRanks(long scratch, int size, double[] percentiles, long[] values) {
+		final int[] ranks = new int[percentiles.length];
+		for(int i = 0; i < percentiles.length; i++) {
+			ranks[i] = rank(percentiles[i], size);
+		}
+		final int[] sorted = ranks.clone();
+		Arrays.sort(sorted);
+		int lo = 0;
+		for(int i = 0; i < sorted.length; i++) {
+			if(i > 0 && sorted[i]==sorted[i-1]) continue;
+			select(scratch, lo, size-1, sorted[i]);
+			lo = sorted[i];
+		}
+		for(int i = 0; i < ranks.length; i++) {
+			values[i] = UnsafeAdapter.getLong(scratch + (ranks[i] << 3));
+		}
+	}
+	
+	/**
+	 * Copies a long array into the calling thread's scratch buffer
+	 * @param address The address of the long array
+	 * @param size The number of longs
+	 * @return the address of the scratch buffer
+	 */
+	private static long copyLongs(long address, int size) {
+		final long scratch = SCRATCH.get().ensure(size);
+		UnsafeAdapter.copyMemory(address, scratch, ((long)size) << 3);
+		return scratch;
+	}
+	
+	/**
+	 * Copies a double array into the calling thread's scratch buffer, mapping each double to an order preserving long
+	 * @param address The address of the double array
+	 * @param size The number of doubles
+	 * @return the address of the scratch buffer
+	 */
+	private static long copyDoubles(long address, int size) {
+		final long scratch = copyLongs(address, size);
+		for(int i = 0; i < size; i++) {
+			final long a = scratch + (i << 3);
+			final long bits = UnsafeAdapter.getLong(a);
+			UnsafeAdapter.putLong(a, bits ^ ((bits >> 63) & Long.MAX_VALUE));
+		}
+		return scratch;
+	}
+	
+	/**
+	 * Maps an order preserving long created by {@link #copyDoubles(long, int)} back to its double
+	 * @param sortable The order preserving long
+	 * @return the double
+	 */
+	private static double toDouble(long sortable) {
+		return Double.longBitsToDouble(sortable ^ ((sortable >> 63) & Long.MAX_VALUE));
+	}
+	
+	/**
+	 * Returns the max of the values below the passed index, which after a selection is the value of the preceding rank
+	 * @param base The address of the values
+	 * @param end The exclusive end index, greater than 0
+	 * @return the max value
+	 */
+	private static long maxOf(long base, int end) {
+		long max = UnsafeAdapter.getLong(base);
+		for(int i = 1; i < end; i++) {
+			final long v = UnsafeAdapter.getLong(base + (i << 3));
+			if(v > max) max = v;
+		}
+		return max;
+	}
+	
+	/**
+	 * Introselect: rearranges the longs in the passed range so the value at index <b><code>k</code></b> is the value
+	 * that would be there if the range was sorted, with no greater value before it and no lesser value after it.
+	 * @param base The address of the values
+	 * @param lo The inclusive low index of the range
+	 * @param hi The inclusive high index of the range
+	 * @param k The index to select
+	 */
+	private static void select(long base, int lo, int hi, int k) {
+		select(base, lo, hi, k, DEPTH_FACTOR);
+	}
+	
+	/**
+	 * Introselect with the passed depth factor. A factor of 0 sends every range larger than the insertion sort threshold
+	 * straight to the heap sort fallback.
+	 * @param base The address of the values
+	 * @param lo The inclusive low index of the range
+	 * @param hi The inclusive high index of the range
+	 * @param k The index to select
+	 * @param depthFactor The number of partitioning passes allowed per bit of the range size before falling back to a heap sort
+	 */
+	static void select(long base, int lo, int hi, int k, int depthFactor) {
+		int depth = depthFactor * (32 - Integer.numberOfLeadingZeros(hi - lo + 1));
+		while(hi - lo > INSERTION_THRESHOLD) {
+			if(depth-- == 0) {
+				heapSort(base, lo, hi);
+				return;
+			}
+			final long pivot = medianOfThree(
+				UnsafeAdapter.getLong(base + (lo << 3)),
+				UnsafeAdapter.getLong(base + ((lo + ((hi - lo) >>> 1)) << 3)),
+				UnsafeAdapter.getLong(base + (hi << 3)));
+			// three way partition: [lo, lt) < pivot, [lt, gt] == pivot, (gt, hi] > pivot
+			int lt = lo, i = lo, gt = hi;
+			while(i <= gt) {
+				final long v = UnsafeAdapter.getLong(base + (i << 3));
+				if(v < pivot) {
+					swap(base, lt++, i++);
+				} else if(v > pivot) {
+					swap(base, i, gt--);
+				} else {
+					i++;
+				}
+			}
+			if(k < lt) {
+				hi = lt - 1;
+			} else if(k > gt) {
+				lo = gt + 1;
+			} else {
+				return;
+			}
+		}
+		insertionSort(base, lo, hi);
+	}
+	
+	/**
+	 * Returns the median of three longs
+	 * @param a The first long
+	 * @param b The second long
+	 * @param c The third long
+	 * @return the median
+	 */
+	private static long medianOfThree(long a, long b, long c) {
+		if(a < b) {
+			return b < c ? b : (a < c ? c : a);
+		}
+		return a < c ? a : (b < c ? c : b);
+	}
+	
+	/**
+	 * Swaps two longs
+	 * @param base The address of the values
+	 * @param i The index of the first long
+	 * @param j The index of the second long
+	 */
+	private static void swap(long base, int i, int j) {
+		final long ai = base + (i << 3);
+		final long aj = base + (j << 3);
+		final long t = UnsafeAdapter.getLong(ai);
+		UnsafeAdapter.putLong(ai, UnsafeAdapter.getLong(aj));
+		UnsafeAdapter.putLong(aj, t);
+	}
+	
+	/**
+	 * Sorts a small range of longs
+	 * @param base The address of the values
+	 * @param lo The inclusive low index of the range
+	 * @param hi The inclusive high index of the range
+	 */
+	private static void insertionSort(long base, int lo, int hi) {
+		for(int i = lo + 1; i <= hi; i++) {
+			final long v = UnsafeAdapter.getLong(base + (i << 3));
+			int j = i - 1;
+			while(j >= lo) {
+				final long u = UnsafeAdapter.getLong(base + (j << 3));
+				if(u <= v) break;
+				UnsafeAdapter.putLong(base + ((j + 1) << 3), u);
+				j--;
+			}
+			UnsafeAdapter.putLong(base + ((j + 1) << 3), v);
+		}
+	}
+	
+	/**
+	 * Sorts a range of longs with a heap sort, the worst case fallback of {@link #select(long, int, int, int, int)}
+	 * @param base The address of the values
+	 * @param lo The inclusive low index of the range
+	 * @param hi The inclusive high index of the range
+	 */
+	private static void heapSort(long base, int lo, int hi) {
+		final int n = hi - lo + 1;
+		for(int i = (n >>> 1) - 1; i >= 0; i--) {
+			siftDown(base + (lo << 3), i, n);
+		}
+		for(int end = n - 1; end > 0; end--) {
+			swap(base, lo, lo + end);
+			siftDown(base + (lo << 3), 0, end);
+		}
+	}
+	
+	/**
+	 * Sifts a value down a max heap
+	 * @param heap The address of the heap
+	 * @param i The index of the value to sift
+	 * @param n The number of values in the heap
+	 */
+	private static void siftDown(long heap, int i, int n) {
+		final long v = UnsafeAdapter.getLong(heap + (i << 3));
+		while(true) {
+			int child = (i << 1) + 1;
+			if(child >= n) break;
+			long c = UnsafeAdapter.getLong(heap + (child << 3));
+			if(child + 1 < n) {
+				final long r = UnsafeAdapter.getLong(heap + ((child + 1) << 3));
+				if(r > c) {
+					child++;
+					c = r;
+				}
+			}
+			if(v >= c) break;
+			UnsafeAdapter.putLong(heap + (i << 3), c);
+			i = child;
 		}
-		return miniMedian(arr[(size/2)-1], arr[(size/2)]);
+		UnsafeAdapter.putLong(heap + (i << 3), v);
 	}
 	
 	
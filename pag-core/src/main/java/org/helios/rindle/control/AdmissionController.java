@@ -0,0 +1,566 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.control;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.helios.rindle.Constants;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.helios.rindle.util.ConfigurationHelper;
+import org.helios.rindle.util.JMXHelper;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * <p>Title: AdmissionController</p>
+ * <p>Description: Bounds the rate at which values flow from the ingest paths into the {@link Registry}.
+ * Each value must fit in its client's per second limit and in the global per second limit, and the creation of new
+ * aggregators is capped per second, since each one allocates off-heap memory. Values over the limits are handled according
+ * to the {@link AdmissionPolicy}. Limits and policy are configured from {@link Constants#ADMISSION_POLICY} and friends
+ * and can be changed at runtime through JMX.</p>
+ * <p>Rates are counted in fixed one second windows. Client windows that have not been used for a minute are discarded.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.control.AdmissionController</code></p>
+ */
+
+public class AdmissionController implements AdmissionControllerMXBean, Runnable {
+	/** The singleton instance */
+	private static volatile AdmissionController instance = null;
+	/** The singleton instance ctor lock */
+	private static final Object lock = new Object();
+	
+	/** Instance logger */
+	protected final Logger log = LogManager.getLogger(getClass());
+	/** Indicates if admission control is enabled */
+	protected volatile boolean enabled;
+	/** The policy applied to values over the limits */
+	protected volatile AdmissionPolicy policy;
+	/** The global rate limit */
+	protected volatile long globalRateLimit;
+	/** The per client rate limit */
+	protected volatile long clientRateLimit;
+	/** The new metric rate limit */
+	protected volatile long newMetricRateLimit;
+	/** The maximum nanos a submitter is blocked for under the BLOCK policy */
+	protected final long maxBlockNanos;
+	/** The global rate window */
+	protected final RateWindow globalWindow = new RateWindow();
+	/** The new metric rate window */
+	protected final RateWindow newMetricWindow = new RateWindow();
+	/** The per client rate windows keyed by client id */
+	protected final Cache<String, RateWindow> clientWindows = CacheBuilder.newBuilder().expireAfterAccess(60, TimeUnit.SECONDS).build();
+	/** The deferred value queue used by the QUEUE policy */
+	protected final BlockingQueue<DeferredValue> deferred;
+	/** The deferred value drain thread */
+	protected final Thread drainThread;
+	
+	/** The number of admitted values */
+	protected final AtomicLong admitted = new AtomicLong(0L);
+	/** The number of shed values */
+	protected final AtomicLong shed = new AtomicLong(0L);
+	/** The number of queued values */
+	protected final AtomicLong queued = new AtomicLong(0L);
+	/** The number of blocked submissions */
+	protected final AtomicLong blocked = new AtomicLong(0L);
+	/** The number of refused new metrics */
+	protected final AtomicLong refusedNewMetrics = new AtomicLong(0L);
+	
+	/** The controller's JMX ObjectName */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName(new StringBuilder(AdmissionController.class.getPackage().getName()).append(":service=").append(AdmissionController.class.getSimpleName()));
+	
+	/**
+	 * Acquires the admission controller singleton instance
+	 * @return the admission controller
+	 */
+	public static AdmissionController getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					instance = new AdmissionController();
+					JMXHelper.registerMBean(instance, OBJECT_NAME);
+				}
+			}
+		}
+		return instance;
+	}
+	
+	/**
+	 * Creates a new AdmissionController
+	 */
+	private AdmissionController() {
+		enabled = ConfigurationHelper.getBooleanSystemThenEnvProperty(Constants.ADMISSION_ENABLED, Constants.DEFAULT_ADMISSION_ENABLED);
+		policy = AdmissionPolicy.forName(ConfigurationHelper.getSystemThenEnvProperty(Constants.ADMISSION_POLICY, Constants.DEFAULT_ADMISSION_POLICY));
+		globalRateLimit = ConfigurationHelper.getLongSystemThenEnvProperty(Constants.ADMISSION_GLOBAL_RATE, Constants.DEFAULT_ADMISSION_GLOBAL_RATE);
+		clientRateLimit = ConfigurationHelper.getLongSystemThenEnvProperty(Constants.ADMISSION_CLIENT_RATE, Constants.DEFAULT_ADMISSION_CLIENT_RATE);
+		newMetricRateLimit = ConfigurationHelper.getLongSystemThenEnvProperty(Constants.ADMISSION_NEW_METRIC_RATE, Constants.DEFAULT_ADMISSION_NEW_METRIC_RATE);
+		maxBlockNanos = TimeUnit.MILLISECONDS.toNanos(ConfigurationHelper.getLongSystemThenEnvProperty(Constants.ADMISSION_MAX_BLOCK, Constants.DEFAULT_ADMISSION_MAX_BLOCK));
+		deferred = new ArrayBlockingQueue<DeferredValue>(ConfigurationHelper.getIntSystemThenEnvProperty(Constants.ADMISSION_QUEUE_SIZE, Constants.DEFAULT_ADMISSION_QUEUE_SIZE));
+		log.info("Admission Control Options:\n\tenabled: {}\n\tpolicy: {}\n\tglobalRate: {}\n\tclientRate: {}\n\tnewMetricRate: {}", enabled, policy, globalRateLimit, clientRateLimit, newMetricRateLimit);
+		drainThread = new Thread(this, "AdmissionControlDrainThread");
+		drainThread.setDaemon(true);
+		drainThread.start();
+	}
+	
+	/**
+	 * Determines if a long value from the passed client should be applied now.
+	 * If not, the value has been dropped or deferred according to the policy.
+	 * @param clientId The submitting client id
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @return true if the caller should apply the value, false otherwise
+	 */
+	public boolean admit(String clientId, long globalId, long value) {
+		return admit(clientId, globalId, value, PeriodAggregatorImpl.NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Determines if a timestamped long value from the passed client should be applied now.
+	 * If not, the value has been dropped or deferred, with its timestamp, according to the policy.
+	 * @param clientId The submitting client id
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @param timestamp The timestamp of the value, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+	 * @return true if the caller should apply the value, false otherwise
+	 */
+	public boolean admit(String clientId, long globalId, long value, long timestamp) {
+		if(!enabled) return true;
+		if(admit(clientId)) return true;
+		return defer(new DeferredValue(globalId, value, 0D, false, timestamp));
+	}
+	
+	/**
+	 * Determines if a double value from the passed client should be applied now.
+	 * If not, the value has been dropped or deferred according to the policy.
+	 * @param clientId The submitting client id
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @return true if the caller should apply the value, false otherwise
+	 */
+	public boolean admit(String clientId, long globalId, double value) {
+		return admit(clientId, globalId, value, PeriodAggregatorImpl.NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Determines if a timestamped double value from the passed client should be applied now.
+	 * If not, the value has been dropped or deferred, with its timestamp, according to the policy.
+	 * @param clientId The submitting client id
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @param timestamp The timestamp of the value, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+	 * @return true if the caller should apply the value, false otherwise
+	 */
+	public boolean admit(String clientId, long globalId, double value, long timestamp) {
+		if(!enabled) return true;
+		if(admit(clientId)) return true;
+		return defer(new DeferredValue(globalId, 0L, value, true, timestamp));
+	}
+	
+	/**
+	 * Determines if a new metric aggregator may be created. Refused creations drop the value that triggered them.
+	 * @return true if the aggregator may be created, false otherwise
+	 */
+	public boolean admitNewMetric() {
+		if(!enabled) return true;
+		if(newMetricWindow.tryAcquire(newMetricRateLimit)) return true;
+		refusedNewMetrics.incrementAndGet();
+		return false;
+	}
+	
+	/**
+	 * Acquires a client and a global permit, blocking under the BLOCK policy
+	 * @param clientId The submitting client id
+	 * @return true if admitted, false if the value is over the limits
+	 */
+	protected boolean admit(String clientId) {
+		if(tryAdmit(clientId)) {
+			admitted.incrementAndGet();
+			return true;
+		}
+		if(policy==AdmissionPolicy.BLOCK) {
+			blocked.incrementAndGet();
+			final long deadline = System.nanoTime() + maxBlockNanos;
+			while(true) {
+				final long wait = Math.min(RateWindow.nanosToNextWindow(), deadline - System.nanoTime());
+				if(wait <= 0) break;
+				LockSupport.parkNanos(wait);
+				if(tryAdmit(clientId)) {
+					admitted.incrementAndGet();
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Tries to acquire a client and a global permit. A client permit is only kept if the global permit is also acquired,
+	 * so values refused by the global limit do not count against the client's rate.
+	 * @param clientId The submitting client id
+	 * @return true if both permits were acquired
+	 */
+	protected boolean tryAdmit(final String clientId) {
+		if(clientId!=null) {
+			RateWindow window = clientWindows.getIfPresent(clientId);
+			if(window==null) {
+				try {
+					window = clientWindows.get(clientId, new Callable<RateWindow>() {
+						@Override
+						public RateWindow call() throws Exception {
+							return new RateWindow();
+						}
+					});
+				} catch (Exception ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+			if(!window.tryAcquire(clientRateLimit)) return false;
+			if(globalWindow.tryAcquire(globalRateLimit)) return true;
+			// the global limit refused the value, so give back the client permit
+			window.release();
+			return false;
+		}
+		return globalWindow.tryAcquire(globalRateLimit);
+	}
+	
+	/**
+	 * Queues a value over the limits under the QUEUE policy, otherwise drops it
+	 * @param value The value
+	 * @return false, since the caller must not apply the value
+	 */
+	protected boolean defer(DeferredValue value) {
+		if(policy==AdmissionPolicy.QUEUE && deferred.offer(value)) {
+			queued.incrementAndGet();
+		} else {
+			shed.incrementAndGet();
+		}
+		return false;
+	}
+	
+	/**
+	 * <p>Applies deferred values to the registry as global capacity frees up</p>
+	 * {@inheritDoc}
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		while(true) {
+			try {
+				final DeferredValue value = deferred.take();
+				while(!globalWindow.tryAcquire(globalRateLimit)) {
+					LockSupport.parkNanos(RateWindow.nanosToNextWindow());
+				}
+				if(value.isDouble) Registry.getInstance().processValue(value.globalId, value.doubleValue, value.timestamp);
+				else Registry.getInstance().processValue(value.globalId, value.longValue, value.timestamp);
+			} catch (InterruptedException iex) {
+				return;
+			} catch (Exception ex) {
+				log.warn("Failed to apply deferred value", ex);
+			}
+		}
+	}
+	
+	/**
+	 * <p>Title: RateWindow</p>
+	 * <p>Description: Counts acquisitions in a fixed one second window</p> 
+	 * <p><code>org.helios.rindle.control.AdmissionController.RateWindow</code></p>
+	 */
+	protected static class RateWindow {
+		/** The second of the current window */
+		protected volatile long second = 0L;
+		/** The number of acquisitions in the current window */
+		protected final AtomicLong count = new AtomicLong(0L);
+		
+		/**
+		 * Returns the nanos until the next window starts
+		 * @return the nanos to the next window
+		 */
+		static long nanosToNextWindow() {
+			return TimeUnit.MILLISECONDS.toNanos(1000L - (System.currentTimeMillis() % 1000L));
+		}
+		
+		/**
+		 * Tries to acquire a permit in the current window. A refused attempt is not counted.
+		 * @param limit The maximum number of permits per window, 0 or less for unlimited
+		 * @return true if acquired
+		 */
+		boolean tryAcquire(long limit) {
+			final AtomicLong counter = roll();
+			if(counter.incrementAndGet() <= limit || limit <= 0) return true;
+			counter.decrementAndGet();
+			return false;
+		}
+		
+		/**
+		 * Gives back a permit acquired in the current window. If the window has rolled since the permit was acquired,
+		 * the permit is given back to the new window unless it is empty.
+		 */
+		void release() {
+			final AtomicLong counter = roll();
+			long current;
+			do {
+				current = counter.get();
+				if(current <= 0L) return;
+			} while(!counter.compareAndSet(current, current - 1L));
+		}
+		
+		/**
+		 * Returns the number of acquisitions in the current window
+		 * @return the current rate
+		 */
+		long current() {
+			return roll().get();
+		}
+		
+		/**
+		 * Starts a new window if the current second has passed
+		 * @return the window counter
+		 */
+		private AtomicLong roll() {
+			final long now = System.currentTimeMillis() / 1000L;
+			if(second!=now) {
+				synchronized(this) {
+					if(second!=now) {
+						count.set(0L);
+						second = now;
+					}
+				}
+			}
+			return count;
+		}
+	}
+	
+	/**
+	 * <p>Title: DeferredValue</p>
+	 * <p>Description: A value parked in the deferred queue</p> 
+	 * <p><code>org.helios.rindle.control.AdmissionController.DeferredValue</code></p>
+	 */
+	protected static class DeferredValue {
+		/** The global id of the metric */
+		final long globalId;
+		/** The long value */
+		final long longValue;
+		/** The double value */
+		final double doubleValue;
+		/** Indicates if the value is a double */
+		final boolean isDouble;
+		/** The timestamp of the value */
+		final long timestamp;
+		
+		/**
+		 * Creates a new DeferredValue
+		 * @param globalId The global id of the metric
+		 * @param longValue The long value
+		 * @param doubleValue The double value
+		 * @param isDouble true if the value is a double
+		 * @param timestamp The timestamp of the value, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+		 */
+		DeferredValue(long globalId, long longValue, double doubleValue, boolean isDouble, long timestamp) {
+			this.globalId = globalId;
+			this.longValue = longValue;
+			this.doubleValue = doubleValue;
+			this.isDouble = isDouble;
+			this.timestamp = timestamp;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#isEnabled()
+	 */
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#setEnabled(boolean)
+	 */
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#getPolicy()
+	 */
+	@Override
+	public String getPolicy() {
+		return policy.name();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#setPolicy(java.lang.String)
+	 */
+	@Override
+	public void setPolicy(String policy) {
+		this.policy = AdmissionPolicy.forName(policy);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#getGlobalRateLimit()
+	 */
+	@Override
+	public long getGlobalRateLimit() {
+		return globalRateLimit;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#setGlobalRateLimit(long)
+	 */
+	@Override
+	public void setGlobalRateLimit(long limit) {
+		globalRateLimit = limit;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#getClientRateLimit()
+	 */
+	@Override
+	public long getClientRateLimit() {
+		return clientRateLimit;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#setClientRateLimit(long)
+	 */
+	@Override
+	public void setClientRateLimit(long limit) {
+		clientRateLimit = limit;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#getNewMetricRateLimit()
+	 */
+	@Override
+	public long getNewMetricRateLimit() {
+		return newMetricRateLimit;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#setNewMetricRateLimit(long)
+	 */
+	@Override
+	public void setNewMetricRateLimit(long limit) {
+		newMetricRateLimit = limit;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#getAdmittedCount()
+	 */
+	@Override
+	public long getAdmittedCount() {
+		return admitted.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#getShedCount()
+	 */
+	@Override
+	public long getShedCount() {
+		return shed.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#getQueuedCount()
+	 */
+	@Override
+	public long getQueuedCount() {
+		return queued.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#getBlockedCount()
+	 */
+	@Override
+	public long getBlockedCount() {
+		return blocked.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#getRefusedNewMetricCount()
+	 */
+	@Override
+	public long getRefusedNewMetricCount() {
+		return refusedNewMetrics.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#getQueueDepth()
+	 */
+	@Override
+	public int getQueueDepth() {
+		return deferred.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#getGlobalRate()
+	 */
+	@Override
+	public long getGlobalRate() {
+		return globalWindow.current();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.AdmissionControllerMXBean#getClientRates()
+	 */
+	@Override
+	public Map<String, Long> getClientRates() {
+		final Map<String, Long> rates = new HashMap<String, Long>();
+		for(Map.Entry<String, RateWindow> entry: clientWindows.asMap().entrySet()) {
+			rates.put(entry.getKey(), entry.getValue().current());
+		}
+		return rates;
+	}
+}
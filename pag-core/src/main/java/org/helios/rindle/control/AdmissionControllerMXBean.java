@@ -0,0 +1,145 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.control;
+
+import java.util.Map;
+
+/**
+ * <p>Title: AdmissionControllerMXBean</p>
+ * <p>Description: MXBean interface for the {@link AdmissionController}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.control.AdmissionControllerMXBean</code></p>
+ */
+
+public interface AdmissionControllerMXBean {
+	/**
+	 * Indicates if admission control is enabled
+	 * @return true if enabled, false otherwise
+	 */
+	public boolean isEnabled();
+	
+	/**
+	 * Enables or disables admission control
+	 * @param enabled true to enable, false to disable
+	 */
+	public void setEnabled(boolean enabled);
+	
+	/**
+	 * Returns the name of the policy applied to values over the limits
+	 * @return the admission policy name
+	 */
+	public String getPolicy();
+	
+	/**
+	 * Sets the policy applied to values over the limits
+	 * @param policy One of SHED, QUEUE or BLOCK
+	 */
+	public void setPolicy(String policy);
+	
+	/**
+	 * Returns the maximum number of values admitted per second across all clients
+	 * @return the global rate limit, 0 if unlimited
+	 */
+	public long getGlobalRateLimit();
+	
+	/**
+	 * Sets the maximum number of values admitted per second across all clients
+	 * @param limit the global rate limit, 0 for unlimited
+	 */
+	public void setGlobalRateLimit(long limit);
+	
+	/**
+	 * Returns the maximum number of values admitted per second per client
+	 * @return the per client rate limit, 0 if unlimited
+	 */
+	public long getClientRateLimit();
+	
+	/**
+	 * Sets the maximum number of values admitted per second per client
+	 * @param limit the per client rate limit, 0 for unlimited
+	 */
+	public void setClientRateLimit(long limit);
+	
+	/**
+	 * Returns the maximum number of new metric aggregators created per second
+	 * @return the new metric rate limit, 0 if unlimited
+	 */
+	public long getNewMetricRateLimit();
+	
+	/**
+	 * Sets the maximum number of new metric aggregators created per second
+	 * @param limit the new metric rate limit, 0 for unlimited
+	 */
+	public void setNewMetricRateLimit(long limit);
+	
+	/**
+	 * Returns the number of values admitted immediately
+	 * @return the admitted count
+	 */
+	public long getAdmittedCount();
+	
+	/**
+	 * Returns the number of values dropped
+	 * @return the shed count
+	 */
+	public long getShedCount();
+	
+	/**
+	 * Returns the number of values parked in the deferred queue
+	 * @return the queued count
+	 */
+	public long getQueuedCount();
+	
+	/**
+	 * Returns the number of times a submitter was blocked
+	 * @return the blocked count
+	 */
+	public long getBlockedCount();
+	
+	/**
+	 * Returns the number of new metric aggregators refused
+	 * @return the refused new metric count
+	 */
+	public long getRefusedNewMetricCount();
+	
+	/**
+	 * Returns the number of values waiting in the deferred queue
+	 * @return the deferred queue depth
+	 */
+	public int getQueueDepth();
+	
+	/**
+	 * Returns the number of values admitted in the current second across all clients
+	 * @return the current global rate
+	 */
+	public long getGlobalRate();
+	
+	/**
+	 * Returns the number of values submitted in the current second by each active client
+	 * @return the current rates keyed by client id
+	 */
+	public Map<String, Long> getClientRates();
+}
@@ -0,0 +1,56 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.control;
+
+/**
+ * <p>Title: AdmissionPolicy</p>
+ * <p>Description: Enumerates what the {@link AdmissionController} does with values that exceed the admission limits</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.control.AdmissionPolicy</code></p>
+ */
+
+public enum AdmissionPolicy {
+	/** Values over the limit are dropped */
+	SHED,
+	/** Values over the limit are parked in a bounded queue and applied as capacity frees up. Values are dropped when the queue is full. */
+	QUEUE,
+	/** Submitters over the limit are blocked until the next rate window, up to a maximum wait, after which the value is dropped */
+	BLOCK;
+	
+	/**
+	 * Decodes the passed name to an AdmissionPolicy, ignoring case
+	 * @param name The name to decode
+	 * @return the decoded AdmissionPolicy
+	 */
+	public static AdmissionPolicy forName(String name) {
+		if(name==null || name.trim().isEmpty()) throw new IllegalArgumentException("The passed name was null or empty", new Throwable());
+		try {
+			return valueOf(name.trim().toUpperCase());
+		} catch (Exception ex) {
+			throw new IllegalArgumentException("The passed name [" + name + "] is not a valid AdmissionPolicy", new Throwable());
+		}
+	}
+}
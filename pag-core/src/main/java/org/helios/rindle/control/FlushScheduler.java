@@ -318,6 +318,14 @@ public class FlushScheduler implements ThreadFactory, UncaughtExceptionHandler {
 		return period;
 	}
 	
+	/**
+	 * Returns the minimum period granularity, which is also the tick duration of the timer
+	 * @return the minimum period granularity in seconds
+	 */
+	public int getMinTick() {
+		return minTick;
+	}
+	
 	/**
 	 * Adjusts the passed period, if necessary, to fit into the configured granularity.
 	 * @param period The period to adjust
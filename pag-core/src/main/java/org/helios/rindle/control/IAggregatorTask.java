@@ -0,0 +1,47 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.control;
+
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+
+/**
+ * <p>Title: IAggregatorTask</p>
+ * <p>Description: A task run against an aggregator on the thread that owns it. In a sharded {@link Registry}
+ * aggregators are confined to their shard's thread, so reads such as flushes are handed off as tasks.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.control.IAggregatorTask</code></p>
+ * @param <T> The task's return type
+ */
+
+public interface IAggregatorTask<T> {
+	/**
+	 * Runs the task against an aggregator
+	 * @param globalId The global id of the aggregator
+	 * @param aggregator The aggregator, or null if there is no aggregator for the global id
+	 * @return the task result
+	 */
+	public T execute(long globalId, PeriodAggregatorImpl aggregator);
+}
@@ -24,9 +24,19 @@
  */
 package org.helios.rindle.control;
 
+import gnu.trove.set.hash.TIntHashSet;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.ObjectName;
 
@@ -36,8 +46,13 @@ import org.cliffc.high_scale_lib.NonBlockingHashMapLong;
 import org.helios.rindle.Constants;
 import org.helios.rindle.core.datapoints.Core.DataPoint;
 import org.helios.rindle.core.datapoints.Core.DataPoints;
+import org.helios.rindle.ingest.PartitionedEventHandler;
 import org.helios.rindle.period.IPeriodAggregator;
 import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.helios.rindle.period.impl.TopK;
+import org.helios.rindle.subscription.criteria.DataContent;
+import org.helios.rindle.subscription.criteria.Retention;
+import org.helios.rindle.util.ArrayUtils;
 import org.helios.rindle.util.ConfigurationHelper;
 import org.helios.rindle.util.JMXHelper;
 import org.helios.rindle.util.StringHelper;
@@ -53,6 +68,10 @@ import cern.colt.list.DoubleArrayList;
 /**
  * <p>Title: Registry</p>
  * <p>Description: The main registry for {@link IPeriodAggregator}s</p> 
+ * <p>When {@link Constants#REG_SHARDS} is set, global ids are hashed to that many {@link RegistryShard}s, each of which
+ * owns its aggregators and applies their values on a single thread without locking. In sharded mode values are applied
+ * asynchronously, so the <b><code>process</code></b> methods return null, and aggregators can only be read through
+ * {@link #handoff(long, IAggregatorTask)} or {@link #visitAggregators(IAggregatorTask)}.</p>
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.rindle.control.Registry</code></p>
@@ -72,9 +91,25 @@ public class Registry implements RegistryMXBean {
 	
 	/** The map of aggregators keyed by the global metric ID */
 	protected final NonBlockingHashMapLong<PeriodAggregatorImpl> aggregators;
+	/** The single-writer shards, or null if the registry is not sharded */
+	protected final RegistryShard[] shards;
 	
 	/** The flush scheduler */
 	protected final FlushScheduler flushScheduler = FlushScheduler.getInstance();
+	/** The periods that aggregators roll their finest granularity buckets up into, always including the finest granularity */
+	protected final int[] rollupPeriods;
+	/** The sequence number of the last finest granularity bucket rolled up */
+	protected final AtomicLong rollTicks = new AtomicLong(0L);
+	/** The registered top-Ks, maintained on each roll */
+	protected volatile TopK[] topKs = new TopK[0];
+	/** The number of buckets older than the current bucket that event time aggregators keep open for late values */
+	protected final int eventTimeLateness = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.AGG_EVENT_TIME_LATENESS, Constants.DEFAULT_AGG_EVENT_TIME_LATENESS);
+	/** The admission controller which caps the creation of new aggregators */
+	protected final AdmissionController admission = AdmissionController.getInstance();
+	/** Removed aggregators waiting out the current flush tick before they start their grace period */
+	protected final ConcurrentLinkedQueue<PeriodAggregatorImpl> retiring = new ConcurrentLinkedQueue<PeriodAggregatorImpl>();
+	/** Removed aggregators which have waited at least one full flush tick, released on the next tick. Guarded by itself. */
+	protected final List<PeriodAggregatorImpl> retired = new ArrayList<PeriodAggregatorImpl>();
 	
 	/** The registry's JMX ObjectName */
 	public static final ObjectName OBJECT_NAME = JMXHelper.objectName(new StringBuilder(Registry.class.getPackage().getName()).append(":service=").append(Registry.class.getSimpleName()));
@@ -195,9 +230,213 @@ public class Registry implements RegistryMXBean {
 		boolean space4speed = ConfigurationHelper.getBooleanSystemThenEnvProperty(Constants.REG_SPACE_FOR_SPEED, Constants.DEFAULT_REG_SPACE_FOR_SPEED);
 		log.info("Registry Map Options:\n\tsize: {}\n\tspaceForspeed: {}", size, space4speed);
 		aggregators = new NonBlockingHashMapLong<PeriodAggregatorImpl>(size, space4speed);		
+		final int shardCount = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.REG_SHARDS, Constants.DEFAULT_REG_SHARDS);
+		if(shardCount > 0) {
+			final int ringSize = UnsafeAdapter.findNextPositivePowerOfTwo(ConfigurationHelper.getIntSystemThenEnvProperty(Constants.REG_SHARD_RING_SIZE, Constants.DEFAULT_REG_SHARD_RING_SIZE));
+			log.info("Registry Shard Options:\n\tshards: {}\n\tringSize: {}", shardCount, ringSize);
+			shards = new RegistryShard[shardCount];
+			for(int i = 0; i < shardCount; i++) {
+				shards[i] = new RegistryShard(i, ringSize, Math.max(16, size / shardCount));
+			}
+		} else {
+			shards = null;
+		}
+		rollupPeriods = rollupPeriods(ConfigurationHelper.getIntSystemThenEnvPropertyArray(Constants.AGG_ROLLUP_PERIODS, Constants.DEFAULT_AGG_ROLLUP_PERIODS));
+		log.info("Registry Roll-up Periods: {}", Arrays.toString(rollupPeriods));
+		flushScheduler.registerListener(new FlushPeriodListenerImpl(flushScheduler.getMinTick()) {
+			@Override
+			public void onPeriodFlush(int period) {
+				roll();
+				reclaim();
+			}
+		});
 		log.info(StringHelper.banner("Registry Started"));
 	}
 	
+	/**
+	 * Adjusts the configured roll-up periods to the flush scheduler's granularity and adds the finest granularity.
+	 * The finest granularity is rolled even when no periods are configured, so every flush resets the aggregators
+	 * and the last finished bucket is the {@link Retention#INTERVAL_RESET} instance of the finest granularity period.
+	 * @param configured The configured roll-up periods
+	 * @return the sorted distinct roll-up periods
+	 */
+	protected int[] rollupPeriods(int[] configured) {
+		final int granularity = flushScheduler.getMinTick();
+		final TIntHashSet periods = new TIntHashSet(configured.length + 1);
+		periods.add(granularity);
+		for(int p: configured) {
+			final int adjusted = flushScheduler.adjustPeriod(p);
+			periods.add(adjusted - (adjusted % granularity));
+		}
+		final int[] sorted = periods.toArray();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+	
+	/**
+	 * Closes every aggregator's current finest granularity bucket and folds it into the roll-up periods.
+	 * Called by the flush scheduler on each tick of the finest granularity. Coarser periods complete on the same
+	 * tick for every aggregator, when the tick count is a multiple of the period's number of buckets.
+	 * @return the sequence number of the rolled bucket
+	 */
+	public long roll() {
+		final long tick = rollTicks.incrementAndGet();
+		final int granularity = flushScheduler.getMinTick();
+		final TopK[] trackers = topKs;
+		final int visited = visitAggregators(new IAggregatorTask<Void>() {
+			@Override
+			public Void execute(long globalId, PeriodAggregatorImpl aggregator) {
+				aggregator.roll(globalId, tick, granularity, rollupPeriods);
+				for(TopK topK: trackers) {
+					topK.offer(globalId, tick, aggregator);
+				}
+				return null;
+			}
+		});
+		for(TopK topK: trackers) {
+			topK.complete(tick);
+		}
+		log.trace("Rolled bucket {} for {} aggregators", tick, visited);
+		return tick;
+	}
+	
+	/**
+	 * Releases the removed aggregators whose grace period has expired. Called by the flush scheduler on each tick of
+	 * the finest granularity, after the roll. An aggregator removed during tick <b>n</b> is moved to {@link #retired}
+	 * on tick <b>n+1</b> and released on tick <b>n+2</b>, so its memory outlives the removal by at least one full tick,
+	 * which covers ingest threads and rolls that looked the aggregator up before it was removed.
+	 * @return the number of aggregators released
+	 */
+	public int reclaim() {
+		synchronized(retired) {
+			final int released = retired.size();
+			for(PeriodAggregatorImpl pai: retired) {
+				pai.release();
+			}
+			retired.clear();
+			PeriodAggregatorImpl pai;
+			while((pai = retiring.poll())!=null) {
+				retired.add(pai);
+			}
+			if(released > 0) log.debug("Released {} removed aggregators", released);
+			return released;
+		}
+	}
+	
+	/**
+	 * Returns the last completed instance of the passed roll-up period for the identified aggregator
+	 * @param globalId The global id of the aggregator
+	 * @param period The period in seconds
+	 * @return the completed period, or null if the aggregator was not found, the period is not rolled up or no bucket has been rolled yet
+	 */
+	public IPeriodAggregator getRolledPeriod(final long globalId, final int period) {
+		return getRolledPeriod(globalId, period, Retention.INTERVAL_RESET);
+	}
+	
+	/**
+	 * Registers a top-K of the passed aggregators, ranked by a measure of a roll-up period and published each time the period completes.
+	 * The ranked aggregators are fixed at registration: a caller ranking the metrics matching a name pattern resolves it first, 
+	 * for example with {@link org.helios.rindle.store.IStore#getGlobalIds(String)}, and registers again to pick up new matches.
+	 * Replaces any top-K already registered with the same name.
+	 * @param name The name of the top-K
+	 * @param period The roll-up period to rank, in seconds
+	 * @param k The maximum number of entries
+	 * @param measure The measure to rank aggregators by
+	 * @param globalIds The global ids of the aggregators to rank
+	 * @return the registered top-K
+	 */
+	public synchronized TopK registerTopK(final String name, final int period, final int k, final TopK.Measure measure, final long...globalIds) {
+		if(Arrays.binarySearch(rollupPeriods, period) < 0) throw new IllegalArgumentException("The period [" + period + "] is not rolled up. Roll-up periods: " + Arrays.toString(rollupPeriods), new Throwable());
+		final TopK topK = new TopK(name, flushScheduler.getMinTick(), period, k, measure, globalIds);
+		final List<TopK> trackers = new ArrayList<TopK>(Arrays.asList(topKs));
+		for(int i = 0; i < trackers.size(); i++) {
+			if(trackers.get(i).getName().equals(name)) trackers.remove(i--);
+		}
+		trackers.add(topK);
+		topKs = trackers.toArray(new TopK[trackers.size()]);
+		return topK;
+	}
+	
+	/**
+	 * Unregisters the named top-K
+	 * @param name The name of the top-K
+	 * @return true if the top-K was found and unregistered, false otherwise
+	 */
+	public synchronized boolean unregisterTopK(final String name) {
+		final List<TopK> trackers = new ArrayList<TopK>(Arrays.asList(topKs));
+		for(int i = 0; i < trackers.size(); i++) {
+			if(trackers.get(i).getName().equals(name)) {
+				trackers.remove(i);
+				topKs = trackers.toArray(new TopK[trackers.size()]);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the named top-K
+	 * @param name The name of the top-K
+	 * @return the top-K or null if it is not registered
+	 */
+	public TopK getTopK(final String name) {
+		for(TopK topK: topKs) {
+			if(topK.getName().equals(name)) return topK;
+		}
+		return null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.RegistryMXBean#getTopKNames()
+	 */
+	@Override
+	public String[] getTopKNames() {
+		final TopK[] trackers = topKs;
+		final String[] names = new String[trackers.length];
+		for(int i = 0; i < trackers.length; i++) {
+			names[i] = trackers[i].getName();
+		}
+		return names;
+	}
+	
+	/**
+	 * Returns the passed roll-up period with the passed retention for the identified aggregator
+	 * @param globalId The global id of the aggregator
+	 * @param period The period in seconds
+	 * @param retention {@link Retention#INTERVAL_RESET} for the last completed instance of the period, 
+	 * or {@link Retention#STICKY} for every completed instance folded together
+	 * @return the period, or null if the aggregator was not found, the period is not rolled up, no bucket has been rolled yet
+	 * or sticky retention was requested for a period that has not been made sticky with {@link #applyRetention(long, boolean, int, Retention)}
+	 */
+	public IPeriodAggregator getRolledPeriod(final long globalId, final int period, final Retention retention) {
+		return await(handoff(globalId, new IAggregatorTask<IPeriodAggregator>() {
+			@Override
+			public IPeriodAggregator execute(long globalId, PeriodAggregatorImpl aggregator) {
+				if(aggregator==null) return null;
+				return aggregator.getRolledPeriod(period, retention);
+			}
+		}));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.RegistryMXBean#getRollupPeriods()
+	 */
+	@Override
+	public int[] getRollupPeriods() {
+		return rollupPeriods.clone();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.RegistryMXBean#getRollTicks()
+	 */
+	@Override
+	public long getRollTicks() {
+		return rollTicks.get();
+	}
+	
 	/**
 	 * Processes a collection of data points
 	 * @param dataPoints the collection of data points to process
@@ -213,14 +452,59 @@ public class Registry implements RegistryMXBean {
 	 * Acquires the IPeriodAggregator for the passed global id
 	 * @param globalId The global id
 	 * @param forDouble true for a double type, false for a long type
-	 * @return the period aggregator
+	 * @return the period aggregator, or null if the admission controller refused to create a new aggregator
 	 */
 	public PeriodAggregatorImpl getPeriodAggregator(long globalId, boolean forDouble) {
-		PeriodAggregatorImpl pai = null;
-		if(aggregators.putIfAbsent(globalId, PeriodAggregatorImpl.CONST)==null) {
-			pai = new PeriodAggregatorImpl(forDouble);
-			aggregators.replace(globalId, pai);
-		} else {
+		if(shards!=null) throw new IllegalStateException("Aggregators in a sharded registry are confined to their shard. Use a handoff.", new Throwable());
+		return getOrCreate(globalId, forDouble);
+	}
+	
+	/**
+	 * Returns the aggregator for the passed global id, creating it if it does not exist and the admission controller
+	 * admits a new metric. Only for a registry that is not sharded. Every aggregator creation goes through here.
+	 * The creating thread reserves the global id with the {@link PeriodAggregatorImpl#CONST} placeholder until the new
+	 * aggregator replaces it. Other threads wait for the placeholder to be replaced, so the placeholder is never returned
+	 * and never modified.
+	 * @param globalId The global id
+	 * @param forDouble true for a double type, false for a long type
+	 * @return the aggregator, or null if the admission controller refused to create a new aggregator
+	 */
+	protected PeriodAggregatorImpl getOrCreate(final long globalId, final boolean forDouble) {
+		while(true) {
+			final PeriodAggregatorImpl pai = aggregators.get(globalId);
+			if(pai==PeriodAggregatorImpl.CONST) {
+				Thread.yield();
+				continue;
+			}
+			if(pai!=null) return pai;
+			if(aggregators.putIfAbsent(globalId, PeriodAggregatorImpl.CONST)==null) {
+				if(!admission.admitNewMetric()) {
+					aggregators.remove(globalId, PeriodAggregatorImpl.CONST);
+					return null;
+				}
+				final PeriodAggregatorImpl created;
+				try {
+					created = new PeriodAggregatorImpl(forDouble);
+				} catch (RuntimeException rex) {
+					aggregators.remove(globalId, PeriodAggregatorImpl.CONST);
+					throw rex;
+				}
+				aggregators.replace(globalId, created);
+				return created;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the existing aggregator for the passed global id. Only for a registry that is not sharded.
+	 * If the aggregator is being created, waits for the {@link PeriodAggregatorImpl#CONST} placeholder to be replaced.
+	 * @param globalId The global id
+	 * @return the aggregator, or null if it does not exist
+	 */
+	protected PeriodAggregatorImpl getExisting(final long globalId) {
+		PeriodAggregatorImpl pai = aggregators.get(globalId);
+		while(pai==PeriodAggregatorImpl.CONST) {
+			Thread.yield();
 			pai = aggregators.get(globalId);
 		}
 		return pai;
@@ -230,39 +514,142 @@ public class Registry implements RegistryMXBean {
 	 * Process a single value
 	 * @param globalId The global id
 	 * @param value the value to process
-	 * @return The processed aggregator
+	 * @return The processed aggregator, or null if the registry is sharded or the aggregator could not be created
 	 */
 	public IPeriodAggregator processValue(long globalId, long value) {
-		return getPeriodAggregator(globalId, false).processDataPoint(value);
+		return processValue(globalId, value, PeriodAggregatorImpl.NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Process a single value with its timestamp, which selects the bucket if the aggregator is in event time mode
+	 * @param globalId The global id
+	 * @param value the value to process
+	 * @param timestamp The timestamp of the value in ms, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+	 * @return The processed aggregator, or null if the registry is sharded or the aggregator could not be created
+	 */
+	public IPeriodAggregator processValue(long globalId, long value, long timestamp) {
+		if(shards!=null) {
+			shardFor(globalId).publish(globalId, value, timestamp);
+			return null;
+		}
+		final PeriodAggregatorImpl pai = getPeriodAggregator(globalId, false);
+		return pai==null ? null : pai.processDataPoint(value, timestamp);
 	}
 	
 	/**
 	 * Process a single value
 	 * @param globalId The global id
 	 * @param value the value to process
-	 * @return The processed aggregator
+	 * @return The processed aggregator, or null if the registry is sharded or the aggregator could not be created
 	 */
 	public IPeriodAggregator processValue(long globalId, double value) {
-		return getPeriodAggregator(globalId, true).processDataPoint(value);
+		return processValue(globalId, value, PeriodAggregatorImpl.NO_TIMESTAMP);
 	}
 	
-	
-	
+	/**
+	 * Process a single value with its timestamp, which selects the bucket if the aggregator is in event time mode
+	 * @param globalId The global id
+	 * @param value the value to process
+	 * @param timestamp The timestamp of the value in ms, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+	 * @return The processed aggregator, or null if the registry is sharded or the aggregator could not be created
+	 */
+	public IPeriodAggregator processValue(long globalId, double value, long timestamp) {
+		if(shards!=null) {
+			shardFor(globalId).publish(globalId, value, timestamp);
+			return null;
+		}
+		final PeriodAggregatorImpl pai = getPeriodAggregator(globalId, true);
+		return pai==null ? null : pai.processDataPoint(value, timestamp);
+	}
+
+	/**
+	 * Processes a batch of columnar long values. The values are grouped by global id
+	 * so each aggregator is locked once per batch. Values with a global id of -1 are skipped.
+	 * In a sharded registry, each value is published to its shard with its timestamp.
+	 * @param globalIds The global ids
+	 * @param values The values, parallel to the global ids
+	 * @param timestamps The optional timestamps, parallel to the global ids
+	 */
+	public void processValues(long[] globalIds, long[] values, long[] timestamps) {
+		validateBatch(globalIds, values.length, timestamps);
+		if(shards!=null) {
+			for(int i = 0; i < globalIds.length; i++) {
+				if(globalIds[i]!=-1L) shardFor(globalIds[i]).publish(globalIds[i], values[i], timestamps==null ? PeriodAggregatorImpl.NO_TIMESTAMP : timestamps[i]);
+			}
+			return;
+		}
+		final long[] gids = globalIds.clone();
+		final int[] indexes = ArrayUtils.sequence(gids.length);
+		ArrayUtils.sortParallel(gids, indexes);
+		int start = 0;
+		while(start < gids.length) {
+			final long gid = gids[start];
+			int end = start + 1;
+			while(end < gids.length && gids[end]==gid) end++;
+			if(gid!=-1L) {
+				final PeriodAggregatorImpl pai = getPeriodAggregator(gid, false);
+				if(pai!=null) pai.processDataPoints(values, timestamps, indexes, start, end - start);
+			}
+			start = end;
+		}
+	}
+
+	/**
+	 * Processes a batch of columnar double values. The values are grouped by global id
+	 * so each aggregator is locked once per batch. Values with a global id of -1 are skipped.
+	 * In a sharded registry, each value is published to its shard with its timestamp.
+	 * @param globalIds The global ids
+	 * @param values The values, parallel to the global ids
+	 * @param timestamps The optional timestamps, parallel to the global ids
+	 */
+	public void processValues(long[] globalIds, double[] values, long[] timestamps) {
+		validateBatch(globalIds, values.length, timestamps);
+		if(shards!=null) {
+			for(int i = 0; i < globalIds.length; i++) {
+				if(globalIds[i]!=-1L) shardFor(globalIds[i]).publish(globalIds[i], values[i], timestamps==null ? PeriodAggregatorImpl.NO_TIMESTAMP : timestamps[i]);
+			}
+			return;
+		}
+		final long[] gids = globalIds.clone();
+		final int[] indexes = ArrayUtils.sequence(gids.length);
+		ArrayUtils.sortParallel(gids, indexes);
+		int start = 0;
+		while(start < gids.length) {
+			final long gid = gids[start];
+			int end = start + 1;
+			while(end < gids.length && gids[end]==gid) end++;
+			if(gid!=-1L) {
+				final PeriodAggregatorImpl pai = getPeriodAggregator(gid, true);
+				if(pai!=null) pai.processDataPoints(values, timestamps, indexes, start, end - start);
+			}
+			start = end;
+		}
+	}
+
+	/**
+	 * Validates that the columns of a batch are parallel
+	 * @param globalIds The global ids
+	 * @param valueCount The number of values
+	 * @param timestamps The optional timestamps
+	 */
+	private static void validateBatch(long[] globalIds, int valueCount, long[] timestamps) {
+		if(globalIds.length!=valueCount) throw new IllegalArgumentException("Global id count [" + globalIds.length + "] != value count [" + valueCount + "]");
+		if(timestamps!=null && timestamps.length!=valueCount) throw new IllegalArgumentException("Timestamp count [" + timestamps.length + "] != value count [" + valueCount + "]");
+	}
+
+
 	/**
 	 * Process a single data point
 	 * @param dataPoint the data point to process
-	 * @return The processed aggregator
+	 * @return The processed aggregator, or null if the registry is sharded or the aggregator could not be created
 	 */
 	public IPeriodAggregator processDataPoint(DataPoint dataPoint) {
-		final long ID = dataPoint.getGlobalID();
-		PeriodAggregatorImpl pai = getPeriodAggregator(dataPoint.getGlobalID(), dataPoint.hasDoubleValue());
-		if(aggregators.putIfAbsent(ID, PeriodAggregatorImpl.CONST)==null) {
-			pai = new PeriodAggregatorImpl(dataPoint.hasDoubleValue());
-			aggregators.replace(ID, pai);
-		} else {
-			pai = aggregators.get(ID);
+		if(shards!=null) {
+			if(dataPoint.hasDoubleValue()) return processValue(dataPoint.getGlobalID(), dataPoint.getDoubleValue(), dataPoint.getTimestamp());
+			return processValue(dataPoint.getGlobalID(), dataPoint.getLongValue(), dataPoint.getTimestamp());
 		}
-		return pai.processDataPoint(dataPoint);		
+		final PeriodAggregatorImpl pai = getPeriodAggregator(dataPoint.getGlobalID(), dataPoint.hasDoubleValue());
+		return pai==null ? null : pai.processDataPoint(dataPoint);
 	}
 	
 	/**
@@ -271,8 +658,17 @@ public class Registry implements RegistryMXBean {
 	 * @param enabled true to enable, false to disable
 	 * @return the modified aggregator or null if the aggregator was not found
 	 */
-	public IPeriodAggregator setRawDataEnabled(long id, boolean enabled) {
-		PeriodAggregatorImpl pai = aggregators.get(id);
+	public IPeriodAggregator setRawDataEnabled(long id, final boolean enabled) {
+		if(shards!=null) {
+			return await(handoff(id, new IAggregatorTask<IPeriodAggregator>() {
+				@Override
+				public IPeriodAggregator execute(long globalId, PeriodAggregatorImpl aggregator) {
+					if(aggregator!=null) aggregator.setRawEnabled(enabled);
+					return aggregator;
+				}
+			}));
+		}
+		final PeriodAggregatorImpl pai = getExisting(id);
 		if(pai==null) return null;
 		pai.setRawEnabled(enabled);
 		return pai;
@@ -284,20 +680,305 @@ public class Registry implements RegistryMXBean {
 	 * @param id The id of the aggregator
 	 * @param isDouble true for a double, false for a long
 	 * @param enabled true to enable, false to disable
-	 * @return the modified aggregator or null if the aggregator was not found
+	 * @return the modified aggregator, or null if the admission controller refused to create it
 	 */
-	public IPeriodAggregator setRawDataEnabled(long id, boolean isDouble, boolean enabled) {		
-		PeriodAggregatorImpl pai = null;
-		if(aggregators.putIfAbsent(id, PeriodAggregatorImpl.CONST)==null) {
-			pai = new PeriodAggregatorImpl(isDouble);
-			aggregators.replace(id, pai);
-		} else {
-			pai = aggregators.get(id);
+	public IPeriodAggregator setRawDataEnabled(final long id, final boolean isDouble, final boolean enabled) {		
+		if(shards!=null) {
+			final RegistryShard shard = shardFor(id);
+			return await(shard.submit(new Callable<IPeriodAggregator>() {
+				@Override
+				public IPeriodAggregator call() throws Exception {
+					final PeriodAggregatorImpl aggregator = shard.getOrCreate(id, isDouble);
+					if(aggregator!=null) aggregator.setRawEnabled(enabled);
+					return aggregator;
+				}
+			}));
 		}
-		pai.setRawEnabled(enabled);
+		final PeriodAggregatorImpl pai = getOrCreate(id, isDouble);
+		if(pai!=null) pai.setRawEnabled(enabled);
+		return pai;
+	}
+
+	/**
+	 * Sets the enabled state of the streaming quantile sketch in the identified aggregator,
+	 * creating a new aggregator if it does not exist
+	 * @param id The id of the aggregator
+	 * @param isDouble true for a double, false for a long
+	 * @param enabled true to enable, false to disable
+	 * @return the modified aggregator, or null if the admission controller refused to create it
+	 */
+	public IPeriodAggregator setQuantilesEnabled(final long id, final boolean isDouble, final boolean enabled) {
+		if(shards!=null) {
+			final RegistryShard shard = shardFor(id);
+			return await(shard.submit(new Callable<IPeriodAggregator>() {
+				@Override
+				public IPeriodAggregator call() throws Exception {
+					final PeriodAggregatorImpl aggregator = shard.getOrCreate(id, isDouble);
+					if(aggregator!=null) aggregator.setQuantilesEnabled(enabled);
+					return aggregator;
+				}
+			}));
+		}
+		final PeriodAggregatorImpl pai = getOrCreate(id, isDouble);
+		if(pai!=null) pai.setQuantilesEnabled(enabled);
 		return pai;
 	}
 	
+	/**
+	 * Sets the enabled state of the HyperLogLog distinct value counter in the identified aggregator,
+	 * creating a new aggregator if it does not exist
+	 * @param id The id of the aggregator
+	 * @param isDouble true for a double, false for a long
+	 * @param enabled true to enable, false to disable
+	 * @return the modified aggregator, or null if the admission controller refused to create it
+	 */
+	public IPeriodAggregator setDistinctEnabled(final long id, final boolean isDouble, final boolean enabled) {
+		if(shards!=null) {
+			final RegistryShard shard = shardFor(id);
+			return await(shard.submit(new Callable<IPeriodAggregator>() {
+				@Override
+				public IPeriodAggregator call() throws Exception {
+					final PeriodAggregatorImpl aggregator = shard.getOrCreate(id, isDouble);
+					if(aggregator!=null) aggregator.setDistinctEnabled(enabled);
+					return aggregator;
+				}
+			}));
+		}
+		final PeriodAggregatorImpl pai = getOrCreate(id, isDouble);
+		if(pai!=null) pai.setDistinctEnabled(enabled);
+		return pai;
+	}
+	
+	/**
+	 * Enables the aggregations in the identified aggregator that the passed subscription data contents require.
+	 * Currently {@link DataContent#QUANTILES} enables the streaming quantile sketch and {@link DataContent#DISTINCT}
+	 * enables the HyperLogLog distinct value counter.
+	 * Aggregations are not disabled here since other subscriptions may still require them.
+	 * @param id The id of the aggregator
+	 * @param isDouble true for a double, false for a long
+	 * @param contents The subscription's data contents
+	 */
+	public void applyDataContents(final long id, final boolean isDouble, final DataContent...contents) {
+		if(contents==null) return;
+		for(DataContent content: contents) {
+			if(content==DataContent.QUANTILES) {
+				setQuantilesEnabled(id, isDouble, true);
+			} else if(content==DataContent.DISTINCT) {
+				setDistinctEnabled(id, isDouble, true);
+			}
+		}
+	}
+
+	/**
+	 * Switches the identified aggregator to counter mode, where values are readings of a monotonically increasing counter
+	 * and their deltas are aggregated, creating a new aggregator if it does not exist
+	 * @param id The id of the aggregator
+	 * @param isDouble true for a double, false for a long
+	 * @return the modified aggregator, or null if the admission controller refused to create it
+	 */
+	public IPeriodAggregator enableCounter(final long id, final boolean isDouble) {
+		if(shards!=null) {
+			final RegistryShard shard = shardFor(id);
+			return await(shard.submit(new Callable<IPeriodAggregator>() {
+				@Override
+				public IPeriodAggregator call() throws Exception {
+					final PeriodAggregatorImpl aggregator = shard.getOrCreate(id, isDouble);
+					if(aggregator!=null) aggregator.enableCounter();
+					return aggregator;
+				}
+			}));
+		}
+		final PeriodAggregatorImpl pai = getOrCreate(id, isDouble);
+		if(pai!=null) pai.enableCounter();
+		return pai;
+	}
+	
+	/**
+	 * Applies a subscription's retention to a roll-up period of the identified aggregator, creating a new aggregator if it does not exist.
+	 * {@link Retention#INTERVAL_RESET} is how every roll-up period completes, so only {@link Retention#STICKY} changes the aggregator.
+	 * Sticky retention is not removed here since other subscriptions may still require it.
+	 * @param id The id of the aggregator
+	 * @param isDouble true for a double, false for a long
+	 * @param period The roll-up period in seconds
+	 * @param retention The subscription's retention
+	 */
+	public void applyRetention(final long id, final boolean isDouble, final int period, final Retention retention) {
+		if(retention!=Retention.STICKY) return;
+		if(shards!=null) {
+			final RegistryShard shard = shardFor(id);
+			await(shard.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					final PeriodAggregatorImpl aggregator = shard.getOrCreate(id, isDouble);
+					if(aggregator!=null) aggregator.enableSticky(period);
+					return null;
+				}
+			}));
+			return;
+		}
+		final PeriodAggregatorImpl pai = getOrCreate(id, isDouble);
+		if(pai!=null) pai.enableSticky(period);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.RegistryMXBean#enableStriping(long)
+	 */
+	@Override
+	public boolean enableStriping(long id) {
+		if(shards!=null) {
+			return await(handoff(id, new IAggregatorTask<Boolean>() {
+				@Override
+				public Boolean execute(long globalId, PeriodAggregatorImpl aggregator) {
+					if(aggregator==null) return false;
+					aggregator.enableStriping();
+					return true;
+				}
+			}));
+		}
+		final PeriodAggregatorImpl pai = getExisting(id);
+		if(pai==null) return false;
+		pai.enableStriping();
+		return true;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>Event time buckets are closed by the roll-up of the finest granularity.
+	 * The number of buckets kept open for late values is set by {@link Constants#AGG_EVENT_TIME_LATENESS}.</p>
+	 * @see org.helios.rindle.control.RegistryMXBean#enableEventTime(long)
+	 */
+	@Override
+	public boolean enableEventTime(long id) {
+		final long bucketMs = flushScheduler.getMinTick() * 1000L;
+		if(shards!=null) {
+			return await(handoff(id, new IAggregatorTask<Boolean>() {
+				@Override
+				public Boolean execute(long globalId, PeriodAggregatorImpl aggregator) {
+					if(aggregator==null) return false;
+					aggregator.enableEventTime(bucketMs, eventTimeLateness);
+					return true;
+				}
+			}));
+		}
+		final PeriodAggregatorImpl pai = getExisting(id);
+		if(pai==null) return false;
+		pai.enableEventTime(bucketMs, eventTimeLateness);
+		return true;
+	}
+
+	/**
+	 * Switches the identified aggregator to striped mode, where each writer thread updates its own cell
+	 * and the cells are merged when the aggregator is read. Creates a new aggregator if it does not exist.
+	 * Intended for hot metrics written by many threads at once.
+	 * @param id The id of the aggregator
+	 * @param isDouble true for a double, false for a long
+	 * @return the modified aggregator, or null if the admission controller refused to create it
+	 */
+	public IPeriodAggregator enableStriping(final long id, final boolean isDouble) {
+		if(shards!=null) {
+			final RegistryShard shard = shardFor(id);
+			return await(shard.submit(new Callable<IPeriodAggregator>() {
+				@Override
+				public IPeriodAggregator call() throws Exception {
+					final PeriodAggregatorImpl aggregator = shard.getOrCreate(id, isDouble);
+					if(aggregator!=null) aggregator.enableStriping();
+					return aggregator;
+				}
+			}));
+		}
+		final PeriodAggregatorImpl pai = getOrCreate(id, isDouble);
+		if(pai!=null) pai.enableStriping();
+		return pai;
+	}
+
+
+	/**
+	 * Runs the passed task against the aggregator for the passed global id on the thread that owns it.
+	 * In a sharded registry, the task runs on the owning shard's thread after the values already published to the shard
+	 * have been applied. Otherwise the task runs on the calling thread.
+	 * @param globalId The global id of the aggregator
+	 * @param task The task to run
+	 * @param <T> The task's return type
+	 * @return the task's future
+	 */
+	public <T> Future<T> handoff(final long globalId, final IAggregatorTask<T> task) {
+		if(shards!=null) {
+			final RegistryShard shard = shardFor(globalId);
+			return shard.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					return task.execute(globalId, shard.get(globalId));
+				}
+			});
+		}
+		final FutureTask<T> future = new FutureTask<T>(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return task.execute(globalId, getExisting(globalId));
+			}
+		});
+		future.run();
+		return future;
+	}
+	
+	/**
+	 * Runs the passed task against every aggregator, each on the thread that owns it, and waits for all of them to complete.
+	 * In a sharded registry, each shard visits its aggregators on its own thread, so a flush reads every shard through a handoff.
+	 * @param task The task to run
+	 * @return the number of aggregators visited
+	 */
+	public int visitAggregators(final IAggregatorTask<?> task) {
+		if(shards==null) {
+			int visited = 0;
+			for(Map.Entry<Long, PeriodAggregatorImpl> entry: aggregators.entrySet()) {
+				if(entry.getValue()==PeriodAggregatorImpl.CONST) continue;
+				task.execute(entry.getKey(), entry.getValue());
+				visited++;
+			}
+			return visited;
+		}
+		final List<Future<Integer>> futures = new ArrayList<Future<Integer>>(shards.length);
+		for(final RegistryShard shard: shards) {
+			futures.add(shard.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					return shard.visit(task);
+				}
+			}));
+		}
+		int visited = 0;
+		for(Future<Integer> future: futures) {
+			visited += await(future);
+		}
+		return visited;
+	}
+	
+	/**
+	 * Waits for a handed off task to complete
+	 * @param future The task's future
+	 * @param <T> The task's return type
+	 * @return the task result
+	 */
+	private static <T> T await(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting for shard handoff", iex);
+		} catch (ExecutionException eex) {
+			throw new RuntimeException("Shard handoff failed", eex.getCause());
+		}
+	}
+	
+	/**
+	 * Returns the shard that owns the passed global id
+	 * @param globalId The global id
+	 * @return the owning shard
+	 */
+	protected RegistryShard shardFor(long globalId) {
+		return shards[PartitionedEventHandler.partitionFor(globalId, shards.length)];
+	}
 	
 	/**
 	 * Returns the timestamp of the start of the current period
@@ -322,7 +1003,119 @@ public class Registry implements RegistryMXBean {
 	 */
 	@Override
 	public long getAggregatorCount() {
-		return aggregators.size();
+		if(shards==null) return aggregators.size();
+		long total = 0L;
+		for(RegistryShard shard: shards) {
+			total += shard.getAggregatorCount();
+		}
+		return total;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>The removed aggregator's memory is not released immediately, since ingest threads and the roll may still hold it.
+	 * It is released by the flush thread once at least one full flush tick has passed (see {@link #reclaim()}), after which
+	 * a slab allocated record is reused by other aggregators, so references to the removed aggregator must be dropped.</p>
+	 * @see org.helios.rindle.control.RegistryMXBean#removeAggregator(long)
+	 */
+	@Override
+	public boolean removeAggregator(final long globalId) {
+		final PeriodAggregatorImpl pai;
+		if(shards!=null) {
+			final RegistryShard shard = shardFor(globalId);
+			pai = await(shard.submit(new Callable<PeriodAggregatorImpl>() {
+				@Override
+				public PeriodAggregatorImpl call() throws Exception {
+					return shard.remove(globalId);
+				}
+			}));
+		} else {
+			pai = getExisting(globalId);
+			if(pai==null || !aggregators.remove(globalId, pai)) return false;
+		}
+		if(pai==null) return false;
+		retiring.add(pai);
+		return true;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.RegistryMXBean#getPendingReleaseCount()
+	 */
+	@Override
+	public int getPendingReleaseCount() {
+		synchronized(retired) {
+			return retired.size() + retiring.size();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.RegistryMXBean#getArenaAllocatedSlots()
+	 */
+	@Override
+	public int getArenaAllocatedSlots() {
+		return PeriodAggregatorImpl.ARENA==null ? 0 : PeriodAggregatorImpl.ARENA.getAllocated();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.RegistryMXBean#getArenaCapacity()
+	 */
+	@Override
+	public int getArenaCapacity() {
+		return PeriodAggregatorImpl.ARENA==null ? 0 : PeriodAggregatorImpl.ARENA.getCapacity();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.RegistryMXBean#getShardCount()
+	 */
+	@Override
+	public int getShardCount() {
+		return shards==null ? 0 : shards.length;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.RegistryMXBean#getShardProcessedCounts()
+	 */
+	@Override
+	public long[] getShardProcessedCounts() {
+		if(shards==null) return new long[0];
+		final long[] counts = new long[shards.length];
+		for(int i = 0; i < shards.length; i++) {
+			counts[i] = shards[i].getProcessed();
+		}
+		return counts;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.RegistryMXBean#getShardAggregatorCounts()
+	 */
+	@Override
+	public int[] getShardAggregatorCounts() {
+		if(shards==null) return new int[0];
+		final int[] counts = new int[shards.length];
+		for(int i = 0; i < shards.length; i++) {
+			counts[i] = shards[i].getAggregatorCount();
+		}
+		return counts;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.control.RegistryMXBean#getShardBacklogs()
+	 */
+	@Override
+	public long[] getShardBacklogs() {
+		if(shards==null) return new long[0];
+		final long[] backlogs = new long[shards.length];
+		for(int i = 0; i < shards.length; i++) {
+			backlogs[i] = shards[i].getBacklog();
+		}
+		return backlogs;
 	}
 
 }
@@ -40,4 +40,87 @@ public interface RegistryMXBean {
 	 */
 	public long getAggregatorCount();
 	
+	/**
+	 * Returns the number of single-writer shards the registry is partitioned into
+	 * @return the number of shards, or 0 if the registry is not sharded
+	 */
+	public int getShardCount();
+	
+	/**
+	 * Returns the number of values applied by each shard
+	 * @return the per shard applied value counts
+	 */
+	public long[] getShardProcessedCounts();
+	
+	/**
+	 * Returns the number of aggregators owned by each shard
+	 * @return the per shard aggregator counts
+	 */
+	public int[] getShardAggregatorCounts();
+	
+	/**
+	 * Returns the number of values published to each shard and not yet applied
+	 * @return the per shard backlogs
+	 */
+	public long[] getShardBacklogs();
+	
+	/**
+	 * Switches the identified aggregator to striped mode, where each writer thread updates its own cell
+	 * and the cells are merged when the aggregator is read
+	 * @param globalId The global id of the aggregator
+	 * @return true if the aggregator was found, false otherwise
+	 */
+	public boolean enableStriping(long globalId);
+	
+	/**
+	 * Switches the identified aggregator to event time mode, where each value is applied to the roll-up bucket its timestamp belongs to
+	 * @param globalId The global id of the aggregator
+	 * @return true if the aggregator was found, false otherwise
+	 */
+	public boolean enableEventTime(long globalId);
+	
+	/**
+	 * Returns the periods that aggregators roll their finest granularity buckets up into
+	 * @return the roll-up periods in seconds, always including the finest granularity
+	 */
+	public int[] getRollupPeriods();
+	
+	/**
+	 * Returns the number of finest granularity buckets rolled up since the registry started
+	 * @return the number of rolled buckets
+	 */
+	public long getRollTicks();
+	
+	/**
+	 * Returns the names of the registered top-Ks
+	 * @return the top-K names
+	 */
+	public String[] getTopKNames();
+	
+	/**
+	 * Removes the aggregator for the passed global id. Its memory, including a slab allocated record,
+	 * is released after a grace period of at least one full flush tick.
+	 * @param globalId The global id of the aggregator
+	 * @return true if the aggregator was found and removed, false otherwise
+	 */
+	public boolean removeAggregator(long globalId);
+	
+	/**
+	 * Returns the number of removed aggregators waiting out their grace period before their memory is released
+	 * @return the number of removed aggregators pending release
+	 */
+	public int getPendingReleaseCount();
+	
+	/**
+	 * Returns the number of aggregator records allocated from the slab arena
+	 * @return the number of allocated records, 0 if aggregators are not slab allocated
+	 */
+	public int getArenaAllocatedSlots();
+	
+	/**
+	 * Returns the number of aggregator records the slab arena's slabs can hold
+	 * @return the slab arena capacity, 0 if aggregators are not slab allocated
+	 */
+	public int getArenaCapacity();
+	
 }
@@ -0,0 +1,314 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.control;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.helios.rindle.ingest.DataPointEvent;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+/**
+ * <p>Title: RegistryShard</p>
+ * <p>Description: One partition of a sharded {@link Registry}. The shard's aggregators live in a plain map that only the shard's
+ * single consumer thread touches. Values are published to the shard's ring buffer and applied by that thread with
+ * {@link PeriodAggregatorImpl#processOwned(long, long)}, so aggregator updates are single-writer and take no lock.
+ * Anything else that needs an aggregator, such as a flush, is handed off to the shard thread as a task through the same ring.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.control.RegistryShard</code></p>
+ */
+
+public class RegistryShard implements EventHandler<DataPointEvent>, ThreadFactory, ExceptionHandler {
+	/** Instance logger */
+	protected final Logger log = LogManager.getLogger(getClass());
+	/** The shard index */
+	protected final int index;
+	/** The shard's aggregators keyed by global id. Confined to the shard thread. */
+	protected final TLongObjectHashMap<PeriodAggregatorImpl> aggregators;
+	/** The shard thread executor */
+	protected final ExecutorService executor;
+	/** The disruptor */
+	protected final Disruptor<DataPointEvent> disruptor;
+	/** The ring buffer */
+	protected final RingBuffer<DataPointEvent> ringBuffer;
+	/** The admission controller which caps the creation of new aggregators */
+	protected final AdmissionController admission = AdmissionController.getInstance();
+	/** The number of values applied by this shard. Single writer. */
+	protected volatile long processed = 0L;
+	/** The number of aggregators in this shard. Single writer. */
+	protected volatile int aggregatorCount = 0;
+	
+	/**
+	 * Creates and starts a new RegistryShard
+	 * @param index The shard index
+	 * @param ringSize The ring buffer size, a power of 2
+	 * @param initialSize The initial capacity of the shard's aggregator map
+	 */
+	public RegistryShard(int index, int ringSize, int initialSize) {
+		this.index = index;
+		aggregators = new TLongObjectHashMap<PeriodAggregatorImpl>(initialSize);
+		executor = Executors.newSingleThreadExecutor(this);
+		disruptor = new Disruptor<DataPointEvent>(DataPointEvent.FACTORY, ringSize, executor, ProducerType.MULTI, new SleepingWaitStrategy());
+		disruptor.handleExceptionsWith(this);
+		disruptor.handleEventsWith(this);
+		ringBuffer = disruptor.start();
+	}
+	
+	/**
+	 * Publishes a long value to this shard, blocking if the shard's ring buffer is full
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 */
+	public void publish(long globalId, long value) {
+		publish(globalId, value, PeriodAggregatorImpl.NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Publishes a long value and its timestamp to this shard, blocking if the shard's ring buffer is full
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @param timestamp The timestamp of the value, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+	 */
+	public void publish(long globalId, long value, long timestamp) {
+		final long seq = ringBuffer.next();
+		try {
+			ringBuffer.get(seq).set(globalId, value, timestamp);
+		} finally {
+			ringBuffer.publish(seq);
+		}
+	}
+	
+	/**
+	 * Publishes a double value to this shard, blocking if the shard's ring buffer is full
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 */
+	public void publish(long globalId, double value) {
+		publish(globalId, value, PeriodAggregatorImpl.NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Publishes a double value and its timestamp to this shard, blocking if the shard's ring buffer is full
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @param timestamp The timestamp of the value, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+	 */
+	public void publish(long globalId, double value, long timestamp) {
+		final long seq = ringBuffer.next();
+		try {
+			ringBuffer.get(seq).set(globalId, value, timestamp);
+		} finally {
+			ringBuffer.publish(seq);
+		}
+	}
+	
+	/**
+	 * Hands off a task to run on the shard thread after all previously published values have been applied
+	 * @param task The task
+	 * @param <T> The task's return type
+	 * @return the task's future
+	 */
+	public <T> Future<T> submit(Callable<T> task) {
+		final FutureTask<T> future = new FutureTask<T>(task);
+		final long seq = ringBuffer.next();
+		try {
+			ringBuffer.get(seq).set(future);
+		} finally {
+			ringBuffer.publish(seq);
+		}
+		return future;
+	}
+	
+	/**
+	 * Returns the aggregator for the passed global id. Must only be called on the shard thread.
+	 * @param globalId The global id
+	 * @return the aggregator or null if there is none
+	 */
+	PeriodAggregatorImpl get(long globalId) {
+		return aggregators.get(globalId);
+	}
+	
+	/**
+	 * Returns the aggregator for the passed global id, creating it if it does not exist and the admission controller
+	 * admits a new metric. Must only be called on the shard thread. Every aggregator creation in the shard goes through here.
+	 * @param globalId The global id
+	 * @param forDouble true for a double type, false for a long type
+	 * @return the aggregator, or null if the admission controller refused to create a new aggregator
+	 */
+	PeriodAggregatorImpl getOrCreate(long globalId, boolean forDouble) {
+		PeriodAggregatorImpl pai = aggregators.get(globalId);
+		if(pai==null) {
+			if(!admission.admitNewMetric()) return null;
+			pai = new PeriodAggregatorImpl(forDouble);
+			aggregators.put(globalId, pai);
+			aggregatorCount = aggregators.size();
+		}
+		return pai;
+	}
+	
+	/**
+	 * Removes the aggregator for the passed global id. Must only be called on the shard thread.
+	 * @param globalId The global id
+	 * @return the removed aggregator or null if there was none
+	 */
+	PeriodAggregatorImpl remove(long globalId) {
+		final PeriodAggregatorImpl pai = aggregators.remove(globalId);
+		aggregatorCount = aggregators.size();
+		return pai;
+	}
+	
+	/**
+	 * Runs the passed task against every aggregator in this shard. Must only be called on the shard thread.
+	 * @param task The task to run
+	 * @return the number of aggregators visited
+	 */
+	int visit(IAggregatorTask<?> task) {
+		int visited = 0;
+		for(TLongObjectIterator<PeriodAggregatorImpl> iter = aggregators.iterator(); iter.hasNext();) {
+			iter.advance();
+			task.execute(iter.key(), iter.value());
+			visited++;
+		}
+		return visited;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.lmax.disruptor.EventHandler#onEvent(java.lang.Object, long, boolean)
+	 */
+	@Override
+	public void onEvent(DataPointEvent event, long sequence, boolean endOfBatch) throws Exception {
+		final Runnable task = event.takeTask();
+		if(task!=null) {
+			task.run();
+			return;
+		}
+		final long globalId = event.getGlobalId();
+		if(globalId==-1L) return;
+		final PeriodAggregatorImpl pai = getOrCreate(globalId, event.isDoubleType());
+		if(pai==null) return;
+		if(event.isDoubleType()) {
+			pai.processOwned(event.getDoubleValue(), event.getTimestamp());
+		} else {
+			pai.processOwned(event.getLongValue(), event.getTimestamp());
+		}
+		processed++;
+	}
+	
+	/**
+	 * Stops the shard thread after the published events have been applied
+	 */
+	public void shutdown() {
+		disruptor.shutdown();
+		executor.shutdown();
+	}
+	
+	/**
+	 * Returns the shard index
+	 * @return the shard index
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Returns the number of values applied by this shard
+	 * @return the number of values applied
+	 */
+	public long getProcessed() {
+		return processed;
+	}
+	
+	/**
+	 * Returns the number of aggregators in this shard
+	 * @return the number of aggregators
+	 */
+	public int getAggregatorCount() {
+		return aggregatorCount;
+	}
+	
+	/**
+	 * Returns the number of published events not yet applied
+	 * @return the shard backlog
+	 */
+	public long getBacklog() {
+		return ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+	 */
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread t = new Thread(r, "RegistryShardThread#" + index);
+		t.setDaemon(true);
+		return t;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.lmax.disruptor.ExceptionHandler#handleEventException(java.lang.Throwable, long, java.lang.Object)
+	 */
+	@Override
+	public void handleEventException(Throwable ex, long sequence, Object event) {
+		log.error("Shard [{}] failed to process event [{}] at sequence [{}]", index, event, sequence, ex);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.lmax.disruptor.ExceptionHandler#handleOnStartException(java.lang.Throwable)
+	 */
+	@Override
+	public void handleOnStartException(Throwable ex) {
+		log.error("Shard [{}] failed to start", index, ex);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.lmax.disruptor.ExceptionHandler#handleOnShutdownException(java.lang.Throwable)
+	 */
+	@Override
+	public void handleOnShutdownException(Throwable ex) {
+		log.error("Shard [{}] failed to shutdown", index, ex);
+	}
+}
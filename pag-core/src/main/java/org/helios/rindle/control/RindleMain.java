@@ -35,6 +35,11 @@ import org.apache.logging.log4j.Logger;
 import org.helios.rindle.AbstractRindleService;
 import org.helios.rindle.Constants;
 import org.helios.rindle.RindleService;
+import org.helios.rindle.ingest.IngestionPipeline;
+import org.helios.rindle.ingest.netty.DataPointServer;
+import org.helios.rindle.ingest.ipc.SharedMemoryRingReader;
+import org.helios.rindle.ingest.statsd.StatsdListener;
+import org.helios.rindle.ingest.thrift.StreamNormalizerServer;
 import org.helios.rindle.session.ISession;
 import org.helios.rindle.session.SessionManager;
 import org.helios.rindle.store.IStore;
@@ -71,6 +76,16 @@ public class RindleMain extends AbstractRindleService {
 	protected SessionManager sessionManager = new SessionManager(istore);
 	/** The rindle JMX connector server */
 	protected final JMXMPConnectionServer jmxmpServer = new JMXMPConnectionServer(null);
+	/** The optional ring buffer ingestion pipeline */
+	protected final IngestionPipeline ingestionPipeline = createIngestionPipeline(registry);
+	/** The netty listener for remote protobuf data points */
+	protected final DataPointServer dataPointServer = new DataPointServer(registry);
+	/** The thrift StreamNormalizer server */
+	protected final StreamNormalizerServer streamNormalizerServer = new StreamNormalizerServer(registry, sessionManager);
+	/** The statsd UDP line listener */
+	protected final StatsdListener statsdListener = new StatsdListener();
+	/** The shared memory ring reader for co-located agents */
+	protected final SharedMemoryRingReader sharedMemoryRingReader = new SharedMemoryRingReader(registry);
 	/** The core submitter */
 	protected ISubmit submitter = null;
 	/**
@@ -100,10 +115,10 @@ public class RindleMain extends AbstractRindleService {
 					LOG.info("Rindle Services Starting......");
 					instance.serviceManager.startAsync();
 					instance.serviceManager.awaitHealthy();
+					instance.submitter = new SubmitImpl(instance.registry, instance.istore, instance.ingestionPipeline);
 					for(RindleService svc: instance.rindleServices) {
 						svc.onRindleStarted(instance);
 					}
-					instance.submitter = new SubmitImpl(instance.registry, instance.istore);
 					LOG.info("********************************");
 				}
 			}
@@ -123,6 +138,11 @@ public class RindleMain extends AbstractRindleService {
 		addRindleService(istore);
 		addRindleService(jmxmpServer);
 		addRindleService(sessionManager);
+		addRindleService(dataPointServer);
+		addRindleService(streamNormalizerServer);
+		addRindleService(statsdListener);
+		addRindleService(sharedMemoryRingReader);
+		if(ingestionPipeline!=null) addRindleService(ingestionPipeline);
 		LOG.info("Rindle Services to Start: {}", rindleServices.size());
 		serviceManager = new ServiceManager(rindleServices);
 	}
@@ -210,6 +230,24 @@ public class RindleMain extends AbstractRindleService {
 	}
 	
 	
+	/**
+	 * Creates the ingestion pipeline if enabled by {@link Constants#INGEST_ASYNC_ENABLED}
+	 * @param registry The registry the pipeline applies values to
+	 * @return the ingestion pipeline or null if not enabled
+	 */
+	protected static IngestionPipeline createIngestionPipeline(Registry registry) {
+		if(!ConfigurationHelper.getBooleanSystemThenEnvProperty(Constants.INGEST_ASYNC_ENABLED, Constants.DEFAULT_INGEST_ASYNC_ENABLED)) return null;
+		return new IngestionPipeline(registry);
+	}
+	
+	/**
+	 * Returns the ingestion pipeline
+	 * @return the ingestion pipeline or null if not enabled
+	 */
+	public IngestionPipeline getIngestionPipeline() {
+		return ingestionPipeline;
+	}
+	
 	/**
 	 * Creates an IStore instance
 	 * @return the created IStore instance
@@ -0,0 +1,182 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest;
+
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+
+import com.lmax.disruptor.EventFactory;
+
+/**
+ * <p>Title: DataPointEvent</p>
+ * <p>Description: A pre-allocated, mutable ring buffer slot carrying one submitted value to the ingestion consumers</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.DataPointEvent</code></p>
+ */
+
+public class DataPointEvent {
+	/** The global id of the metric the value is for */
+	protected long globalId = -1L;
+	/** The long value */
+	protected long longValue = 0L;
+	/** The double value */
+	protected double doubleValue = 0D;
+	/** The timestamp of the value, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none */
+	protected long timestamp = PeriodAggregatorImpl.NO_TIMESTAMP;
+	/** Indicates if the event carries a double value */
+	protected boolean doubleType = false;
+	/** A task handed off to the consuming thread instead of a value */
+	protected Runnable task = null;
+	
+	/** The ring buffer event factory */
+	public static final EventFactory<DataPointEvent> FACTORY = new EventFactory<DataPointEvent>() {
+		@Override
+		public DataPointEvent newInstance() {
+			return new DataPointEvent();
+		}
+	};
+	
+	/**
+	 * Loads this event with a long value
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @return this event
+	 */
+	public DataPointEvent set(long globalId, long value) {
+		return set(globalId, value, PeriodAggregatorImpl.NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Loads this event with a long value and its timestamp
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @param timestamp The timestamp of the value, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+	 * @return this event
+	 */
+	public DataPointEvent set(long globalId, long value, long timestamp) {
+		this.globalId = globalId;
+		this.longValue = value;
+		this.timestamp = timestamp;
+		this.doubleType = false;
+		this.task = null;
+		return this;
+	}
+	
+	/**
+	 * Loads this event with a double value
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @return this event
+	 */
+	public DataPointEvent set(long globalId, double value) {
+		return set(globalId, value, PeriodAggregatorImpl.NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Loads this event with a double value and its timestamp
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @param timestamp The timestamp of the value, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+	 * @return this event
+	 */
+	public DataPointEvent set(long globalId, double value, long timestamp) {
+		this.globalId = globalId;
+		this.doubleValue = value;
+		this.timestamp = timestamp;
+		this.doubleType = true;
+		this.task = null;
+		return this;
+	}
+	
+	/**
+	 * Loads this event with a task to be run by the consuming thread
+	 * @param task The task
+	 * @return this event
+	 */
+	public DataPointEvent set(Runnable task) {
+		this.globalId = -1L;
+		this.task = task;
+		return this;
+	}
+	
+	/**
+	 * Returns and clears the task carried by this event
+	 * @return the task, or null if the event carries a value
+	 */
+	public Runnable takeTask() {
+		final Runnable t = task;
+		task = null;
+		return t;
+	}
+
+	/**
+	 * Returns the global id of the metric the value is for
+	 * @return the global id
+	 */
+	public long getGlobalId() {
+		return globalId;
+	}
+
+	/**
+	 * Returns the long value
+	 * @return the long value
+	 */
+	public long getLongValue() {
+		return longValue;
+	}
+
+	/**
+	 * Returns the double value
+	 * @return the double value
+	 */
+	public double getDoubleValue() {
+		return doubleValue;
+	}
+
+	/**
+	 * Returns the timestamp of the value
+	 * @return the timestamp, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if the value has none
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Indicates if the event carries a double value
+	 * @return true for a double value, false for a long value
+	 */
+	public boolean isDoubleType() {
+		return doubleType;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "DataPointEvent [globalId=" + globalId + ", value=" + (doubleType ? doubleValue : longValue) + "]";
+	}
+}
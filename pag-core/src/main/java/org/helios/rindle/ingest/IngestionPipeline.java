@@ -0,0 +1,337 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest;
+
+import java.lang.reflect.Constructor;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.helios.rindle.AbstractRindleService;
+import org.helios.rindle.Constants;
+import org.helios.rindle.RindleService;
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.helios.rindle.util.ConfigurationHelper;
+import org.helios.rindle.util.unsafe.UnsafeAdapter;
+
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+/**
+ * <p>Title: IngestionPipeline</p>
+ * <p>Description: An optional ring buffer stage between submitters and the {@link Registry}.
+ * Producers claim a pre-allocated {@link DataPointEvent} slot and publish it, which is a bounded enqueue.
+ * A configurable number of {@link PartitionedEventHandler} consumers each apply the events for their
+ * partition of the global ids, so a hot aggregator is only ever updated by a single thread.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.IngestionPipeline</code></p>
+ */
+
+public class IngestionPipeline extends AbstractRindleService implements IngestionPipelineMXBean, ThreadFactory, ExceptionHandler {
+	/** The registry the events are applied to */
+	protected final Registry registry;
+	/** The number of slots in the ring buffer */
+	protected final int ringSize;
+	/** The ring buffer wait strategy */
+	protected final WaitStrategy waitStrategy;
+	/** The partitioned consumers */
+	protected final PartitionedEventHandler[] handlers;
+	/** The consumer thread executor */
+	protected final ExecutorService executor;
+	/** The disruptor */
+	protected final Disruptor<DataPointEvent> disruptor;
+	/** The ring buffer, set when the pipeline starts */
+	protected volatile RingBuffer<DataPointEvent> ringBuffer = null;
+	/** Serial number factory for consumer thread names */
+	protected final AtomicInteger threadSerial = new AtomicInteger(0);
+	
+	/** The package the disruptor's wait strategies are in */
+	public static final String WAIT_STRATEGY_PACKAGE = WaitStrategy.class.getPackage().getName();
+	
+	/**
+	 * Creates a new IngestionPipeline configured from {@link Constants#RING_BUFFER_SIZE}, 
+	 * {@link Constants#RING_BUFFER_WAIT_STRAT} and {@link Constants#INGEST_CONSUMERS}
+	 * @param registry The registry the events are applied to
+	 */
+	public IngestionPipeline(Registry registry) {
+		this.registry = registry;
+		ringSize = UnsafeAdapter.findNextPositivePowerOfTwo(ConfigurationHelper.getIntSystemThenEnvProperty(Constants.RING_BUFFER_SIZE, Constants.DEFAULT_RING_BUFFER_SIZE));
+		waitStrategy = createWaitStrategy(
+				ConfigurationHelper.getSystemThenEnvProperty(Constants.RING_BUFFER_WAIT_STRAT, Constants.DEFAULT_RING_BUFFER_WAIT_STRAT),
+				ConfigurationHelper.getSystemThenEnvProperty(Constants.RING_BUFFER_WAIT_STRAT_ARGS, Constants.DEFAULT_RING_BUFFER_WAIT_STRAT_ARGS));
+		final int consumers = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(Constants.INGEST_CONSUMERS, Constants.DEFAULT_INGEST_CONSUMERS));
+		handlers = new PartitionedEventHandler[consumers];
+		for(int i = 0; i < consumers; i++) {
+			handlers[i] = new PartitionedEventHandler(registry, i, consumers);
+		}
+		executor = Executors.newFixedThreadPool(consumers, this);
+		disruptor = new Disruptor<DataPointEvent>(DataPointEvent.FACTORY, ringSize, executor, ProducerType.MULTI, waitStrategy);
+		disruptor.handleExceptionsWith(this);
+		disruptor.handleEventsWith(handlers);
+		log.info("IngestionPipeline Options:\n\tringSize: {}\n\twaitStrategy: {}\n\tconsumers: {}", ringSize, waitStrategy.getClass().getSimpleName(), consumers);
+	}
+	
+	/**
+	 * Creates the ring buffer wait strategy
+	 * @param name The simple or fully qualified class name of the wait strategy
+	 * @param args The optional comma separated constructor arguments. Numeric arguments are passed as longs or ints and 
+	 * anything else as a {@link TimeUnit} name.
+	 * @return the wait strategy, falling back to a {@link SleepingWaitStrategy} if the configured one cannot be created
+	 */
+	protected WaitStrategy createWaitStrategy(String name, String args) {
+		final String className = name.indexOf('.')==-1 ? WAIT_STRATEGY_PACKAGE + "." + name.trim() : name.trim();
+		try {
+			final Class<?> clazz = Class.forName(className);
+			if(!WaitStrategy.class.isAssignableFrom(clazz)) throw new Exception("Class [" + className + "] is not a WaitStrategy");
+			final String[] ctorArgs = (args==null || args.trim().isEmpty()) ? ConfigurationHelper.EMPTY_STR_ARR : ConfigurationHelper.COMMA_SPLITTER.split(args.trim());
+			for(Constructor<?> ctor: clazz.getConstructors()) {
+				final Class<?>[] sig = ctor.getParameterTypes();
+				if(sig.length!=ctorArgs.length) continue;
+				final Object[] params = new Object[sig.length];
+				boolean match = true;
+				for(int i = 0; i < sig.length && match; i++) {
+					final String arg = ctorArgs[i].trim();
+					if(sig[i]==long.class) params[i] = Long.parseLong(arg);
+					else if(sig[i]==int.class) params[i] = Integer.parseInt(arg);
+					else if(sig[i]==TimeUnit.class) params[i] = TimeUnit.valueOf(arg.toUpperCase());
+					else match = false;
+				}
+				if(match) return (WaitStrategy)ctor.newInstance(params);
+			}
+			throw new Exception("No constructor in [" + className + "] matching args [" + args + "]");
+		} catch (Exception ex) {
+			log.warn("Failed to create wait strategy [{}]. Using SleepingWaitStrategy", className, ex);
+			return new SleepingWaitStrategy();
+		}
+	}
+	
+	/**
+	 * Publishes a long value to the ring buffer, blocking if the ring buffer is full
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 */
+	public void publish(long globalId, long value) {
+		publish(globalId, value, PeriodAggregatorImpl.NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Publishes a long value and its timestamp to the ring buffer, blocking if the ring buffer is full
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @param timestamp The timestamp of the value, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+	 */
+	public void publish(long globalId, long value, long timestamp) {
+		final RingBuffer<DataPointEvent> rb = ringBuffer;
+		final long seq = rb.next();
+		try {
+			rb.get(seq).set(globalId, value, timestamp);
+		} finally {
+			rb.publish(seq);
+		}
+	}
+	
+	/**
+	 * Publishes a double value to the ring buffer, blocking if the ring buffer is full
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 */
+	public void publish(long globalId, double value) {
+		publish(globalId, value, PeriodAggregatorImpl.NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Publishes a double value and its timestamp to the ring buffer, blocking if the ring buffer is full
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @param timestamp The timestamp of the value, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+	 */
+	public void publish(long globalId, double value, long timestamp) {
+		final RingBuffer<DataPointEvent> rb = ringBuffer;
+		final long seq = rb.next();
+		try {
+			rb.get(seq).set(globalId, value, timestamp);
+		} finally {
+			rb.publish(seq);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.google.common.util.concurrent.AbstractService#doStart()
+	 */
+	@Override
+	protected void doStart() {
+		ringBuffer = disruptor.start();
+		notifyStarted();
+		log.info("IngestionPipeline Started");
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.google.common.util.concurrent.AbstractService#doStop()
+	 */
+	@Override
+	protected void doStop() {
+		try {
+			disruptor.shutdown(10, TimeUnit.SECONDS);
+		} catch (Exception ex) {
+			log.warn("IngestionPipeline did not drain in time. Halting.", ex);
+			disruptor.halt();
+		}
+		executor.shutdown();
+		notifyStopped();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+	 */
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread t = new Thread(r, "IngestionConsumerThread#" + threadSerial.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.lmax.disruptor.ExceptionHandler#handleEventException(java.lang.Throwable, long, java.lang.Object)
+	 */
+	@Override
+	public void handleEventException(Throwable ex, long sequence, Object event) {
+		log.error("Failed to process event [{}] at sequence [{}]", event, sequence, ex);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.lmax.disruptor.ExceptionHandler#handleOnStartException(java.lang.Throwable)
+	 */
+	@Override
+	public void handleOnStartException(Throwable ex) {
+		log.error("Ingestion consumer failed to start", ex);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.lmax.disruptor.ExceptionHandler#handleOnShutdownException(java.lang.Throwable)
+	 */
+	@Override
+	public void handleOnShutdownException(Throwable ex) {
+		log.error("Ingestion consumer failed to shutdown", ex);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.AbstractRindleService#getDependentServices()
+	 */
+	@Override
+	public Collection<RindleService> getDependentServices() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.IngestionPipelineMXBean#getRingSize()
+	 */
+	@Override
+	public int getRingSize() {
+		return ringSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.IngestionPipelineMXBean#getRemainingCapacity()
+	 */
+	@Override
+	public long getRemainingCapacity() {
+		final RingBuffer<DataPointEvent> rb = ringBuffer;
+		return rb==null ? ringSize : rb.remainingCapacity();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.IngestionPipelineMXBean#getConsumerCount()
+	 */
+	@Override
+	public int getConsumerCount() {
+		return handlers.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.IngestionPipelineMXBean#getWaitStrategy()
+	 */
+	@Override
+	public String getWaitStrategy() {
+		return waitStrategy.getClass().getName();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.IngestionPipelineMXBean#getPublishedCount()
+	 */
+	@Override
+	public long getPublishedCount() {
+		final RingBuffer<DataPointEvent> rb = ringBuffer;
+		return rb==null ? 0L : rb.getCursor() + 1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.IngestionPipelineMXBean#getProcessedCount()
+	 */
+	@Override
+	public long getProcessedCount() {
+		long total = 0L;
+		for(PartitionedEventHandler handler: handlers) {
+			total += handler.getProcessed();
+		}
+		return total;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.IngestionPipelineMXBean#getProcessedCounts()
+	 */
+	@Override
+	public long[] getProcessedCounts() {
+		final long[] counts = new long[handlers.length];
+		for(int i = 0; i < handlers.length; i++) {
+			counts[i] = handlers[i].getProcessed();
+		}
+		return counts;
+	}
+
+}
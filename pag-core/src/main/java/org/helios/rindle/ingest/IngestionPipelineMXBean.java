@@ -0,0 +1,79 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest;
+
+import org.helios.rindle.AbstractRindleServiceMXBean;
+
+/**
+ * <p>Title: IngestionPipelineMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link IngestionPipeline}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.IngestionPipelineMXBean</code></p>
+ */
+
+public interface IngestionPipelineMXBean extends AbstractRindleServiceMXBean {
+	/**
+	 * Returns the number of slots in the ring buffer
+	 * @return the ring buffer size
+	 */
+	public int getRingSize();
+	
+	/**
+	 * Returns the number of free slots in the ring buffer
+	 * @return the remaining capacity
+	 */
+	public long getRemainingCapacity();
+	
+	/**
+	 * Returns the number of consumers
+	 * @return the number of consumers
+	 */
+	public int getConsumerCount();
+	
+	/**
+	 * Returns the class name of the ring buffer wait strategy
+	 * @return the wait strategy class name
+	 */
+	public String getWaitStrategy();
+	
+	/**
+	 * Returns the total number of events published
+	 * @return the number of events published
+	 */
+	public long getPublishedCount();
+	
+	/**
+	 * Returns the total number of events applied by all consumers
+	 * @return the number of events applied
+	 */
+	public long getProcessedCount();
+	
+	/**
+	 * Returns the number of events applied by each consumer, indexed by partition
+	 * @return the number of events applied per consumer
+	 */
+	public long[] getProcessedCounts();
+}
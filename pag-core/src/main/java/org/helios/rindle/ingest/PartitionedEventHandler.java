@@ -0,0 +1,104 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest;
+
+import org.helios.rindle.control.Registry;
+
+import com.lmax.disruptor.EventHandler;
+
+/**
+ * <p>Title: PartitionedEventHandler</p>
+ * <p>Description: An ingestion consumer that applies only the events whose global id hashes to its partition,
+ * so each aggregator is only ever updated by one consumer thread.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.PartitionedEventHandler</code></p>
+ */
+
+public class PartitionedEventHandler implements EventHandler<DataPointEvent> {
+	/** The registry the events are applied to */
+	protected final Registry registry;
+	/** The partition this handler owns */
+	protected final int partition;
+	/** The total number of partitions */
+	protected final int partitions;
+	/** The number of events applied by this handler. Single writer. */
+	protected volatile long processed = 0L;
+	
+	/**
+	 * Creates a new PartitionedEventHandler
+	 * @param registry The registry the events are applied to
+	 * @param partition The partition this handler owns
+	 * @param partitions The total number of partitions
+	 */
+	public PartitionedEventHandler(Registry registry, int partition, int partitions) {
+		this.registry = registry;
+		this.partition = partition;
+		this.partitions = partitions;
+	}
+	
+	/**
+	 * Returns the partition a global id is assigned to
+	 * @param globalId The global id
+	 * @param partitions The total number of partitions
+	 * @return the partition
+	 */
+	public static int partitionFor(long globalId, int partitions) {
+		return (int)((globalId & Long.MAX_VALUE) % partitions);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.lmax.disruptor.EventHandler#onEvent(java.lang.Object, long, boolean)
+	 */
+	@Override
+	public void onEvent(DataPointEvent event, long sequence, boolean endOfBatch) throws Exception {
+		final long globalId = event.globalId;
+		if(globalId==-1L || partitionFor(globalId, partitions)!=partition) return;
+		if(event.doubleType) {
+			registry.processValue(globalId, event.doubleValue, event.timestamp);
+		} else {
+			registry.processValue(globalId, event.longValue, event.timestamp);
+		}
+		processed++;
+	}
+	
+	/**
+	 * Returns the number of events applied by this handler
+	 * @return the number of events applied
+	 */
+	public long getProcessed() {
+		return processed;
+	}
+	
+	/**
+	 * Returns the partition this handler owns
+	 * @return the partition
+	 */
+	public int getPartition() {
+		return partition;
+	}
+
+}
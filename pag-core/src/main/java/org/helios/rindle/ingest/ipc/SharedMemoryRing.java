@@ -0,0 +1,368 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest.ipc;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.helios.rindle.control.AdmissionController;
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.helios.rindle.util.unsafe.UnsafeAdapter;
+
+/**
+ * <p>Title: SharedMemoryRing</p>
+ * <p>Description: A multi-producer, single-consumer ring of fixed size data point records in a memory mapped file,
+ * shared by co-located producer processes and the rindle reader. Producers claim a sequence with a CAS on the mapped
+ * write sequence, fill the record and then publish it with an ordered write of its stamp, so a submit is a handful of 
+ * memory operations with no system call. The single reader drains published records in sequence order and advances
+ * the mapped read sequence, which producers check so they never overrun unread records.</p>
+ * <p>File layout (all values native byte order): <pre>
+ *  0   int  magic
+ *  4   int  version
+ *  8   int  capacity (records, power of 2)
+ *  12  int  record size
+ *  64  long write sequence (next sequence to claim)
+ *  128 long read sequence (next sequence to read)
+ *  192 long rejected offer count
+ *  256 records
+ * </pre> and each record: <pre>
+ *  0   long stamp (sequence + 1 once published)
+ *  8   long global id
+ *  16  long value (long value or raw double bits)
+ *  24  long timestamp (or {@link PeriodAggregatorImpl#NO_TIMESTAMP})
+ *  32  int  value type
+ * </pre></p>
+ * <p>A producer that dies between claiming and publishing a record stalls the reader at that record.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.ipc.SharedMemoryRing</code></p>
+ */
+
+public class SharedMemoryRing {
+	/** The mapped file */
+	protected final File file;
+	/** The mapped buffer, referenced to keep the mapping alive */
+	protected final MappedByteBuffer mbb;
+	/** The base address of the mapping */
+	protected final long address;
+	/** The number of records */
+	protected final int capacity;
+	/** The record slot mask */
+	protected final long mask;
+	/** The address of the write sequence */
+	protected final long writeSeqAddress;
+	/** The address of the read sequence */
+	protected final long readSeqAddress;
+	/** The address of the rejected offer count */
+	protected final long rejectedAddress;
+	/** The address of the first record */
+	protected final long recordsAddress;
+	/** The reader's next sequence. Only used by the single reader. */
+	protected long readSeq;
+	/** The admission controller drained records must pass before they are applied */
+	protected final AdmissionController admission = AdmissionController.getInstance();
+	
+	/** The magic number identifying a ring file */
+	public static final int MAGIC = 0x52494E47;
+	/** The admission control client id of all ring producers */
+	public static final String CLIENT_ID = "ipc";
+	/** The ring file format version */
+	public static final int VERSION = 2;
+	/** The header size in bytes */
+	public static final int HEADER_SIZE = 256;
+	/** The record size in bytes */
+	public static final int RECORD_SIZE = 40;
+	
+	/** The header offset of the magic number */
+	public static final int MAGIC_OFFSET = 0;
+	/** The header offset of the version */
+	public static final int VERSION_OFFSET = 4;
+	/** The header offset of the capacity */
+	public static final int CAPACITY_OFFSET = 8;
+	/** The header offset of the record size */
+	public static final int RECORD_SIZE_OFFSET = 12;
+	/** The header offset of the write sequence */
+	public static final int WRITE_SEQ_OFFSET = 64;
+	/** The header offset of the read sequence */
+	public static final int READ_SEQ_OFFSET = 128;
+	/** The header offset of the rejected offer count */
+	public static final int REJECTED_OFFSET = 192;
+	
+	/** The record offset of the stamp */
+	public static final int STAMP = 0;
+	/** The record offset of the global id */
+	public static final int GLOBAL_ID = 8;
+	/** The record offset of the value */
+	public static final int VALUE = 16;
+	/** The record offset of the timestamp */
+	public static final int TIMESTAMP = 24;
+	/** The record offset of the value type */
+	public static final int TYPE = 32;
+	
+	/** The value type of a long value */
+	public static final int TYPE_LONG = 0;
+	/** The value type of a double value */
+	public static final int TYPE_DOUBLE = 1;
+	
+	/**
+	 * Creates a new ring file, or attaches to the existing ring file if it has a matching header. Called by the reader.
+	 * @param file The ring file
+	 * @param capacity The number of records, rounded up to a power of 2
+	 * @return the ring
+	 */
+	public static SharedMemoryRing create(File file, int capacity) {
+		return new SharedMemoryRing(file, UnsafeAdapter.findNextPositivePowerOfTwo(capacity), true);
+	}
+	
+	/**
+	 * Attaches to an existing ring file. Called by producers.
+	 * @param file The ring file
+	 * @return the ring
+	 */
+	public static SharedMemoryRing attach(File file) {
+		return new SharedMemoryRing(file, -1, false);
+	}
+	
+	/**
+	 * Creates a new SharedMemoryRing
+	 * @param file The ring file
+	 * @param capacity The number of records if creating
+	 * @param create true to create the ring if the file does not have a matching header
+	 */
+	private SharedMemoryRing(File file, int capacity, boolean create) {
+		this.file = file;
+		RandomAccessFile raf = null;
+		try {
+			if(!create && !file.exists()) throw new IllegalArgumentException("No ring file [" + file + "]");
+			raf = new RandomAccessFile(file, "rw");
+			if(!create) {
+				capacity = readCapacity(raf);
+			} else if(raf.length() >= HEADER_SIZE) {
+				final int existing = readCapacity(raf);
+				if(existing!=capacity) throw new IllegalArgumentException("Ring file [" + file + "] has capacity [" + existing + "], not [" + capacity + "]");
+			}
+			final long size = HEADER_SIZE + ((long)capacity * RECORD_SIZE);
+			final FileChannel fc = raf.getChannel();
+			mbb = fc.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			address = ((sun.nio.ch.DirectBuffer) mbb).address();
+			fc.close();
+		} catch (IllegalArgumentException iae) {
+			throw iae;
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to map ring file [" + file + "]", ex);
+		} finally {
+			if(raf!=null) try { raf.close(); } catch (Exception x) {/* No Op */}
+		}
+		this.capacity = capacity;
+		mask = capacity - 1;
+		writeSeqAddress = address + WRITE_SEQ_OFFSET;
+		readSeqAddress = address + READ_SEQ_OFFSET;
+		rejectedAddress = address + REJECTED_OFFSET;
+		recordsAddress = address + HEADER_SIZE;
+		if(create && UnsafeAdapter.getInt(address + MAGIC_OFFSET)!=MAGIC) {
+			UnsafeAdapter.setMemory(address, HEADER_SIZE + ((long)capacity * RECORD_SIZE), (byte)0);
+			UnsafeAdapter.putInt(address + VERSION_OFFSET, VERSION);
+			UnsafeAdapter.putInt(address + CAPACITY_OFFSET, capacity);
+			UnsafeAdapter.putInt(address + RECORD_SIZE_OFFSET, RECORD_SIZE);
+			UnsafeAdapter.putIntVolatile(null, address + MAGIC_OFFSET, MAGIC);
+		}
+		readSeq = UnsafeAdapter.getLongVolatile(null, readSeqAddress);
+	}
+	
+	/**
+	 * Reads and validates the header of an existing ring file
+	 * @param raf The ring file
+	 * @return the capacity of the ring
+	 * @throws Exception thrown if the header is invalid
+	 */
+	private static int readCapacity(RandomAccessFile raf) throws Exception {
+		if(raf.length() < HEADER_SIZE) throw new IllegalArgumentException("Ring file is not initialized");
+		final MappedByteBuffer header = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+		header.order(java.nio.ByteOrder.nativeOrder());
+		if(header.getInt(MAGIC_OFFSET)!=MAGIC) throw new IllegalArgumentException("Ring file has no ring header");
+		if(header.getInt(VERSION_OFFSET)!=VERSION) throw new IllegalArgumentException("Unsupported ring file version [" + header.getInt(VERSION_OFFSET) + "]");
+		if(header.getInt(RECORD_SIZE_OFFSET)!=RECORD_SIZE) throw new IllegalArgumentException("Unsupported ring record size [" + header.getInt(RECORD_SIZE_OFFSET) + "]");
+		return header.getInt(CAPACITY_OFFSET);
+	}
+	
+	/**
+	 * Offers a long value to the ring
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @return true if the value was written, false if the ring was full
+	 */
+	public boolean offer(long globalId, long value) {
+		return write(globalId, value, TYPE_LONG, PeriodAggregatorImpl.NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Offers a long value and its timestamp to the ring
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @param timestamp The timestamp of the value, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+	 * @return true if the value was written, false if the ring was full
+	 */
+	public boolean offer(long globalId, long value, long timestamp) {
+		return write(globalId, value, TYPE_LONG, timestamp);
+	}
+	
+	/**
+	 * Offers a double value to the ring
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @return true if the value was written, false if the ring was full
+	 */
+	public boolean offer(long globalId, double value) {
+		return write(globalId, Double.doubleToRawLongBits(value), TYPE_DOUBLE, PeriodAggregatorImpl.NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Offers a double value and its timestamp to the ring
+	 * @param globalId The global id of the metric
+	 * @param value The value
+	 * @param timestamp The timestamp of the value, or {@link PeriodAggregatorImpl#NO_TIMESTAMP} if it has none
+	 * @return true if the value was written, false if the ring was full
+	 */
+	public boolean offer(long globalId, double value, long timestamp) {
+		return write(globalId, Double.doubleToRawLongBits(value), TYPE_DOUBLE, timestamp);
+	}
+	
+	/**
+	 * Claims a sequence, writes the record and publishes it
+	 * @param globalId The global id of the metric
+	 * @param bits The value bits
+	 * @param type The value type
+	 * @param timestamp The timestamp of the value
+	 * @return true if the value was written, false if the ring was full
+	 */
+	protected boolean write(long globalId, long bits, int type, long timestamp) {
+		long seq;
+		do {
+			seq = UnsafeAdapter.getLongVolatile(null, writeSeqAddress);
+			if(seq - UnsafeAdapter.getLongVolatile(null, readSeqAddress) >= capacity) {
+				long rejected;
+				do {
+					rejected = UnsafeAdapter.getLongVolatile(null, rejectedAddress);
+				} while(!UnsafeAdapter.compareAndSwapLong(null, rejectedAddress, rejected, rejected + 1));
+				return false;
+			}
+		} while(!UnsafeAdapter.compareAndSwapLong(null, writeSeqAddress, seq, seq + 1));
+		final long record = recordsAddress + ((seq & mask) * RECORD_SIZE);
+		UnsafeAdapter.putLong(record + GLOBAL_ID, globalId);
+		UnsafeAdapter.putLong(record + VALUE, bits);
+		UnsafeAdapter.putLong(record + TIMESTAMP, timestamp);
+		UnsafeAdapter.putInt(record + TYPE, type);
+		UnsafeAdapter.putOrderedLong(null, record + STAMP, seq + 1);
+		return true;
+	}
+	
+	/**
+	 * Drains up to the passed number of published records into the registry, subject to admission control. Must only be called by the single reader.
+	 * If applying a record fails, the records up to and including the failed record are consumed and the exception is rethrown.
+	 * @param registry The registry to apply the records to
+	 * @param max The maximum number of records to drain
+	 * @return the number of records drained
+	 */
+	public int drain(Registry registry, int max) {
+		long seq = readSeq;
+		int drained = 0;
+		while(drained < max) {
+			final long record = recordsAddress + ((seq & mask) * RECORD_SIZE);
+			if(UnsafeAdapter.getLongVolatile(null, record + STAMP)!=seq + 1) break;
+			final long globalId = UnsafeAdapter.getLong(record + GLOBAL_ID);
+			final long bits = UnsafeAdapter.getLong(record + VALUE);
+			final long timestamp = UnsafeAdapter.getLong(record + TIMESTAMP);
+			final int type = UnsafeAdapter.getInt(record + TYPE);
+			seq++;
+			drained++;
+			try {
+				if(type==TYPE_DOUBLE) {
+					final double value = Double.longBitsToDouble(bits);
+					if(admission.admit(CLIENT_ID, globalId, value, timestamp)) registry.processValue(globalId, value, timestamp);
+				} else {
+					if(admission.admit(CLIENT_ID, globalId, bits, timestamp)) registry.processValue(globalId, bits, timestamp);
+				}
+			} catch (RuntimeException rex) {
+				// consume the failed record so the reader does not retry it forever
+				commit(seq);
+				throw rex;
+			}
+		}
+		if(drained > 0) commit(seq);
+		return drained;
+	}
+	
+	/**
+	 * Advances the read sequence, releasing the read slots to producers
+	 * @param seq The next sequence to read
+	 */
+	protected void commit(long seq) {
+		readSeq = seq;
+		UnsafeAdapter.putOrderedLong(null, readSeqAddress, seq);
+	}
+	
+	/**
+	 * Returns the ring file
+	 * @return the ring file
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Returns the number of records in the ring
+	 * @return the ring capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Returns the number of claimed records not yet read
+	 * @return the backlog
+	 */
+	public long getBacklog() {
+		return UnsafeAdapter.getLongVolatile(null, writeSeqAddress) - UnsafeAdapter.getLongVolatile(null, readSeqAddress);
+	}
+	
+	/**
+	 * Returns the total number of records read
+	 * @return the read sequence
+	 */
+	public long getReadSequence() {
+		return UnsafeAdapter.getLongVolatile(null, readSeqAddress);
+	}
+	
+	/**
+	 * Returns the number of offers rejected because the ring was full
+	 * @return the rejected offer count
+	 */
+	public long getRejectedCount() {
+		return UnsafeAdapter.getLongVolatile(null, rejectedAddress);
+	}
+}
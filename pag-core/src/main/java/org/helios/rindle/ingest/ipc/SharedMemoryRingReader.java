@@ -0,0 +1,216 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest.ipc;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.helios.rindle.AbstractRindleService;
+import org.helios.rindle.Constants;
+import org.helios.rindle.RindleService;
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.util.ConfigurationHelper;
+
+/**
+ * <p>Title: SharedMemoryRingReader</p>
+ * <p>Description: Drains the {@link SharedMemoryRing} that co-located agents write data points into, applying each
+ * record to the {@link Registry} on a single daemon thread. The reader spins through published records in batches of up to
+ * {@link Constants#IPC_RING_BATCH} and parks for {@link Constants#IPC_RING_IDLE_PARK} nanos when the ring is empty.</p>
+ * <p>Producers write records keyed by global id, so names must be resolved to global ids before submitting through the ring.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.ipc.SharedMemoryRingReader</code></p>
+ */
+
+public class SharedMemoryRingReader extends AbstractRindleService implements SharedMemoryRingReaderMXBean, Runnable {
+	/** The registry records are applied to */
+	protected final Registry registry;
+	/** The ring file, null if disabled */
+	protected final File ringFile;
+	/** The configured ring capacity */
+	protected final int ringCapacity;
+	/** The maximum number of records drained per batch */
+	protected final int batchSize;
+	/** The nanos to park for when the ring is empty */
+	protected final long idleParkNanos;
+	/** The ring, created on start */
+	protected SharedMemoryRing ring = null;
+	/** The reader thread */
+	protected Thread readerThread = null;
+	/** The reader run flag */
+	protected volatile boolean running = false;
+	/** The number of records that failed to apply */
+	protected final AtomicLong failed = new AtomicLong(0L);
+	
+	/**
+	 * Creates a new SharedMemoryRingReader configured from {@link Constants#IPC_RING_FILE} and {@link Constants#IPC_RING_CAPACITY}
+	 * @param registry The registry records are applied to
+	 */
+	public SharedMemoryRingReader(Registry registry) {
+		this.registry = registry;
+		final String fileName = ConfigurationHelper.getSystemThenEnvProperty(Constants.IPC_RING_FILE, Constants.DEFAULT_IPC_RING_FILE);
+		ringFile = (fileName==null || fileName.trim().isEmpty()) ? null : new File(fileName.trim());
+		ringCapacity = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.IPC_RING_CAPACITY, Constants.DEFAULT_IPC_RING_CAPACITY);
+		batchSize = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.IPC_RING_BATCH, Constants.DEFAULT_IPC_RING_BATCH);
+		idleParkNanos = ConfigurationHelper.getLongSystemThenEnvProperty(Constants.IPC_RING_IDLE_PARK, Constants.DEFAULT_IPC_RING_IDLE_PARK);
+		log.info("SharedMemoryRingReader File: [{}]", ringFile);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.google.common.util.concurrent.AbstractService#doStart()
+	 */
+	@Override
+	protected void doStart() {
+		if(ringFile==null) {
+			log.info("SharedMemoryRingReader Disabled.");
+			notifyStarted();
+			return;
+		}
+		try {
+			ring = SharedMemoryRing.create(ringFile, ringCapacity);
+			running = true;
+			readerThread = new Thread(this, "SharedMemoryRingReader");
+			readerThread.setDaemon(true);
+			readerThread.start();
+			log.info("SharedMemoryRingReader Started on [{}] with capacity [{}]", ringFile, ring.getCapacity());
+			notifyStarted();
+		} catch (Exception ex) {
+			log.error("Failed to start SharedMemoryRingReader on [{}]", ringFile, ex);
+			notifyFailed(ex);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.google.common.util.concurrent.AbstractService#doStop()
+	 */
+	@Override
+	protected void doStop() {
+		running = false;
+		if(readerThread!=null) {
+			LockSupport.unpark(readerThread);
+			try { readerThread.join(5000); } catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		notifyStopped();
+	}
+	
+	/**
+	 * <p>Drains the ring until stopped</p>
+	 * {@inheritDoc}
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		while(running) {
+			try {
+				if(ring.drain(registry, batchSize)==0) {
+					LockSupport.parkNanos(idleParkNanos);
+				}
+			} catch (Exception ex) {
+				// the failed record has been consumed, so keep draining
+				failed.incrementAndGet();
+				log.warn("Failed to apply shared memory ring record", ex);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.AbstractRindleService#getDependentServices()
+	 */
+	@Override
+	public Collection<RindleService> getDependentServices() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.ipc.SharedMemoryRingReaderMXBean#getRingFile()
+	 */
+	@Override
+	public String getRingFile() {
+		return ringFile==null ? null : ringFile.getAbsolutePath();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.ipc.SharedMemoryRingReaderMXBean#getCapacity()
+	 */
+	@Override
+	public int getCapacity() {
+		return ring==null ? -1 : ring.getCapacity();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.ipc.SharedMemoryRingReaderMXBean#getBatchSize()
+	 */
+	@Override
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.ipc.SharedMemoryRingReaderMXBean#getDrainedCount()
+	 */
+	@Override
+	public long getDrainedCount() {
+		return ring==null ? 0L : ring.getReadSequence();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.ipc.SharedMemoryRingReaderMXBean#getBacklog()
+	 */
+	@Override
+	public long getBacklog() {
+		return ring==null ? 0L : ring.getBacklog();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.ipc.SharedMemoryRingReaderMXBean#getRejectedCount()
+	 */
+	@Override
+	public long getRejectedCount() {
+		return ring==null ? 0L : ring.getRejectedCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.ipc.SharedMemoryRingReaderMXBean#getFailedCount()
+	 */
+	@Override
+	public long getFailedCount() {
+		return failed.get();
+	}
+}
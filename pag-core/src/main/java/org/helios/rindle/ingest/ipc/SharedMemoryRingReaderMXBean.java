@@ -0,0 +1,79 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest.ipc;
+
+import org.helios.rindle.AbstractRindleServiceMXBean;
+
+/**
+ * <p>Title: SharedMemoryRingReaderMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link SharedMemoryRingReader}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.ipc.SharedMemoryRingReaderMXBean</code></p>
+ */
+
+public interface SharedMemoryRingReaderMXBean extends AbstractRindleServiceMXBean {
+	/**
+	 * Returns the path of the ring file
+	 * @return the ring file path, or null if disabled
+	 */
+	public String getRingFile();
+	
+	/**
+	 * Returns the number of records in the ring
+	 * @return the ring capacity, or -1 if disabled
+	 */
+	public int getCapacity();
+	
+	/**
+	 * Returns the maximum number of records drained per batch
+	 * @return the maximum batch size
+	 */
+	public int getBatchSize();
+	
+	/**
+	 * Returns the number of records drained since the ring was created
+	 * @return the number of records drained
+	 */
+	public long getDrainedCount();
+	
+	/**
+	 * Returns the number of records written by producers and not yet drained
+	 * @return the ring backlog
+	 */
+	public long getBacklog();
+	
+	/**
+	 * Returns the number of producer offers rejected because the ring was full
+	 * @return the rejected offer count
+	 */
+	public long getRejectedCount();
+	
+	/**
+	 * Returns the number of records that failed to apply
+	 * @return the failed record count
+	 */
+	public long getFailedCount();
+}
@@ -0,0 +1,378 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest.netty;
+
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.helios.rindle.AbstractRindleService;
+import org.helios.rindle.Constants;
+import org.helios.rindle.RindleService;
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.core.datapoints.Core.DataPoints;
+import org.helios.rindle.store.redis.netty.jmx.ThreadPoolMonitor;
+import org.helios.rindle.util.ConfigurationHelper;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+
+/**
+ * <p>Title: DataPointServer</p>
+ * <p>Description: Netty TCP listener accepting a stream of 4 byte length-prefixed protobuf {@link DataPoints} frames 
+ * from remote agents and applying them to the {@link Registry}.</p>
+ * <p>Clients may pipeline any number of frames without waiting for a reply. Frames are handed off as raw buffers to an 
+ * ordered, memory aware executor, so frames from one connection are applied in order and, when a connection's queued
+ * bytes exceed {@link Constants#NETTY_CHANNEL_MAX_MEM}, reads on that connection are suspended until it drains.
+ * Frames are decoded in place by {@link DataPointsWireDecoder}, so no protobuf objects are built per data point.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.netty.DataPointServer</code></p>
+ */
+
+public class DataPointServer extends AbstractRindleService implements DataPointServerMXBean {
+	/** The registry received data points are applied to */
+	protected final Registry registry;
+	/** The listener port */
+	protected final int port;
+	/** The listener binding interface */
+	protected final String iface;
+	/** The maximum frame size */
+	protected final int maxFrame;
+	/** The server bootstrap */
+	protected ServerBootstrap bootstrap = null;
+	/** The boss thread pool */
+	protected ExecutorService bossPool = null;
+	/** The worker thread pool */
+	protected ExecutorService workerPool = null;
+	/** The ordered memory aware executor applying frames */
+	protected OrderedMemoryAwareThreadPoolExecutor execPool = null;
+	/** The group of all open channels, including the server channel */
+	protected final ChannelGroup channelGroup = new DefaultChannelGroup(getClass().getSimpleName());
+	/** The data points handler */
+	protected final DataPointsHandler dataPointsHandler = new DataPointsHandler();
+	/** The execution handler */
+	protected ExecutionHandler execHandler = null;
+	
+	/** The number of open client connections */
+	protected final AtomicInteger activeConnections = new AtomicInteger(0);
+	/** The total number of accepted connections */
+	protected final AtomicLong totalConnections = new AtomicLong(0L);
+	/** The number of frames received */
+	protected final AtomicLong frames = new AtomicLong(0L);
+	/** The number of data points received */
+	protected final AtomicLong dataPointCount = new AtomicLong(0L);
+	/** The number of bytes received */
+	protected final AtomicLong bytes = new AtomicLong(0L);
+	/** The number of connections closed on error */
+	protected final AtomicLong errors = new AtomicLong(0L);
+	
+	/** The size of the frame length prefix */
+	public static final int LENGTH_PREFIX_SIZE = 4;
+	/** The name of the frame decoder */
+	public static final String FRAME_DECODER_NAME = "frameDecoder";
+	/** The name of the execution handler */
+	public static final String EXEC_HANDLER_NAME = "execHandler";
+	/** The name of the data points handler */
+	public static final String DATAPOINTS_HANDLER_NAME = "dataPointsHandler";
+	
+	/**
+	 * Creates a new DataPointServer configured from {@link Constants#NETTY_REMOTING_PORT} and {@link Constants#NETTY_REMOTING_INTERFACE}
+	 * @param registry The registry received data points are applied to
+	 */
+	public DataPointServer(Registry registry) {
+		this.registry = registry;
+		port = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.NETTY_REMOTING_PORT, Constants.DEFAULT_NETTY_REMOTING_PORT);
+		iface = ConfigurationHelper.getSystemThenEnvProperty(Constants.NETTY_REMOTING_INTERFACE, Constants.DEFAULT_NETTY_REMOTING_INTERFACE);
+		maxFrame = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.NETTY_MAX_FRAME, Constants.DEFAULT_NETTY_MAX_FRAME);
+		log.info("DataPointServer Endpoint: [{}:{}]", iface, port);
+	}
+	
+	/**
+	 * Creates a named daemon thread factory
+	 * @param name The thread name prefix
+	 * @return the thread factory
+	 */
+	protected static ThreadFactory threadFactory(final String name) {
+		return new ThreadFactory() {
+			final AtomicInteger serial = new AtomicInteger(0);
+			final ThreadGroup threadGroup = new ThreadGroup(name + "ThreadGroup");
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(threadGroup, r, name + "Thread#" + serial.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.google.common.util.concurrent.AbstractService#doStart()
+	 */
+	@Override
+	protected void doStart() {
+		if(port==-1) {
+			log.info("DataPointServer Disabled.");
+			notifyStarted();
+			return;
+		}
+		try {
+			final int workers = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.NETTY_WORKER_THREADS, Constants.DEFAULT_NETTY_WORKER_THREADS);
+			final int execThreads = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.NETTY_EXEC_THREADS, Constants.DEFAULT_NETTY_EXEC_THREADS);
+			final long channelMem = ConfigurationHelper.getLongSystemThenEnvProperty(Constants.NETTY_CHANNEL_MAX_MEM, Constants.DEFAULT_NETTY_CHANNEL_MAX_MEM);
+			final long totalMem = ConfigurationHelper.getLongSystemThenEnvProperty(Constants.NETTY_TOTAL_MAX_MEM, Constants.DEFAULT_NETTY_TOTAL_MAX_MEM);
+			bossPool = Executors.newCachedThreadPool(threadFactory("DataPointServerBoss"));
+			workerPool = Executors.newCachedThreadPool(threadFactory("DataPointServerWorker"));
+			execPool = new OrderedMemoryAwareThreadPoolExecutor(execThreads, channelMem, totalMem, 60, TimeUnit.SECONDS, threadFactory("DataPointServerExec"));
+			execHandler = new ExecutionHandler(execPool);
+			ThreadPoolMonitor.registerMonitor(execPool, new StringBuilder(getClass().getPackage().getName()).append(":service=ThreadPool,name=DataPointServerExec"));
+			bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(bossPool, workerPool, workers));
+			bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+				public ChannelPipeline getPipeline() throws Exception {
+					ChannelPipeline pipeline = Channels.pipeline();
+					pipeline.addLast(FRAME_DECODER_NAME, new LengthFieldBasedFrameDecoder(maxFrame, 0, LENGTH_PREFIX_SIZE, 0, LENGTH_PREFIX_SIZE));
+					pipeline.addLast(EXEC_HANDLER_NAME, execHandler);
+					pipeline.addLast(DATAPOINTS_HANDLER_NAME, dataPointsHandler);
+					return pipeline;
+				}
+			});
+			bootstrap.setOption("child.tcpNoDelay", true);
+			bootstrap.setOption("child.keepAlive", true);
+			bootstrap.setOption("reuseAddress", true);
+			Channel serverChannel = bootstrap.bind(new InetSocketAddress(iface, port));
+			channelGroup.add(serverChannel);
+			notifyStarted();
+			log.info("DataPointServer Started on [{}:{}]", iface, port);
+		} catch (Exception ex) {
+			log.error("Failed to start DataPointServer", ex);
+			notifyFailed(ex);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.google.common.util.concurrent.AbstractService#doStop()
+	 */
+	@Override
+	protected void doStop() {
+		if(bootstrap!=null) {
+			channelGroup.close().awaitUninterruptibly();
+			bootstrap.releaseExternalResources();
+			execHandler.releaseExternalResources();
+		}
+		notifyStopped();
+	}
+	
+	/**
+	 * <p>Title: DataPointsHandler</p>
+	 * <p>Description: Shared terminal handler applying {@link DataPoints} frames and tracking connections</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.rindle.ingest.netty.DataPointServer.DataPointsHandler</code></p>
+	 */
+	@ChannelHandler.Sharable
+	protected class DataPointsHandler extends SimpleChannelUpstreamHandler {
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#channelOpen(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+		 */
+		@Override
+		public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+			channelGroup.add(e.getChannel());
+			activeConnections.incrementAndGet();
+			totalConnections.incrementAndGet();
+			super.channelOpen(ctx, e);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#channelClosed(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+		 */
+		@Override
+		public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+			activeConnections.decrementAndGet();
+			super.channelClosed(ctx, e);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+		 */
+		@Override
+		public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+			final ChannelBuffer frame = (ChannelBuffer)e.getMessage();
+			frames.incrementAndGet();
+			bytes.addAndGet(frame.readableBytes() + LENGTH_PREFIX_SIZE);
+			String clientId = (String)ctx.getAttachment();
+			if(clientId==null) {
+				// the remote address is the client's admission control id
+				clientId = String.valueOf(e.getChannel().getRemoteAddress());
+				ctx.setAttachment(clientId);
+			}
+			dataPointCount.addAndGet(DataPointsWireDecoder.decode(frame, registry, clientId));
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#exceptionCaught(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ExceptionEvent)
+		 */
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+			errors.incrementAndGet();
+			log.warn("Closing connection [{}] on error", e.getChannel().getRemoteAddress(), e.getCause());
+			e.getChannel().close();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.AbstractRindleService#getDependentServices()
+	 */
+	@Override
+	public Collection<RindleService> getDependentServices() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.netty.DataPointServerMXBean#getPort()
+	 */
+	@Override
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.netty.DataPointServerMXBean#getInterface()
+	 */
+	@Override
+	public String getInterface() {
+		return iface;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.netty.DataPointServerMXBean#getActiveConnections()
+	 */
+	@Override
+	public int getActiveConnections() {
+		return activeConnections.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.netty.DataPointServerMXBean#getTotalConnections()
+	 */
+	@Override
+	public long getTotalConnections() {
+		return totalConnections.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.netty.DataPointServerMXBean#getFrameCount()
+	 */
+	@Override
+	public long getFrameCount() {
+		return frames.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.netty.DataPointServerMXBean#getDataPointCount()
+	 */
+	@Override
+	public long getDataPointCount() {
+		return dataPointCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.netty.DataPointServerMXBean#getByteCount()
+	 */
+	@Override
+	public long getByteCount() {
+		return bytes.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.netty.DataPointServerMXBean#getErrorCount()
+	 */
+	@Override
+	public long getErrorCount() {
+		return errors.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.netty.DataPointServerMXBean#getChannelMemoryLimit()
+	 */
+	@Override
+	public long getChannelMemoryLimit() {
+		return execPool==null ? -1L : execPool.getMaxChannelMemorySize();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.netty.DataPointServerMXBean#getTotalMemoryLimit()
+	 */
+	@Override
+	public long getTotalMemoryLimit() {
+		return execPool==null ? -1L : execPool.getMaxTotalMemorySize();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.netty.DataPointServerMXBean#getQueuedTasks()
+	 */
+	@Override
+	public int getQueuedTasks() {
+		return execPool==null ? 0 : execPool.getQueue().size();
+	}
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest.netty;
+
+import org.helios.rindle.AbstractRindleServiceMXBean;
+
+/**
+ * <p>Title: DataPointServerMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link DataPointServer}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.netty.DataPointServerMXBean</code></p>
+ */
+
+public interface DataPointServerMXBean extends AbstractRindleServiceMXBean {
+	/**
+	 * Returns the port the server listens on
+	 * @return the listening port, or -1 if disabled
+	 */
+	public int getPort();
+	
+	/**
+	 * Returns the interface the server binds to
+	 * @return the binding interface
+	 */
+	public String getInterface();
+	
+	/**
+	 * Returns the number of currently connected clients
+	 * @return the number of open connections
+	 */
+	public int getActiveConnections();
+	
+	/**
+	 * Returns the total number of accepted connections since start
+	 * @return the total number of accepted connections
+	 */
+	public long getTotalConnections();
+	
+	/**
+	 * Returns the total number of DataPoints frames received
+	 * @return the number of frames
+	 */
+	public long getFrameCount();
+	
+	/**
+	 * Returns the total number of individual DataPoint instances received
+	 * @return the number of data points
+	 */
+	public long getDataPointCount();
+	
+	/**
+	 * Returns the total number of frame bytes received, including the length prefix
+	 * @return the number of bytes
+	 */
+	public long getByteCount();
+	
+	/**
+	 * Returns the number of connections closed because of decoding or processing errors
+	 * @return the number of errored connections
+	 */
+	public long getErrorCount();
+	
+	/**
+	 * Returns the maximum bytes queued per connection before reads on that connection are suspended
+	 * @return the per connection queue limit
+	 */
+	public long getChannelMemoryLimit();
+	
+	/**
+	 * Returns the maximum bytes queued across all connections before reads are suspended
+	 * @return the total queue limit
+	 */
+	public long getTotalMemoryLimit();
+	
+	/**
+	 * Returns the number of tasks queued in the execution handler
+	 * @return the queued task count
+	 */
+	public int getQueuedTasks();
+}
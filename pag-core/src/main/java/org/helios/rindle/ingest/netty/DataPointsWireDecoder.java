@@ -0,0 +1,250 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest.netty;
+
+import java.nio.ByteOrder;
+
+import org.helios.rindle.control.AdmissionController;
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.core.datapoints.Core.DataPoint;
+import org.helios.rindle.core.datapoints.Core.DataPoints;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * <p>Title: DataPointsWireDecoder</p>
+ * <p>Description: Streaming decoder that walks the protobuf wire format of a {@link DataPoints} message in place
+ * and applies each {@link DataPoint} to the {@link Registry} with {@link Registry#processValue(long, long, long)} or
+ * {@link Registry#processValue(long, double, long)}, passing its timestamp. Only absolute buffer reads are used, so no message, builder or
+ * boxed value is created per point. Unknown fields are skipped as the protobuf spec requires and malformed input
+ * throws an {@link IllegalArgumentException}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.netty.DataPointsWireDecoder</code></p>
+ */
+
+public class DataPointsWireDecoder {
+	/** The DataPoints field number of the repeated DataPoint */
+	public static final int DATAPOINTS_FIELD = 1;
+	/** The DataPoint field number of the global id */
+	public static final int GLOBAL_ID_FIELD = 1;
+	/** The DataPoint field number of the timestamp */
+	public static final int TIMESTAMP_FIELD = 2;
+	/** The DataPoint field number of the value type */
+	public static final int VALUE_TYPE_FIELD = 3;
+	/** The DataPoint field number of the long value */
+	public static final int LONG_VALUE_FIELD = 4;
+	/** The DataPoint field number of the double value */
+	public static final int DOUBLE_VALUE_FIELD = 5;
+	
+	/** The varint wire type */
+	public static final int WIRETYPE_VARINT = 0;
+	/** The fixed 64 bit wire type */
+	public static final int WIRETYPE_FIXED64 = 1;
+	/** The length delimited wire type */
+	public static final int WIRETYPE_LENGTH_DELIMITED = 2;
+	/** The fixed 32 bit wire type */
+	public static final int WIRETYPE_FIXED32 = 5;
+	
+	/**
+	 * Decodes all the readable bytes of the passed buffer as a {@link DataPoints} message and applies each data point to the registry.
+	 * The buffer's reader index is not modified.
+	 * @param buffer The buffer containing one serialized DataPoints message
+	 * @param registry The registry to apply the data points to
+	 * @return the number of data points applied
+	 */
+	public static int decode(ChannelBuffer buffer, Registry registry) {
+		return decode(buffer, buffer.readerIndex(), buffer.readableBytes(), registry, null);
+	}
+	
+	/**
+	 * Decodes all the readable bytes of the passed buffer as a {@link DataPoints} message and applies each data point
+	 * admitted by the {@link AdmissionController} to the registry. The buffer's reader index is not modified.
+	 * @param buffer The buffer containing one serialized DataPoints message
+	 * @param registry The registry to apply the data points to
+	 * @param clientId The admission client id of the sender, or null if only the global limits apply
+	 * @return the number of data points applied
+	 */
+	public static int decode(ChannelBuffer buffer, Registry registry, String clientId) {
+		return decode(buffer, buffer.readerIndex(), buffer.readableBytes(), registry, clientId);
+	}
+	
+	/**
+	 * Decodes a {@link DataPoints} message from the passed region of the buffer and applies each data point to the registry.
+	 * The buffer's indexes are not modified.
+	 * @param buffer The buffer
+	 * @param offset The index of the first byte of the message
+	 * @param length The length of the message in bytes
+	 * @param registry The registry to apply the data points to
+	 * @param clientId The admission client id of the sender, or null if only the global limits apply
+	 * @return the number of data points applied
+	 */
+	public static int decode(ChannelBuffer buffer, int offset, int length, Registry registry, String clientId) {
+		final AdmissionController admission = AdmissionController.getInstance();
+		final boolean bigEndian = buffer.order()==ByteOrder.BIG_ENDIAN;
+		final int end = offset + length;
+		int index = offset;
+		int count = 0;
+		while(index < end) {
+			final long tag = readVarint(buffer, index, end);
+			index = skipVarint(buffer, index, end);
+			final int wireType = (int)(tag & 7);
+			if((tag >>> 3)==DATAPOINTS_FIELD && wireType==WIRETYPE_LENGTH_DELIMITED) {
+				final long len = readVarint(buffer, index, end);
+				index = skipVarint(buffer, index, end);
+				if(len < 0 || len > end - index) throw new IllegalArgumentException("DataPoint length [" + len + "] overruns the frame");
+				if(decodeDataPoint(buffer, index, index + (int)len, bigEndian, registry, admission, clientId)) count++;
+				index += (int)len;
+			} else {
+				index = skipField(buffer, index, end, wireType);
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Decodes one {@link DataPoint} message and applies it to the registry
+	 * @param buffer The buffer
+	 * @param index The index of the first byte of the message
+	 * @param end The index after the last byte of the message
+	 * @param bigEndian true if the buffer is big endian, in which case fixed64 values are byte swapped 
+	 * @param registry The registry to apply the data point to
+	 * @param admission The admission controller the data point must pass
+	 * @param clientId The admission client id of the sender
+	 * @return true if the data point was applied, false if it had no global id or value or was not admitted
+	 */
+	private static boolean decodeDataPoint(ChannelBuffer buffer, int index, int end, boolean bigEndian, Registry registry, AdmissionController admission, String clientId) {
+		long globalId = -1L;
+		long timestamp = PeriodAggregatorImpl.NO_TIMESTAMP;
+		long longValue = 0L;
+		long doubleBits = 0L;
+		boolean hasLong = false;
+		boolean hasDouble = false;
+		while(index < end) {
+			final long tag = readVarint(buffer, index, end);
+			index = skipVarint(buffer, index, end);
+			final int field = (int)(tag >>> 3);
+			final int wireType = (int)(tag & 7);
+			if(wireType==WIRETYPE_VARINT && (field==GLOBAL_ID_FIELD || field==TIMESTAMP_FIELD || field==LONG_VALUE_FIELD)) {
+				final long v = readVarint(buffer, index, end);
+				index = skipVarint(buffer, index, end);
+				if(field==GLOBAL_ID_FIELD) {
+					globalId = v;
+				} else if(field==TIMESTAMP_FIELD) {
+					timestamp = v;
+				} else {
+					longValue = v;
+					hasLong = true;
+				}
+			} else if(wireType==WIRETYPE_FIXED64 && field==DOUBLE_VALUE_FIELD) {
+				if(end - index < 8) throw new IllegalArgumentException("Double value overruns the DataPoint");
+				final long raw = buffer.getLong(index);
+				doubleBits = bigEndian ? Long.reverseBytes(raw) : raw;
+				hasDouble = true;
+				index += 8;
+			} else {
+				// value type and unknown fields
+				index = skipField(buffer, index, end, wireType);
+			}
+		}
+		if(globalId==-1L) return false;
+		if(hasDouble) {
+			final double doubleValue = Double.longBitsToDouble(doubleBits);
+			if(!admission.admit(clientId, globalId, doubleValue, timestamp)) return false;
+			registry.processValue(globalId, doubleValue, timestamp);
+		} else if(hasLong) {
+			if(!admission.admit(clientId, globalId, longValue, timestamp)) return false;
+			registry.processValue(globalId, longValue, timestamp);
+		} else {
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Skips a field value. Lengths are untrusted, so they are checked against the bytes left in the message as longs
+	 * before they are narrowed, and the returned index always moves forward.
+	 * @param buffer The buffer
+	 * @param index The index of the first byte of the field value
+	 * @param end The index after the last byte of the enclosing message
+	 * @param wireType The wire type of the field
+	 * @return the index of the byte after the field value
+	 */
+	private static int skipField(ChannelBuffer buffer, int index, int end, int wireType) {
+		final long len;
+		switch(wireType) {
+			case WIRETYPE_VARINT:
+				return skipVarint(buffer, index, end);
+			case WIRETYPE_FIXED64:
+				len = 8;
+				break;
+			case WIRETYPE_LENGTH_DELIMITED:
+				len = readVarint(buffer, index, end);
+				index = skipVarint(buffer, index, end);
+				break;
+			case WIRETYPE_FIXED32:
+				len = 4;
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported wire type [" + wireType + "]");
+		}
+		if(len < 0 || len > end - index) throw new IllegalArgumentException("Field length [" + len + "] overruns the message");
+		return index + (int)len;
+	}
+	
+	/**
+	 * Reads a base 128 varint at the passed index
+	 * @param buffer The buffer
+	 * @param index The index of the first byte of the varint
+	 * @param end The index after the last byte of the enclosing message
+	 * @return the decoded value
+	 */
+	private static long readVarint(ChannelBuffer buffer, int index, int end) {
+		long result = 0L;
+		for(int shift = 0; shift < 64; shift += 7) {
+			if(index >= end) throw new IllegalArgumentException("Truncated varint");
+			final byte b = buffer.getByte(index++);
+			result |= (long)(b & 0x7F) << shift;
+			if((b & 0x80)==0) return result;
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+	
+	/**
+	 * Returns the index of the byte after the varint at the passed index
+	 * @param buffer The buffer
+	 * @param index The index of the first byte of the varint
+	 * @param end The index after the last byte of the enclosing message
+	 * @return the index after the varint
+	 */
+	private static int skipVarint(ChannelBuffer buffer, int index, int end) {
+		while(index < end) {
+			if((buffer.getByte(index++) & 0x80)==0) return index;
+		}
+		throw new IllegalArgumentException("Truncated varint");
+	}
+	
+	private DataPointsWireDecoder() {}
+}
@@ -0,0 +1,158 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest.statsd;
+
+import org.helios.rindle.util.unsafe.UnsafeAdapter;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * <p>Title: NameIdTable</p>
+ * <p>Description: A bounded, open addressed table of metric name bytes to global ids that can be probed
+ * with a region of a {@link ChannelBuffer}, so a known name is resolved without creating a String or key object.
+ * When the table reaches its maximum size it is cleared.</p>
+ * <p><b>Not thread safe.</b> Instances must be confined to one thread, such as the single worker of a datagram channel.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.statsd.NameIdTable</code></p>
+ */
+
+public class NameIdTable {
+	/** The maximum number of entries */
+	protected final int maxSize;
+	/** The name bytes */
+	protected final byte[][] keys;
+	/** The hashes of the name bytes */
+	protected final int[] hashes;
+	/** The global ids */
+	protected final long[] ids;
+	/** The slot mask */
+	protected final int mask;
+	/** The current number of entries */
+	protected int size = 0;
+	
+	/**
+	 * Creates a new NameIdTable
+	 * @param maxSize The maximum number of entries
+	 */
+	public NameIdTable(int maxSize) {
+		this.maxSize = maxSize;
+		final int capacity = UnsafeAdapter.findNextPositivePowerOfTwo(maxSize * 2);
+		keys = new byte[capacity][];
+		hashes = new int[capacity];
+		ids = new long[capacity];
+		mask = capacity - 1;
+	}
+	
+	/**
+	 * Computes the hash of a region of a buffer
+	 * @param buffer The buffer
+	 * @param offset The index of the first byte
+	 * @param length The number of bytes
+	 * @return the hash
+	 */
+	public static int hash(ChannelBuffer buffer, int offset, int length) {
+		int h = 1;
+		for(int i = offset, end = offset + length; i < end; i++) {
+			h = 31 * h + buffer.getByte(i);
+		}
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * Returns the global id for the name in the passed region of the buffer
+	 * @param buffer The buffer
+	 * @param offset The index of the first byte of the name
+	 * @param length The length of the name
+	 * @param hash The hash of the name from {@link #hash(ChannelBuffer, int, int)}
+	 * @return the global id or -1 if the name is not in the table
+	 */
+	public long get(ChannelBuffer buffer, int offset, int length, int hash) {
+		int slot = hash & mask;
+		while(true) {
+			final byte[] key = keys[slot];
+			if(key==null) return -1L;
+			if(hashes[slot]==hash && matches(key, buffer, offset, length)) return ids[slot];
+			slot = (slot + 1) & mask;
+		}
+	}
+	
+	/**
+	 * Adds the name in the passed region of the buffer to the table, clearing the table first if it is full
+	 * @param buffer The buffer
+	 * @param offset The index of the first byte of the name
+	 * @param length The length of the name
+	 * @param hash The hash of the name from {@link #hash(ChannelBuffer, int, int)}
+	 * @param globalId The global id of the name
+	 */
+	public void put(ChannelBuffer buffer, int offset, int length, int hash, long globalId) {
+		if(size >= maxSize) clear();
+		int slot = hash & mask;
+		while(keys[slot]!=null) {
+			if(hashes[slot]==hash && matches(keys[slot], buffer, offset, length)) {
+				ids[slot] = globalId;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		final byte[] key = new byte[length];
+		buffer.getBytes(offset, key);
+		keys[slot] = key;
+		hashes[slot] = hash;
+		ids[slot] = globalId;
+		size++;
+	}
+	
+	/**
+	 * Removes all entries
+	 */
+	public void clear() {
+		for(int i = 0; i < keys.length; i++) keys[i] = null;
+		size = 0;
+	}
+	
+	/**
+	 * Returns the number of entries
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Determines if the key equals the passed region of the buffer
+	 * @param key The key
+	 * @param buffer The buffer
+	 * @param offset The index of the first byte
+	 * @param length The number of bytes
+	 * @return true if they are equal
+	 */
+	private static boolean matches(byte[] key, ChannelBuffer buffer, int offset, int length) {
+		if(key.length!=length) return false;
+		for(int i = 0; i < length; i++) {
+			if(key[i]!=buffer.getByte(offset + i)) return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,457 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest.statsd;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.helios.rindle.AbstractRindleService;
+import org.helios.rindle.Constants;
+import org.helios.rindle.RindleService;
+import org.helios.rindle.control.RindleMain;
+import org.helios.rindle.store.IMetricDefinitionListener;
+import org.helios.rindle.submit.ISubmit;
+import org.helios.rindle.util.ConfigurationHelper;
+import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.FixedReceiveBufferSizePredictorFactory;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+
+/**
+ * <p>Title: StatsdListener</p>
+ * <p>Description: UDP listener for statsd style <b><code>name:value|type[|@rate]</code></b> lines, one or more per datagram
+ * separated by newlines. Lines are parsed in place in the datagram buffer. Names already seen are resolved through a 
+ * {@link NameIdTable} and submitted by global id, so no String is created for them. New names are resolved and submitted 
+ * through {@link ISubmit}, which caches them in its own near-cache.</p>
+ * <p>Rindle aggregators do not distinguish statsd types, so every type is submitted as a plain value. Counter values
+ * with a sample rate are scaled up by the rate.</p>
+ * <p>The datagram channel is served by a single worker thread, which is the only thread that parses and touches the name table.</p>  
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.statsd.StatsdListener</code></p>
+ */
+
+public class StatsdListener extends AbstractRindleService implements StatsdListenerMXBean, IMetricDefinitionListener {
+	/** The listener port */
+	protected final int port;
+	/** The listener binding interface */
+	protected final String iface;
+	/** The maximum datagram size */
+	protected final int maxDatagram;
+	/** The name to global id table, confined to the datagram worker thread */
+	protected final NameIdTable nameTable;
+	/** Set when the name table should be cleared by the worker thread */
+	protected volatile boolean invalidateNames = false;
+	/** The submitter values are submitted to, set when rindle starts */
+	protected volatile ISubmit submitter = null;
+	/** The datagram bootstrap */
+	protected ConnectionlessBootstrap bootstrap = null;
+	/** The bound datagram channel */
+	protected Channel channel = null;
+	
+	/** The number of datagrams received */
+	protected final AtomicLong packets = new AtomicLong(0L);
+	/** The number of lines submitted */
+	protected final AtomicLong lines = new AtomicLong(0L);
+	/** The number of malformed lines */
+	protected final AtomicLong malformed = new AtomicLong(0L);
+	/** The number of overflowed datagrams */
+	protected final AtomicLong overflows = new AtomicLong(0L);
+	/** The number of failed submissions */
+	protected final AtomicLong failed = new AtomicLong(0L);
+	
+	/** The name charset */
+	public static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Creates a new StatsdListener configured from {@link Constants#STATSD_PORT} and {@link Constants#STATSD_INTERFACE}
+	 */
+	public StatsdListener() {
+		port = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.STATSD_PORT, Constants.DEFAULT_STATSD_PORT);
+		iface = ConfigurationHelper.getSystemThenEnvProperty(Constants.STATSD_INTERFACE, Constants.DEFAULT_STATSD_INTERFACE);
+		maxDatagram = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.STATSD_MAX_DATAGRAM, Constants.DEFAULT_STATSD_MAX_DATAGRAM);
+		nameTable = new NameIdTable(ConfigurationHelper.getIntSystemThenEnvProperty(Constants.STATSD_NAME_CACHE_SIZE, Constants.DEFAULT_STATSD_NAME_CACHE_SIZE));
+		log.info("StatsdListener Endpoint: [{}:{}]", iface, port);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.google.common.util.concurrent.AbstractService#doStart()
+	 */
+	@Override
+	protected void doStart() {
+		if(port==-1) log.info("StatsdListener Disabled.");
+		notifyStarted();
+	}
+	
+	/**
+	 * <p>Binds the datagram channel once the store and submitter are available</p>
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.AbstractRindleService#onRindleStarted(org.helios.rindle.control.RindleMain)
+	 */
+	@Override
+	public void onRindleStarted(RindleMain rindleMain) {
+		if(port==-1) return;
+		submitter = rindleMain.getSubmitter();
+		rindleMain.getIstore().addMetricDefinitionListener(this);
+		try {
+			bootstrap = new ConnectionlessBootstrap(new NioDatagramChannelFactory(Executors.newCachedThreadPool(new ThreadFactory() {
+				final AtomicInteger serial = new AtomicInteger(0);
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "StatsdListenerThread#" + serial.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			}), 1));
+			bootstrap.setOption("receiveBufferSizePredictorFactory", new FixedReceiveBufferSizePredictorFactory(maxDatagram));
+			bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+				public ChannelPipeline getPipeline() throws Exception {
+					return Channels.pipeline(new LineHandler());
+				}
+			});
+			channel = bootstrap.bind(new InetSocketAddress(iface, port));
+			log.info("StatsdListener Bound to [{}:{}]", iface, port);
+		} catch (Exception ex) {
+			log.error("Failed to bind StatsdListener to [{}:{}]", iface, port, ex);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.google.common.util.concurrent.AbstractService#doStop()
+	 */
+	@Override
+	protected void doStop() {
+		if(channel!=null) channel.close().awaitUninterruptibly();
+		if(bootstrap!=null) bootstrap.releaseExternalResources();
+		notifyStopped();
+	}
+	
+	/**
+	 * <p>Title: LineHandler</p>
+	 * <p>Description: Parses and submits the lines in each datagram. Runs on the single datagram worker thread.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.rindle.ingest.statsd.StatsdListener.LineHandler</code></p>
+	 */
+	protected class LineHandler extends SimpleChannelUpstreamHandler {
+		/** The long value of the last parsed number */
+		private long longValue = 0L;
+		/** The double value of the last parsed number */
+		private double doubleValue = 0D;
+		/** Indicates if the last parsed number was a double */
+		private boolean isDouble = false;
+		
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+		 */
+		@Override
+		public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+			final ChannelBuffer buffer = (ChannelBuffer)e.getMessage();
+			packets.incrementAndGet();
+			if(buffer.readableBytes() >= maxDatagram) {
+				overflows.incrementAndGet();
+				return;
+			}
+			if(invalidateNames) {
+				invalidateNames = false;
+				nameTable.clear();
+			}
+			final int end = buffer.writerIndex();
+			int start = buffer.readerIndex();
+			while(start < end) {
+				int eol = buffer.indexOf(start, end, (byte)'\n');
+				if(eol==-1) eol = end;
+				int lineEnd = eol;
+				if(lineEnd > start && buffer.getByte(lineEnd-1)=='\r') lineEnd--;
+				if(lineEnd > start) processLine(buffer, start, lineEnd);
+				start = eol + 1;
+			}
+		}
+		
+		/**
+		 * Parses and submits one line
+		 * @param buffer The datagram buffer
+		 * @param start The index of the first byte of the line
+		 * @param end The index after the last byte of the line
+		 */
+		private void processLine(ChannelBuffer buffer, int start, int end) {
+			final int colon = buffer.indexOf(start, end, (byte)':');
+			if(colon<=start) { malformed.incrementAndGet(); return; }
+			final int pipe = buffer.indexOf(colon + 1, end, (byte)'|');
+			if(pipe==-1 || !parseNumber(buffer, colon + 1, pipe)) { malformed.incrementAndGet(); return; }
+			int typeEnd = buffer.indexOf(pipe + 1, end, (byte)'|');
+			if(typeEnd==-1) typeEnd = end;
+			if(typeEnd==pipe + 1) { malformed.incrementAndGet(); return; }
+			if(typeEnd < end && buffer.getByte(pipe + 1)=='c' && typeEnd==pipe + 2) {
+				// counter with a sample rate: |@0.1
+				if(buffer.getByte(typeEnd + 1)!='@') { malformed.incrementAndGet(); return; }
+				final boolean valueIsDouble = isDouble;
+				final long lv = longValue;
+				final double dv = doubleValue;
+				if(!parseNumber(buffer, typeEnd + 2, end)) { malformed.incrementAndGet(); return; }
+				final double rate = isDouble ? doubleValue : longValue;
+				if(rate <= 0D || rate > 1D) { malformed.incrementAndGet(); return; }
+				if(rate < 1D) {
+					doubleValue = (valueIsDouble ? dv : lv) / rate;
+					isDouble = true;
+				} else {
+					isDouble = valueIsDouble;
+					longValue = lv;
+					doubleValue = dv;
+				}
+			}
+			submit(buffer, start, colon - start);
+		}
+		
+		/**
+		 * Submits the last parsed number for the name in the passed region of the buffer
+		 * @param buffer The datagram buffer
+		 * @param offset The index of the first byte of the name
+		 * @param length The length of the name
+		 */
+		private void submit(ChannelBuffer buffer, int offset, int length) {
+			final ISubmit sub = submitter;
+			try {
+				final int hash = NameIdTable.hash(buffer, offset, length);
+				final long cachedId = nameTable.get(buffer, offset, length, hash);
+				if(cachedId!=-1L) {
+					if(isDouble) sub.submit(cachedId, doubleValue);
+					else sub.submit(cachedId, longValue);
+				} else {
+					final String name = buffer.toString(offset, length, UTF8);
+					final long globalId = isDouble ? sub.submit(name, doubleValue) : sub.submit(name, longValue);
+					// -1 means the name is pending async resolution and the value has been buffered
+					if(globalId!=-1L) nameTable.put(buffer, offset, length, hash, globalId);
+				}
+				lines.incrementAndGet();
+			} catch (Exception ex) {
+				failed.incrementAndGet();
+				if(log.isDebugEnabled()) log.debug("Failed to submit statsd line", ex);
+			}
+		}
+		
+		/**
+		 * Parses a decimal number in place, setting {@link #longValue} or {@link #doubleValue} and {@link #isDouble}
+		 * @param buffer The datagram buffer
+		 * @param start The index of the first byte of the number
+		 * @param end The index after the last byte of the number
+		 * @return true if the number was parsed, false if it was malformed
+		 */
+		private boolean parseNumber(ChannelBuffer buffer, int start, int end) {
+			if(start >= end) return false;
+			int i = start;
+			boolean negative = false;
+			final byte first = buffer.getByte(i);
+			if(first=='-' || first=='+') {
+				negative = first=='-';
+				i++;
+				if(i==end) return false;
+			}
+			long mantissa = 0L;
+			int scale = 0;
+			boolean fraction = false;
+			int digits = 0;
+			for(; i < end; i++) {
+				final byte b = buffer.getByte(i);
+				if(b >= '0' && b <= '9') {
+					if(digits < 18) {
+						mantissa = mantissa * 10 + (b - '0');
+						if(fraction) scale++;
+					} else if(!fraction) {
+						// integer digits beyond long precision
+						return false;
+					}
+					digits++;
+				} else if(b=='.' && !fraction) {
+					fraction = true;
+				} else {
+					return false;
+				}
+			}
+			if(digits==0) return false;
+			if(negative) mantissa = -mantissa;
+			if(fraction) {
+				doubleValue = mantissa / Math.pow(10, scale);
+				isDouble = true;
+			} else {
+				longValue = mantissa;
+				isDouble = false;
+			}
+			return true;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#exceptionCaught(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ExceptionEvent)
+		 */
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+			log.warn("StatsdListener channel exception", e.getCause());
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.IMetricDefinitionListener#onMetricUpdated(long)
+	 */
+	@Override
+	public void onMetricUpdated(long globalId) {
+		/* Name to global id mappings do not change on update */
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.IMetricDefinitionListener#onMetricDeleted(long)
+	 */
+	@Override
+	public void onMetricDeleted(long globalId) {
+		invalidateNames = true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.IMetricDefinitionListener#onPurge()
+	 */
+	@Override
+	public void onPurge() {
+		invalidateNames = true;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.AbstractRindleService#getDependentServices()
+	 */
+	@Override
+	public Collection<RindleService> getDependentServices() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.statsd.StatsdListenerMXBean#getPort()
+	 */
+	@Override
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.statsd.StatsdListenerMXBean#getInterface()
+	 */
+	@Override
+	public String getInterface() {
+		return iface;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.statsd.StatsdListenerMXBean#getMaxDatagramSize()
+	 */
+	@Override
+	public int getMaxDatagramSize() {
+		return maxDatagram;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.statsd.StatsdListenerMXBean#getPacketCount()
+	 */
+	@Override
+	public long getPacketCount() {
+		return packets.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.statsd.StatsdListenerMXBean#getLineCount()
+	 */
+	@Override
+	public long getLineCount() {
+		return lines.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.statsd.StatsdListenerMXBean#getMalformedCount()
+	 */
+	@Override
+	public long getMalformedCount() {
+		return malformed.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.statsd.StatsdListenerMXBean#getOverflowCount()
+	 */
+	@Override
+	public long getOverflowCount() {
+		return overflows.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.statsd.StatsdListenerMXBean#getFailedCount()
+	 */
+	@Override
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.statsd.StatsdListenerMXBean#getCachedNameCount()
+	 */
+	@Override
+	public int getCachedNameCount() {
+		return nameTable.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.statsd.StatsdListenerMXBean#invalidateNames()
+	 */
+	@Override
+	public void invalidateNames() {
+		invalidateNames = true;
+	}
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest.statsd;
+
+import org.helios.rindle.AbstractRindleServiceMXBean;
+
+/**
+ * <p>Title: StatsdListenerMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link StatsdListener}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.statsd.StatsdListenerMXBean</code></p>
+ */
+
+public interface StatsdListenerMXBean extends AbstractRindleServiceMXBean {
+	/**
+	 * Returns the UDP port the listener is bound to
+	 * @return the listening port, or -1 if disabled
+	 */
+	public int getPort();
+	
+	/**
+	 * Returns the interface the listener binds to
+	 * @return the binding interface
+	 */
+	public String getInterface();
+	
+	/**
+	 * Returns the maximum accepted datagram size in bytes
+	 * @return the maximum datagram size
+	 */
+	public int getMaxDatagramSize();
+	
+	/**
+	 * Returns the number of datagrams received
+	 * @return the number of datagrams received
+	 */
+	public long getPacketCount();
+	
+	/**
+	 * Returns the number of lines submitted
+	 * @return the number of lines submitted
+	 */
+	public long getLineCount();
+	
+	/**
+	 * Returns the number of malformed lines dropped
+	 * @return the number of malformed lines dropped
+	 */
+	public long getMalformedCount();
+	
+	/**
+	 * Returns the number of datagrams dropped because they filled the receive buffer and may have been truncated
+	 * @return the number of overflowed datagrams dropped
+	 */
+	public long getOverflowCount();
+	
+	/**
+	 * Returns the number of lines dropped because the submission failed
+	 * @return the number of failed submissions
+	 */
+	public long getFailedCount();
+	
+	/**
+	 * Returns the number of metric names in the listener's name cache
+	 * @return the number of cached names
+	 */
+	public int getCachedNameCount();
+	
+	/**
+	 * Clears the listener's name cache
+	 */
+	public void invalidateNames();
+}
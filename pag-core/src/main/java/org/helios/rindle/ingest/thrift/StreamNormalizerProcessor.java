@@ -0,0 +1,419 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest.thrift;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TSet;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+import org.helios.rindle.control.AdmissionController;
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.helios.rindle.session.ISession;
+import org.helios.rindle.session.SessionManager;
+
+/**
+ * <p>Title: StreamNormalizerProcessor</p>
+ * <p>Description: Hand written {@link TProcessor} for the <b><code>StreamNormalizer</code></b> service declared in <b><code>core.thrift</code></b>.
+ * Data points are read field by field straight off the protocol and applied to the {@link Registry}, so no
+ * generated <b><code>DataPoint</code></b>, <b><code>DataPointValue</code></b> or argument set instances are built.
+ * Client ids are rindle session ids, so subscriptions map onto the client's {@link ISession}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.thrift.StreamNormalizerProcessor</code></p>
+ */
+
+public class StreamNormalizerProcessor implements TProcessor {
+	/** Instance logger */
+	protected final Logger log = LogManager.getLogger(getClass());
+	/** The registry data points are applied to */
+	protected final Registry registry;
+	/** The admission controller data points must pass before they are applied */
+	protected final AdmissionController admission = AdmissionController.getInstance();
+	/** The session manager backing client ids and subscriptions */
+	protected final SessionManager sessionManager;
+	/** The number of calls processed */
+	protected final AtomicLong calls = new AtomicLong(0L);
+	/** The number of data points applied */
+	protected final AtomicLong dataPoints = new AtomicLong(0L);
+	/** The number of failed calls */
+	protected final AtomicLong errors = new AtomicLong(0L);
+	
+	/** The DataPoint struct field id of the global id */
+	public static final short DP_GLOBAL_ID = 1;
+	/** The DataPoint struct field id of the timestamp */
+	public static final short DP_TIMESTAMP = 2;
+	/** The DataPoint struct field id of the value union */
+	public static final short DP_VALUE = 3;
+	/** The DataPointValue union field id of the long value */
+	public static final short DPV_LONG = 1;
+	/** The DataPointValue union field id of the double value */
+	public static final short DPV_DOUBLE = 2;
+	/** The field id of a call's result */
+	public static final short RESULT_SUCCESS = 0;
+	/** The prefix of thrift client ids used for admission control */
+	public static final String CLIENT_ID_PREFIX = "thrift:";
+	/** The subscribe args field id of the subscription options */
+	public static final short SUB_OPTIONS = 3;
+	/** The subscribe args field id of the subscription period */
+	public static final short SUB_PERIOD = 4;
+	/** An empty long array constant */
+	private static final long[] EMPTY_LONG_ARR = {};
+	
+	/**
+	 * Creates a new StreamNormalizerProcessor
+	 * @param registry The registry data points are applied to
+	 * @param sessionManager The session manager backing client ids and subscriptions
+	 */
+	public StreamNormalizerProcessor(Registry registry, SessionManager sessionManager) {
+		this.registry = registry;
+		this.sessionManager = sessionManager;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.apache.thrift.TProcessor#process(org.apache.thrift.protocol.TProtocol, org.apache.thrift.protocol.TProtocol)
+	 */
+	@Override
+	public boolean process(TProtocol in, TProtocol out) throws TException {
+		final TMessage msg = in.readMessageBegin();
+		calls.incrementAndGet();
+		try {
+			if("submitDataPoints".equals(msg.name)) {
+				submitDataPoints(in);
+			} else if("submitDataPoint".equals(msg.name)) {
+				submitDataPoint(in);
+			} else if("assignClientId".equals(msg.name)) {
+				skipArgs(in);
+				final long clientId = sessionManager.newSession();
+				writeReply(out, msg, clientId);
+			} else if("subscribe".equals(msg.name)) {
+				subscribe(in, out, msg);
+			} else if("cancel".equals(msg.name)) {
+				final long[] clientAndPoints = readClientAndPoints(in);
+				final ISession session = sessionManager.getSession(clientAndPoints[0]);
+				if(session!=null && clientAndPoints.length > 1) session.removeGlobalIds(tail(clientAndPoints));
+			} else if("cancelAll".equals(msg.name)) {
+				final ISession session = sessionManager.getSession(readClientAndPoints(in)[0]);
+				if(session!=null) session.removeGlobalIds(session.getGlobalIds());
+			} else if("bye".equals(msg.name)) {
+				sessionManager.terminateSession(readClientAndPoints(in)[0]);
+			} else {
+				skipArgs(in);
+				writeException(out, msg, new TApplicationException(TApplicationException.UNKNOWN_METHOD, "Invalid method name: '" + msg.name + "'"));
+			}
+			return true;
+		} catch (TException tex) {
+			errors.incrementAndGet();
+			throw tex;
+		} catch (Exception ex) {
+			errors.incrementAndGet();
+			log.error("Failed to process [{}]", msg.name, ex);
+			if(msg.type==TMessageType.CALL) {
+				writeException(out, msg, new TApplicationException(TApplicationException.INTERNAL_ERROR, ex.toString()));
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * Reads the arguments of a <b><code>submitDataPoints</code></b> call, applying each data point as it is read
+	 * @param in The input protocol
+	 * @throws TException thrown on any protocol error
+	 */
+	protected void submitDataPoints(TProtocol in) throws TException {
+		String clientId = null;
+		in.readStructBegin();
+		while(true) {
+			final TField field = in.readFieldBegin();
+			if(field.type==TType.STOP) break;
+			if(field.id==1 && field.type==TType.I64) {
+				clientId = CLIENT_ID_PREFIX + in.readI64();
+			} else if(field.id==2 && field.type==TType.SET) {
+				final TSet set = in.readSetBegin();
+				for(int i = 0; i < set.size; i++) {
+					applyDataPoint(in, clientId);
+				}
+				in.readSetEnd();
+			} else {
+				TProtocolUtil.skip(in, field.type);
+			}
+			in.readFieldEnd();
+		}
+		in.readStructEnd();
+		in.readMessageEnd();
+	}
+	
+	/**
+	 * Reads the arguments of a <b><code>submitDataPoint</code></b> call, applying the data point as it is read
+	 * @param in The input protocol
+	 * @throws TException thrown on any protocol error
+	 */
+	protected void submitDataPoint(TProtocol in) throws TException {
+		String clientId = null;
+		in.readStructBegin();
+		while(true) {
+			final TField field = in.readFieldBegin();
+			if(field.type==TType.STOP) break;
+			if(field.id==1 && field.type==TType.I64) {
+				clientId = CLIENT_ID_PREFIX + in.readI64();
+			} else if(field.id==2 && field.type==TType.STRUCT) {
+				applyDataPoint(in, clientId);
+			} else {
+				TProtocolUtil.skip(in, field.type);
+			}
+			in.readFieldEnd();
+		}
+		in.readStructEnd();
+		in.readMessageEnd();
+	}
+	
+	/**
+	 * Reads one <b><code>DataPoint</code></b> struct and applies it to the registry if the admission controller admits it
+	 * @param in The input protocol
+	 * @param clientId The admission client id of the submitting client, or null if the client did not identify itself
+	 * @throws TException thrown on any protocol error
+	 */
+	protected void applyDataPoint(TProtocol in, String clientId) throws TException {
+		long globalId = -1L;
+		long timestamp = PeriodAggregatorImpl.NO_TIMESTAMP;
+		long longValue = 0L;
+		double doubleValue = 0D;
+		byte valueType = TType.STOP;
+		in.readStructBegin();
+		while(true) {
+			final TField field = in.readFieldBegin();
+			if(field.type==TType.STOP) break;
+			if(field.id==DP_GLOBAL_ID && field.type==TType.I64) {
+				globalId = in.readI64();
+			} else if(field.id==DP_TIMESTAMP && field.type==TType.I64) {
+				timestamp = in.readI64();
+			} else if(field.id==DP_VALUE && field.type==TType.STRUCT) {
+				in.readStructBegin();
+				while(true) {
+					final TField vfield = in.readFieldBegin();
+					if(vfield.type==TType.STOP) break;
+					if(vfield.id==DPV_LONG && vfield.type==TType.I64) {
+						longValue = in.readI64();
+						valueType = TType.I64;
+					} else if(vfield.id==DPV_DOUBLE && vfield.type==TType.DOUBLE) {
+						doubleValue = in.readDouble();
+						valueType = TType.DOUBLE;
+					} else {
+						TProtocolUtil.skip(in, vfield.type);
+					}
+					in.readFieldEnd();
+				}
+				in.readStructEnd();
+			} else {
+				TProtocolUtil.skip(in, field.type);
+			}
+			in.readFieldEnd();
+		}
+		in.readStructEnd();
+		if(globalId==-1L || valueType==TType.STOP) return;
+		if(valueType==TType.DOUBLE) {
+			if(!admission.admit(clientId, globalId, doubleValue, timestamp)) return;
+			registry.processValue(globalId, doubleValue, timestamp);
+		} else {
+			if(!admission.admit(clientId, globalId, longValue, timestamp)) return;
+			registry.processValue(globalId, longValue, timestamp);
+		}
+		dataPoints.incrementAndGet();
+	}
+	
+	/**
+	 * Reads the arguments of a <b><code>subscribe</code></b> call and adds the points to the client's session.
+	 * Sessions have no subscription options or period, so a call that sets either is rejected with an application
+	 * exception instead of being acknowledged and silently narrowed.
+	 * @param in The input protocol
+	 * @param out The output protocol
+	 * @param msg The call message
+	 * @throws TException thrown on any protocol error
+	 */
+	protected void subscribe(TProtocol in, TProtocol out, TMessage msg) throws TException {
+		long clientId = -1L;
+		long[] points = EMPTY_LONG_ARR;
+		int options = 0;
+		long period = 0L;
+		in.readStructBegin();
+		while(true) {
+			final TField field = in.readFieldBegin();
+			if(field.type==TType.STOP) break;
+			if(field.id==1 && field.type==TType.I64) {
+				clientId = in.readI64();
+			} else if(field.id==2 && field.type==TType.SET) {
+				final TSet set = in.readSetBegin();
+				points = new long[set.size];
+				for(int i = 0; i < set.size; i++) {
+					points[i] = in.readI64();
+				}
+				in.readSetEnd();
+			} else if(field.id==SUB_OPTIONS && field.type==TType.I32) {
+				options = in.readI32();
+			} else if(field.id==SUB_PERIOD && field.type==TType.I64) {
+				period = in.readI64();
+			} else {
+				TProtocolUtil.skip(in, field.type);
+			}
+			in.readFieldEnd();
+		}
+		in.readStructEnd();
+		in.readMessageEnd();
+		if(options!=0 || period!=0L) {
+			writeException(out, msg, new TApplicationException(TApplicationException.UNKNOWN, "Subscription options [" + options + "] and period [" + period + "] are not supported"));
+			return;
+		}
+		final ISession session = sessionManager.getSession(clientId);
+		if(session!=null && points.length > 0) session.addGlobalIds(points);
+		writeReply(out, msg, null);
+	}
+	
+	/**
+	 * Reads the arguments of a call whose first field is the client id and whose optional second field is a set of global ids
+	 * @param in The input protocol
+	 * @return an array with the client id in the first slot followed by the global ids
+	 * @throws TException thrown on any protocol error
+	 */
+	protected long[] readClientAndPoints(TProtocol in) throws TException {
+		long clientId = -1L;
+		long[] points = EMPTY_LONG_ARR;
+		in.readStructBegin();
+		while(true) {
+			final TField field = in.readFieldBegin();
+			if(field.type==TType.STOP) break;
+			if(field.id==1 && field.type==TType.I64) {
+				clientId = in.readI64();
+			} else if(field.id==2 && field.type==TType.SET) {
+				final TSet set = in.readSetBegin();
+				points = new long[set.size];
+				for(int i = 0; i < set.size; i++) {
+					points[i] = in.readI64();
+				}
+				in.readSetEnd();
+			} else {
+				TProtocolUtil.skip(in, field.type);
+			}
+			in.readFieldEnd();
+		}
+		in.readStructEnd();
+		in.readMessageEnd();
+		final long[] result = new long[points.length + 1];
+		result[0] = clientId;
+		System.arraycopy(points, 0, result, 1, points.length);
+		return result;
+	}
+	
+	/**
+	 * Returns all but the first element of the passed array
+	 * @param arr The array
+	 * @return the tail of the array
+	 */
+	private static long[] tail(long[] arr) {
+		final long[] t = new long[arr.length - 1];
+		System.arraycopy(arr, 1, t, 0, t.length);
+		return t;
+	}
+	
+	/**
+	 * Skips the arguments struct of a call
+	 * @param in The input protocol
+	 * @throws TException thrown on any protocol error
+	 */
+	protected void skipArgs(TProtocol in) throws TException {
+		TProtocolUtil.skip(in, TType.STRUCT);
+		in.readMessageEnd();
+	}
+	
+	/**
+	 * Writes the reply to a two way call
+	 * @param out The output protocol
+	 * @param msg The call message
+	 * @param success The i64 result, or null for a void call
+	 * @throws TException thrown on any protocol error
+	 */
+	protected void writeReply(TProtocol out, TMessage msg, Long success) throws TException {
+		out.writeMessageBegin(new TMessage(msg.name, TMessageType.REPLY, msg.seqid));
+		out.writeStructBegin(new TStruct(msg.name + "_result"));
+		if(success!=null) {
+			out.writeFieldBegin(new TField("success", TType.I64, RESULT_SUCCESS));
+			out.writeI64(success);
+			out.writeFieldEnd();
+		}
+		out.writeFieldStop();
+		out.writeStructEnd();
+		out.writeMessageEnd();
+		out.getTransport().flush();
+	}
+	
+	/**
+	 * Writes an application exception in reply to a call
+	 * @param out The output protocol
+	 * @param msg The call message
+	 * @param ex The exception to write
+	 * @throws TException thrown on any protocol error
+	 */
+	protected void writeException(TProtocol out, TMessage msg, TApplicationException ex) throws TException {
+		out.writeMessageBegin(new TMessage(msg.name, TMessageType.EXCEPTION, msg.seqid));
+		ex.write(out);
+		out.writeMessageEnd();
+		out.getTransport().flush();
+	}
+
+	/**
+	 * Returns the number of calls processed
+	 * @return the number of calls processed
+	 */
+	public long getCallCount() {
+		return calls.get();
+	}
+
+	/**
+	 * Returns the number of data points applied
+	 * @return the number of data points applied
+	 */
+	public long getDataPointCount() {
+		return dataPoints.get();
+	}
+
+	/**
+	 * Returns the number of failed calls
+	 * @return the number of failed calls
+	 */
+	public long getErrorCount() {
+		return errors.get();
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest.thrift;
+
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadedSelectorServer;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.helios.rindle.AbstractRindleService;
+import org.helios.rindle.Constants;
+import org.helios.rindle.RindleService;
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.session.SessionManager;
+import org.helios.rindle.util.ConfigurationHelper;
+
+/**
+ * <p>Title: StreamNormalizerServer</p>
+ * <p>Description: Non-blocking, framed transport Thrift server for the <b><code>StreamNormalizer</code></b> service,
+ * dispatching to a {@link StreamNormalizerProcessor}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.thrift.StreamNormalizerServer</code></p>
+ */
+
+public class StreamNormalizerServer extends AbstractRindleService implements StreamNormalizerServerMXBean {
+	/** The service processor */
+	protected final StreamNormalizerProcessor processor;
+	/** The listener port */
+	protected final int port;
+	/** The listener binding interface */
+	protected final String iface;
+	/** The thrift server */
+	protected TServer server = null;
+	/** The thread running the thrift server */
+	protected Thread serverThread = null;
+	
+	/**
+	 * Creates a new StreamNormalizerServer configured from {@link Constants#THRIFT_PORT} and {@link Constants#THRIFT_INTERFACE}
+	 * @param registry The registry data points are applied to
+	 * @param sessionManager The session manager backing client ids and subscriptions
+	 */
+	public StreamNormalizerServer(Registry registry, SessionManager sessionManager) {
+		processor = new StreamNormalizerProcessor(registry, sessionManager);
+		port = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.THRIFT_PORT, Constants.DEFAULT_THRIFT_PORT);
+		iface = ConfigurationHelper.getSystemThenEnvProperty(Constants.THRIFT_INTERFACE, Constants.DEFAULT_THRIFT_INTERFACE);
+		log.info("StreamNormalizerServer Endpoint: [{}:{}]", iface, port);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.google.common.util.concurrent.AbstractService#doStart()
+	 */
+	@Override
+	protected void doStart() {
+		if(port==-1) {
+			log.info("StreamNormalizerServer Disabled.");
+			notifyStarted();
+			return;
+		}
+		try {
+			final TNonblockingServerSocket socket = new TNonblockingServerSocket(new InetSocketAddress(iface, port));
+			final TThreadedSelectorServer.Args args = new TThreadedSelectorServer.Args(socket)
+				.selectorThreads(ConfigurationHelper.getIntSystemThenEnvProperty(Constants.THRIFT_SELECTOR_THREADS, Constants.DEFAULT_THRIFT_SELECTOR_THREADS))
+				.workerThreads(ConfigurationHelper.getIntSystemThenEnvProperty(Constants.THRIFT_WORKER_THREADS, Constants.DEFAULT_THRIFT_WORKER_THREADS))
+				.processor(processor)
+				.transportFactory(new TFramedTransport.Factory(ConfigurationHelper.getIntSystemThenEnvProperty(Constants.THRIFT_MAX_FRAME, Constants.DEFAULT_THRIFT_MAX_FRAME)))
+				.protocolFactory(new TBinaryProtocol.Factory());
+			server = new TThreadedSelectorServer(args);
+			serverThread = new Thread("StreamNormalizerServerThread") {
+				public void run() {
+					server.serve();
+				}
+			};
+			serverThread.setDaemon(true);
+			serverThread.start();
+			notifyStarted();
+			log.info("StreamNormalizerServer Started on [{}:{}]", iface, port);
+		} catch (Exception ex) {
+			log.error("Failed to start StreamNormalizerServer", ex);
+			notifyFailed(ex);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.google.common.util.concurrent.AbstractService#doStop()
+	 */
+	@Override
+	protected void doStop() {
+		if(server!=null) server.stop();
+		notifyStopped();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.AbstractRindleService#getDependentServices()
+	 */
+	@Override
+	public Collection<RindleService> getDependentServices() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.thrift.StreamNormalizerServerMXBean#getPort()
+	 */
+	@Override
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.thrift.StreamNormalizerServerMXBean#getInterface()
+	 */
+	@Override
+	public String getInterface() {
+		return iface;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.thrift.StreamNormalizerServerMXBean#isServing()
+	 */
+	@Override
+	public boolean isServing() {
+		return server!=null && server.isServing();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.thrift.StreamNormalizerServerMXBean#getCallCount()
+	 */
+	@Override
+	public long getCallCount() {
+		return processor.getCallCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.thrift.StreamNormalizerServerMXBean#getDataPointCount()
+	 */
+	@Override
+	public long getDataPointCount() {
+		return processor.getDataPointCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.ingest.thrift.StreamNormalizerServerMXBean#getErrorCount()
+	 */
+	@Override
+	public long getErrorCount() {
+		return processor.getErrorCount();
+	}
+
+}
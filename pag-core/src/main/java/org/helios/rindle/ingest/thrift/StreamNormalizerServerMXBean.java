@@ -0,0 +1,73 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.ingest.thrift;
+
+import org.helios.rindle.AbstractRindleServiceMXBean;
+
+/**
+ * <p>Title: StreamNormalizerServerMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link StreamNormalizerServer}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.ingest.thrift.StreamNormalizerServerMXBean</code></p>
+ */
+
+public interface StreamNormalizerServerMXBean extends AbstractRindleServiceMXBean {
+	/**
+	 * Returns the port the server listens on
+	 * @return the listening port, or -1 if disabled
+	 */
+	public int getPort();
+	
+	/**
+	 * Returns the interface the server binds to
+	 * @return the binding interface
+	 */
+	public String getInterface();
+	
+	/**
+	 * Indicates if the thrift server is serving
+	 * @return true if serving, false otherwise
+	 */
+	public boolean isServing();
+	
+	/**
+	 * Returns the number of calls processed
+	 * @return the number of calls processed
+	 */
+	public long getCallCount();
+	
+	/**
+	 * Returns the number of data points applied
+	 * @return the number of data points applied
+	 */
+	public long getDataPointCount();
+	
+	/**
+	 * Returns the number of failed calls
+	 * @return the number of failed calls
+	 */
+	public long getErrorCount();
+}
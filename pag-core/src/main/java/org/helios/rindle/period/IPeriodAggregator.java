@@ -158,4 +158,71 @@ public interface IPeriodAggregator {
 	 */
 	public Number getMedian();
 	
+	/**
+	 * Returns the sum of the values
+	 * @return the sum of the values
+	 */
+	public double getDoubleSum();
+	
+	/**
+	 * Returns the sum of the values
+	 * @return the sum of the values
+	 */
+	public long getLongSum();
+	
+	/**
+	 * Returns the sum of the values
+	 * @return the sum of the values
+	 */
+	public Number getSum();
+	
+	/**
+	 * Returns the last value, the one with the latest last time
+	 * @return the last value
+	 */
+	public double getDoubleLast();
+	
+	/**
+	 * Returns the last value, the one with the latest last time
+	 * @return the last value
+	 */
+	public long getLongLast();
+	
+	/**
+	 * Returns the last value, the one with the latest last time
+	 * @return the last value
+	 */
+	public Number getLast();
+	
+	/**
+	 * Returns the population variance of the values, maintained online without raw data
+	 * @return the population variance of the values
+	 */
+	public double getVariance();
+	
+	/**
+	 * Returns the population standard deviation of the values, maintained online without raw data
+	 * @return the population standard deviation of the values
+	 */
+	public double getStdDev();
+	
+	/**
+	 * Returns the per-second rate of the sum of the values. For a counter aggregator, this is the counter's rate.
+	 * @return the per-second rate of the sum
+	 */
+	public double getRate();
+	
+	/**
+	 * Returns the estimated number of distinct values from the aggregator's HyperLogLog distinct value counter
+	 * @return the estimated number of distinct values, or -1 if distinct counting is not enabled
+	 */
+	public long getDistinctCount();
+	
+	/**
+	 * Returns the estimated value at the passed quantile from the aggregator's streaming quantile sketch
+	 * @param quantile The quantile from 0 to 1, e.g. 0.99 for the 99th percentile
+	 * @return the estimated value at the quantile
+	 */
+	public double getQuantile(double quantile);
+	
 }
@@ -0,0 +1,228 @@
+/**
+ * 
+ */
+package org.helios.rindle.period.impl;
+
+import java.nio.ByteOrder;
+
+import org.helios.rindle.Constants;
+import org.helios.rindle.util.ConfigurationHelper;
+import org.helios.rindle.util.unsafe.DeAllocateMe;
+import org.helios.rindle.util.unsafe.UnsafeAdapter;
+
+/**
+ * <p>Title: HyperLogLog</p>
+ * <p>Description: A fixed size, mergeable, off-heap HyperLogLog distinct value counter.
+ * Each value is hashed to 64 bits; the top {@link Constants#SKETCH_HLL_PRECISION} bits select a one byte register,
+ * which keeps the highest rank (position of the first set bit) seen in the remaining bits. Small cardinalities are
+ * estimated by linear counting of the empty registers.</p>
+ * <p>With the defaults, the counter is 4KB with a standard error of around 1.6%. Registers are updated with CAS,
+ * so values can be added concurrently, and counters are merged by taking the max of each register.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>org.helios.rindle.period.impl.HyperLogLog</code></b>
+ */
+
+public class HyperLogLog implements DeAllocateMe {
+	/** The address[0] of the registers */
+	protected final long[] address = new long[1];
+	
+	/** The configured precision, the log2 of the number of registers */
+	public static final int PRECISION = Math.min(18, Math.max(4, ConfigurationHelper.getIntSystemThenEnvProperty(Constants.SKETCH_HLL_PRECISION, Constants.DEFAULT_SKETCH_HLL_PRECISION)));
+	/** The number of registers, which is also the size of the counter in bytes */
+	public static final int REGISTERS = 1 << PRECISION;
+	/** The bias correction constant for the number of registers */
+	public static final double ALPHA = 0.7213D / (1D + (1.079D / REGISTERS));
+	/** true if registers are packed into ints little endian */
+	protected static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder()==ByteOrder.LITTLE_ENDIAN;
+	
+	/**
+	 * Creates a new empty HyperLogLog
+	 */
+	public HyperLogLog() {
+		address[0] = UnsafeAdapter.allocateAlignedMemory(REGISTERS);
+		UnsafeAdapter.registerForDeAlloc(this);
+		reset();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.util.unsafe.DeAllocateMe#getAddresses()
+	 */
+	@Override
+	public long[][] getAddresses() {
+		return new long[][]{address};
+	}
+	
+	/**
+	 * Adds a long value
+	 * @param value The value to add
+	 */
+	public void add(final long value) {
+		final long hash = hash(value);
+		final int register = (int)(hash >>> (64 - PRECISION));
+		final int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+		casMax(address[0] + register, rank);
+	}
+	
+	/**
+	 * Adds a double value. Integral doubles count as the same value as the equal long.
+	 * @param value The value to add
+	 */
+	public void add(final double value) {
+		final long l = (long)value;
+		add(l==value ? l : Double.doubleToLongBits(value));
+	}
+	
+	/**
+	 * Returns the estimated number of distinct values added
+	 * @return the estimated number of distinct values
+	 */
+	public long getCount() {
+		return estimate(address[0]);
+	}
+	
+	/**
+	 * Moves this counter's registers into the passed counter, leaving this counter empty.
+	 * Registers are swapped out an int at a time, so values added concurrently are counted in one counter or the other.
+	 * @param target The counter to move the registers into
+	 */
+	public void drainInto(final HyperLogLog target) {
+		for(int offset = 0; offset < REGISTERS; offset += UnsafeAdapter.INT_SIZE) {
+			int current;
+			do {
+				current = UnsafeAdapter.getIntVolatile(null, address[0] + offset);
+			} while(current!=0 && !UnsafeAdapter.compareAndSwapInt(null, address[0] + offset, current, 0));
+			if(current==0) continue;
+			for(int i = 0; i < UnsafeAdapter.INT_SIZE; i++) {
+				final int rank = (current >>> shift(i)) & 0xFF;
+				if(rank!=0) casMax(target.address[0] + offset + i, rank);
+			}
+		}
+	}
+	
+	/**
+	 * Merges the passed counter's registers into this counter
+	 * @param other The counter to merge
+	 */
+	public void merge(final HyperLogLog other) {
+		for(int i = 0; i < REGISTERS; i++) {
+			final int rank = UnsafeAdapter.getByte(other.address[0] + i);
+			if(rank!=0) casMax(address[0] + i, rank);
+		}
+	}
+	
+	/**
+	 * Replaces this counter's registers with a copy of the passed counter's registers. Not safe against concurrent adds.
+	 * @param other The counter to copy
+	 */
+	public void copyFrom(final HyperLogLog other) {
+		UnsafeAdapter.copyMemory(other.address[0], address[0], REGISTERS);
+	}
+	
+	/**
+	 * Clears all registers. Not safe against concurrent adds.
+	 */
+	public void reset() {
+		UnsafeAdapter.setMemory(address[0], REGISTERS, PeriodAggregatorImpl.ZERO_BYTE);
+	}
+	
+	/**
+	 * Returns a heap snapshot of the registers
+	 * @return the registers
+	 */
+	public byte[] registers() {
+		final byte[] registers = new byte[REGISTERS];
+		for(int i = 0; i < REGISTERS; i++) {
+			registers[i] = UnsafeAdapter.getByte(address[0] + i);
+		}
+		return registers;
+	}
+	
+	/**
+	 * Estimates the number of distinct values from a heap snapshot of registers
+	 * @param registers The registers as returned by {@link #registers()}
+	 * @return the estimated number of distinct values
+	 */
+	public static long estimate(final byte[] registers) {
+		double sum = 0D;
+		int zeros = 0;
+		for(byte rank: registers) {
+			if(rank==0) zeros++;
+			sum += 1D / (1L << rank);
+		}
+		return estimate(sum, zeros);
+	}
+	
+	/**
+	 * Estimates the number of distinct values from the registers at the passed address
+	 * @param registersAddress The address of the registers
+	 * @return the estimated number of distinct values
+	 */
+	protected static long estimate(final long registersAddress) {
+		double sum = 0D;
+		int zeros = 0;
+		for(int i = 0; i < REGISTERS; i++) {
+			final int rank = UnsafeAdapter.getByte(registersAddress + i);
+			if(rank==0) zeros++;
+			sum += 1D / (1L << rank);
+		}
+		return estimate(sum, zeros);
+	}
+	
+	/**
+	 * Computes the estimate from the harmonic sum of the registers, using linear counting for small cardinalities.
+	 * No large range correction is needed with a 64 bit hash.
+	 * @param sum The sum of 2<sup>-rank</sup> over the registers
+	 * @param zeros The number of empty registers
+	 * @return the estimated number of distinct values
+	 */
+	protected static long estimate(final double sum, final int zeros) {
+		final double raw = ALPHA * REGISTERS * REGISTERS / sum;
+		if(raw <= 2.5D * REGISTERS && zeros > 0) {
+			return Math.round(REGISTERS * Math.log((double)REGISTERS / zeros));
+		}
+		return Math.round(raw);
+	}
+	
+	/**
+	 * Hashes a value to 64 well mixed bits with the MurmurHash3 finalizer
+	 * @param value The value to hash
+	 * @return the hash
+	 */
+	protected static long hash(final long value) {
+		long h = value;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+	
+	/**
+	 * Returns the bit shift of the register at the passed byte offset within its int
+	 * @param byteOffset The byte offset, from 0 to 3
+	 * @return the shift
+	 */
+	protected static int shift(final int byteOffset) {
+		return (LITTLE_ENDIAN ? byteOffset : (UnsafeAdapter.INT_SIZE - 1 - byteOffset)) << 3;
+	}
+	
+	/**
+	 * Atomically raises the register at the passed address to the passed rank, if it is lower.
+	 * Registers are one byte, so the CAS is made on the int that contains the register.
+	 * @param registerAddress The address of the register
+	 * @param rank The rank
+	 */
+	protected static void casMax(final long registerAddress, final int rank) {
+		final long word = registerAddress & ~((long)UnsafeAdapter.INT_SIZE - 1);
+		final int shift = shift((int)(registerAddress - word));
+		int current;
+		do {
+			current = UnsafeAdapter.getIntVolatile(null, word);
+			if(((current >>> shift) & 0xFF) >= rank) return;
+		} while(!UnsafeAdapter.compareAndSwapInt(null, word, current, (current & ~(0xFF << shift)) | (rank << shift)));
+	}
+	
+}
@@ -8,9 +8,13 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
+import org.helios.rindle.Constants;
 import org.helios.rindle.core.datapoints.Core.DataPoint;
 import org.helios.rindle.period.IPeriodAggregator;
+import org.helios.rindle.subscription.criteria.Retention;
+import org.helios.rindle.util.ConfigurationHelper;
 import org.helios.rindle.util.unsafe.DeAllocateMe;
+import org.helios.rindle.util.unsafe.SlabArena;
 import org.helios.rindle.util.unsafe.UnsafeAdapter;
 
 /**
@@ -25,15 +29,56 @@ public class PeriodAggregatorImpl implements IPeriodAggregator, DeAllocateMe {
 	/** The address[0] of the store for this aggregator */
 	protected final long[] address = new long[1];
 	
+	/** The slot of this aggregator's record in the {@link #ARENA}, or -1 if the record is allocated on its own */
+	protected final int slot;
+	
+	/** The address of the aggregator record that writers are currently applying values to, flipped on each roll */
+	protected volatile long active;
+	/** The address[0] of the second aggregator record, zero until the first roll. Holds no flags, which stay in {@link #address} */
+	protected final long[] flipAddress = new long[1];
+	/** The slot of the second aggregator record in the {@link #ARENA}, or -1 */
+	protected int flipSlot = -1;
+	
+	/** The address[0] of the striped cell allocation, zero if this aggregator is not striped */
+	protected final long[] stripeAddress = new long[1];
+	/** The cache line aligned address of the first striped cell */
+	protected long cellBase = 0L;
+	/** The mask applied to a thread id to select its striped cell, -1 if this aggregator is not striped */
+	protected volatile int stripeMask = -1;
+	
+	/** The address[0] of the event time buckets, zero if this aggregator is not in event time mode */
+	protected final long[] eventAddress = new long[1];
+	/** The cache line aligned address of the event time header, which is followed by a cell for each open event time bucket */
+	protected long eventBase = 0L;
+	/** The duration of an event time bucket in ms */
+	protected long eventBucketMs = 0L;
+	/** The number of open event time buckets, 0 if this aggregator is not in event time mode */
+	protected volatile int eventBuckets = 0;
+	
+	/** The time that the current bucket started, reset on each roll */
+	protected volatile long bucketStart = System.currentTimeMillis();
+	
+	/** The roll-up of this aggregator's finished buckets into coarser periods, null until the first roll */
+	protected volatile PeriodRollup rollup = null;
+	/** The roll-up periods that keep a {@link Retention#STICKY} slot, applied to the roll-up when it is created */
+	protected int[] stickyPeriods = new int[0];
+	
+	/** The streaming quantile sketch, null unless quantiles have been enabled */
+	protected volatile QuantileSketch sketch = null;
+	/** The HyperLogLog distinct value counter, null unless distinct counting has been enabled */
+	protected volatile HyperLogLog hll = null;
+	/** The quantile sketch of each open event time bucket, null unless quantiles are enabled in event time mode */
+	protected volatile QuantileSketch[] eventSketches = null;
+	/** The distinct value counter of each open event time bucket, null unless distinct counting is enabled in event time mode */
+	protected volatile HyperLogLog[] eventHlls = null;
+	
 	/** The raw data container used when a subscriber has requested an aggregation that requires all raw data for the period */
 	protected RawDataContainer rawData = null;
 	
 	/** The offset of the aggregator lock */
 	public final static byte XLOCK = 0;							// 8
-	/** The offset of the raw enabled indicator */
-	public final static byte RAW_ENABLED = UnsafeAdapter.LONG_SIZE;  // 1
 	/** The offset of the global id */
-	public final static byte ID = RAW_ENABLED + 1;		// 8
+	public final static byte ID = XLOCK + UnsafeAdapter.LONG_SIZE;		// 8
 	/** The offset of the last time */
 	public final static byte LAST_TIME = ID + UnsafeAdapter.LONG_SIZE;
 	/** The offset of the count */
@@ -42,176 +87,1401 @@ public class PeriodAggregatorImpl implements IPeriodAggregator, DeAllocateMe {
 	public final static byte MIN = COUNT + UnsafeAdapter.LONG_SIZE;
 	/** The offset of the max value */
 	public final static byte MAX = MIN + UnsafeAdapter.LONG_SIZE;
-	/** The offset of the average or driver value */
+	/** The offset of the average or driver value. In lock-free mode, this is the sum of the values' differences from the {@link #SHIFT}. */
 	public final static byte MEAN = MAX + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the Welford sum of squared deviations from the mean. In lock-free mode, this is the sum of the squared differences from the {@link #SHIFT}. */
+	public final static byte M2 = MEAN + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the sum when not in lock-free mode, a long for a long type and a double for a double type */
+	public final static byte SUM = M2 + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the shift in lock-free mode, where the sum slot is not used. The first value applied, which the sum and sum of squares are taken relative to. */
+	public final static byte SHIFT = SUM;
+	/** The offset of the previous raw reading in counter mode, a long for a long type and a double for a double type. Negative if there is no previous reading. */
+	public final static byte PREV = SUM + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the number of counter resets detected in counter mode */
+	public final static byte RESETS = PREV + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the number of 32 bit counter wraps detected in counter mode */
+	public final static byte WRAPS = RESETS + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the last value applied, as long bits for a double type */
+	public final static byte LAST = WRAPS + UnsafeAdapter.LONG_SIZE;
 	/** The offset of the long/double indicator (double is 0, long is 1) */
-	public final static byte DOUBLE_OR_LONG = MEAN + UnsafeAdapter.LONG_SIZE;	
+	public final static byte DOUBLE_OR_LONG = LAST + UnsafeAdapter.LONG_SIZE;	
+	/** The offset of the raw enabled indicator */
+	public final static byte RAW_ENABLED = DOUBLE_OR_LONG + 1;  // 1
+	/** The offset of the lock-free mode indicator */
+	public final static byte LOCK_FREE = RAW_ENABLED + 1;  // 1
+	/** The offset of the counter mode indicator */
+	public final static byte COUNTER = LOCK_FREE + 1;  // 1
 	/** The total memory allocation  */
-	public final static byte TOTAL = DOUBLE_OR_LONG + UnsafeAdapter.LONG_SIZE;
+	public final static byte TOTAL = COUNTER + 1;
+	/** The largest reading of a 32 bit counter */
+	public final static long MAX_COUNTER32 = 0xFFFFFFFFL;
+	/** The size of a striped or event time cell, padded to two cache lines. Cells mirror the record's LAST_TIME, COUNT, MIN, MAX, MEAN (shifted sum), M2 (shifted sum of squares), SHIFT and LAST offsets. */
+	public final static int CELL_SIZE = 128;
+	/** The offset of the watermark in the event time header, the oldest open event time bucket */
+	public final static byte EVENT_WATERMARK = 0;
+	/** The offset of the count of late values applied to an open bucket older than the newest in the event time header */
+	public final static byte EVENT_LATE = EVENT_WATERMARK + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the count of values dropped for being older than the watermark in the event time header */
+	public final static byte EVENT_DROPPED = EVENT_LATE + UnsafeAdapter.LONG_SIZE;
+	
+	
+	
+	/** A zero byte value */
+	public static final byte ZERO_BYTE = 0;
+	/** A one byte value */
+	public static final byte ONE_BYTE = 1;
+	/** Double indicator */
+	public static final byte DOUBLE = 0;
+	/** Long indicator */
+	public static final byte LONG = 1;
+
+	
+	public long[][] getAddresses() {
+		return new long[][]{address, stripeAddress, flipAddress, eventAddress};
+	}
+	
+	
+	
+	public static void log(Object msg) {
+		System.out.println(msg);
+	}
+
+	/**
+	 * Processes a new data point into this aggregator
+	 * @param dataPoint The data point to process
+	 * @return this aggregator
+	 */
+	public IPeriodAggregator processDataPoint(final DataPoint dataPoint) {
+		if(isCounter()) {
+			return dataPoint.hasDoubleValue() ? processDataPoint(dataPoint.getDoubleValue(), dataPoint.getTimestamp()) : processDataPoint(dataPoint.getLongValue(), dataPoint.getTimestamp());
+		}
+		if(isLockFree() || isStriped() || isEventTime()) {
+			final long time = isEventTime() ? dataPoint.getTimestamp() : System.currentTimeMillis();
+			if(dataPoint.hasDoubleValue()) {
+				casApply(dataPoint.getDoubleValue(), time);
+				if(isRawEnabled()) appendRaw(dataPoint.getDoubleValue());
+			} else {
+				casApply(dataPoint.getLongValue(), time);
+				if(isRawEnabled()) appendRaw(dataPoint.getLongValue());
+			}
+			return this;
+		}
+		final long a = active;
+		final boolean locked = UnsafeAdapter.xlock(a);
+		try {
+			final long newCount = increment(a, 1L);
+			if(dataPoint.hasDoubleValue()) {
+				apply(a, dataPoint.getDoubleValue(), newCount);
+			} else {
+				apply(a, dataPoint.getLongValue(), newCount);
+			}
+		} finally {
+			if(locked) UnsafeAdapter.xunlock(a);
+		}
+		return this;
+	}
+	
+	/**
+	 * Processes a new data point into this aggregator. In counter mode, the value is a counter reading
+	 * and the delta from the previous reading is processed.
+	 * @param value The value to process
+	 * @return this aggregator
+	 */
+	public IPeriodAggregator processDataPoint(final long value) {
+		return processDataPoint(value, NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Processes a new data point with a timestamp into this aggregator. The timestamp selects the bucket in event time mode. 
+	 * In counter mode, the value is a counter reading and the delta from the previous reading is processed.
+	 * @param value The value to process
+	 * @param timestamp The timestamp of the value in ms, or {@link #NO_TIMESTAMP} to use the time it is processed
+	 * @return this aggregator
+	 */
+	public IPeriodAggregator processDataPoint(final long value, final long timestamp) {
+		if(isCounter()) {
+			if(isDouble()) return processDataPoint((double)value, timestamp);
+			final long delta = counterDelta(value);
+			return delta < 0 ? this : processGauge(delta, timestamp);
+		}
+		return processGauge(value, timestamp);
+	}
+	
+	/**
+	 * Processes a new gauge value into this aggregator
+	 * @param value The value to process
+	 * @param timestamp The timestamp of the value in ms, or {@link #NO_TIMESTAMP} to use the time it is processed
+	 * @return this aggregator
+	 */
+	protected IPeriodAggregator processGauge(final long value, final long timestamp) {
+		if(isLockFree() || isStriped() || isEventTime()) {
+			casApply(value, applyTime(timestamp));
+			if(isRawEnabled()) appendRaw(value);
+			return this;
+		}
+		// locked inline rather than through runInLock so the hot path does not allocate a task per value
+		final long a = active;
+		final boolean locked = UnsafeAdapter.xlock(a);
+		try {
+			apply(a, value, increment(a, 1L));
+		} finally {
+			if(locked) UnsafeAdapter.xunlock(a);
+		}
+		return this;
+	}
+	
+	/**
+	 * Processes a new value into this aggregator without taking the aggregator lock.
+	 * Only for use by the single thread that owns this aggregator, such as a registry shard.
+	 * In counter mode, the value is a counter reading and the delta from the previous reading is processed.
+	 * @param value The value to process
+	 * @return this aggregator
+	 */
+	public IPeriodAggregator processOwned(final long value) {
+		return processOwned(value, NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Processes a new value with a timestamp into this aggregator without taking the aggregator lock.
+	 * Only for use by the single thread that owns this aggregator, such as a registry shard.
+	 * The timestamp selects the bucket in event time mode.
+	 * @param value The value to process
+	 * @param timestamp The timestamp of the value in ms, or {@link #NO_TIMESTAMP} to use the time it is processed
+	 * @return this aggregator
+	 */
+	public IPeriodAggregator processOwned(final long value, final long timestamp) {
+		if(isCounter()) {
+			if(isDouble()) return processOwned((double)value, timestamp);
+			final long delta = counterDelta(value);
+			return delta < 0 ? this : processOwnedGauge(delta, timestamp);
+		}
+		return processOwnedGauge(value, timestamp);
+	}
+	
+	/**
+	 * Processes a new gauge value into this aggregator without taking the aggregator lock
+	 * @param value The value to process
+	 * @param timestamp The timestamp of the value in ms, or {@link #NO_TIMESTAMP} to use the time it is processed
+	 * @return this aggregator
+	 */
+	protected IPeriodAggregator processOwnedGauge(final long value, final long timestamp) {
+		if(isLockFree() || isStriped() || isEventTime()) {
+			casApply(value, applyTime(timestamp));
+			if(isRawEnabled()) appendRaw(value);
+			return this;
+		}
+		final long a = active;
+		apply(a, value, increment(a, 1L));
+		return this;
+	}
+	
+	/**
+	 * Processes a new value into this aggregator without taking the aggregator lock.
+	 * Only for use by the single thread that owns this aggregator, such as a registry shard.
+	 * In counter mode, the value is a counter reading and the delta from the previous reading is processed.
+	 * @param value The value to process
+	 * @return this aggregator
+	 */
+	public IPeriodAggregator processOwned(final double value) {
+		return processOwned(value, NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Processes a new value with a timestamp into this aggregator without taking the aggregator lock.
+	 * Only for use by the single thread that owns this aggregator, such as a registry shard.
+	 * The timestamp selects the bucket in event time mode.
+	 * @param value The value to process
+	 * @param timestamp The timestamp of the value in ms, or {@link #NO_TIMESTAMP} to use the time it is processed
+	 * @return this aggregator
+	 */
+	public IPeriodAggregator processOwned(final double value, final long timestamp) {
+		if(isCounter()) {
+			if(isLong()) return processOwned((long)value, timestamp);
+			final double delta = counterDelta(value);
+			return delta < 0 ? this : processOwnedGauge(delta, timestamp);
+		}
+		return processOwnedGauge(value, timestamp);
+	}
+	
+	/**
+	 * Processes a new gauge value into this aggregator without taking the aggregator lock
+	 * @param value The value to process
+	 * @param timestamp The timestamp of the value in ms, or {@link #NO_TIMESTAMP} to use the time it is processed
+	 * @return this aggregator
+	 */
+	protected IPeriodAggregator processOwnedGauge(final double value, final long timestamp) {
+		if(isLockFree() || isStriped() || isEventTime()) {
+			casApply(value, applyTime(timestamp));
+			if(isRawEnabled()) appendRaw(value);
+			return this;
+		}
+		final long a = active;
+		apply(a, value, increment(a, 1L));
+		return this;
+	}
+	
+	/**
+	 * Computes the delta of a long counter reading from the previous reading, and makes it the previous reading.
+	 * A reading lower than the previous reading is a 32 bit wrap if the previous reading was in the top quarter of the 
+	 * 32 bit range and the reading is in the bottom quarter, and otherwise a reset, where the delta is the reading itself.
+	 * @param value The counter reading
+	 * @return the delta, or -1 if there is no previous reading or the reading is negative
+	 */
+	protected long counterDelta(final long value) {
+		if(value < 0) return -1L;
+		final long prev = casSwap(address[0] + PREV, value);
+		if(prev < 0) return -1L;
+		if(value >= prev) return value - prev;
+		if(prev <= MAX_COUNTER32 && prev > (MAX_COUNTER32 - (MAX_COUNTER32 >> 2)) && value < (MAX_COUNTER32 >> 2)) {
+			casAdd(address[0] + WRAPS, 1L);
+			return (MAX_COUNTER32 - prev) + value + 1;
+		}
+		casAdd(address[0] + RESETS, 1L);
+		return value;
+	}
+	
+	/**
+	 * Computes the delta of a double counter reading from the previous reading, and makes it the previous reading.
+	 * Wraps and resets are detected as for {@link #counterDelta(long)}.
+	 * @param value The counter reading
+	 * @return the delta, or -1 if there is no previous reading or the reading is negative or NaN
+	 */
+	protected double counterDelta(final double value) {
+		if(!(value >= 0D)) return -1D;
+		final double prev = Double.longBitsToDouble(casSwap(address[0] + PREV, Double.doubleToRawLongBits(value)));
+		if(prev < 0D) return -1D;
+		if(value >= prev) return value - prev;
+		if(prev <= MAX_COUNTER32 && prev > (MAX_COUNTER32 - (MAX_COUNTER32 >> 2)) && value < (MAX_COUNTER32 >> 2)) {
+			casAdd(address[0] + WRAPS, 1L);
+			return (MAX_COUNTER32 - prev) + value + 1;
+		}
+		casAdd(address[0] + RESETS, 1L);
+		return value;
+	}
+	
+	/**
+	 * Applies a long value to this aggregator. Must be called while holding the lock of the passed record.
+	 * @param a The address of the record to apply to
+	 * @param value The value to apply
+	 * @param newCount The count of values including this one
+	 */
+	protected void apply(final long a, final long value, final long newCount) {
+		if(value < UnsafeAdapter.getLong(a + MIN)) UnsafeAdapter.putLong(a + MIN, value);
+		if(value > UnsafeAdapter.getLong(a + MAX)) UnsafeAdapter.putLong(a + MAX, value);
+		UnsafeAdapter.putLong(a + LAST, isLong() ? value : Double.doubleToRawLongBits(value));
+		welford(a, value, newCount);
+		addSum(a, value);
+		final QuantileSketch qs = sketch;
+		if(qs!=null) qs.record(value);
+		final HyperLogLog h = hll;
+		if(h!=null) h.add(value);
+		if(isRawEnabled()) {
+			if(a==address[0]) rawData.append(value);
+			else appendRaw(value);
+		}
+	}
+	
+	/**
+	 * Updates the mean and the sum of squared deviations from the mean with Welford's online algorithm.
+	 * Must be called while holding the lock of the passed record.
+	 * @param a The address of the record to apply to
+	 * @param value The value to apply
+	 * @param newCount The count of values including this one
+	 */
+	protected void welford(final long a, final double value, final long newCount) {
+		final double mean = UnsafeAdapter.getDouble(a + MEAN);
+		final double newMean = mean + ((value - mean) / newCount);
+		UnsafeAdapter.putDouble(a + MEAN, newMean);
+		UnsafeAdapter.putDouble(a + M2, UnsafeAdapter.getDouble(a + M2) + ((value - mean) * (value - newMean)));
+	}
+	
+	/**
+	 * Adds a value to the sum. Must be called while holding the lock of the passed record.
+	 * @param a The address of the record to add to
+	 * @param value The value to add
+	 */
+	protected void addSum(final long a, final long value) {
+		if(isLong()) UnsafeAdapter.putLong(a + SUM, UnsafeAdapter.getLong(a + SUM) + value);
+		else UnsafeAdapter.putDouble(a + SUM, UnsafeAdapter.getDouble(a + SUM) + value);
+	}
+	
+	/**
+	 * Adds a value to the sum. Must be called while holding the lock of the passed record.
+	 * @param a The address of the record to add to
+	 * @param value The value to add
+	 */
+	protected void addSum(final long a, final double value) {
+		if(isLong()) UnsafeAdapter.putLong(a + SUM, UnsafeAdapter.getLong(a + SUM) + (long)value);
+		else UnsafeAdapter.putDouble(a + SUM, UnsafeAdapter.getDouble(a + SUM) + value);
+	}
+	
+	/**
+	 * Processes a batch of long values into this aggregator under a single lock acquisition
+	 * @param values The value array
+	 * @param timestamps The optional timestamps parallel to the value array. If null, the current time is used as the last time.
+	 * @param indexes The indexes in the value array of the values to process
+	 * @param offset The offset in the index array of the first index to process
+	 * @param length The number of indexes to process
+	 * @return this aggregator
+	 */
+	public IPeriodAggregator processDataPoints(final long[] values, final long[] timestamps, final int[] indexes, final int offset, final int length) {
+		if(isCounter()) {
+			for(int i = offset, end = offset + length; i < end; i++) {
+				processDataPoint(values[indexes[i]], timestamps==null ? NO_TIMESTAMP : timestamps[indexes[i]]);
+			}
+			return this;
+		}
+		if(isLockFree() || isStriped() || isEventTime()) {
+			final long now = System.currentTimeMillis();
+			long lastTime = Long.MIN_VALUE;
+			for(int i = offset, end = offset + length; i < end; i++) {
+				final int index = indexes[i];
+				casApply(values[index], timestamps==null ? now : timestamps[index]);
+				if(timestamps!=null && timestamps[index] > lastTime) lastTime = timestamps[index];
+			}
+			if(timestamps!=null) casMax(active + LAST_TIME, lastTime);
+			if(isRawEnabled()) {
+				final boolean locked = UnsafeAdapter.xlock(address[0]);
+				try {
+					if(rawData!=null) {
+						for(int i = offset, end = offset + length; i < end; i++) {
+							rawData.append(values[indexes[i]]);
+						}
+					}
+				} finally {
+					if(locked) UnsafeAdapter.xunlock(address[0]);
+				}
+			}
+			return this;
+		}
+		final long a = active;
+		final boolean locked = UnsafeAdapter.xlock(a);
+		try {
+			long count = UnsafeAdapter.getLong(a + COUNT);
+			long lastTime = timestamps==null ? System.currentTimeMillis() : Long.MIN_VALUE;
+			for(int i = offset, end = offset + length; i < end; i++) {
+				final int index = indexes[i];
+				apply(a, values[index], ++count);
+				if(timestamps!=null && timestamps[index] > lastTime) lastTime = timestamps[index];
+			}
+			UnsafeAdapter.putLong(a + COUNT, count);
+			UnsafeAdapter.putLong(a + LAST_TIME, lastTime);
+		} finally {
+			if(locked) UnsafeAdapter.xunlock(a);
+		}
+		return this;
+	}
+	
+	/**
+	 * Processes a new data point into this aggregator. In counter mode, the value is a counter reading
+	 * and the delta from the previous reading is processed.
+	 * @param value The value to process
+	 * @return this aggregator
+	 */
+	public IPeriodAggregator processDataPoint(final double value) {
+		return processDataPoint(value, NO_TIMESTAMP);
+	}
+	
+	/**
+	 * Processes a new data point with a timestamp into this aggregator. The timestamp selects the bucket in event time mode. 
+	 * In counter mode, the value is a counter reading and the delta from the previous reading is processed.
+	 * @param value The value to process
+	 * @param timestamp The timestamp of the value in ms, or {@link #NO_TIMESTAMP} to use the time it is processed
+	 * @return this aggregator
+	 */
+	public IPeriodAggregator processDataPoint(final double value, final long timestamp) {
+		if(isCounter()) {
+			if(isLong()) return processDataPoint((long)value, timestamp);
+			final double delta = counterDelta(value);
+			return delta < 0 ? this : processGauge(delta, timestamp);
+		}
+		return processGauge(value, timestamp);
+	}
+	
+	/**
+	 * Processes a new gauge value into this aggregator
+	 * @param value The value to process
+	 * @param timestamp The timestamp of the value in ms, or {@link #NO_TIMESTAMP} to use the time it is processed
+	 * @return this aggregator
+	 */
+	protected IPeriodAggregator processGauge(final double value, final long timestamp) {
+		if(isLockFree() || isStriped() || isEventTime()) {
+			casApply(value, applyTime(timestamp));
+			if(isRawEnabled()) appendRaw(value);
+			return this;
+		}
+		// locked inline rather than through runInLock so the hot path does not allocate a task per value
+		final long a = active;
+		final boolean locked = UnsafeAdapter.xlock(a);
+		try {
+			apply(a, value, increment(a, 1L));
+		} finally {
+			if(locked) UnsafeAdapter.xunlock(a);
+		}
+		return this;
+	}
+	
+	/**
+	 * Applies a double value to this aggregator. Must be called while holding the lock of the passed record.
+	 * @param a The address of the record to apply to
+	 * @param value The value to apply
+	 * @param newCount The count of values including this one
+	 */
+	protected void apply(final long a, final double value, final long newCount) {
+		if(value < UnsafeAdapter.getDouble(a + MIN)) UnsafeAdapter.putDouble(a + MIN, value);
+		if(value > UnsafeAdapter.getDouble(a + MAX)) UnsafeAdapter.putDouble(a + MAX, value);
+		UnsafeAdapter.putLong(a + LAST, isLong() ? (long)value : Double.doubleToRawLongBits(value));
+		welford(a, value, newCount);
+		addSum(a, value);
+		final QuantileSketch qs = sketch;
+		if(qs!=null) qs.record(value);
+		final HyperLogLog h = hll;
+		if(h!=null) h.add(value);
+		if(isRawEnabled()) {
+			if(a==address[0]) rawData.append(value);
+			else appendRaw(value);
+		}
+	}
+	
+	/**
+	 * Processes a batch of double values into this aggregator under a single lock acquisition
+	 * @param values The value array
+	 * @param timestamps The optional timestamps parallel to the value array. If null, the current time is used as the last time.
+	 * @param indexes The indexes in the value array of the values to process
+	 * @param offset The offset in the index array of the first index to process
+	 * @param length The number of indexes to process
+	 * @return this aggregator
+	 */
+	public IPeriodAggregator processDataPoints(final double[] values, final long[] timestamps, final int[] indexes, final int offset, final int length) {
+		if(isCounter()) {
+			for(int i = offset, end = offset + length; i < end; i++) {
+				processDataPoint(values[indexes[i]], timestamps==null ? NO_TIMESTAMP : timestamps[indexes[i]]);
+			}
+			return this;
+		}
+		if(isLockFree() || isStriped() || isEventTime()) {
+			final long now = System.currentTimeMillis();
+			long lastTime = Long.MIN_VALUE;
+			for(int i = offset, end = offset + length; i < end; i++) {
+				final int index = indexes[i];
+				casApply(values[index], timestamps==null ? now : timestamps[index]);
+				if(timestamps!=null && timestamps[index] > lastTime) lastTime = timestamps[index];
+			}
+			if(timestamps!=null) casMax(active + LAST_TIME, lastTime);
+			if(isRawEnabled()) {
+				final boolean locked = UnsafeAdapter.xlock(address[0]);
+				try {
+					if(rawData!=null) {
+						for(int i = offset, end = offset + length; i < end; i++) {
+							rawData.append(values[indexes[i]]);
+						}
+					}
+				} finally {
+					if(locked) UnsafeAdapter.xunlock(address[0]);
+				}
+			}
+			return this;
+		}
+		final long a = active;
+		final boolean locked = UnsafeAdapter.xlock(a);
+		try {
+			long count = UnsafeAdapter.getLong(a + COUNT);
+			long lastTime = timestamps==null ? System.currentTimeMillis() : Long.MIN_VALUE;
+			for(int i = offset, end = offset + length; i < end; i++) {
+				final int index = indexes[i];
+				apply(a, values[index], ++count);
+				if(timestamps!=null && timestamps[index] > lastTime) lastTime = timestamps[index];
+			}
+			UnsafeAdapter.putLong(a + COUNT, count);
+			UnsafeAdapter.putLong(a + LAST_TIME, lastTime);
+		} finally {
+			if(locked) UnsafeAdapter.xunlock(a);
+		}
+		return this;
+	}
+	
+	
+	/**
+	 * Returns the time a value is applied at in lock-free, striped or event time mode
+	 * @param timestamp The timestamp of the value in ms, or {@link #NO_TIMESTAMP} if it has none
+	 * @return the timestamp in event time mode if the value has one, otherwise the current time
+	 */
+	protected long applyTime(final long timestamp) {
+		return timestamp!=NO_TIMESTAMP && isEventTime() ? timestamp : System.currentTimeMillis();
+	}
+	
+	/**
+	 * Applies a long value in lock-free, striped or event time mode, updating the count, min, max and the shifted sums with CAS loops.
+	 * Values for a double aggregator are applied as doubles. The shifted sum wraps as the sum would, so the sum rebuilt from it is exact.
+	 * @param value The value to apply
+	 * @param time The timestamp of the value, which selects the bucket in event time mode
+	 */
+	protected void casApply(final long value, final long time) {
+		if(isDouble()) {
+			casApply((double)value, time);
+			return;
+		}
+		final long a;
+		final QuantileSketch qs;
+		final HyperLogLog h;
+		if(eventBuckets==0) {
+			a = casTarget();
+			qs = sketch;
+			h = hll;
+		} else {
+			final int bucket = eventBucket(time);
+			if(bucket==-1) return;
+			a = eventCell(bucket);
+			final QuantileSketch[] sketches = eventSketches;
+			qs = sketches==null ? null : sketches[bucket];
+			final HyperLogLog[] hlls = eventHlls;
+			h = hlls==null ? null : hlls[bucket];
+		}
+		final long k = shift(a, value);
+		casAdd(a + COUNT, 1L);
+		UnsafeAdapter.putLong(a + LAST_TIME, time);
+		UnsafeAdapter.putLong(a + LAST, value);
+		long current;
+		while(value < (current = UnsafeAdapter.getLongVolatile(null, a + MIN)) && !UnsafeAdapter.compareAndSwapLong(null, a + MIN, current, value));
+		while(value > (current = UnsafeAdapter.getLongVolatile(null, a + MAX)) && !UnsafeAdapter.compareAndSwapLong(null, a + MAX, current, value));
+		final double d = (double)value - k;
+		casAdd(a + MEAN, value - k);
+		casAddDouble(a + M2, d * d);
+		if(qs!=null) qs.record(value);
+		if(h!=null) h.add(value);
+	}
+	
+	/**
+	 * Applies a double value in lock-free, striped or event time mode, updating the count, min, max and the shifted sums with CAS loops.
+	 * Values for a long aggregator are applied as longs.
+	 * @param value The value to apply
+	 * @param time The timestamp of the value, which selects the bucket in event time mode
+	 */
+	protected void casApply(final double value, final long time) {
+		if(isLong()) {
+			casApply((long)value, time);
+			return;
+		}
+		final long a;
+		final QuantileSketch qs;
+		final HyperLogLog h;
+		if(eventBuckets==0) {
+			a = casTarget();
+			qs = sketch;
+			h = hll;
+		} else {
+			final int bucket = eventBucket(time);
+			if(bucket==-1) return;
+			a = eventCell(bucket);
+			final QuantileSketch[] sketches = eventSketches;
+			qs = sketches==null ? null : sketches[bucket];
+			final HyperLogLog[] hlls = eventHlls;
+			h = hlls==null ? null : hlls[bucket];
+		}
+		final long bits = Double.doubleToRawLongBits(value);
+		final double k = Double.longBitsToDouble(shift(a, bits));
+		casAdd(a + COUNT, 1L);
+		UnsafeAdapter.putLong(a + LAST_TIME, time);
+		UnsafeAdapter.putLong(a + LAST, bits);
+		long current;
+		while(value < Double.longBitsToDouble(current = UnsafeAdapter.getLongVolatile(null, a + MIN)) && !UnsafeAdapter.compareAndSwapLong(null, a + MIN, current, bits));
+		while(value > Double.longBitsToDouble(current = UnsafeAdapter.getLongVolatile(null, a + MAX)) && !UnsafeAdapter.compareAndSwapLong(null, a + MAX, current, bits));
+		final double d = value - k;
+		casAddDouble(a + MEAN, d);
+		casAddDouble(a + M2, d * d);
+		if(qs!=null) qs.record(value);
+		if(h!=null) h.add(value);
+	}
+	
+	/**
+	 * Returns the shift of the record or cell at the passed address, setting it to the passed value if it is not set yet.
+	 * The shift is set once by the first value applied and kept across drains, so every value is shifted by the same amount 
+	 * as the sum it is rebuilt into, including a value applied concurrently with a drain. Writers read the shift before 
+	 * incrementing the count, so a reader that sees a count also sees the shift.
+	 * @param base The address of the record or cell
+	 * @param bits The value being applied, as long bits for a double type
+	 * @return the shift, as long bits for a double type
+	 */
+	protected long shift(final long base, final long bits) {
+		final long unset = unsetShift();
+		final long k = UnsafeAdapter.getLongVolatile(null, base + SHIFT);
+		if(k!=unset) return k;
+		UnsafeAdapter.compareAndSwapLong(null, base + SHIFT, unset, bits==unset ? 0L : bits);
+		return UnsafeAdapter.getLongVolatile(null, base + SHIFT);
+	}
+	
+	/**
+	 * Returns the marker for a shift that has not been set. A first value equal to the marker sets a shift of zero.
+	 * @return the unset shift marker
+	 */
+	protected long unsetShift() {
+		return isLong() ? Long.MIN_VALUE : UNSET_DOUBLE_SHIFT;
+	}
+	
+	/**
+	 * Rebuilds the sum of a CAS maintained record or cell from its shifted sum
+	 * @param shiftedSum The sum of the differences from the shift, a long for a long type and a double for a double type
+	 * @param count The count the shifted sum was accumulated with
+	 * @param shift The shift, as long bits for a double type
+	 * @return the sum
+	 */
+	protected double unshift(final long shiftedSum, final long count, final long shift) {
+		if(count==0 || shift==unsetShift()) return sumOf(shiftedSum);
+		if(isLong()) return shiftedSum + (count * shift);
+		return Double.longBitsToDouble(shiftedSum) + (count * Double.longBitsToDouble(shift));
+	}
+	
+	/**
+	 * Returns the sum of the CAS maintained record or cell at the passed address
+	 * @param base The address of the record or cell
+	 * @return the sum
+	 */
+	protected double casSumAt(final long base) {
+		return unshift(UnsafeAdapter.getLongVolatile(null, base + MEAN), UnsafeAdapter.getLongVolatile(null, base + COUNT), UnsafeAdapter.getLongVolatile(null, base + SHIFT));
+	}
+	
+	/**
+	 * Returns the sum of the CAS maintained record or cell of a long type at the passed address
+	 * @param base The address of the record or cell
+	 * @return the sum
+	 */
+	protected long casLongSumAt(final long base) {
+		final long count = UnsafeAdapter.getLongVolatile(null, base + COUNT);
+		final long shiftedSum = UnsafeAdapter.getLongVolatile(null, base + MEAN);
+		final long shift = UnsafeAdapter.getLongVolatile(null, base + SHIFT);
+		return count==0 || shift==Long.MIN_VALUE ? shiftedSum : shiftedSum + (count * shift);
+	}
+	
+	/**
+	 * Merges the count, sum and sum of squared deviations from the mean of the CAS maintained record or cell 
+	 * at the passed address into the passed accumulated moments
+	 * @param moments The accumulated count, sum and sum of squared deviations from the mean
+	 * @param base The address of the record or cell
+	 */
+	protected void mergeCasMoments(final double[] moments, final long base) {
+		final long count = UnsafeAdapter.getLongVolatile(null, base + COUNT);
+		final long shiftedSum = UnsafeAdapter.getLongVolatile(null, base + MEAN);
+		final double shiftedSumOfSquares = Double.longBitsToDouble(UnsafeAdapter.getLongVolatile(null, base + M2));
+		mergeMoments(moments, count, unshift(shiftedSum, count, UnsafeAdapter.getLongVolatile(null, base + SHIFT)), casM2(count, sumOf(shiftedSum), shiftedSumOfSquares));
+	}
+	
+	/**
+	 * Returns the address that CAS updates from the calling thread should be applied to.
+	 * This is the calling thread's cell in the active half when striped, otherwise the active aggregator record.
+	 * @return the address of the record or cell to update
+	 */
+	protected long casTarget() {
+		final long a = active;
+		final int mask = stripeMask;
+		if(mask==-1) return a;
+		return cells(a) + ((((int)Thread.currentThread().getId()) & mask) * CELL_SIZE);
+	}
+	
+	/**
+	 * Returns the index of the open event time bucket that a value with the passed timestamp belongs to.
+	 * Values older than the watermark are counted as dropped, values for an open bucket older than the newest 
+	 * are counted as late, and values newer than the newest open bucket are applied to the newest.
+	 * @param time The timestamp of the value
+	 * @return the index of the bucket, or -1 if the value was dropped
+	 */
+	protected int eventBucket(final long time) {
+		final int buckets = eventBuckets;
+		final long header = eventBase;
+		final long watermark = UnsafeAdapter.getLongVolatile(null, header + EVENT_WATERMARK);
+		long epoch = time / eventBucketMs;
+		if(epoch < watermark) {
+			casAdd(header + EVENT_DROPPED, 1L);
+			return -1;
+		}
+		final long newest = watermark + buckets - 1;
+		if(epoch > newest) epoch = newest;
+		else if(epoch < newest) casAdd(header + EVENT_LATE, 1L);
+		return (int)(epoch % buckets);
+	}
+	
+	/**
+	 * Returns the address of the cell of the passed event time bucket
+	 * @param bucket The index of the bucket
+	 * @return the address of the bucket's cell
+	 */
+	protected long eventCell(final int bucket) {
+		return eventBase + ((1 + bucket) * CELL_SIZE);
+	}
+	
+	/**
+	 * Returns the address of the first striped cell of the passed record's half of the cells.
+	 * Must only be called after {@link #stripeMask} has been read as not -1.
+	 * @param record The address of the aggregator record
+	 * @return the address of the record's first cell
+	 */
+	protected long cells(final long record) {
+		return record==address[0] ? cellBase : cellBase + (STRIPES * CELL_SIZE);
+	}
+	
+	/**
+	 * Atomically raises the long at the passed address to the passed value if it is lower
+	 * @param fieldAddress The address of the long
+	 * @param value The value
+	 */
+	protected static void casMax(final long fieldAddress, final long value) {
+		long current;
+		while(value > (current = UnsafeAdapter.getLongVolatile(null, fieldAddress)) && !UnsafeAdapter.compareAndSwapLong(null, fieldAddress, current, value));
+	}
+	
+	/**
+	 * Atomically adds to the long at the passed address
+	 * @param fieldAddress The address of the long
+	 * @param delta The amount to add
+	 * @return the new value
+	 */
+	protected static long casAdd(final long fieldAddress, final long delta) {
+		long current;
+		do {
+			current = UnsafeAdapter.getLongVolatile(null, fieldAddress);
+		} while(!UnsafeAdapter.compareAndSwapLong(null, fieldAddress, current, current + delta));
+		return current + delta;
+	}
+	
+	/**
+	 * Appends a value to the raw data container under the aggregator lock, taken inline so no task is allocated per value. 
+	 * Used in lock-free mode, where the raw data container is the only state that needs the lock.
+	 * @param value The value to append
+	 */
+	protected void appendRaw(final long value) {
+		final boolean locked = UnsafeAdapter.xlock(address[0]);
+		try {
+			if(rawData!=null) rawData.append(value);
+		} finally {
+			if(locked) UnsafeAdapter.xunlock(address[0]);
+		}
+	}
+	
+	/**
+	 * Appends a value to the raw data container under the aggregator lock, taken inline so no task is allocated per value. 
+	 * Used in lock-free mode, where the raw data container is the only state that needs the lock.
+	 * @param value The value to append
+	 */
+	protected void appendRaw(final double value) {
+		final boolean locked = UnsafeAdapter.xlock(address[0]);
+		try {
+			if(rawData!=null) rawData.append(value);
+		} finally {
+			if(locked) UnsafeAdapter.xunlock(address[0]);
+		}
+	}
+	
+	/**
+	 * Calcs a double average incorporating a new value
+	 * using <b><code>(prev_avg*cnt + newval)/(cnt+1)</code></b>
+	 * @param prev_avg The pre-average
+	 * @param cnt The pre-count
+	 * @param newval The new value
+	 * @return the average
+	 */
+	public static double avgd(double prev_avg, double cnt, double newval) {		
+		return (prev_avg*cnt + newval)/(cnt+1);
+	}
+	
+	
+	/** The configured default lock-free mode for new aggregators */
+	public static final boolean DEFAULT_LOCK_FREE = ConfigurationHelper.getBooleanSystemThenEnvProperty(Constants.AGG_LOCK_FREE, Constants.DEFAULT_AGG_LOCK_FREE);
+	
+	/** The configured number of cells allocated for a striped aggregator */
+	public static final int STRIPES = UnsafeAdapter.findNextPositivePowerOfTwo(Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(Constants.AGG_STRIPES, Constants.DEFAULT_AGG_STRIPES)));
+	
+	/** The slab arena that aggregator records are allocated from, null if each record is allocated on its own */
+	public static final SlabArena ARENA = ConfigurationHelper.getBooleanSystemThenEnvProperty(Constants.AGG_SLAB, Constants.DEFAULT_AGG_SLAB) 
+			? new SlabArena(TOTAL, ConfigurationHelper.getIntSystemThenEnvProperty(Constants.AGG_SLAB_SLOTS, Constants.DEFAULT_AGG_SLAB_SLOTS)) : null;
+	
+	/** A constant place-holder, not to be used. */
+	public static final PeriodAggregatorImpl CONST = new PeriodAggregatorImpl();
+	/** The marker for an unset shift of a double type, a NaN that arithmetic does not produce */
+	protected static final long UNSET_DOUBLE_SHIFT = 0x7ff80000deadbeefL;
+	/** The timestamp of a value that has none, which is applied at the time it is processed */
+	public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+	
+	
+	/**
+	 * Creates a new PeriodAggregatorImpl for the const.
+	 */
+	private PeriodAggregatorImpl() {
+		address[0] = -1L;
+		active = -1L;
+		slot = -1;
+	}
+	
+	/**
+	 * Creates a new PeriodAggregatorImpl in the configured {@link Constants#AGG_LOCK_FREE} mode
+	 * @param isDouble true for a double, false for a long
+	 */
+	public PeriodAggregatorImpl(boolean isDouble) {
+		this(isDouble, DEFAULT_LOCK_FREE);
+	}
+	
+	/**
+	 * Creates a new PeriodAggregatorImpl
+	 * @param isDouble true for a double, false for a long
+	 * @param lockFree true to update the count, min, max and sum with CAS loops instead of under the aggregator lock.
+	 * The mean is then derived from the sum and count when read.
+	 */
+	public PeriodAggregatorImpl(boolean isDouble, boolean lockFree) {
+		if(ARENA!=null) {
+			slot = ARENA.allocate();
+			address[0] = ARENA.address(slot);
+		} else {
+			slot = -1;
+			address[0] = UnsafeAdapter.allocateAlignedMemory(TOTAL);
+			UnsafeAdapter.registerForDeAlloc(this);
+		}
+		UnsafeAdapter.setMemory(address[0], TOTAL, ZERO_BYTE);
+		UnsafeAdapter.putLong(address[0], UnsafeAdapter.NO_LOCK);
+		UnsafeAdapter.putByte(address[0] + DOUBLE_OR_LONG, isDouble ? DOUBLE : LONG);
+		UnsafeAdapter.putByte(address[0] + LOCK_FREE, lockFree ? ONE_BYTE : ZERO_BYTE);
+		active = address[0];
+		reset();
+	}
+	
+//	/**
+//	 * Creates a new PeriodAggregatorImpl which is a direct copy of the passed impl
+//	 * @param youButACopy The aggregator to copy
+//	 */
+//	public ReadOnlyPeriodAggregator readOnly() {
+//		return new ReadOnlyPeriodAggregator(address[0]);
+//	}
+	
+	/**
+	 * Reset procedure after the flush procedure and init of a new aggregator
+	 */
+	protected void reset() {
+		initRecord(address[0]);
+		if(flipAddress[0] > 0) initRecord(flipAddress[0]);
+		final QuantileSketch qs = sketch;
+		if(qs!=null) qs.reset();
+		final HyperLogLog h = hll;
+		if(h!=null) h.reset();
+		final int mask = stripeMask;
+		for(int i = 0; i < (mask + 1) * 2; i++) {
+			initStats(cellBase + (i * CELL_SIZE), true);
+		}
+		final int buckets = eventBuckets;
+		for(int i = 1; i <= buckets; i++) {
+			initStats(eventBase + (i * CELL_SIZE), true);
+		}
+		final QuantileSketch[] sketches = eventSketches;
+		if(sketches!=null) {
+			for(QuantileSketch es: sketches) es.reset();
+		}
+		final HyperLogLog[] hlls = eventHlls;
+		if(hlls!=null) {
+			for(HyperLogLog eh: hlls) eh.reset();
+		}
+	}
+	
+	/**
+	 * Initializes the stats of the aggregator record at the passed address
+	 * @param record The address of the record
+	 */
+	protected void initRecord(final long record) {
+		final boolean lockFree = isLockFree();
+		initStats(record, lockFree);
+		if(!lockFree) UnsafeAdapter.putLong(record + SUM, isLong() ? 0L : Double.doubleToRawLongBits(0D));
+	}
+	
+	/**
+	 * Initializes the count, min, max and mean/sum at the passed base address
+	 * @param base The address of the aggregator record or striped cell
+	 * @param sum true if the mean slot holds a CAS maintained sum, false if it holds the mean
+	 */
+	protected void initStats(final long base, final boolean sum) {
+		UnsafeAdapter.putLong(base + MIN, initMin());
+		UnsafeAdapter.putLong(base + MAX, initMax());
+		UnsafeAdapter.putLong(base + COUNT, 0L);
+		UnsafeAdapter.putLong(base + MEAN, isLong() && sum ? 0L : Double.doubleToRawLongBits(0D));
+		UnsafeAdapter.putDouble(base + M2, 0D);
+		if(sum) UnsafeAdapter.putLong(base + SHIFT, unsetShift());
+	}
+	
+	/**
+	 * Switches this aggregator to striped mode, where each writer thread applies its values to its own
+	 * cache line padded cell of count, min, max and sum, and the cells are merged with the aggregator record when read.
+	 * Striping is one-way: once enabled, it stays enabled for the life of the aggregator.
+	 * Values already applied to the aggregator record are retained and merged with the cells.
+	 * Two halves of cells are allocated, one for each of the double buffered aggregator records.
+	 */
+	public synchronized void enableStriping() {
+		if(stripeMask!=-1 || address[0] < 1) return;
+		final long raw = UnsafeAdapter.allocateMemory((STRIPES * CELL_SIZE * 2) + CELL_SIZE);
+		stripeAddress[0] = raw;
+		final long base = (raw + CELL_SIZE - 1) & ~((long)CELL_SIZE - 1);
+		UnsafeAdapter.setMemory(base, STRIPES * CELL_SIZE * 2, ZERO_BYTE);
+		for(int i = 0; i < STRIPES * 2; i++) {
+			initStats(base + (i * CELL_SIZE), true);
+		}
+		cellBase = base;
+		stripeMask = STRIPES - 1;
+	}
+	
+	/**
+	 * Switches this aggregator to event time mode, where each value is applied to the bucket its timestamp belongs to
+	 * rather than the bucket that is current when it arrives. The newest open bucket is the current one, and the 
+	 * passed number of older buckets are kept open for late values. Each {@link #roll} advances the watermark to the
+	 * oldest bucket still open at the current time, and rolls each bucket it closes into the roll-up as its own epoch,
+	 * with its own quantile sketch and distinct value counter, so roll-up periods hold the values stamped within them. 
+	 * A period therefore completes <b><code>lateness</code></b> buckets after its end, and the period in progress when 
+	 * event time is enabled may complete early. Values older than the watermark are dropped and counted. 
+	 * Event time mode is one-way and uses CAS updates whatever the lock mode.
+	 * @param bucketMs The duration of a bucket in ms, which should be the roll-up granularity
+	 * @param lateness The number of buckets older than the current bucket to keep open for late values
+	 */
+	public synchronized void enableEventTime(final long bucketMs, final int lateness) {
+		if(eventBuckets!=0 || address[0] < 1) return;
+		if(bucketMs < 1 || lateness < 0) throw new IllegalArgumentException("Invalid event time bucket size [" + bucketMs + "] or lateness [" + lateness + "]", new Throwable());
+		final int buckets = lateness + 1;
+		final long size = (buckets + 1L) * CELL_SIZE;
+		final long raw = UnsafeAdapter.allocateMemory(size + CELL_SIZE);
+		eventAddress[0] = raw;
+		final long base = (raw + CELL_SIZE - 1) & ~((long)CELL_SIZE - 1);
+		UnsafeAdapter.setMemory(base, size, ZERO_BYTE);
+		for(int i = 1; i <= buckets; i++) {
+			initStats(base + (i * CELL_SIZE), true);
+		}
+		UnsafeAdapter.putLongVolatile(null, base + EVENT_WATERMARK, (System.currentTimeMillis() / bucketMs) - lateness);
+		if(sketch!=null) eventSketches = newSketches(buckets);
+		if(hll!=null) eventHlls = newHlls(buckets);
+		eventBucketMs = bucketMs;
+		eventBase = base;
+		eventBuckets = buckets;
+	}
+	
+	/**
+	 * Creates a quantile sketch for each event time bucket
+	 * @param buckets The number of event time buckets
+	 * @return the sketches
+	 */
+	protected static QuantileSketch[] newSketches(final int buckets) {
+		final QuantileSketch[] sketches = new QuantileSketch[buckets];
+		for(int i = 0; i < buckets; i++) {
+			sketches[i] = new QuantileSketch();
+		}
+		return sketches;
+	}
+	
+	/**
+	 * Creates a distinct value counter for each event time bucket
+	 * @param buckets The number of event time buckets
+	 * @return the distinct value counters
+	 */
+	protected static HyperLogLog[] newHlls(final int buckets) {
+		final HyperLogLog[] hlls = new HyperLogLog[buckets];
+		for(int i = 0; i < buckets; i++) {
+			hlls[i] = new HyperLogLog();
+		}
+		return hlls;
+	}
+	
+	/**
+	 * Advances the event time watermark to the oldest bucket still open at the current time and rolls each bucket it closes
+	 * into the roll-up with the tick of its own epoch, <b><code>epoch + 1</code></b>, so a roll-up period completes with its
+	 * last bucket by event time, whenever that bucket is closed. Epochs between the open buckets and the new watermark never
+	 * had a bucket and are rolled as empty. A value applied while its bucket is being closed lands in a later bucket.
+	 */
+	protected void rollEventBuckets() {
+		final int buckets = eventBuckets;
+		if(buckets==0) return;
+		final long header = eventBase;
+		final long watermark = UnsafeAdapter.getLongVolatile(null, header + EVENT_WATERMARK);
+		final long target = (System.currentTimeMillis() / eventBucketMs) - (buckets - 1);
+		if(target <= watermark) return;
+		casSwap(header + EVENT_WATERMARK, target);
+		final PeriodRollup r = rollup;
+		final long[] acc = new long[5];
+		final double[] moments = new double[3];
+		final long end = Math.min(target, watermark + buckets);
+		for(long epoch = watermark; epoch < end; epoch++) {
+			final int bucket = (int)(epoch % buckets);
+			acc[0] = 0L; acc[1] = initMin(); acc[2] = initMax(); acc[3] = 0L; acc[4] = 0L;
+			moments[0] = 0D; moments[1] = 0D; moments[2] = 0D;
+			drain(eventCell(bucket), true, acc, moments);
+			final QuantileSketch[] sketches = eventSketches;
+			if(sketches!=null) sketches[bucket].drainInto(r.sketchBucket());
+			final HyperLogLog[] hlls = eventHlls;
+			if(hlls!=null) hlls[bucket].drainInto(r.hllBucket());
+			r.roll(epoch + 1, acc[0], acc[1], acc[2], moments[1], moments[2], acc[3], acc[4]);
+		}
+		if(end < target) r.rollEmpty(end + 1, target);
+	}
+	
+	/**
+	 * Closes this aggregator's current finest granularity bucket and folds it into the coarser roll-up periods.
+	 * Writers are first flipped onto the other aggregator record and its half of the striped cells, so the flush never
+	 * holds the lock that writers are contending on. The frozen record and cells are then swapped out and left cleared
+	 * for the next flip. A writer that read the active record just before the flip may have its value land in a later bucket,
+	 * but it is never lost. In event time mode, the passed tick is not used. The event time buckets closed by the watermark
+	 * are rolled with the ticks of their own epochs, and any values applied before event time was enabled are carried into
+	 * the next of them.
+	 * @param globalId The global id of this aggregator
+	 * @param tick The sequence number of the bucket being closed
+	 * @param granularity The finest granularity period in seconds
+	 * @param periods The roll-up periods in seconds, each a multiple of the granularity
+	 */
+	public void roll(final long globalId, final long tick, final int granularity, final int[] periods) {
+		if(rollup==null) createRollup(globalId, granularity, periods);
+		final long frozen = flip();
+		bucketStart = System.currentTimeMillis();
+		final long[] acc = new long[]{0L, initMin(), initMax(), 0L, 0L};
+		final double[] moments = new double[3];
+		if(isLockFree()) {
+			drain(frozen, true, acc, moments);
+		} else {
+			UnsafeAdapter.runInLock(frozen, new Runnable(){
+				public void run() {
+					drain(frozen, false, acc, moments);
+				}
+			});
+		}
+		final int mask = stripeMask;
+		final long cells = cells(frozen);
+		for(int i = 0; i <= mask; i++) {
+			drain(cells + (i * CELL_SIZE), true, acc, moments);
+		}
+		final QuantileSketch qs = sketch;
+		if(qs!=null) qs.drainInto(rollup.sketchBucket());
+		final HyperLogLog h = hll;
+		if(h!=null) h.drainInto(rollup.hllBucket());
+		if(eventBuckets==0) {
+			rollup.roll(tick, acc[0], acc[1], acc[2], moments[1], moments[2], acc[3], acc[4]);
+		} else {
+			rollup.accumulate(acc[0], acc[1], acc[2], moments[1], moments[2], acc[3], acc[4]);
+			rollEventBuckets();
+		}
+	}
+	
+	/**
+	 * Creates this aggregator's roll-up and makes the requested sticky periods sticky
+	 * @param globalId The global id of this aggregator
+	 * @param granularity The finest granularity period in seconds
+	 * @param periods The roll-up periods in seconds, each a multiple of the granularity
+	 */
+	protected synchronized void createRollup(final long globalId, final int granularity, final int[] periods) {
+		if(rollup!=null) return;
+		UnsafeAdapter.putLong(address[0] + ID, globalId);
+		final PeriodRollup r = new PeriodRollup(isDouble(), granularity, periods);
+		for(int period: stickyPeriods) {
+			r.enableSticky(period);
+		}
+		rollup = r;
+	}
+	
+	/**
+	 * Makes the passed roll-up period keep a {@link Retention#STICKY} aggregate, which every completed instance of the period
+	 * is folded into, alongside the {@link Retention#INTERVAL_RESET} instance. Sticky retention is one-way since other
+	 * subscriptions may still require it.
+	 * @param period The roll-up period in seconds
+	 */
+	public synchronized void enableSticky(final int period) {
+		for(int p: stickyPeriods) {
+			if(p==period) return;
+		}
+		final int[] periods = Arrays.copyOf(stickyPeriods, stickyPeriods.length + 1);
+		periods[stickyPeriods.length] = period;
+		stickyPeriods = periods;
+		final PeriodRollup r = rollup;
+		if(r!=null) r.enableSticky(period);
+	}
+	
+	/**
+	 * Flips writers onto the inactive aggregator record, allocating it on the first flip
+	 * @return the address of the record that was active before the flip
+	 */
+	protected synchronized long flip() {
+		if(flipAddress[0]==0L) {
+			final long rec;
+			if(ARENA!=null) {
+				flipSlot = ARENA.allocate();
+				rec = ARENA.address(flipSlot);
+			} else {
+				rec = UnsafeAdapter.allocateAlignedMemory(TOTAL);
+			}
+			UnsafeAdapter.setMemory(rec, TOTAL, ZERO_BYTE);
+			UnsafeAdapter.putLong(rec, UnsafeAdapter.NO_LOCK);
+			initRecord(rec);
+			flipAddress[0] = rec;
+		}
+		final long frozen = active;
+		active = frozen==address[0] ? flipAddress[0] : address[0];
+		return frozen;
+	}
 	
+	/**
+	 * Returns the last completed instance of the passed roll-up period
+	 * @param period The period in seconds
+	 * @return the completed period, or null if the period is not rolled up or this aggregator has not been rolled yet
+	 */
+	public IPeriodAggregator getRolledPeriod(final int period) {
+		return getRolledPeriod(period, Retention.INTERVAL_RESET);
+	}
 	
+	/**
+	 * Returns a measure of the last completed instance of the passed roll-up period without creating a snapshot
+	 * @param period The period in seconds
+	 * @param measure The measure to return
+	 * @return the measure, or NaN if the period is not rolled up, this aggregator has not been rolled yet or the period had no values
+	 */
+	public double getRolledValue(final int period, final TopK.Measure measure) {
+		final PeriodRollup r = rollup;
+		if(r==null) return Double.NaN;
+		return r.completedValue(period, measure);
+	}
 	
-	/** A zero byte value */
-	public static final byte ZERO_BYTE = 0;
-	/** A one byte value */
-	public static final byte ONE_BYTE = 1;
-	/** Double indicator */
-	public static final byte DOUBLE = 0;
-	/** Long indicator */
-	public static final byte LONG = 1;
-
+	/**
+	 * Returns the passed roll-up period with the passed retention
+	 * @param period The period in seconds
+	 * @param retention {@link Retention#INTERVAL_RESET} for the last completed instance of the period, 
+	 * or {@link Retention#STICKY} for every completed instance folded together
+	 * @return the period, or null if the period is not rolled up, this aggregator has not been rolled yet,
+	 * or sticky retention was requested for a period that is not sticky
+	 */
+	public IPeriodAggregator getRolledPeriod(final int period, final Retention retention) {
+		final PeriodRollup r = rollup;
+		if(r==null) return null;
+		return r.getPeriod(getId(), period, retention);
+	}
 	
-	public long[][] getAddresses() {
-		return new long[][]{address};
+	/**
+	 * Swaps the count, min, max, mean/sum and variance state at the passed base address back to their initial values
+	 * and folds the swapped out values into the passed accumulators. The fields are swapped one at a time, so a value
+	 * applied by a writer that read the address before it was frozen may be split across this drain and the next.
+	 * Every swapped out field is folded, even when the swapped out count is zero, so the count, sum, min and max 
+	 * are never lost, and a split value only costs its contribution to the variance. The last time is swapped out too,
+	 * so a bucket with no values does not repeat the last time and last value of an earlier bucket.
+	 * @param base The address of the aggregator record or striped cell
+	 * @param sum true if the mean slot holds a CAS maintained sum, false if it holds the mean
+	 * @param acc The accumulated count, min, max, last time and last value. The min, max and last value are long bits for a double type.
+	 * @param moments The accumulated count, sum and sum of squared deviations from the mean
+	 */
+	protected void drain(final long base, final boolean sum, final long[] acc, final double[] moments) {
+		final long count = casSwap(base + COUNT, 0L);
+		final long meanOrSum = casSwap(base + MEAN, isLong() && sum ? 0L : Double.doubleToRawLongBits(0D));
+		final double m2 = Double.longBitsToDouble(casSwap(base + M2, Double.doubleToRawLongBits(0D)));
+		final long lockSum = sum ? 0L : casSwap(base + SUM, isLong() ? 0L : Double.doubleToRawLongBits(0D));
+		final long min = casSwap(base + MIN, initMin());
+		final long max = casSwap(base + MAX, initMax());
+		acc[0] += count;
+		final long lastTime = casSwap(base + LAST_TIME, 0L);
+		if(lastTime > acc[3]) {
+			acc[3] = lastTime;
+			acc[4] = UnsafeAdapter.getLongVolatile(null, base + LAST);
+		}
+		if(isLong()) {
+			if(min < acc[1]) acc[1] = min;
+			if(max > acc[2]) acc[2] = max;
+		} else {
+			if(Double.longBitsToDouble(min) < Double.longBitsToDouble(acc[1])) acc[1] = min;
+			if(Double.longBitsToDouble(max) > Double.longBitsToDouble(acc[2])) acc[2] = max;
+		}
+		final double drained = sum ? unshift(meanOrSum, count, UnsafeAdapter.getLongVolatile(null, base + SHIFT)) : sumOf(lockSum);
+		if(count==0) {
+			moments[1] += drained;
+			return;
+		}
+		mergeMoments(moments, count, drained, sum ? casM2(count, sumOf(meanOrSum), m2) : m2);
 	}
 	
+	/**
+	 * Returns the initial min value as long bits
+	 * @return the initial min value
+	 */
+	protected long initMin() {
+		return isLong() ? Long.MAX_VALUE : Double.doubleToRawLongBits(Double.MAX_VALUE);
+	}
 	
+	/**
+	 * Returns the initial max value as long bits
+	 * @return the initial max value
+	 */
+	protected long initMax() {
+		return isLong() ? Long.MIN_VALUE : Double.doubleToRawLongBits(-Double.MAX_VALUE);
+	}
 	
-	public static void log(Object msg) {
-		System.out.println(msg);
+	/**
+	 * Atomically adds to the double at the passed address
+	 * @param fieldAddress The address of the double
+	 * @param delta The amount to add
+	 */
+	protected static void casAddDouble(final long fieldAddress, final double delta) {
+		long current;
+		do {
+			current = UnsafeAdapter.getLongVolatile(null, fieldAddress);
+		} while(!UnsafeAdapter.compareAndSwapLong(null, fieldAddress, current, Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta)));
 	}
-
+	
 	/**
-	 * Processes a new data point into this aggregator
-	 * @param dataPoint The data point to process
-	 * @return this aggregator
+	 * Merges a count, sum and sum of squared deviations from the mean into the passed accumulated moments
+	 * using the parallel form of Welford's algorithm. A sum already folded into empty moments without a count is kept.
+	 * @param moments The accumulated count, sum and sum of squared deviations from the mean
+	 * @param count The count to merge
+	 * @param sum The sum to merge
+	 * @param m2 The sum of squared deviations from the mean to merge
 	 */
-	public IPeriodAggregator processDataPoint(final DataPoint dataPoint) {
-		UnsafeAdapter.runInLock(address[0], new Runnable(){
-			public void run() {
-				final long newCount = increment();
-				if(dataPoint.hasDoubleValue()) {
-					double val = dataPoint.getDoubleValue();
-					if(val < UnsafeAdapter.getDouble(address[0] + MIN)) UnsafeAdapter.putDouble(address[0] + MIN, val);
-					if(val > UnsafeAdapter.getDouble(address[0] + MAX)) UnsafeAdapter.putDouble(address[0] + MAX, val);
-					if(newCount==1) {
-						UnsafeAdapter.putDouble(address[0] + MEAN, val);
-					} else {
-						UnsafeAdapter.putDouble(address[0] + MEAN, avgd(UnsafeAdapter.getDouble(address[0] + MEAN), newCount-1, val));
-					}
-					if(isRawEnabled()) rawData.append(val);
-				} else {
-					long val = dataPoint.getLongValue();
-					if(val < UnsafeAdapter.getLong(address[0] + MIN)) UnsafeAdapter.putLong(address[0] + MIN, val);
-					if(val > UnsafeAdapter.getLong(address[0] + MAX)) UnsafeAdapter.putLong(address[0] + MAX, val);
-					if(newCount==1) {
-						UnsafeAdapter.putDouble(address[0] + MEAN, val);
-					} else {
-						UnsafeAdapter.putDouble(address[0] + MEAN, avgd(UnsafeAdapter.getDouble(address[0] + MEAN), newCount-1, val));
-					}
-					if(isRawEnabled()) {
-						rawData.append(val);
-					}
-				}
-			}
-		}); 
-		return this;
+	public static void mergeMoments(final double[] moments, final double count, final double sum, final double m2) {
+		if(count==0) return;
+		if(moments[0]==0) {
+			moments[0] = count;
+			moments[1] += sum;
+			moments[2] += m2;
+			return;
+		}
+		final double delta = (sum / count) - (moments[1] / moments[0]);
+		final double n = moments[0] + count;
+		moments[2] += m2 + (delta * delta * moments[0] * count / n);
+		moments[0] = n;
+		moments[1] += sum;
 	}
 	
 	/**
-	 * Processes a new data point into this aggregator
-	 * @param value The value to process
-	 * @return this aggregator
+	 * Derives the sum of squared deviations from the mean from the shifted sum and sum of squares maintained by CAS updates,
+	 * which are taken relative to the shift K, the first value applied to the record or cell. Shifting removes the
+	 * catastrophic cancellation of the unshifted form when the mean is large relative to the standard deviation.
+	 * For n values with standard deviation s, the relative error of the result is about n&epsilon;(1 + (mean - K)&sup2; / s&sup2;),
+	 * where &epsilon; is 2<sup>-53</sup>, against n&epsilon;(mean&sup2; / s&sup2;) unshifted. Since the shift is kept for
+	 * the life of the record or cell, the error grows again if the values drift many standard deviations from the first value.
+	 * @param count The count
+	 * @param shiftedSum The sum of the differences from the shift
+	 * @param shiftedSumOfSquares The sum of the squared differences from the shift
+	 * @return the sum of squared deviations from the mean
 	 */
-	public IPeriodAggregator processDataPoint(final long value) {
-		UnsafeAdapter.runInLock(address[0], new Runnable(){
-			public void run() {
-				final long newCount = increment();
-					if(value < UnsafeAdapter.getLong(address[0] + MIN)) UnsafeAdapter.putLong(address[0] + MIN, value);
-					if(value > UnsafeAdapter.getLong(address[0] + MAX)) UnsafeAdapter.putLong(address[0] + MAX, value);
-					if(newCount==1) {
-						UnsafeAdapter.putDouble(address[0] + MEAN, value);
-					} else {
-						UnsafeAdapter.putDouble(address[0] + MEAN, avgd(UnsafeAdapter.getDouble(address[0] + MEAN), newCount-1, value));
-					}
-					if(isRawEnabled()) {
-						rawData.append(value);
-					}
-			}
-		}); 
-		return this;
+	protected static double casM2(final long count, final double shiftedSum, final double shiftedSumOfSquares) {
+		if(count==0) return 0D;
+		return Math.max(0D, shiftedSumOfSquares - (shiftedSum * shiftedSum / count));
 	}
 	
 	/**
-	 * Processes a new data point into this aggregator
-	 * @param value The value to process
-	 * @return this aggregator
+	 * Atomically sets the long at the passed address
+	 * @param fieldAddress The address of the long
+	 * @param value The new value
+	 * @return the prior value
 	 */
-	public IPeriodAggregator processDataPoint(final double value) {
-		UnsafeAdapter.runInLock(address[0], new Runnable(){
-			public void run() {
-				final long newCount = increment();
-				if(value < UnsafeAdapter.getDouble(address[0] + MIN)) UnsafeAdapter.putDouble(address[0] + MIN, value);
-				if(value > UnsafeAdapter.getDouble(address[0] + MAX)) UnsafeAdapter.putDouble(address[0] + MAX, value);
-				if(newCount==1) {
-					UnsafeAdapter.putDouble(address[0] + MEAN, value);
-				} else {
-					UnsafeAdapter.putDouble(address[0] + MEAN, avgd(UnsafeAdapter.getDouble(address[0] + MEAN), newCount-1, value));
-				}
-				if(isRawEnabled()) rawData.append(value);
-			}
-		}); 
-		return this;
+	protected static long casSwap(final long fieldAddress, final long value) {
+		long current;
+		do {
+			current = UnsafeAdapter.getLongVolatile(null, fieldAddress);
+		} while(!UnsafeAdapter.compareAndSwapLong(null, fieldAddress, current, value));
+		return current;
 	}
 	
+	/**
+	 * Returns this aggregator's slab allocated record and striped cells to the arena and the OS.
+	 * Only required for aggregators allocated from the {@link #ARENA}, which are not freed by the GC. 
+	 * Otherwise this is a no-op. The aggregator must not be used after it has been released.
+	 */
+	public synchronized void release() {
+		if(slot==-1 || address[0]==0L) return;
+		final long stripes = stripeAddress[0];
+		if(stripes > 0) {
+			stripeMask = -1;
+			stripeAddress[0] = 0L;
+			UnsafeAdapter.freeMemory(stripes);
+		}
+		final long events = eventAddress[0];
+		if(events > 0) {
+			eventBuckets = 0;
+			eventAddress[0] = 0L;
+			UnsafeAdapter.freeMemory(events);
+		}
+		if(flipSlot!=-1) {
+			flipAddress[0] = 0L;
+			ARENA.free(flipSlot);
+			flipSlot = -1;
+		}
+		address[0] = 0L;
+		active = 0L;
+		ARENA.free(slot);
+	}
 	
 	/**
-	 * Calcs a double average incorporating a new value
-	 * using <b><code>(prev_avg*cnt + newval)/(cnt+1)</code></b>
-	 * @param prev_avg The pre-average
-	 * @param cnt The pre-count
-	 * @param newval The new value
-	 * @return the average
+	 * Indicates if this aggregator's record is slab allocated
+	 * @return true if this aggregator's record is allocated from the {@link #ARENA}
 	 */
-	public static double avgd(double prev_avg, double cnt, double newval) {		
-		return (prev_avg*cnt + newval)/(cnt+1);
+	public boolean isSlabAllocated() {
+		return slot!=-1;
 	}
 	
+	/**
+	 * Switches this aggregator to counter mode, where each value is a reading of a monotonically increasing counter
+	 * and the delta from the previous reading is aggregated, so the sum is the counter's increase and {@link #getRate()} 
+	 * is its per-second rate. The first reading only sets the previous reading. Counter mode is one-way.
+	 */
+	public synchronized void enableCounter() {
+		if(address[0] < 1 || isCounter()) return;
+		UnsafeAdapter.putLong(address[0] + PREV, isLong() ? -1L : Double.doubleToRawLongBits(-1D));
+		UnsafeAdapter.putByte(address[0] + COUNTER, ONE_BYTE);
+	}
 	
-	/** A constant place-holder, not to be used. */
-	public static final PeriodAggregatorImpl CONST = new PeriodAggregatorImpl();
+	/**
+	 * Indicates if this aggregator is in counter mode
+	 * @return true if values are counter readings and their deltas are aggregated
+	 */
+	public boolean isCounter() {
+		return UnsafeAdapter.getByte(address[0] + COUNTER)!=ZERO_BYTE;
+	}
 	
+	/**
+	 * Returns the number of counter resets detected in counter mode
+	 * @return the number of counter resets
+	 */
+	public long getCounterResets() {
+		return UnsafeAdapter.getLongVolatile(null, address[0] + RESETS);
+	}
 	
 	/**
-	 * Creates a new PeriodAggregatorImpl for the const.
+	 * Returns the number of 32 bit counter wraps detected in counter mode
+	 * @return the number of counter wraps
 	 */
-	private PeriodAggregatorImpl() {
-		address[0] = -1L;
+	public long getCounterWraps() {
+		return UnsafeAdapter.getLongVolatile(null, address[0] + WRAPS);
 	}
 	
 	/**
-	 * Creates a new PeriodAggregatorImpl
-	 * @param isDouble true for a double, false for a long
+	 * Indicates if this aggregator is in event time mode
+	 * @return true if values are applied to the bucket their timestamp belongs to
 	 */
-	public PeriodAggregatorImpl(boolean isDouble) {
-		address[0] = UnsafeAdapter.allocateAlignedMemory(TOTAL);
-		UnsafeAdapter.registerForDeAlloc(this);
-		UnsafeAdapter.setMemory(address[0], TOTAL, ZERO_BYTE);
-		UnsafeAdapter.putLong(address[0], UnsafeAdapter.NO_LOCK);
-		UnsafeAdapter.putByte(address[0] + DOUBLE_OR_LONG, isDouble ? DOUBLE : LONG);
-		reset();
+	public boolean isEventTime() {
+		return eventBuckets!=0;
 	}
 	
-//	/**
-//	 * Creates a new PeriodAggregatorImpl which is a direct copy of the passed impl
-//	 * @param youButACopy The aggregator to copy
-//	 */
-//	public ReadOnlyPeriodAggregator readOnly() {
-//		return new ReadOnlyPeriodAggregator(address[0]);
-//	}
+	/**
+	 * Returns the number of late values applied to an open event time bucket older than the newest
+	 * @return the number of late values, 0 if this aggregator is not in event time mode
+	 */
+	public long getLateCount() {
+		if(eventBuckets==0) return 0L;
+		return UnsafeAdapter.getLongVolatile(null, eventBase + EVENT_LATE);
+	}
 	
 	/**
-	 * Reset procedure after the flush procedure and init of a new aggregator
+	 * Returns the number of values dropped for being older than the event time watermark
+	 * @return the number of dropped values, 0 if this aggregator is not in event time mode
 	 */
-	protected void reset() {
-		if(isLong()) {
-			UnsafeAdapter.putLong(address[0] + MIN, Long.MAX_VALUE);
-			UnsafeAdapter.putLong(address[0] + MAX, Long.MIN_VALUE);
-		} else {
-			UnsafeAdapter.putDouble(address[0] + MIN, Double.MAX_VALUE);
-			UnsafeAdapter.putDouble(address[0] + MAX, Double.MIN_VALUE);			
-		}
-		UnsafeAdapter.putLong(address[0] + COUNT, 0L);
+	public long getDroppedCount() {
+		if(eventBuckets==0) return 0L;
+		return UnsafeAdapter.getLongVolatile(null, eventBase + EVENT_DROPPED);
+	}
+	
+	/**
+	 * Returns the event time watermark, the oldest open event time bucket
+	 * @return the watermark as a timestamp, or -1 if this aggregator is not in event time mode
+	 */
+	public long getWatermark() {
+		if(eventBuckets==0) return -1L;
+		return UnsafeAdapter.getLongVolatile(null, eventBase + EVENT_WATERMARK) * eventBucketMs;
+	}
+	
+	/**
+	 * Indicates if this aggregator is in striped mode
+	 * @return true if writer threads update per-thread cells that are merged when read
+	 */
+	public boolean isStriped() {
+		return stripeMask!=-1;
 	}
 	
 	/**
@@ -223,6 +1493,104 @@ public class PeriodAggregatorImpl implements IPeriodAggregator, DeAllocateMe {
 		return UnsafeAdapter.getByte(address[0] + RAW_ENABLED)!=ZERO_BYTE;  // ZERO_BYTE = false, ONE_BYTE = true
 	}
 	
+	/**
+	 * Indicates if this aggregator maintains a streaming quantile sketch
+	 * @return true if quantiles are enabled, false otherwise
+	 */
+	public boolean isQuantilesEnabled() {
+		return sketch!=null;
+	}
+	
+	/**
+	 * Sets the enabled state of the streaming quantile sketch. Quantiles from the sketch need no raw data,
+	 * and take a fixed {@link QuantileSketch#SIZE} bytes per aggregator.
+	 * @param enabled true to enable, false to disable
+	 */
+	public synchronized void setQuantilesEnabled(final boolean enabled) {
+		if(enabled && sketch==null) {
+			if(eventBuckets!=0) eventSketches = newSketches(eventBuckets);
+			sketch = new QuantileSketch();
+		} else if(!enabled && sketch!=null) {
+			sketch = null;
+			eventSketches = null;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>Like the other live measures, the quantile is over the values applied since the last roll, since each roll, 
+	 * made on every flush of the finest granularity, drains the sketch into the roll-up. The quantiles of completed
+	 * periods are read from {@link #getRolledPeriod(int)}. In event time mode, the quantile is over the open buckets.</p>
+	 * @see org.helios.rindle.period.IPeriodAggregator#getQuantile(double)
+	 */
+	@Override
+	public double getQuantile(final double quantile) {
+		final QuantileSketch qs = sketch;
+		if(qs==null) throw new IllegalStateException("The aggregator does not have quantiles enabled", new Throwable());
+		final QuantileSketch[] sketches = eventSketches;
+		if(sketches==null) return qs.getQuantile(quantile);
+		final long[] counts = qs.counts();
+		for(QuantileSketch es: sketches) {
+			final long[] bucket = es.counts();
+			for(int i = 0; i < counts.length; i++) counts[i] += bucket[i];
+		}
+		return QuantileSketch.quantile(counts, quantile);
+	}
+	
+	/**
+	 * Indicates if this aggregator maintains a HyperLogLog distinct value counter
+	 * @return true if distinct counting is enabled, false otherwise
+	 */
+	public boolean isDistinctEnabled() {
+		return hll!=null;
+	}
+	
+	/**
+	 * Sets the enabled state of the HyperLogLog distinct value counter. Distinct counts need no raw data,
+	 * and take a fixed {@link HyperLogLog#REGISTERS} bytes per aggregator.
+	 * @param enabled true to enable, false to disable
+	 */
+	public synchronized void setDistinctEnabled(final boolean enabled) {
+		if(enabled && hll==null) {
+			if(eventBuckets!=0) eventHlls = newHlls(eventBuckets);
+			hll = new HyperLogLog();
+		} else if(!enabled && hll!=null) {
+			hll = null;
+			eventHlls = null;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>Like the live quantiles, the distinct count is over the values applied since the last roll, since each roll 
+	 * drains the counter into the roll-up. The distinct counts of completed periods are read from {@link #getRolledPeriod(int)}.
+	 * In event time mode, the distinct count is over the open buckets.</p>
+	 * @see org.helios.rindle.period.IPeriodAggregator#getDistinctCount()
+	 */
+	@Override
+	public long getDistinctCount() {
+		final HyperLogLog h = hll;
+		if(h==null) return -1L;
+		final HyperLogLog[] hlls = eventHlls;
+		if(hlls==null) return h.getCount();
+		final byte[] registers = h.registers();
+		for(HyperLogLog eh: hlls) {
+			final byte[] bucket = eh.registers();
+			for(int i = 0; i < registers.length; i++) {
+				if(bucket[i] > registers[i]) registers[i] = bucket[i];
+			}
+		}
+		return HyperLogLog.estimate(registers);
+	}
+	
+	/**
+	 * Indicates if this aggregator is in lock-free mode
+	 * @return true if the count, min, max and sum are updated with CAS loops, false if updates are made under the aggregator lock
+	 */
+	public boolean isLockFree() {
+		return UnsafeAdapter.getByte(address[0] + LOCK_FREE)!=ZERO_BYTE;
+	}
+	
 	/**
 	 * Sets the enabled state of raw data aggregation
 	 * @param enabled true to enable, false to disable
@@ -246,9 +1614,19 @@ public class PeriodAggregatorImpl implements IPeriodAggregator, DeAllocateMe {
 	}
 
 	public long increment(long value) {
-		long newval = UnsafeAdapter.getLong(address[0] + COUNT) + value;
-		UnsafeAdapter.putLong(address[0] + COUNT, newval);
-		UnsafeAdapter.putLong(address[0] + LAST_TIME, System.currentTimeMillis());
+		return increment(active, value);
+	}
+	
+	/**
+	 * Increments the count of the passed record and sets its last time. Must be called while holding the lock of the passed record.
+	 * @param a The address of the record
+	 * @param value The amount to increment by
+	 * @return the new count
+	 */
+	protected long increment(final long a, final long value) {
+		long newval = UnsafeAdapter.getLong(a + COUNT) + value;
+		UnsafeAdapter.putLong(a + COUNT, newval);
+		UnsafeAdapter.putLong(a + LAST_TIME, System.currentTimeMillis());
 		return newval;
 	}
 
@@ -340,7 +1718,15 @@ public class PeriodAggregatorImpl implements IPeriodAggregator, DeAllocateMe {
 	 */
 	@Override
 	public long getLastTime() {
-		return UnsafeAdapter.getLong(address[0] + LAST_TIME);
+		final long rec = active;
+		long lastTime = UnsafeAdapter.getLong(rec + LAST_TIME);
+		final int mask = stripeMask;
+		final long cells = cells(rec);
+		for(int i = 0; i <= mask; i++) {
+			final long t = UnsafeAdapter.getLongVolatile(null, cells + (i * CELL_SIZE) + LAST_TIME);
+			if(t > lastTime) lastTime = t;
+		}
+		return lastTime;
 	}
 
 	/**
@@ -349,7 +1735,14 @@ public class PeriodAggregatorImpl implements IPeriodAggregator, DeAllocateMe {
 	 */
 	@Override
 	public long getCount() {
-		return UnsafeAdapter.getLong(address[0] + COUNT);
+		final long rec = active;
+		long count = UnsafeAdapter.getLong(rec + COUNT);
+		final int mask = stripeMask;
+		final long cells = cells(rec);
+		for(int i = 0; i <= mask; i++) {
+			count += UnsafeAdapter.getLongVolatile(null, cells + (i * CELL_SIZE) + COUNT);
+		}
+		return count;
 	}
 
 	/**
@@ -372,32 +1765,178 @@ public class PeriodAggregatorImpl implements IPeriodAggregator, DeAllocateMe {
 
 	@Override
 	public double getDoubleMean() {
-		return UnsafeAdapter.getDouble(address[0] + MEAN);
+		final long rec = active;
+		final boolean lockFree = isLockFree();
+		final int mask = stripeMask;
+		final long cells = cells(rec);
+		if(!lockFree && mask==-1) return UnsafeAdapter.getDouble(rec + MEAN);
+		long count = UnsafeAdapter.getLong(rec + COUNT);
+		double sum = lockFree ? casSumAt(rec) : sumAt(rec + SUM);
+		for(int i = 0; i <= mask; i++) {
+			final long cell = cells + (i * CELL_SIZE);
+			count += UnsafeAdapter.getLongVolatile(null, cell + COUNT);
+			sum += casSumAt(cell);
+		}
+		return count==0 ? 0D : sum / count;
+	}
+	
+	/**
+	 * Returns the sum stored at the passed address, which is a long for a long type and a double for a double type
+	 * @param fieldAddress The address of the sum
+	 * @return the sum
+	 */
+	protected double sumAt(final long fieldAddress) {
+		return sumOf(UnsafeAdapter.getLongVolatile(null, fieldAddress));
+	}
+	
+	/**
+	 * Decodes a stored sum, which is a long for a long type and a double for a double type
+	 * @param bits The stored sum
+	 * @return the sum
+	 */
+	protected double sumOf(final long bits) {
+		return isLong() ? bits : Double.longBitsToDouble(bits);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getDoubleSum()
+	 */
+	@Override
+	public double getDoubleSum() {
+		final long rec = active;
+		double sum = isLockFree() ? casSumAt(rec) : sumAt(rec + SUM);
+		final int mask = stripeMask;
+		final long cells = cells(rec);
+		for(int i = 0; i <= mask; i++) {
+			sum += casSumAt(cells + (i * CELL_SIZE));
+		}
+		return sum;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getLongSum()
+	 */
+	@Override
+	public long getLongSum() {
+		final long rec = active;
+		if(isDouble()) return (long)getDoubleSum();
+		long sum = isLockFree() ? casLongSumAt(rec) : UnsafeAdapter.getLongVolatile(null, rec + SUM);
+		final int mask = stripeMask;
+		final long cells = cells(rec);
+		for(int i = 0; i <= mask; i++) {
+			sum += casLongSumAt(cells + (i * CELL_SIZE));
+		}
+		return sum;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getSum()
+	 */
+	@Override
+	public Number getSum() {
+		if(isDouble()) return getDoubleSum();
+		return getLongSum();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getVariance()
+	 */
+	@Override
+	public double getVariance() {
+		final long rec = active;
+		final double[] moments = new double[3];
+		if(isLockFree()) {
+			mergeCasMoments(moments, rec);
+		} else {
+			mergeMoments(moments, UnsafeAdapter.getLongVolatile(null, rec + COUNT), sumAt(rec + SUM), UnsafeAdapter.getDouble(rec + M2));
+		}
+		final int mask = stripeMask;
+		final long cells = cells(rec);
+		for(int i = 0; i <= mask; i++) {
+			mergeCasMoments(moments, cells + (i * CELL_SIZE));
+		}
+		return moments[0]==0 ? 0D : moments[2] / moments[0];
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getStdDev()
+	 */
+	@Override
+	public double getStdDev() {
+		return Math.sqrt(getVariance());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>The rate is over the time since the current bucket started.</p>
+	 * @see org.helios.rindle.period.IPeriodAggregator#getRate()
+	 */
+	@Override
+	public double getRate() {
+		final long elapsed = System.currentTimeMillis() - bucketStart;
+		return elapsed < 1 ? 0D : getDoubleSum() * 1000D / elapsed;
 	}
 
 	@Override
 	public double getDoubleMin() {
-		return UnsafeAdapter.getDouble(address[0] + MIN);
+		final long rec = active;
+		double min = UnsafeAdapter.getDouble(rec + MIN);
+		final int mask = stripeMask;
+		final long cells = cells(rec);
+		for(int i = 0; i <= mask; i++) {
+			final double v = Double.longBitsToDouble(UnsafeAdapter.getLongVolatile(null, cells + (i * CELL_SIZE) + MIN));
+			if(v < min) min = v;
+		}
+		return min;
 	}
 
 	@Override
 	public double getDoubleMax() {
-		return UnsafeAdapter.getDouble(address[0] + MAX);
+		final long rec = active;
+		double max = UnsafeAdapter.getDouble(rec + MAX);
+		final int mask = stripeMask;
+		final long cells = cells(rec);
+		for(int i = 0; i <= mask; i++) {
+			final double v = Double.longBitsToDouble(UnsafeAdapter.getLongVolatile(null, cells + (i * CELL_SIZE) + MAX));
+			if(v > max) max = v;
+		}
+		return max;
 	}
 
 	@Override
 	public long getLongMean() {
-		return (long)UnsafeAdapter.getDouble(address[0] + MEAN);
+		return (long)getDoubleMean();
 	}
 
 	@Override
 	public long getLongMin() {
-		return UnsafeAdapter.getLong(address[0] + MIN);
+		final long rec = active;
+		long min = UnsafeAdapter.getLong(rec + MIN);
+		final int mask = stripeMask;
+		final long cells = cells(rec);
+		for(int i = 0; i <= mask; i++) {
+			final long v = UnsafeAdapter.getLongVolatile(null, cells + (i * CELL_SIZE) + MIN);
+			if(v < min) min = v;
+		}
+		return min;
 	}
 
 	@Override
 	public long getLongMax() {
-		return UnsafeAdapter.getLong(address[0] + MAX);
+		final long rec = active;
+		long max = UnsafeAdapter.getLong(rec + MAX);
+		final int mask = stripeMask;
+		final long cells = cells(rec);
+		for(int i = 0; i <= mask; i++) {
+			final long v = UnsafeAdapter.getLongVolatile(null, cells + (i * CELL_SIZE) + MAX);
+			if(v > max) max = v;
+		}
+		return max;
 	}
 
 	@Override
@@ -418,6 +1957,57 @@ public class PeriodAggregatorImpl implements IPeriodAggregator, DeAllocateMe {
 		return getLongMax();
 	}
 	
+	/**
+	 * Returns the bits of the last value applied to the active record or its cells, the one with the latest last time
+	 * @return the last value, as long bits for a double type
+	 */
+	protected long lastBits() {
+		final long rec = active;
+		long lastTime = UnsafeAdapter.getLongVolatile(null, rec + LAST_TIME);
+		long last = UnsafeAdapter.getLongVolatile(null, rec + LAST);
+		final int mask = stripeMask;
+		final long cells = cells(rec);
+		for(int i = 0; i <= mask; i++) {
+			final long cell = cells + (i * CELL_SIZE);
+			final long t = UnsafeAdapter.getLongVolatile(null, cell + LAST_TIME);
+			if(t > lastTime) {
+				lastTime = t;
+				last = UnsafeAdapter.getLongVolatile(null, cell + LAST);
+			}
+		}
+		return last;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getDoubleLast()
+	 */
+	@Override
+	public double getDoubleLast() {
+		final long bits = lastBits();
+		return isDouble() ? Double.longBitsToDouble(bits) : bits;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getLongLast()
+	 */
+	@Override
+	public long getLongLast() {
+		final long bits = lastBits();
+		return isDouble() ? (long)Double.longBitsToDouble(bits) : bits;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getLast()
+	 */
+	@Override
+	public Number getLast() {
+		if(isDouble()) return getDoubleLast();
+		return getLongLast();
+	}
+	
 	
 
 	/**
@@ -446,8 +2036,10 @@ public class PeriodAggregatorImpl implements IPeriodAggregator, DeAllocateMe {
 			} else {
 				builder.append(", min=").append(getLongMin())
 				.append(", max=").append(getLongMax())
-				.append(", mean=").append(getLongMean());				
+				.append(", mean=").append(getLongMean());
 			}
+			builder.append(", stddev=").append(getStdDev());
+			if(isCounter()) builder.append(", rate=").append(getRate());
 			if(isRawEnabled() && rawData!=null) {
 				builder.append("\n\traw=");
 				if(isd) {
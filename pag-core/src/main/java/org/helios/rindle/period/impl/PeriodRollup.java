@@ -0,0 +1,422 @@
+/**
+ * 
+ */
+package org.helios.rindle.period.impl;
+
+import org.helios.rindle.period.IPeriodAggregator;
+import org.helios.rindle.subscription.criteria.Retention;
+import org.helios.rindle.util.unsafe.DeAllocateMe;
+import org.helios.rindle.util.unsafe.UnsafeAdapter;
+
+/**
+ * <p>Title: PeriodRollup</p>
+ * <p>Description: Off-heap roll-up of an aggregator's finished finest granularity buckets into coarser periods.
+ * Each rolled-up period has an accumulating slot that every finished bucket is folded into, and a completed slot
+ * holding the last full period, which is replaced each time the period's number of buckets have been folded in.</p>
+ * <p>Completed periods have {@link Retention#INTERVAL_RESET} retention. A period can also keep a {@link Retention#STICKY} slot,
+ * which each completed period is folded into and which is never reset, so its min, max, mean, last value and last time carry across periods
+ * without being recomputed.</p>
+ * <p>Rolls are made by the flush thread and completed periods are read as {@link RolledPeriodAggregator} snapshots,
+ * so neither touches the ingest path.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>org.helios.rindle.period.impl.PeriodRollup</code></b>
+ */
+
+public class PeriodRollup implements DeAllocateMe {
+	/** The address[0] of the roll-up slots */
+	protected final long[] address = new long[1];
+	/** The rolled-up periods in seconds */
+	protected final int[] periods;
+	/** The number of finest granularity buckets in each rolled-up period */
+	protected final int[] buckets;
+	/** true if the rolled-up aggregator is a double type, false if it is a long type */
+	protected final boolean isDouble;
+	/** The quantile sketch of the bucket being rolled, null unless the aggregator has quantiles enabled */
+	protected QuantileSketch bucketSketch = null;
+	/** The accumulating quantile sketch of each rolled-up period */
+	protected QuantileSketch[] accumulatingSketches = null;
+	/** The completed quantile sketch of each rolled-up period */
+	protected QuantileSketch[] completedSketches = null;
+	/** The address[0] of the sticky slots, zero until a period is made sticky */
+	protected final long[] stickyAddress = new long[1];
+	/** Indicates which rolled-up periods keep a sticky slot */
+	protected final boolean[] sticky;
+	/** The number of completed instances folded into each sticky slot */
+	protected final long[] stickyFolds;
+	/** The sticky quantile sketch of each sticky rolled-up period, null until the first sticky period completes with quantiles enabled */
+	protected QuantileSketch[] stickySketches = null;
+	/** The distinct value counter of the bucket being rolled, null unless the aggregator has distinct counting enabled */
+	protected HyperLogLog bucketHll = null;
+	/** The accumulating distinct value counter of each rolled-up period */
+	protected HyperLogLog[] accumulatingHlls = null;
+	/** The completed distinct value counter of each rolled-up period */
+	protected HyperLogLog[] completedHlls = null;
+	/** The sticky distinct value counter of each sticky rolled-up period, null until the first sticky period completes with distinct counting enabled */
+	protected HyperLogLog[] stickyHlls = null;
+	
+	/** The offset of the count in a slot */
+	public final static byte COUNT = 0;
+	/** The offset of the min in a slot */
+	public final static byte MIN = COUNT + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the max in a slot */
+	public final static byte MAX = MIN + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the sum in a slot, always a double */
+	public final static byte SUM = MAX + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the sum of squared deviations from the mean in a slot */
+	public final static byte M2 = SUM + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the last time in a slot */
+	public final static byte LAST_TIME = M2 + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the last value in a slot, as long bits for a double type */
+	public final static byte LAST = LAST_TIME + UnsafeAdapter.LONG_SIZE;
+	/** The size of a slot */
+	public final static byte SLOT_SIZE = LAST + UnsafeAdapter.LONG_SIZE;
+	
+	/**
+	 * Creates a new PeriodRollup
+	 * @param isDouble true if the rolled-up aggregator is a double type, false if it is a long type
+	 * @param granularity The finest granularity period in seconds, which is the duration of one bucket
+	 * @param periods The periods to roll up in seconds, each a multiple of the granularity
+	 */
+	public PeriodRollup(boolean isDouble, int granularity, int[] periods) {
+		this.isDouble = isDouble;
+		this.periods = periods.clone();
+		buckets = new int[periods.length];
+		sticky = new boolean[periods.length];
+		stickyFolds = new long[periods.length];
+		for(int i = 0; i < periods.length; i++) {
+			if(periods[i] < granularity || periods[i]%granularity!=0) throw new IllegalArgumentException("Invalid roll-up period [" + periods[i] + "]. Must be a multiple of the granularity [" + granularity + "]", new Throwable());
+			buckets[i] = periods[i] / granularity;
+		}
+		final long size = periods.length * 2L * SLOT_SIZE;
+		address[0] = UnsafeAdapter.allocateAlignedMemory(size);
+		UnsafeAdapter.registerForDeAlloc(this);
+		for(int i = 0; i < periods.length * 2; i++) {
+			initSlot(address[0] + (i * SLOT_SIZE));
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.util.unsafe.DeAllocateMe#getAddresses()
+	 */
+	@Override
+	public long[][] getAddresses() {
+		return new long[][]{address, stickyAddress};
+	}
+	
+	/**
+	 * Returns the rolled-up periods
+	 * @return the rolled-up periods in seconds
+	 */
+	public int[] getPeriods() {
+		return periods.clone();
+	}
+	
+	/**
+	 * Makes the passed period keep a sticky slot that each completed instance of the period is folded into
+	 * @param period The period in seconds
+	 * @return true if the period is rolled up, false otherwise
+	 */
+	public synchronized boolean enableSticky(final int period) {
+		for(int i = 0; i < periods.length; i++) {
+			if(periods[i]!=period) continue;
+			if(stickyAddress[0]==0L) {
+				final long size = periods.length * (long)SLOT_SIZE;
+				final long addr = UnsafeAdapter.allocateAlignedMemory(size);
+				for(int x = 0; x < periods.length; x++) {
+					initSlot(addr + (x * SLOT_SIZE));
+				}
+				stickyAddress[0] = addr;
+			}
+			sticky[i] = true;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Indicates if the passed period keeps a sticky slot
+	 * @param period The period in seconds
+	 * @return true if the period is rolled up and sticky, false otherwise
+	 */
+	public synchronized boolean isSticky(final int period) {
+		for(int i = 0; i < periods.length; i++) {
+			if(periods[i]==period) return sticky[i];
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the quantile sketch that the aggregator drains its bucket's quantile sketch into before a {@link #roll},
+	 * creating the sketches for each rolled-up period on the first call
+	 * @return the bucket quantile sketch
+	 */
+	public synchronized QuantileSketch sketchBucket() {
+		if(bucketSketch==null) {
+			accumulatingSketches = new QuantileSketch[periods.length];
+			completedSketches = new QuantileSketch[periods.length];
+			for(int i = 0; i < periods.length; i++) {
+				accumulatingSketches[i] = new QuantileSketch();
+				completedSketches[i] = new QuantileSketch();
+			}
+			bucketSketch = new QuantileSketch();
+		}
+		return bucketSketch;
+	}
+	
+	/**
+	 * Returns the distinct value counter that the aggregator drains its bucket's counter into before a {@link #roll},
+	 * creating the counters for each rolled-up period on the first call
+	 * @return the bucket distinct value counter
+	 */
+	public synchronized HyperLogLog hllBucket() {
+		if(bucketHll==null) {
+			accumulatingHlls = new HyperLogLog[periods.length];
+			completedHlls = new HyperLogLog[periods.length];
+			for(int i = 0; i < periods.length; i++) {
+				accumulatingHlls[i] = new HyperLogLog();
+				completedHlls[i] = new HyperLogLog();
+			}
+			bucketHll = new HyperLogLog();
+		}
+		return bucketHll;
+	}
+	
+	/**
+	 * Folds a finished finest granularity bucket into every rolled-up period, then completes each period that the passed tick closes
+	 * @param tick The sequence number of the finished bucket, shared by all aggregators so that periods complete on the same ticks
+	 * @param count The number of values in the bucket
+	 * @param min The bucket min, as long bits for a double type
+	 * @param max The bucket max, as long bits for a double type
+	 * @param sum The bucket sum
+	 * @param m2 The bucket's sum of squared deviations from the mean
+	 * @param lastTime The time of the last value in the bucket
+	 * @param last The last value in the bucket, as long bits for a double type
+	 */
+	public synchronized void roll(final long tick, final long count, final long min, final long max, final double sum, final double m2, final long lastTime, final long last) {
+		final double[] moments = new double[3];
+		for(int i = 0; i < periods.length; i++) {
+			final long accumulating = address[0] + (i * 2 * SLOT_SIZE);
+			fold(accumulating, count, min, max, sum, m2, lastTime, last, moments);
+			if(bucketSketch!=null) accumulatingSketches[i].merge(bucketSketch);
+			if(bucketHll!=null) accumulatingHlls[i].merge(bucketHll);
+			if(tick % buckets[i]==0) {
+				if(sticky[i]) {
+					stickyFolds[i]++;
+					fold(stickyAddress[0] + (i * SLOT_SIZE), UnsafeAdapter.getLong(accumulating + COUNT), UnsafeAdapter.getLong(accumulating + MIN), UnsafeAdapter.getLong(accumulating + MAX), 
+							UnsafeAdapter.getDouble(accumulating + SUM), UnsafeAdapter.getDouble(accumulating + M2), UnsafeAdapter.getLong(accumulating + LAST_TIME), UnsafeAdapter.getLong(accumulating + LAST), moments);
+					if(bucketSketch!=null) {
+						if(stickySketches==null) stickySketches = new QuantileSketch[periods.length];
+						if(stickySketches[i]==null) stickySketches[i] = new QuantileSketch();
+						stickySketches[i].merge(accumulatingSketches[i]);
+					}
+					if(bucketHll!=null) {
+						if(stickyHlls==null) stickyHlls = new HyperLogLog[periods.length];
+						if(stickyHlls[i]==null) stickyHlls[i] = new HyperLogLog();
+						stickyHlls[i].merge(accumulatingHlls[i]);
+					}
+				}
+				UnsafeAdapter.copyMemory(accumulating, accumulating + SLOT_SIZE, SLOT_SIZE);
+				initSlot(accumulating);
+				if(bucketSketch!=null) {
+					completedSketches[i].copyFrom(accumulatingSketches[i]);
+					accumulatingSketches[i].reset();
+				}
+				if(bucketHll!=null) {
+					completedHlls[i].copyFrom(accumulatingHlls[i]);
+					accumulatingHlls[i].reset();
+				}
+			}
+		}
+		if(bucketSketch!=null) bucketSketch.reset();
+		if(bucketHll!=null) bucketHll.reset();
+	}
+	
+	/**
+	 * Rolls empty finished buckets for the ticks from the first to the last, inclusive. Once every period has completed twice,
+	 * its accumulating and completed instances are empty, so the remaining empty buckets are only counted towards the 
+	 * durations of the sticky periods rather than rolled one at a time.
+	 * @param firstTick The sequence number of the first empty bucket
+	 * @param lastTick The sequence number of the last empty bucket
+	 */
+	public synchronized void rollEmpty(final long firstTick, final long lastTick) {
+		int most = 1;
+		for(int b: buckets) {
+			if(b > most) most = b;
+		}
+		final long rolled = Math.min(lastTick, firstTick + (2L * most) - 1);
+		final long min = isDouble ? Double.doubleToRawLongBits(Double.MAX_VALUE) : Long.MAX_VALUE;
+		final long max = isDouble ? Double.doubleToRawLongBits(-Double.MAX_VALUE) : Long.MIN_VALUE;
+		for(long tick = firstTick; tick <= rolled; tick++) {
+			roll(tick, 0L, min, max, 0D, 0D, 0L, 0L);
+		}
+		for(int i = 0; i < periods.length; i++) {
+			if(sticky[i]) stickyFolds[i] += (lastTick / buckets[i]) - (rolled / buckets[i]);
+		}
+	}
+	
+	/**
+	 * Folds values that do not belong to a finished bucket into every rolled-up period's accumulating instance,
+	 * so they complete with the next bucket rolled
+	 * @param count The number of values
+	 * @param min The min, as long bits for a double type
+	 * @param max The max, as long bits for a double type
+	 * @param sum The sum
+	 * @param m2 The sum of squared deviations from the mean
+	 * @param lastTime The time of the last value
+	 * @param last The last value, as long bits for a double type
+	 */
+	public synchronized void accumulate(final long count, final long min, final long max, final double sum, final double m2, final long lastTime, final long last) {
+		final double[] moments = new double[3];
+		for(int i = 0; i < periods.length; i++) {
+			fold(address[0] + (i * 2 * SLOT_SIZE), count, min, max, sum, m2, lastTime, last, moments);
+		}
+	}
+	
+	/**
+	 * Folds a count, min, max, sum, sum of squared deviations, last time and last value into the slot at the passed address.
+	 * The last value replaces the slot's when its last time is not older.
+	 * Every field is folded even when the count is zero, so a sum drained without its count is not lost.
+	 * @param slot The address of the slot
+	 * @param count The count to fold in
+	 * @param min The min, as long bits for a double type
+	 * @param max The max, as long bits for a double type
+	 * @param sum The sum
+	 * @param m2 The sum of squared deviations from the mean
+	 * @param lastTime The last time
+	 * @param last The last value, as long bits for a double type
+	 * @param moments A scratch array for merging the moments
+	 */
+	protected void fold(final long slot, final long count, final long min, final long max, final double sum, final double m2, final long lastTime, final long last, final double[] moments) {
+		moments[0] = UnsafeAdapter.getLong(slot + COUNT);
+		moments[1] = UnsafeAdapter.getDouble(slot + SUM);
+		moments[2] = UnsafeAdapter.getDouble(slot + M2);
+		if(count > 0) {
+			PeriodAggregatorImpl.mergeMoments(moments, count, sum, m2);
+		} else {
+			moments[1] += sum;
+			moments[2] += m2;
+		}
+		UnsafeAdapter.putLong(slot + COUNT, UnsafeAdapter.getLong(slot + COUNT) + count);
+		UnsafeAdapter.putDouble(slot + SUM, moments[1]);
+		UnsafeAdapter.putDouble(slot + M2, moments[2]);
+		if(lastTime >= UnsafeAdapter.getLong(slot + LAST_TIME)) {
+			UnsafeAdapter.putLong(slot + LAST_TIME, lastTime);
+			UnsafeAdapter.putLong(slot + LAST, last);
+		}
+		if(isDouble) {
+			if(Double.longBitsToDouble(min) < UnsafeAdapter.getDouble(slot + MIN)) UnsafeAdapter.putLong(slot + MIN, min);
+			if(Double.longBitsToDouble(max) > UnsafeAdapter.getDouble(slot + MAX)) UnsafeAdapter.putLong(slot + MAX, max);
+		} else {
+			if(min < UnsafeAdapter.getLong(slot + MIN)) UnsafeAdapter.putLong(slot + MIN, min);
+			if(max > UnsafeAdapter.getLong(slot + MAX)) UnsafeAdapter.putLong(slot + MAX, max);
+		}
+	}
+	
+	/**
+	 * Returns a snapshot of the last completed instance of the passed period
+	 * @param globalId The global id of the rolled-up aggregator
+	 * @param period The period in seconds
+	 * @return the completed period or null if the period is not rolled up
+	 */
+	public IPeriodAggregator getPeriod(final long globalId, final int period) {
+		return getPeriod(globalId, period, Retention.INTERVAL_RESET);
+	}
+	
+	/**
+	 * Returns a snapshot of the passed period with the passed retention
+	 * @param globalId The global id of the rolled-up aggregator
+	 * @param period The period in seconds
+	 * @param retention {@link Retention#INTERVAL_RESET} for the last completed instance of the period, 
+	 * or {@link Retention#STICKY} for every completed instance folded together
+	 * @return the period or null if the period is not rolled up, or not sticky when sticky retention is requested
+	 */
+	public synchronized IPeriodAggregator getPeriod(final long globalId, final int period, final Retention retention) {
+		for(int i = 0; i < periods.length; i++) {
+			if(periods[i]!=period) continue;
+			final long slot;
+			final QuantileSketch[] sketches;
+			final HyperLogLog[] hlls;
+			final long seconds;
+			if(retention==Retention.STICKY) {
+				if(!sticky[i]) return null;
+				slot = stickyAddress[0] + (i * SLOT_SIZE);
+				sketches = stickySketches;
+				hlls = stickyHlls;
+				seconds = stickyFolds[i] * periods[i];
+			} else {
+				slot = address[0] + (((i * 2) + 1) * SLOT_SIZE);
+				sketches = completedSketches;
+				hlls = completedHlls;
+				seconds = periods[i];
+			}
+			return new RolledPeriodAggregator(globalId, period, isDouble, 
+					UnsafeAdapter.getLong(slot + COUNT), 
+					UnsafeAdapter.getLong(slot + MIN),
+					UnsafeAdapter.getLong(slot + MAX),
+					UnsafeAdapter.getDouble(slot + SUM),
+					UnsafeAdapter.getDouble(slot + M2),
+					UnsafeAdapter.getLong(slot + LAST_TIME),
+					UnsafeAdapter.getLong(slot + LAST),
+					seconds,
+					sketches==null || sketches[i]==null ? null : sketches[i].counts(),
+					hlls==null || hlls[i]==null ? -1L : hlls[i].getCount());
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns a measure of the last completed instance of the passed period without creating a snapshot
+	 * @param period The period in seconds
+	 * @param measure The measure to return
+	 * @return the measure, or NaN if the period is not rolled up or the completed instance has no values
+	 */
+	public synchronized double completedValue(final int period, final TopK.Measure measure) {
+		for(int i = 0; i < periods.length; i++) {
+			if(periods[i]!=period) continue;
+			final long completed = address[0] + (((i * 2) + 1) * SLOT_SIZE);
+			final long count = UnsafeAdapter.getLong(completed + COUNT);
+			if(count < 1) return Double.NaN;
+			switch(measure) {
+				case COUNT:
+					return count;
+				case MIN:
+					return isDouble ? UnsafeAdapter.getDouble(completed + MIN) : UnsafeAdapter.getLong(completed + MIN);
+				case MAX:
+					return isDouble ? UnsafeAdapter.getDouble(completed + MAX) : UnsafeAdapter.getLong(completed + MAX);
+				case MEAN:
+					return UnsafeAdapter.getDouble(completed + SUM) / count;
+				case SUM:
+					return UnsafeAdapter.getDouble(completed + SUM);
+				case STDDEV:
+					return Math.sqrt(UnsafeAdapter.getDouble(completed + M2) / count);
+				case RATE:
+					return UnsafeAdapter.getDouble(completed + SUM) / period;
+				default:
+					return Double.NaN;
+			}
+		}
+		return Double.NaN;
+	}
+	
+	/**
+	 * Initializes the slot at the passed address
+	 * @param slot The address of the slot
+	 */
+	protected void initSlot(final long slot) {
+		UnsafeAdapter.putLong(slot + COUNT, 0L);
+		UnsafeAdapter.putDouble(slot + SUM, 0D);
+		UnsafeAdapter.putDouble(slot + M2, 0D);
+		UnsafeAdapter.putLong(slot + LAST_TIME, 0L);
+		UnsafeAdapter.putLong(slot + LAST, isDouble ? Double.doubleToRawLongBits(0D) : 0L);
+		if(isDouble) {
+			UnsafeAdapter.putDouble(slot + MIN, Double.MAX_VALUE);
+			UnsafeAdapter.putDouble(slot + MAX, -Double.MAX_VALUE);
+		} else {
+			UnsafeAdapter.putLong(slot + MIN, Long.MAX_VALUE);
+			UnsafeAdapter.putLong(slot + MAX, Long.MIN_VALUE);
+		}
+	}
+
+}
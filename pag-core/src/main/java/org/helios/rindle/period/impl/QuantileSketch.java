@@ -0,0 +1,227 @@
+/**
+ * 
+ */
+package org.helios.rindle.period.impl;
+
+import org.helios.rindle.Constants;
+import org.helios.rindle.util.ConfigurationHelper;
+import org.helios.rindle.util.unsafe.DeAllocateMe;
+import org.helios.rindle.util.unsafe.UnsafeAdapter;
+
+/**
+ * <p>Title: QuantileSketch</p>
+ * <p>Description: A fixed size, mergeable, off-heap streaming quantile sketch with bounded relative error.
+ * Values are counted in logarithmically sized buckets, so that every value in a bucket is within the configured 
+ * {@link Constants#SKETCH_ACCURACY} of the bucket's representative value. Magnitudes below {@link Constants#SKETCH_MIN_VALUE}
+ * are counted as zero and magnitudes beyond the last bucket are counted in the last bucket.</p>
+ * <p>With the defaults, the sketch is 8KB and covers magnitudes from 0.001 to around 10<sup>14</sup> at 2% relative accuracy.
+ * Bucket counts are updated with CAS, so values can be recorded concurrently.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>org.helios.rindle.period.impl.QuantileSketch</code></b>
+ */
+
+public class QuantileSketch implements DeAllocateMe {
+	/** The address[0] of the sketch */
+	protected final long[] address = new long[1];
+	
+	/** The configured relative accuracy */
+	public static final double ACCURACY = ConfigurationHelper.getFloatSystemThenEnvProperty(Constants.SKETCH_ACCURACY, Constants.DEFAULT_SKETCH_ACCURACY);
+	/** The number of buckets for each of positive and negative values */
+	public static final int BUCKETS = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.SKETCH_BUCKETS, Constants.DEFAULT_SKETCH_BUCKETS);
+	/** The smallest magnitude distinguished from zero */
+	public static final double MIN_VALUE = ConfigurationHelper.getFloatSystemThenEnvProperty(Constants.SKETCH_MIN_VALUE, Constants.DEFAULT_SKETCH_MIN_VALUE);
+	/** The ratio between the bounds of a bucket */
+	public static final double GAMMA = (1D + ACCURACY) / (1D - ACCURACY);
+	/** The natural log of the bucket ratio */
+	public static final double LOG_GAMMA = Math.log(GAMMA);
+	/** The logarithmic index of the first bucket */
+	public static final int MIN_INDEX = (int)Math.floor(Math.log(MIN_VALUE) / LOG_GAMMA);
+	
+	/** The offset of the zero count */
+	public final static byte ZERO = 0;
+	/** The offset of the first positive bucket count */
+	public final static int POSITIVE = ZERO + UnsafeAdapter.LONG_SIZE;
+	/** The offset of the first negative bucket count */
+	public final static int NEGATIVE = POSITIVE + (BUCKETS * UnsafeAdapter.INT_SIZE);
+	/** The size of the sketch */
+	public final static int SIZE = NEGATIVE + (BUCKETS * UnsafeAdapter.INT_SIZE);
+	/** The number of slots in a heap snapshot of the sketch's counts */
+	public final static int SLOTS = (BUCKETS * 2) + 1;
+	
+	/**
+	 * Creates a new empty QuantileSketch
+	 */
+	public QuantileSketch() {
+		address[0] = UnsafeAdapter.allocateAlignedMemory(SIZE);
+		UnsafeAdapter.registerForDeAlloc(this);
+		reset();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.util.unsafe.DeAllocateMe#getAddresses()
+	 */
+	@Override
+	public long[][] getAddresses() {
+		return new long[][]{address};
+	}
+	
+	/**
+	 * Records a value
+	 * @param value The value to record
+	 */
+	public void record(final double value) {
+		final double magnitude = Math.abs(value);
+		if(magnitude < MIN_VALUE) {
+			casAdd(address[0] + ZERO, 1L);
+		} else {
+			casAddInt(address[0] + (value > 0 ? POSITIVE : NEGATIVE) + (index(magnitude) * UnsafeAdapter.INT_SIZE), 1);
+		}
+	}
+	
+	/**
+	 * Returns the total number of recorded values
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		long count = UnsafeAdapter.getLongVolatile(null, address[0] + ZERO);
+		for(int i = 0; i < BUCKETS * 2; i++) {
+			count += UnsafeAdapter.getIntVolatile(null, address[0] + POSITIVE + (i * UnsafeAdapter.INT_SIZE));
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the estimated value at the passed quantile
+	 * @param quantile The quantile, from 0 to 1
+	 * @return the estimated value, or 0 if no values have been recorded
+	 */
+	public double getQuantile(final double quantile) {
+		return quantile(counts(), quantile);
+	}
+	
+	/**
+	 * Returns a heap snapshot of the sketch's counts, ordered from the largest negative bucket, through zero, to the largest positive bucket
+	 * @return the counts
+	 */
+	public long[] counts() {
+		final long[] counts = new long[SLOTS];
+		for(int i = 0; i < BUCKETS; i++) {
+			counts[BUCKETS - 1 - i] = UnsafeAdapter.getIntVolatile(null, address[0] + NEGATIVE + (i * UnsafeAdapter.INT_SIZE));
+			counts[BUCKETS + 1 + i] = UnsafeAdapter.getIntVolatile(null, address[0] + POSITIVE + (i * UnsafeAdapter.INT_SIZE));
+		}
+		counts[BUCKETS] = UnsafeAdapter.getLongVolatile(null, address[0] + ZERO);
+		return counts;
+	}
+	
+	/**
+	 * Returns the estimated value at the passed quantile of a snapshot of sketch counts
+	 * @param counts The counts as returned by {@link #counts()}
+	 * @param quantile The quantile, from 0 to 1
+	 * @return the estimated value, or 0 if the snapshot has no values
+	 */
+	public static double quantile(final long[] counts, final double quantile) {
+		if(quantile < 0D || quantile > 1D) throw new IllegalArgumentException("Invalid quantile [" + quantile + "]. Must be between 0 and 1", new Throwable());
+		long total = 0;
+		for(long c: counts) total += c;
+		if(total==0) return 0D;
+		final double rank = quantile * (total - 1);
+		long cumulative = 0;
+		for(int slot = 0; slot < counts.length; slot++) {
+			cumulative += counts[slot];
+			if(cumulative > rank) {
+				if(slot==BUCKETS) return 0D;
+				return slot > BUCKETS ? value(slot - BUCKETS - 1) : -value(BUCKETS - 1 - slot);
+			}
+		}
+		return value(BUCKETS - 1);
+	}
+	
+	/**
+	 * Moves this sketch's counts into the passed sketch, leaving this sketch empty.
+	 * Each bucket is swapped out atomically, so values recorded concurrently are counted in one sketch or the other.
+	 * @param target The sketch to move the counts into
+	 */
+	public void drainInto(final QuantileSketch target) {
+		final long zero = PeriodAggregatorImpl.casSwap(address[0] + ZERO, 0L);
+		if(zero!=0) casAdd(target.address[0] + ZERO, zero);
+		for(int offset = POSITIVE; offset < SIZE; offset += UnsafeAdapter.INT_SIZE) {
+			int current;
+			do {
+				current = UnsafeAdapter.getIntVolatile(null, address[0] + offset);
+			} while(current!=0 && !UnsafeAdapter.compareAndSwapInt(null, address[0] + offset, current, 0));
+			if(current!=0) casAddInt(target.address[0] + offset, current);
+		}
+	}
+	
+	/**
+	 * Adds the passed sketch's counts to this sketch
+	 * @param other The sketch to merge
+	 */
+	public void merge(final QuantileSketch other) {
+		casAdd(address[0] + ZERO, UnsafeAdapter.getLongVolatile(null, other.address[0] + ZERO));
+		for(int offset = POSITIVE; offset < SIZE; offset += UnsafeAdapter.INT_SIZE) {
+			final int count = UnsafeAdapter.getIntVolatile(null, other.address[0] + offset);
+			if(count!=0) casAddInt(address[0] + offset, count);
+		}
+	}
+	
+	/**
+	 * Replaces this sketch's counts with a copy of the passed sketch's counts. Not safe against concurrent recording.
+	 * @param other The sketch to copy
+	 */
+	public void copyFrom(final QuantileSketch other) {
+		UnsafeAdapter.copyMemory(other.address[0], address[0], SIZE);
+	}
+	
+	/**
+	 * Clears all counts. Not safe against concurrent recording.
+	 */
+	public void reset() {
+		UnsafeAdapter.setMemory(address[0], SIZE, PeriodAggregatorImpl.ZERO_BYTE);
+	}
+	
+	/**
+	 * Returns the bucket index of the passed magnitude
+	 * @param magnitude The magnitude, which must be at least {@link #MIN_VALUE}
+	 * @return the bucket index
+	 */
+	protected static int index(final double magnitude) {
+		final int index = (int)Math.ceil(Math.log(magnitude) / LOG_GAMMA) - MIN_INDEX;
+		if(index < 0) return 0;
+		if(index >= BUCKETS) return BUCKETS - 1;
+		return index;
+	}
+	
+	/**
+	 * Returns the representative value of the passed bucket index, which is within the relative accuracy of every magnitude in the bucket
+	 * @param index The bucket index
+	 * @return the representative magnitude
+	 */
+	protected static double value(final int index) {
+		return 2D * Math.pow(GAMMA, index + MIN_INDEX) / (GAMMA + 1D);
+	}
+	
+	/**
+	 * Atomically adds to the int at the passed address
+	 * @param fieldAddress The address of the int
+	 * @param delta The amount to add
+	 */
+	protected static void casAddInt(final long fieldAddress, final int delta) {
+		int current;
+		do {
+			current = UnsafeAdapter.getIntVolatile(null, fieldAddress);
+		} while(!UnsafeAdapter.compareAndSwapInt(null, fieldAddress, current, current + delta));
+	}
+	
+	/**
+	 * Atomically adds to the long at the passed address
+	 * @param fieldAddress The address of the long
+	 * @param delta The amount to add
+	 */
+	protected static void casAdd(final long fieldAddress, final long delta) {
+		PeriodAggregatorImpl.casAdd(fieldAddress, delta);
+	}
+
+}
@@ -21,6 +21,9 @@ import org.helios.rindle.util.unsafe.UnsafeAdapter;
 /**
  * <p>Title: RawDataContainer</p>
  * <p>Description: Manages an off-heap array of raw data  </p>
+ * <p>The container grows by {@link #ALLOC_SIZE} slots up to {@link #MAX_SIZE}. Once it is full and cannot grow, it
+ * becomes a ring buffer: each append overwrites the oldest value at the head index and advances the head, so appends
+ * stay O(1) instead of shifting the whole array. The head is always 0 until the container starts rolling.</p>
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><b><code>org.helios.rindle.period.impl.RawDataContainer</code></b>
@@ -102,14 +105,15 @@ public class RawDataContainer implements DeAllocateMe {
 	
 
 	/**
-	 * Creates a new RawDataContainer of the specified number of elements minus one, meaning it will hold the capacity, current size and <b><code>totalSize-1</code></b> raw data elements.
+	 * Creates a new RawDataContainer of the specified number of elements minus two, meaning it will hold the capacity, current size, head and <b><code>totalSize-2</code></b> raw data elements.
 	 * @param totalSize The size of the container to create specified as the number of elements it can hold
 	 */
 	private RawDataContainer(int totalSize) {
 		final int totalBytes = totalSize << 3;
 		address[0] = UnsafeAdapter.allocateAlignedMemory(totalBytes);
-		UnsafeAdapter.putInt(address[0] + CAPACITY, totalSize -1);
+		UnsafeAdapter.putInt(address[0] + CAPACITY, totalSize - HEADER_SLOTS);
 		UnsafeAdapter.putInt(address[0] + SIZE, 0);
+		UnsafeAdapter.putInt(address[0] + HEAD, 0);
 //		UnsafeAdapter.setMemory(address[0] + DATA, totalBytes - DATA, ZERO_BYTE);
 		LOG.info("New Cap: {}, Size: {}", capacity(), size());
 //		internal = new SwappableRawDataContainer(address);	
@@ -122,7 +126,7 @@ public class RawDataContainer implements DeAllocateMe {
 	 * @param currentSize The current size
 	 */
 	protected void upgrade(int currentCapacity, int currentSize) {		
-		final int totalBytes = (currentCapacity + 1 + ALLOC_SIZE) << 3;
+		final int totalBytes = (currentCapacity + HEADER_SLOTS + ALLOC_SIZE) << 3;
 //		if(LOG.isDebugEnabled()) LOG.debug("Resizing Raw Container @ {}--({}) from {} to {}", address, UnsafeAdapter.sizeOf(address[0]), currentCapacity, currentCapacity + ALLOC_SIZE);
 		reallocate(totalBytes);
 //		LOG.debug("Resized....");
@@ -136,8 +140,12 @@ public class RawDataContainer implements DeAllocateMe {
 	public final static byte CAPACITY = 0;
 	/** The offset of the size */
 	public final static byte SIZE = UnsafeAdapter.INT_SIZE;
-	/** The offset of the start of the data array */
-	public final static byte DATA = SIZE + UnsafeAdapter.INT_SIZE;
+	/** The offset of the ring buffer head, the index of the oldest value */
+	public final static byte HEAD = SIZE + UnsafeAdapter.INT_SIZE;
+	/** The offset of the start of the data array, 8 byte aligned after the header */
+	public final static byte DATA = HEAD + UnsafeAdapter.LONG_SIZE;
+	/** The number of long slots taken by the header */
+	public final static int HEADER_SLOTS = DATA >> 3;
 	
 	/** A zero byte value */
 	public static final byte ZERO_BYTE = 0;
@@ -171,6 +179,26 @@ public class RawDataContainer implements DeAllocateMe {
 		return UnsafeAdapter.getInt(address[0] + SIZE);
 	}
 	
+	/**
+	 * Returns the ring buffer head, the physical index of the oldest value
+	 * @return the head index, 0 unless the container is rolling
+	 */
+	public int head() {
+		return UnsafeAdapter.getInt(address[0] + HEAD);
+	}
+	
+	/**
+	 * Translates a logical index, where 0 is the oldest value, to the address of its slot
+	 * @param index The logical index
+	 * @return the slot address
+	 */
+	protected long slotAddress(int index) {
+		int slot = head() + index;
+		final int cap = capacity();
+		if(slot >= cap) slot -= cap;
+		return address[0] + DATA + (slot << 3);
+	}
+	
 	/**
 	 * Increments the number of allocated slots in this container
 	 * @param count the number of slots to increment by
@@ -188,19 +216,38 @@ public class RawDataContainer implements DeAllocateMe {
 	 * @return the long at the specified index
 	 */
 	public long getLong(int index) {
-		return UnsafeAdapter.getLong(address[0] + DATA + (index << 3));
+		return UnsafeAdapter.getLong(slotAddress(index));
 	}
 
 	/**
-	 * Returns the raw data buffer as a long array
+	 * Returns the raw data buffer as a long array, oldest value first
 	 * @return a long array
 	 */
 	public long[] getLongs() {
-		return UnsafeAdapter.getLongArray(address[0] + DATA, size());
+		final int size = size();
+		final long[] arr = new long[size];
+		copyOut(arr, UnsafeAdapter.LONG_ARRAY_OFFSET, size);
+		return arr;
 	}
 	
 	/**
-	 * Returns the median of the raw data
+	 * Copies the raw data into the passed heap array in logical order, unwrapping the ring buffer in at most two copies
+	 * @param arr The long or double array to copy into
+	 * @param arrayOffset The base offset of the array
+	 * @param size The number of values to copy
+	 */
+	protected void copyOut(Object arr, long arrayOffset, int size) {
+		final int head = head();
+		final int first = Math.min(size, capacity() - head);
+		UnsafeAdapter.copyMemory(null, address[0] + DATA + (head << 3), arr, arrayOffset, first << 3);
+		if(first < size) {
+			UnsafeAdapter.copyMemory(null, address[0] + DATA, arr, arrayOffset + (first << 3), (size - first) << 3);
+		}
+	}
+	
+	/**
+	 * Returns the median of the raw data.
+	 * Medians and percentiles do not depend on the order of the values, so a rolling container is read in place.
 	 * @return the median of the raw data
 	 */
 	public double getDoubleMedian() {
@@ -215,6 +262,24 @@ public class RawDataContainer implements DeAllocateMe {
 		return Stats.medianl(address[0] + DATA, size());
 	}
 	
+	/**
+	 * Returns nearest rank percentiles of the raw data, selected in one pass over a single copy
+	 * @param percentiles The percentiles, from 0 to 100
+	 * @return the percentile values, parallel to the passed percentiles
+	 */
+	public double[] getDoublePercentiles(double...percentiles) {
+		return Stats.percentilesd(address[0] + DATA, size(), percentiles);
+	}
+	
+	/**
+	 * Returns nearest rank percentiles of the raw data, selected in one pass over a single copy
+	 * @param percentiles The percentiles, from 0 to 100
+	 * @return the percentile values, parallel to the passed percentiles
+	 */
+	public long[] getLongPercentiles(double...percentiles) {
+		return Stats.percentilesl(address[0] + DATA, size(), percentiles);
+	}
+	
 
 	/**
 	 * Returns the double at the specified index 
@@ -222,15 +287,18 @@ public class RawDataContainer implements DeAllocateMe {
 	 * @return the double at the specified index
 	 */
 	public double getDouble(int index) {
-		return UnsafeAdapter.getDouble(address[0] + DATA + (index << 3));
+		return UnsafeAdapter.getDouble(slotAddress(index));
 	}
 
 	/**
-	 * Returns the raw data buffer as a double array
+	 * Returns the raw data buffer as a double array, oldest value first
 	 * @return a double array
 	 */
 	public double[] getDoubles() {
-		return UnsafeAdapter.getDoubleArray(address[0] + DATA, size());
+		final int size = size();
+		final double[] arr = new double[size];
+		copyOut(arr, UnsafeAdapter.DOUBLE_ARRAY_OFFSET, size);
+		return arr;
 	}
 
 	/**
@@ -238,14 +306,7 @@ public class RawDataContainer implements DeAllocateMe {
 	 * @param value The value to append
 	 */
 	public void append(long value) {
-		int size;
-		if(size() == capacity()) {
-			size = checkCap();
-			UnsafeAdapter.putInt(address[0] + SIZE, size);
-		} else { 
-			size = incrementSize(1);
-		}		
-		UnsafeAdapter.putLong(address[0] + DATA + ((size-1)<< 3), value);
+		UnsafeAdapter.putLong(address[0] + DATA + (nextSlot() << 3), value);
 	}
 	
 	/**
@@ -253,49 +314,41 @@ public class RawDataContainer implements DeAllocateMe {
 	 * @param value The value to append
 	 */
 	public void append(double value) {
-		int size;
-		if(size() == capacity()) {
-			size = checkCap();
-			UnsafeAdapter.putInt(address[0] + SIZE, size);
-		} else { 
-			size = incrementSize(1);
-		}				
-		UnsafeAdapter.putDouble(address[0] + DATA + ((size-1)<< 3), value);
+		UnsafeAdapter.putDouble(address[0] + DATA + (nextSlot() << 3), value);
 	}
 	
 	
 	/**
-	 * Checks the capacity of the swappable container and returns the new size.
+	 * Checks the capacity of the swappable container and returns the physical index of the slot to write the next value to.
 	 * If the current container is full, it will be extended before this call returns.
 	 * If the current container is full and at maximum capacity, the container will be put into roll mode.
-	 * @return the new size of the container (i.e. the number of occupied data slots)
+	 * @return the physical index of the slot to write to
 	 */
-	protected int checkCap() {
-		int cap = capacity();
-		int size = size();
-		if(size() == cap) {
-			if(cap>=MAX_SIZE) {
-				roll(cap);
-			} else {
-				if(shouldStartRolling(size)) {
-					roll(cap);
-				} else {
-					upgrade(cap, size);
-					size++;
-				}
-			}
-		} else {
-			size++;			
+	protected int nextSlot() {
+		final int cap = capacity();
+		final int size = size();
+		if(size < cap) {
+			incrementSize(1);
+			return size;
+		}
+		if(cap>=MAX_SIZE || shouldStartRolling(size)) {
+			return roll(cap);
 		}
+		upgrade(cap, size);
+		incrementSize(1);
 		return size;
 	}
 	
 	/**
-	 * Rolls the raw data container, discarding the oldest value and making room for a new one
+	 * Rolls the raw data container, discarding the oldest value and making room for a new one.
+	 * The oldest value's slot is reused and the head advances to the next oldest, so the roll is O(1).
 	 * @param capacity The current capacity of the container
+	 * @return the physical index of the slot to write the new value to
 	 */
-	protected void roll(int capacity) {
-		UnsafeAdapter.copyMemory(address[0] + DATA + UnsafeAdapter.LONG_SIZE, address[0] + DATA , (capacity << 3) - UnsafeAdapter.LONG_SIZE);
+	protected int roll(int capacity) {
+		final int head = head();
+		UnsafeAdapter.putInt(address[0] + HEAD, head + 1==capacity ? 0 : head + 1);
+		return head;
 	}
 	
 	
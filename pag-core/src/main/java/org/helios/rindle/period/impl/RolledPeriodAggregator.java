@@ -0,0 +1,336 @@
+/**
+ * 
+ */
+package org.helios.rindle.period.impl;
+
+import org.helios.rindle.period.IPeriodAggregator;
+
+/**
+ * <p>Title: RolledPeriodAggregator</p>
+ * <p>Description: An immutable snapshot of a completed rolled-up period, read from a {@link PeriodRollup}.
+ * Raw data is not retained for rolled-up periods, so the raw data accessors throw an {@link IllegalStateException}.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>org.helios.rindle.period.impl.RolledPeriodAggregator</code></b>
+ */
+
+public class RolledPeriodAggregator implements IPeriodAggregator {
+	/** The global id */
+	protected final long id;
+	/** The period in seconds */
+	protected final int period;
+	/** true for a double type, false for a long type */
+	protected final boolean isDouble;
+	/** The number of values in the period */
+	protected final long count;
+	/** The min, as long bits for a double type */
+	protected final long min;
+	/** The max, as long bits for a double type */
+	protected final long max;
+	/** The sum */
+	protected final double sum;
+	/** The sum of squared deviations from the mean */
+	protected final double m2;
+	/** The time of the last value in the period */
+	protected final long lastTime;
+	/** The last value in the period, as long bits for a double type */
+	protected final long last;
+	/** The number of seconds covered, which is the period unless several instances of the period were folded together */
+	protected final long seconds;
+	/** A snapshot of the period's quantile sketch counts, null if the aggregator does not have quantiles enabled */
+	protected final long[] quantileCounts;
+	/** The estimated number of distinct values in the period, -1 if the aggregator does not have distinct counting enabled */
+	protected final long distinct;
+	
+	/**
+	 * Creates a new RolledPeriodAggregator
+	 * @param id The global id
+	 * @param period The period in seconds
+	 * @param isDouble true for a double type, false for a long type
+	 * @param count The number of values in the period
+	 * @param min The min, as long bits for a double type
+	 * @param max The max, as long bits for a double type
+	 * @param sum The sum
+	 * @param m2 The sum of squared deviations from the mean
+	 * @param lastTime The time of the last value in the period
+	 * @param last The last value in the period, as long bits for a double type
+	 * @param seconds The number of seconds covered
+	 * @param quantileCounts A snapshot of the period's quantile sketch counts, null if the aggregator does not have quantiles enabled
+	 * @param distinct The estimated number of distinct values in the period, -1 if the aggregator does not have distinct counting enabled
+	 */
+	RolledPeriodAggregator(long id, int period, boolean isDouble, long count, long min, long max, double sum, double m2, long lastTime, long last, long seconds, long[] quantileCounts, long distinct) {
+		this.id = id;
+		this.period = period;
+		this.isDouble = isDouble;
+		this.count = count;
+		this.min = min;
+		this.max = max;
+		this.sum = sum;
+		this.m2 = m2;
+		this.lastTime = lastTime;
+		this.last = last;
+		this.seconds = seconds;
+		this.quantileCounts = quantileCounts;
+		this.distinct = distinct;
+	}
+	
+	/**
+	 * Returns the rolled-up period
+	 * @return the period in seconds
+	 */
+	public int getPeriod() {
+		return period;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getId()
+	 */
+	@Override
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getLastTime()
+	 */
+	@Override
+	public long getLastTime() {
+		return lastTime;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#isRawEnabled()
+	 */
+	@Override
+	public boolean isRawEnabled() {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getCount()
+	 */
+	@Override
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#isLong()
+	 */
+	@Override
+	public boolean isLong() {
+		return !isDouble;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#isDouble()
+	 */
+	@Override
+	public boolean isDouble() {
+		return isDouble;
+	}
+
+	@Override
+	public double getDoubleMean() {
+		return count==0 ? 0D : sum / count;
+	}
+
+	@Override
+	public double getDoubleMin() {
+		return isDouble ? Double.longBitsToDouble(min) : min;
+	}
+
+	@Override
+	public double getDoubleMax() {
+		return isDouble ? Double.longBitsToDouble(max) : max;
+	}
+
+	@Override
+	public long getLongMean() {
+		return (long)getDoubleMean();
+	}
+
+	@Override
+	public long getLongMin() {
+		return isDouble ? (long)Double.longBitsToDouble(min) : min;
+	}
+
+	@Override
+	public long getLongMax() {
+		return isDouble ? (long)Double.longBitsToDouble(max) : max;
+	}
+
+	@Override
+	public Number getMean() {
+		if(isDouble) return getDoubleMean();
+		return getLongMean();
+	}
+
+	@Override
+	public Number getMin() {
+		if(isDouble) return getDoubleMin();
+		return getLongMin();
+	}
+
+	@Override
+	public Number getMax() {
+		if(isDouble) return getDoubleMax();
+		return getLongMax();
+	}
+
+	@Override
+	public double[] getDoubles() {
+		throw new IllegalStateException("Raw data is not retained for rolled-up periods", new Throwable());
+	}
+
+	@Override
+	public long[] getLongs() {
+		throw new IllegalStateException("Raw data is not retained for rolled-up periods", new Throwable());
+	}
+
+	@Override
+	public long getLongMedian() {
+		throw new IllegalStateException("Raw data is not retained for rolled-up periods", new Throwable());
+	}
+
+	@Override
+	public double getDoubleMedian() {
+		throw new IllegalStateException("Raw data is not retained for rolled-up periods", new Throwable());
+	}
+
+	@Override
+	public Number getMedian() {
+		throw new IllegalStateException("Raw data is not retained for rolled-up periods", new Throwable());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getDoubleSum()
+	 */
+	@Override
+	public double getDoubleSum() {
+		return sum;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getLongSum()
+	 */
+	@Override
+	public long getLongSum() {
+		return (long)sum;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getSum()
+	 */
+	@Override
+	public Number getSum() {
+		if(isDouble) return getDoubleSum();
+		return getLongSum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getDoubleLast()
+	 */
+	@Override
+	public double getDoubleLast() {
+		return isDouble ? Double.longBitsToDouble(last) : last;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getLongLast()
+	 */
+	@Override
+	public long getLongLast() {
+		return isDouble ? (long)Double.longBitsToDouble(last) : last;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getLast()
+	 */
+	@Override
+	public Number getLast() {
+		if(isDouble) return getDoubleLast();
+		return getLongLast();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getVariance()
+	 */
+	@Override
+	public double getVariance() {
+		return count==0 ? 0D : m2 / count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getStdDev()
+	 */
+	@Override
+	public double getStdDev() {
+		return Math.sqrt(getVariance());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getDistinctCount()
+	 */
+	@Override
+	public long getDistinctCount() {
+		return distinct;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getRate()
+	 */
+	@Override
+	public double getRate() {
+		return seconds < 1 ? 0D : sum / seconds;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.period.IPeriodAggregator#getQuantile(double)
+	 */
+	@Override
+	public double getQuantile(double quantile) {
+		if(quantileCounts==null) throw new IllegalStateException("The aggregator does not have quantiles enabled", new Throwable());
+		return QuantileSketch.quantile(quantileCounts, quantile);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("RolledPeriod [id=").append(id)
+			.append(", period=").append(period)
+			.append(", LastTime=").append(lastTime)
+			.append(", Count=").append(count)
+			.append(", nType=").append(isDouble ? "d" : "l");
+		if(count>0) {
+			builder.append(", min=").append(getMin())
+				.append(", max=").append(getMax())
+				.append(", mean=").append(getMean())
+				.append(", stddev=").append(getStdDev());
+		}
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
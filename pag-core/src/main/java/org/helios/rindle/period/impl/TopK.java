@@ -0,0 +1,274 @@
+/**
+ * 
+ */
+package org.helios.rindle.period.impl;
+
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * <p>Title: TopK</p>
+ * <p>Description: Streaming top-K of a selected set of aggregators, ranked by a {@link Measure} of a completed roll-up period.
+ * Each time the period completes, the registry's flush offers every selected aggregator's completed period to a bounded
+ * min-heap of K entries, then publishes the heap as the period's result. Memory is O(K) and consumers read the published
+ * result instead of scanning every aggregator.</p>
+ * <p>Offers may be made concurrently by the registry shards, so the heap is updated under this instance's monitor.
+ * The heap and the published result are preallocated and swapped, so a flush does not allocate.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>org.helios.rindle.period.impl.TopK</code></b>
+ */
+
+public class TopK {
+	/** The name of this top-K */
+	protected final String name;
+	/** The roll-up period ranked, in seconds */
+	protected final int period;
+	/** The number of finest granularity buckets in the period */
+	protected final int buckets;
+	/** The maximum number of entries */
+	protected final int k;
+	/** The measure that aggregators are ranked by */
+	protected final Measure measure;
+	/** The global ids of the selected aggregators */
+	protected final TLongHashSet globalIds;
+	
+	/** The global ids in the heap being built */
+	protected long[] heapIds;
+	/** The scores in the heap being built, a min-heap so the lowest ranked entry is at the root */
+	protected double[] heapScores;
+	/** The number of entries in the heap being built */
+	protected int heapSize = 0;
+	/** The global ids of the published result, highest ranked first */
+	protected long[] resultIds;
+	/** The scores of the published result, highest ranked first */
+	protected double[] resultScores;
+	/** The number of entries in the published result */
+	protected int resultSize = 0;
+	/** The tick that the published result completed on, 0 if no result has been published */
+	protected long resultTick = 0L;
+	
+	/**
+	 * <p>Title: Measure</p>
+	 * <p>Description: The measures of a completed period that aggregators can be ranked by</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><b><code>org.helios.rindle.period.impl.TopK.Measure</code></b>
+	 */
+	public static enum Measure {
+		/** The number of values */
+		COUNT,
+		/** The min value */
+		MIN,
+		/** The max value */
+		MAX,
+		/** The mean value */
+		MEAN,
+		/** The sum of the values */
+		SUM,
+		/** The standard deviation of the values */
+		STDDEV,
+		/** The per-second rate of the sum */
+		RATE;
+	}
+	
+	/**
+	 * Creates a new TopK
+	 * @param name The name of this top-K
+	 * @param granularity The finest granularity period in seconds
+	 * @param period The roll-up period to rank, in seconds, a multiple of the granularity
+	 * @param k The maximum number of entries
+	 * @param measure The measure to rank aggregators by
+	 * @param globalIds The global ids of the aggregators to rank
+	 */
+	public TopK(String name, int granularity, int period, int k, Measure measure, long...globalIds) {
+		if(name==null) throw new IllegalArgumentException("The passed name was null", new Throwable());
+		if(measure==null) throw new IllegalArgumentException("The passed measure was null", new Throwable());
+		if(k < 1) throw new IllegalArgumentException("Invalid K [" + k + "]", new Throwable());
+		if(period < granularity || period%granularity!=0) throw new IllegalArgumentException("Invalid top-K period [" + period + "]. Must be a multiple of the granularity [" + granularity + "]", new Throwable());
+		this.name = name;
+		this.period = period;
+		this.buckets = period / granularity;
+		this.k = k;
+		this.measure = measure;
+		this.globalIds = new TLongHashSet(globalIds);
+		heapIds = new long[k];
+		heapScores = new double[k];
+		resultIds = new long[k];
+		resultScores = new double[k];
+	}
+	
+	/**
+	 * Offers an aggregator's completed period, if the passed tick completes the period and the aggregator is selected.
+	 * Called by the registry's flush after the aggregator has been rolled.
+	 * @param globalId The global id of the aggregator
+	 * @param tick The sequence number of the rolled bucket
+	 * @param aggregator The aggregator
+	 */
+	public void offer(final long globalId, final long tick, final PeriodAggregatorImpl aggregator) {
+		if(tick % buckets!=0 || !globalIds.contains(globalId)) return;
+		final double score = aggregator.getRolledValue(period, measure);
+		if(Double.isNaN(score)) return;
+		offer(globalId, score);
+	}
+	
+	/**
+	 * Offers a score to the heap being built, replacing the lowest ranked entry if the heap is full and the score ranks higher
+	 * @param globalId The global id of the scored aggregator
+	 * @param score The score
+	 */
+	protected synchronized void offer(final long globalId, final double score) {
+		if(heapSize < k) {
+			int i = heapSize++;
+			while(i > 0) {
+				final int parent = (i - 1) >>> 1;
+				if(heapScores[parent] <= score) break;
+				heapIds[i] = heapIds[parent];
+				heapScores[i] = heapScores[parent];
+				i = parent;
+			}
+			heapIds[i] = globalId;
+			heapScores[i] = score;
+		} else if(score > heapScores[0]) {
+			siftDown(globalId, score);
+		}
+	}
+	
+	/**
+	 * Replaces the root of the full heap and sifts it down to its place
+	 * @param globalId The global id of the new entry
+	 * @param score The score of the new entry
+	 */
+	protected void siftDown(final long globalId, final double score) {
+		int i = 0;
+		final int half = heapSize >>> 1;
+		while(i < half) {
+			int child = (i << 1) + 1;
+			if(child + 1 < heapSize && heapScores[child + 1] < heapScores[child]) child++;
+			if(score <= heapScores[child]) break;
+			heapIds[i] = heapIds[child];
+			heapScores[i] = heapScores[child];
+			i = child;
+		}
+		heapIds[i] = globalId;
+		heapScores[i] = score;
+	}
+	
+	/**
+	 * Publishes the heap as the period's result if the passed tick completes the period, and starts a new heap.
+	 * Called by the registry's flush after every aggregator has been rolled and offered.
+	 * @param tick The sequence number of the rolled bucket
+	 */
+	public synchronized void complete(final long tick) {
+		if(tick % buckets!=0) return;
+		final long[] ids = resultIds;
+		final double[] scores = resultScores;
+		resultIds = heapIds;
+		resultScores = heapScores;
+		resultSize = heapSize;
+		resultTick = tick;
+		heapIds = ids;
+		heapScores = scores;
+		heapSize = 0;
+		// heap sort the published entries into descending order
+		for(int end = resultSize - 1; end > 0; end--) {
+			final long id = resultIds[end];
+			final double score = resultScores[end];
+			resultIds[end] = resultIds[0];
+			resultScores[end] = resultScores[0];
+			int i = 0;
+			final int half = end >>> 1;
+			while(i < half) {
+				int child = (i << 1) + 1;
+				if(child + 1 < end && resultScores[child + 1] < resultScores[child]) child++;
+				if(score <= resultScores[child]) break;
+				resultIds[i] = resultIds[child];
+				resultScores[i] = resultScores[child];
+				i = child;
+			}
+			resultIds[i] = id;
+			resultScores[i] = score;
+		}
+	}
+	
+	/**
+	 * Returns the global ids of the last published result
+	 * @return the global ids, highest ranked first
+	 */
+	public synchronized long[] getGlobalIds() {
+		final long[] ids = new long[resultSize];
+		System.arraycopy(resultIds, 0, ids, 0, resultSize);
+		return ids;
+	}
+	
+	/**
+	 * Returns the scores of the last published result
+	 * @return the scores, parallel to {@link #getGlobalIds()}
+	 */
+	public synchronized double[] getScores() {
+		final double[] scores = new double[resultSize];
+		System.arraycopy(resultScores, 0, scores, 0, resultSize);
+		return scores;
+	}
+	
+	/**
+	 * Returns the tick that the last published result completed on
+	 * @return the tick, or 0 if no result has been published
+	 */
+	public synchronized long getResultTick() {
+		return resultTick;
+	}
+	
+	/**
+	 * Returns the name of this top-K
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns the ranked roll-up period
+	 * @return the period in seconds
+	 */
+	public int getPeriod() {
+		return period;
+	}
+	
+	/**
+	 * Returns the maximum number of entries
+	 * @return the maximum number of entries
+	 */
+	public int getK() {
+		return k;
+	}
+	
+	/**
+	 * Returns the measure that aggregators are ranked by
+	 * @return the measure
+	 */
+	public Measure getMeasure() {
+		return measure;
+	}
+	
+	/**
+	 * Returns the number of selected aggregators
+	 * @return the number of selected aggregators
+	 */
+	public int getSelectedCount() {
+		return globalIds.size();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		final StringBuilder b = new StringBuilder("TopK [name=").append(name).append(", period=").append(period)
+			.append(", k=").append(k).append(", measure=").append(measure).append(", tick=").append(resultTick).append("]");
+		for(int i = 0; i < resultSize; i++) {
+			b.append("\n\t").append(resultIds[i]).append(" : ").append(resultScores[i]);
+		}
+		return b.toString();
+	}
+}
@@ -0,0 +1,435 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.store;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.helios.rindle.Constants;
+import org.helios.rindle.util.ConfigurationHelper;
+import org.helios.rindle.util.JMXHelper;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * <p>Title: GlobalIdCache</p>
+ * <p>Description: A bounded, concurrent, in-process near-cache of metric name and opaque key to global id resolutions
+ * which sits in front of an {@link IStore} so that repeat submissions of known metrics do not incur a store round trip.
+ * Coherence with the store is maintained by registering as an {@link IMetricDefinitionListener}: any cached
+ * resolution for a deleted global id is discarded, and a store purge discards everything.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.store.GlobalIdCache</code></p>
+ */
+
+public class GlobalIdCache implements IMetricDefinitionListener, GlobalIdCacheMXBean {
+	/** Instance logger */
+	protected final Logger log = LogManager.getLogger(getClass());
+	/** The store resolutions are delegated to on a cache miss */
+	protected final IStore istore;
+	/** The maximum number of entries in each cache */
+	protected final long maxSize;
+	/** Metric name to global id cache */
+	protected final Cache<String, Long> nameCache;
+	/** Metric opaque key to global id cache */
+	protected final Cache<OpaqueKey, Long> opaqueCache;
+	/** Metric name and opaque key pair to global id cache */
+	protected final Cache<NameOpaqueKey, Long> pairCache;
+	/** The number of entries invalidated by store events */
+	protected final AtomicLong invalidations = new AtomicLong(0L);
+	
+	/** The cache's JMX ObjectName */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName(new StringBuilder(GlobalIdCache.class.getPackage().getName()).append(":service=").append(GlobalIdCache.class.getSimpleName()));
+	
+	/**
+	 * Creates a new GlobalIdCache and registers it with the passed store for metric definition events
+	 * @param istore The store to delegate resolutions to
+	 */
+	public GlobalIdCache(IStore istore) {
+		if(istore==null) throw new IllegalArgumentException("The passed IStore was null", new Throwable());
+		this.istore = istore;
+		maxSize = ConfigurationHelper.getLongSystemThenEnvProperty(Constants.GID_CACHE_MAX_SIZE, Constants.DEFAULT_GID_CACHE_MAX_SIZE);
+		final int concurrency = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.GID_CACHE_CONCURRENCY, Constants.DEFAULT_GID_CACHE_CONCURRENCY);
+		log.info("GlobalId Cache Options:\n\tmaxSize: {}\n\tconcurrency: {}", maxSize, concurrency);
+		nameCache = CacheBuilder.newBuilder().maximumSize(maxSize).concurrencyLevel(concurrency).recordStats().build();
+		opaqueCache = CacheBuilder.newBuilder().maximumSize(maxSize).concurrencyLevel(concurrency).recordStats().build();
+		pairCache = CacheBuilder.newBuilder().maximumSize(maxSize).concurrencyLevel(concurrency).recordStats().build();
+		istore.addMetricDefinitionListener(this);
+		JMXHelper.registerMBean(OBJECT_NAME, this);
+	}
+	
+	/**
+	 * Returns the global metric id for the passed name and opaque key
+	 * @param name The metric name
+	 * @param opaqueKey The metric opaque key
+	 * @return The global id or -1 if both the name and opaque key were null
+	 * @see org.helios.rindle.store.IStore#getGlobalId(java.lang.String, byte[])
+	 */
+	public long getGlobalId(String name, byte[] opaqueKey) {
+		if(name==null) return getGlobalId(opaqueKey);
+		if(opaqueKey==null) return getGlobalId(name);
+		final NameOpaqueKey key = new NameOpaqueKey(name, opaqueKey);
+		Long gid = pairCache.getIfPresent(key);
+		if(gid!=null) return gid;
+		final long globalId = istore.getGlobalId(name, opaqueKey);
+		if(globalId!=-1L) pairCache.put(key.detach(), globalId);
+		return globalId;
+	}
+	
+	/**
+	 * Returns the global metric id for the passed name
+	 * @param name The metric name
+	 * @return The global id or -1 if the name was null
+	 * @see org.helios.rindle.store.IStore#getGlobalId(java.lang.String)
+	 */
+	public long getGlobalId(String name) {
+		if(name==null) return -1L;
+		Long gid = nameCache.getIfPresent(name);
+		if(gid!=null) return gid;
+		final long globalId = istore.getGlobalId(name);
+		if(globalId!=-1L) nameCache.put(name, globalId);
+		return globalId;
+	}
+	
+	/**
+	 * Returns the cached global metric id for the passed name without resolving it through the store on a miss
+	 * @param name The metric name
+	 * @return The cached global id or -1 if the name is not cached
+	 */
+	public long getCachedGlobalId(String name) {
+		if(name==null) return -1L;
+		Long gid = nameCache.getIfPresent(name);
+		return gid==null ? -1L : gid;
+	}
+	
+	/**
+	 * Returns the global metric ids for the passed names, resolving all cache misses in one store call
+	 * @param names The metric names
+	 * @return An array of global ids parallel to the passed names, with -1 for any null name
+	 * @see org.helios.rindle.store.IStore#resolveGlobalIds(java.lang.String[])
+	 */
+	public long[] getGlobalIds(String[] names) {
+		final long[] gids = new long[names.length];
+		int[] missIndexes = null;
+		int misses = 0;
+		for(int i = 0; i < names.length; i++) {
+			if(names[i]==null) { gids[i] = -1L; continue; }
+			Long gid = nameCache.getIfPresent(names[i]);
+			if(gid!=null) { gids[i] = gid; continue; }
+			if(missIndexes==null) missIndexes = new int[names.length - i];
+			missIndexes[misses++] = i;
+		}
+		if(misses==0) return gids;
+		final String[] missNames = new String[misses];
+		for(int i = 0; i < misses; i++) missNames[i] = names[missIndexes[i]];
+		final long[] resolved = istore.resolveGlobalIds(missNames);
+		for(int i = 0; i < misses; i++) {
+			final long globalId = resolved[i];
+			gids[missIndexes[i]] = globalId;
+			if(globalId!=-1L) nameCache.put(missNames[i], globalId);
+		}
+		return gids;
+	}
+
+	/**
+	 * Returns the global metric id for the passed opaque key
+	 * @param opaqueKey The metric opaque key
+	 * @return The global id or -1 if the opaque key was null
+	 * @see org.helios.rindle.store.IStore#getGlobalId(byte[])
+	 */
+	public long getGlobalId(byte[] opaqueKey) {
+		if(opaqueKey==null) return -1L;
+		final OpaqueKey key = new OpaqueKey(opaqueKey);
+		Long gid = opaqueCache.getIfPresent(key);
+		if(gid!=null) return gid;
+		final long globalId = istore.getGlobalId(opaqueKey);
+		if(globalId!=-1L) opaqueCache.put(key.detach(), globalId);
+		return globalId;
+	}
+	
+	/**
+	 * Returns the store this cache delegates to
+	 * @return the store
+	 */
+	public IStore getStore() {
+		return istore;
+	}
+	
+	/**
+	 * Discards all cached resolutions that resolved to the passed global id.
+	 * Scans every cached entry, so it is only called for deletes, which are rare.
+	 * @param globalId The global id to invalidate
+	 */
+	public void invalidate(long globalId) {
+		final Long gid = globalId;
+		invalidate(nameCache.asMap(), gid);
+		invalidate(opaqueCache.asMap(), gid);
+		invalidate(pairCache.asMap(), gid);
+	}
+	
+	/**
+	 * Removes all entries in the passed cache map with the passed global id value
+	 * @param map The cache map
+	 * @param gid The global id to remove
+	 */
+	private void invalidate(Map<?, Long> map, Long gid) {
+		for(Iterator<Long> iter = map.values().iterator(); iter.hasNext();) {
+			if(gid.equals(iter.next())) {
+				iter.remove();
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.GlobalIdCacheMXBean#invalidateAll()
+	 */
+	@Override
+	public void invalidateAll() {
+		invalidations.addAndGet(nameCache.size() + opaqueCache.size() + pairCache.size());
+		nameCache.invalidateAll();
+		opaqueCache.invalidateAll();
+		pairCache.invalidateAll();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.IMetricDefinitionListener#onMetricUpdated(long)
+	 */
+	@Override
+	public void onMetricUpdated(long globalId) {
+		/* Name to global id mappings do not change on update */
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.IMetricDefinitionListener#onMetricDeleted(long)
+	 */
+	@Override
+	public void onMetricDeleted(long globalId) {
+		invalidate(globalId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.IMetricDefinitionListener#onPurge()
+	 */
+	@Override
+	public void onPurge() {
+		log.info("Store purged. Invalidating all cached global ids");
+		invalidateAll();
+	}
+	
+	/**
+	 * Returns the combined stats of all three caches
+	 * @return the combined cache stats
+	 */
+	protected CacheStats stats() {
+		return nameCache.stats().plus(opaqueCache.stats()).plus(pairCache.stats());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.GlobalIdCacheMXBean#getMaxSize()
+	 */
+	@Override
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.GlobalIdCacheMXBean#getNameCacheSize()
+	 */
+	@Override
+	public long getNameCacheSize() {
+		return nameCache.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.GlobalIdCacheMXBean#getOpaqueCacheSize()
+	 */
+	@Override
+	public long getOpaqueCacheSize() {
+		return opaqueCache.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.GlobalIdCacheMXBean#getPairCacheSize()
+	 */
+	@Override
+	public long getPairCacheSize() {
+		return pairCache.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.GlobalIdCacheMXBean#getHitCount()
+	 */
+	@Override
+	public long getHitCount() {
+		return stats().hitCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.GlobalIdCacheMXBean#getMissCount()
+	 */
+	@Override
+	public long getMissCount() {
+		return stats().missCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.GlobalIdCacheMXBean#getHitRate()
+	 */
+	@Override
+	public double getHitRate() {
+		return stats().hitRate();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.GlobalIdCacheMXBean#getEvictionCount()
+	 */
+	@Override
+	public long getEvictionCount() {
+		return stats().evictionCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.GlobalIdCacheMXBean#getInvalidationCount()
+	 */
+	@Override
+	public long getInvalidationCount() {
+		return invalidations.get();
+	}
+	
+	/**
+	 * <p>Title: OpaqueKey</p>
+	 * <p>Description: Value based cache key wrapper for an opaque key byte array</p> 
+	 * <p><code>org.helios.rindle.store.GlobalIdCache.OpaqueKey</code></p>
+	 */
+	protected static class OpaqueKey {
+		/** The opaque key bytes */
+		protected final byte[] bytes;
+		/** The pre-computed hash code */
+		protected final int hashCode;
+		
+		/**
+		 * Creates a new OpaqueKey
+		 * @param bytes The opaque key bytes
+		 */
+		OpaqueKey(byte[] bytes) {
+			this.bytes = bytes;
+			this.hashCode = Arrays.hashCode(bytes);
+		}
+		
+		/**
+		 * Returns a copy of this key which does not share the caller's byte array
+		 * @return a detached key
+		 */
+		OpaqueKey detach() {
+			return new OpaqueKey(bytes.clone());
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			OpaqueKey other = (OpaqueKey) obj;
+			return hashCode==other.hashCode && Arrays.equals(bytes, other.bytes);
+		}
+	}
+	
+	/**
+	 * <p>Title: NameOpaqueKey</p>
+	 * <p>Description: Value based cache key for a metric name and opaque key pair</p> 
+	 * <p><code>org.helios.rindle.store.GlobalIdCache.NameOpaqueKey</code></p>
+	 */
+	protected static class NameOpaqueKey {
+		/** The metric name */
+		protected final String name;
+		/** The opaque key bytes */
+		protected final byte[] bytes;
+		/** The pre-computed hash code */
+		protected final int hashCode;
+		
+		/**
+		 * Creates a new NameOpaqueKey
+		 * @param name The metric name
+		 * @param bytes The opaque key bytes
+		 */
+		NameOpaqueKey(String name, byte[] bytes) {
+			this.name = name;
+			this.bytes = bytes;
+			this.hashCode = 31 * name.hashCode() + Arrays.hashCode(bytes);
+		}
+		
+		/**
+		 * Returns a copy of this key which does not share the caller's byte array
+		 * @return a detached key
+		 */
+		NameOpaqueKey detach() {
+			return new NameOpaqueKey(name, bytes.clone());
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			NameOpaqueKey other = (NameOpaqueKey) obj;
+			return hashCode==other.hashCode && name.equals(other.name) && Arrays.equals(bytes, other.bytes);
+		}
+	}
+
+}
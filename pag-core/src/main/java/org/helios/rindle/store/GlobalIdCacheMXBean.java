@@ -0,0 +1,94 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.store;
+
+/**
+ * <p>Title: GlobalIdCacheMXBean</p>
+ * <p>Description: MXBean interface for the {@link GlobalIdCache}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.store.GlobalIdCacheMXBean</code></p>
+ */
+
+public interface GlobalIdCacheMXBean {
+	/**
+	 * Returns the maximum number of entries in each of the name, opaque key and name/opaque key caches
+	 * @return the maximum number of entries per cache
+	 */
+	public long getMaxSize();
+	
+	/**
+	 * Returns the number of cached metric name resolutions
+	 * @return the number of cached metric name resolutions
+	 */
+	public long getNameCacheSize();
+
+	/**
+	 * Returns the number of cached opaque key resolutions
+	 * @return the number of cached opaque key resolutions
+	 */
+	public long getOpaqueCacheSize();
+	
+	/**
+	 * Returns the number of cached name and opaque key pair resolutions
+	 * @return the number of cached name and opaque key pair resolutions
+	 */
+	public long getPairCacheSize();
+	
+	/**
+	 * Returns the total number of resolutions served from the cache
+	 * @return the total number of cache hits
+	 */
+	public long getHitCount();
+	
+	/**
+	 * Returns the total number of resolutions that had to go to the store
+	 * @return the total number of cache misses
+	 */
+	public long getMissCount();
+	
+	/**
+	 * Returns the ratio of hits to total resolution requests
+	 * @return the cache hit rate
+	 */
+	public double getHitRate();
+	
+	/**
+	 * Returns the total number of entries evicted because a cache reached its maximum size
+	 * @return the total number of size evictions
+	 */
+	public long getEvictionCount();
+	
+	/**
+	 * Returns the total number of entries invalidated by store metric update, delete or purge events
+	 * @return the total number of invalidations
+	 */
+	public long getInvalidationCount();
+	
+	/**
+	 * Discards all cached resolutions
+	 */
+	public void invalidateAll();
+}
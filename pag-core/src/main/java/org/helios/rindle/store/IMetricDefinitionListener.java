@@ -0,0 +1,53 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.store;
+
+/**
+ * <p>Title: IMetricDefinitionListener</p>
+ * <p>Description: Defines a listener notified when metric definitions held in an {@link IStore} are changed outside of the caller's control,
+ * so that any locally held name/opaque key to global id resolutions can be invalidated.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.store.IMetricDefinitionListener</code></p>
+ */
+
+public interface IMetricDefinitionListener {
+	/**
+	 * Callback when an existing metric definition is updated, e.g. when a name and opaque key are merged into one global id
+	 * @param globalId The global id of the updated metric
+	 */
+	public void onMetricUpdated(long globalId);
+	
+	/**
+	 * Callback when an existing metric definition is deleted
+	 * @param globalId The global id of the deleted metric
+	 */
+	public void onMetricDeleted(long globalId);
+	
+	/**
+	 * Callback when the store is purged and all metric definitions are discarded
+	 */
+	public void onPurge();
+}
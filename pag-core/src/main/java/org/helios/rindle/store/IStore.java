@@ -65,6 +65,26 @@ public interface IStore extends RindleService {
 	 */
 	public long getGlobalId(byte[] opaqueKey);
 	
+	/**
+	 * Returns the global metric ids for the passed names in one store round trip, 
+	 * creating a new metric definition for any name not already known
+	 * @param names The metric names
+	 * @return An array of global ids parallel to the passed names, with -1 for any null name 
+	 */
+	public long[] resolveGlobalIds(String...names);
+	
+	/**
+	 * Registers a listener to be notified of metric definition updates, deletes and purges
+	 * @param listener The listener to register
+	 */
+	public void addMetricDefinitionListener(IMetricDefinitionListener listener);
+	
+	/**
+	 * Unregisters a metric definition listener
+	 * @param listener The listener to unregister
+	 */
+	public void removeMetricDefinitionListener(IMetricDefinitionListener listener);
+	
 	/**
 	 * Returns the metric name for the passed global id
 	 * @param globalId The global id of the metric
@@ -33,6 +33,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import javax.management.MXBean;
 
@@ -41,6 +42,7 @@ import org.helios.rindle.RindleService;
 import org.helios.rindle.control.RindleMain;
 import org.helios.rindle.json.JSON;
 import org.helios.rindle.metric.IMetricDefinition;
+import org.helios.rindle.store.IMetricDefinitionListener;
 import org.helios.rindle.store.IStore;
 import org.helios.rindle.store.redis.netty.EmptySubListener;
 import org.helios.rindle.util.StringHelper;
@@ -61,10 +63,14 @@ public class RedisStore extends AbstractRindleService implements IStore {
 	protected ScriptControl scriptControl = null;
 	/** The SHA1 bytes for the process script */
 	protected byte[] processNameOpaqueScriptSha = null;
+	/** The SHA1 bytes for the batched name process script */
+	protected byte[] processNamesScriptSha = null;
 	/** The SHA1 bytes for the get metrics script */
 	protected byte[] getMetricDefsScriptSha = null;
 	/** The SHA1 bytes for the macros script */
 	protected byte[] macrosScriptSha = null;
+	/** The registered metric definition listeners */
+	protected final Set<IMetricDefinitionListener> metricListeners = new CopyOnWriteArraySet<IMetricDefinitionListener>();
 
 	/** The default platform charset */
 	public static final Charset CHARSET = Charset.defaultCharset();
@@ -109,6 +115,11 @@ public class RedisStore extends AbstractRindleService implements IStore {
 	
 	
 	
+	/** The pub/sub channel on which new metric definitions are published */
+	public static final String METRIC_NEW_CHANNEL = "RINDLE.EVENT.METRIC.NEW";
+	/** The pub/sub channel on which updated metric definitions are published */
+	public static final String METRIC_UPDATE_CHANNEL = "RINDLE.EVENT.METRIC.UPDATE";
+	
 	/** The redis session script invoker */
 	private static final byte[] SESSION_INVOKER = "return session.invoke()".getBytes(CHARSET);
 	 
@@ -171,6 +182,36 @@ public class RedisStore extends AbstractRindleService implements IStore {
 		})[0];
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.IStore#resolveGlobalIds(java.lang.String[])
+	 */
+	@Override
+	public long[] resolveGlobalIds(final String... names) {
+		if(names==null || names.length==0) return EMPTY_LONG_ARR;
+		return connectionPool.redisTask(new RedisTask<long[]>() {
+			@Override
+			public long[] redisTask(ExtendedJedis jedis) throws Exception {
+				final byte[][] params = new byte[names.length + 1][];
+				for(int i = 0; i < names.length; i++) {
+					params[i] = strToBytes(names[i]);
+				}
+				params[names.length] = String.valueOf(System.currentTimeMillis()).getBytes(CHARSET);
+				Object result = scriptControl.invokeScript(jedis, processNamesScriptSha, names.length, params);
+				if(!(result instanceof ArrayList)) throw new Exception("Unrecognized type: [" + (result==null ? "null" : result.getClass().getName()) + "]");
+				ArrayList<?> results = (ArrayList<?>)result;
+				final long[] gids = new long[names.length];
+				for(int i = 0; i < names.length; i++) {
+					Object r = i < results.size() ? results.get(i) : null;
+					if(r instanceof Long) gids[i] = (Long)r;
+					else if(r instanceof byte[]) gids[i] = jedis.bytesToLong((byte[])r);
+					else gids[i] = -1L;
+				}
+				return gids;
+			}
+		});
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see org.helios.rindle.store.IStore#purge()
@@ -184,6 +225,9 @@ public class RedisStore extends AbstractRindleService implements IStore {
 				try {
 					jedis.setSocketTimeoutMillis(10000);
 					jedis.flushAll();
+					for(IMetricDefinitionListener listener: metricListeners) {
+						listener.onPurge();
+					}
 					return null;
 				} catch (Exception ex) {
 					throw new RuntimeException("Flushall failed", ex);
@@ -231,6 +275,7 @@ public class RedisStore extends AbstractRindleService implements IStore {
 					@Override
 					public void running() {
 						processNameOpaqueScriptSha = scriptControl.getScriptSha("processNameOpaque.lua");
+						processNamesScriptSha = scriptControl.getScriptSha("processNames.lua");
 						getMetricDefsScriptSha = scriptControl.getScriptSha("getMetricDefs.lua");
 						macrosScriptSha = scriptControl.getScriptSha("macros.lua");
 						service.notifyStarted();
@@ -239,13 +284,13 @@ public class RedisStore extends AbstractRindleService implements IStore {
 				}, RindleMain.getInstance().getThreadPool());
 				if(scriptControl.isRunning()) {
 					processNameOpaqueScriptSha = scriptControl.getScriptSha("processNameOpaque.lua");
+					processNamesScriptSha = scriptControl.getScriptSha("processNames.lua");
 					getMetricDefsScriptSha = scriptControl.getScriptSha("getMetricDefs.lua");
 					service.notifyStarted();
 				}
 				connectionPool.pubSub.subscribe("RINDLE.LOGGING.EVENT.LOG");
-				connectionPool.pubSub.subscribe("RINDLE.EVENT.METRIC.NEW");
-				connectionPool.pubSub.subscribe("RINDLE.EVENT.METRIC.UPDATE");
-				connectionPool.pubSub.subscribe("RINDLE.EVENT.METRIC.NEW");
+				connectionPool.pubSub.subscribe(METRIC_NEW_CHANNEL);
+				connectionPool.pubSub.subscribe(METRIC_UPDATE_CHANNEL);
 				connectionPool.pubSub.subscribe("RINDLE.PATTERN.*");
 				connectionPool.pubSub.subscribe("RINDLE.PATTERN.*");
 				
@@ -258,6 +303,9 @@ public class RedisStore extends AbstractRindleService implements IStore {
 					@Override
 					public void onChannelMessage(String channel, String message) {
 						log.info("[{}]:{}", channel, message);
+						if(METRIC_UPDATE_CHANNEL.equals(channel)) {
+							fireMetricUpdated(message);
+						}
 					}
 					@Override
 					public void onPatternMessage(String pattern, String channel, String message) {
@@ -311,6 +359,41 @@ public class RedisStore extends AbstractRindleService implements IStore {
 	}
 	
 
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.IStore#addMetricDefinitionListener(org.helios.rindle.store.IMetricDefinitionListener)
+	 */
+	@Override
+	public void addMetricDefinitionListener(IMetricDefinitionListener listener) {
+		if(listener!=null) metricListeners.add(listener);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.store.IStore#removeMetricDefinitionListener(org.helios.rindle.store.IMetricDefinitionListener)
+	 */
+	@Override
+	public void removeMetricDefinitionListener(IMetricDefinitionListener listener) {
+		if(listener!=null) metricListeners.remove(listener);
+	}
+	
+	/**
+	 * Notifies registered metric definition listeners of the metrics in a published update
+	 * @param json The JSON metric definitions published on the update channel
+	 */
+	protected void fireMetricUpdated(String json) {
+		if(metricListeners.isEmpty()) return;
+		try {
+			for(IMetricDefinition def: JSON.MAP.readValue(json, IMetricDefinition[].class)) {
+				for(IMetricDefinitionListener listener: metricListeners) {
+					listener.onMetricUpdated(def.getId());
+				}
+			}
+		} catch (Exception ex) {
+			log.error("Failed to process metric update [{}]", json, ex);
+		}
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see org.helios.rindle.store.IStore#getMetricName(long)
@@ -0,0 +1,357 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.submit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.helios.rindle.Constants;
+import org.helios.rindle.store.GlobalIdCache;
+import org.helios.rindle.util.ConfigurationHelper;
+import org.helios.rindle.util.JMXHelper;
+
+/**
+ * <p>Title: AsyncNameResolver</p>
+ * <p>Description: Resolves unseen metric names off the submitting threads. A value submitted for a name that is not in the
+ * {@link GlobalIdCache} is parked in a small per-name buffer and the name is queued for a background resolver thread, which
+ * resolves the queued names in batches through {@link GlobalIdCache#getGlobalIds(String[])} (one store call per batch) and then
+ * replays the buffered values through {@link SubmitImpl}. Values that arrive while a name is pending join its buffer,
+ * so a burst of new metric names never stalls ingest threads on the store.</p>
+ * <p>Each pending name buffers up to {@link Constants#ASYNC_RESOLVE_BUFFER} values. Further values are dropped and counted.
+ * If a name fails to resolve, its buffered values are discarded and the next value for the name queues it again.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.submit.AsyncNameResolver</code></p>
+ */
+
+public class AsyncNameResolver implements Runnable, AsyncNameResolverMXBean {
+	/** Instance logger */
+	protected final Logger log = LogManager.getLogger(getClass());
+	/** The submitter resolved values are replayed through */
+	protected final SubmitImpl submitter;
+	/** The global id cache names are resolved through */
+	protected final GlobalIdCache gidCache;
+	/** The pending names keyed by name */
+	protected final ConcurrentHashMap<String, PendingName> pending = new ConcurrentHashMap<String, PendingName>();
+	/** The queue of names to resolve */
+	protected final BlockingQueue<String> resolveQueue = new LinkedBlockingQueue<String>();
+	/** The maximum number of values buffered per pending name */
+	protected final int bufferSize;
+	/** The maximum number of names resolved in one store call */
+	protected final int batchSize;
+	/** The resolver thread */
+	protected final Thread resolverThread;
+	
+	/** The number of resolved names */
+	protected final AtomicLong resolved = new AtomicLong(0L);
+	/** The number of resolution batches */
+	protected final AtomicLong batches = new AtomicLong(0L);
+	/** The number of replayed values */
+	protected final AtomicLong replayed = new AtomicLong(0L);
+	/** The number of overflowed values */
+	protected final AtomicLong overflows = new AtomicLong(0L);
+	/** The number of failed resolutions */
+	protected final AtomicLong failed = new AtomicLong(0L);
+	
+	/** The resolver's JMX ObjectName */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName(new StringBuilder(AsyncNameResolver.class.getPackage().getName()).append(":service=").append(AsyncNameResolver.class.getSimpleName()));
+	
+	/**
+	 * Creates a new AsyncNameResolver and starts its resolver thread
+	 * @param submitter The submitter resolved values are replayed through
+	 * @param gidCache The global id cache names are resolved through
+	 */
+	public AsyncNameResolver(SubmitImpl submitter, GlobalIdCache gidCache) {
+		this.submitter = submitter;
+		this.gidCache = gidCache;
+		bufferSize = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.ASYNC_RESOLVE_BUFFER, Constants.DEFAULT_ASYNC_RESOLVE_BUFFER);
+		batchSize = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.ASYNC_RESOLVE_BATCH, Constants.DEFAULT_ASYNC_RESOLVE_BATCH);
+		log.info("Async Name Resolver Options:\n\tbufferSize: {}\n\tbatchSize: {}", bufferSize, batchSize);
+		resolverThread = new Thread(this, "AsyncNameResolver");
+		resolverThread.setDaemon(true);
+		resolverThread.start();
+		JMXHelper.registerMBean(OBJECT_NAME, this);
+	}
+	
+	/**
+	 * Submits a long value for the passed name, buffering it if the name is not resolved yet
+	 * @param name The metric name
+	 * @param value The value
+	 * @return the global id, or -1 if the name is pending resolution
+	 */
+	public long submit(String name, long value) {
+		return submit(name, value, false);
+	}
+	
+	/**
+	 * Submits a double value for the passed name, buffering it if the name is not resolved yet
+	 * @param name The metric name
+	 * @param value The value
+	 * @return the global id, or -1 if the name is pending resolution
+	 */
+	public long submit(String name, double value) {
+		return submit(name, Double.doubleToRawLongBits(value), true);
+	}
+	
+	/**
+	 * Dispatches the value if the name is resolved, otherwise buffers it against the pending name
+	 * @param name The metric name
+	 * @param bits The long value or raw double bits
+	 * @param isDouble true if the value is a double
+	 * @return the global id, or -1 if the name is pending resolution
+	 */
+	protected long submit(String name, long bits, boolean isDouble) {
+		if(name==null) return -1L;
+		long globalId = gidCache.getCachedGlobalId(name);
+		while(globalId==-1L) {
+			PendingName pendingName = pending.get(name);
+			if(pendingName==null) {
+				final PendingName newPending = new PendingName();
+				pendingName = pending.putIfAbsent(name, newPending);
+				if(pendingName==null) {
+					pendingName = newPending;
+					resolveQueue.add(name);
+				}
+			}
+			synchronized(pendingName) {
+				if(pendingName.failed) {
+					// the resolution failed after we looked it up, so queue the name again
+					pending.remove(name, pendingName);
+					continue;
+				}
+				globalId = pendingName.globalId;
+				if(globalId==-1L) {
+					if(!pendingName.add(bits, isDouble, bufferSize)) overflows.incrementAndGet();
+					return -1L;
+				}
+			}
+		}
+		if(isDouble) submitter.dispatch(globalId, Double.longBitsToDouble(bits));
+		else submitter.dispatch(globalId, bits);
+		return globalId;
+	}
+	
+	/**
+	 * <p>Resolves queued names in batches until interrupted</p>
+	 * {@inheritDoc}
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		final List<String> batch = new ArrayList<String>(batchSize);
+		while(true) {
+			try {
+				batch.add(resolveQueue.take());
+				resolveQueue.drainTo(batch, batchSize - 1);
+				resolve(batch.toArray(new String[batch.size()]));
+			} catch (InterruptedException iex) {
+				return;
+			} catch (Exception ex) {
+				log.error("Unexpected error in async name resolver", ex);
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Resolves the passed names and replays their buffered values
+	 * @param names The names to resolve
+	 */
+	protected void resolve(String[] names) {
+		long[] globalIds = null;
+		try {
+			globalIds = gidCache.getGlobalIds(names);
+			batches.incrementAndGet();
+		} catch (Exception ex) {
+			log.warn("Failed to resolve [{}] metric names", names.length, ex);
+		}
+		for(int i = 0; i < names.length; i++) {
+			final long globalId = globalIds==null ? -1L : globalIds[i];
+			final PendingName pendingName = pending.get(names[i]);
+			if(pendingName==null) continue;
+			synchronized(pendingName) {
+				if(globalId==-1L) {
+					pendingName.discard();
+				} else {
+					pendingName.globalId = globalId;
+					replayed.addAndGet(pendingName.replay(submitter));
+				}
+			}
+			pending.remove(names[i], pendingName);
+			if(globalId==-1L) failed.incrementAndGet();
+			else resolved.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * <p>Title: PendingName</p>
+	 * <p>Description: The buffered values of a name pending resolution. Guarded by its own monitor.</p> 
+	 * <p><code>org.helios.rindle.submit.AsyncNameResolver.PendingName</code></p>
+	 */
+	protected static class PendingName {
+		/** The resolved global id, or -1 while pending */
+		long globalId = -1L;
+		/** Set if the name failed to resolve and the buffered values were discarded */
+		boolean failed = false;
+		/** The buffered long values and raw double bits */
+		long[] values = new long[4];
+		/** Flags indicating which buffered values are doubles */
+		boolean[] doubles = new boolean[4];
+		/** The number of buffered values */
+		int count = 0;
+		
+		/**
+		 * Buffers a value
+		 * @param bits The long value or raw double bits
+		 * @param isDouble true if the value is a double
+		 * @param max The maximum number of buffered values
+		 * @return true if the value was buffered, false if the buffer was full
+		 */
+		boolean add(long bits, boolean isDouble, int max) {
+			if(count==max) return false;
+			if(count==values.length) {
+				final int newSize = Math.min(max, values.length << 1);
+				final long[] newValues = new long[newSize];
+				final boolean[] newDoubles = new boolean[newSize];
+				System.arraycopy(values, 0, newValues, 0, count);
+				System.arraycopy(doubles, 0, newDoubles, 0, count);
+				values = newValues;
+				doubles = newDoubles;
+			}
+			values[count] = bits;
+			doubles[count] = isDouble;
+			count++;
+			return true;
+		}
+		
+		/**
+		 * Replays the buffered values for the resolved global id and releases the buffer
+		 * @param submitter The submitter to dispatch the values through
+		 * @return the number of replayed values
+		 */
+		int replay(SubmitImpl submitter) {
+			final int replayed = count;
+			for(int i = 0; i < count; i++) {
+				if(doubles[i]) submitter.dispatch(globalId, Double.longBitsToDouble(values[i]));
+				else submitter.dispatch(globalId, values[i]);
+			}
+			values = null;
+			doubles = null;
+			count = 0;
+			return replayed;
+		}
+		
+		/**
+		 * Discards the buffered values of a name that failed to resolve
+		 */
+		void discard() {
+			failed = true;
+			values = null;
+			doubles = null;
+			count = 0;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.submit.AsyncNameResolverMXBean#getPendingNameCount()
+	 */
+	@Override
+	public int getPendingNameCount() {
+		return pending.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.submit.AsyncNameResolverMXBean#getBufferSize()
+	 */
+	@Override
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.submit.AsyncNameResolverMXBean#getBatchSize()
+	 */
+	@Override
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.submit.AsyncNameResolverMXBean#getResolvedCount()
+	 */
+	@Override
+	public long getResolvedCount() {
+		return resolved.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.submit.AsyncNameResolverMXBean#getBatchCount()
+	 */
+	@Override
+	public long getBatchCount() {
+		return batches.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.submit.AsyncNameResolverMXBean#getReplayedCount()
+	 */
+	@Override
+	public long getReplayedCount() {
+		return replayed.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.submit.AsyncNameResolverMXBean#getOverflowCount()
+	 */
+	@Override
+	public long getOverflowCount() {
+		return overflows.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.submit.AsyncNameResolverMXBean#getFailedCount()
+	 */
+	@Override
+	public long getFailedCount() {
+		return failed.get();
+	}
+}
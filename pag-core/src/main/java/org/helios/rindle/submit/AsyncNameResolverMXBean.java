@@ -0,0 +1,83 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.rindle.submit;
+
+/**
+ * <p>Title: AsyncNameResolverMXBean</p>
+ * <p>Description: MXBean interface for the {@link AsyncNameResolver}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.rindle.submit.AsyncNameResolverMXBean</code></p>
+ */
+
+public interface AsyncNameResolverMXBean {
+	/**
+	 * Returns the number of names waiting to be resolved
+	 * @return the number of pending names
+	 */
+	public int getPendingNameCount();
+	
+	/**
+	 * Returns the maximum number of values buffered per pending name
+	 * @return the per name buffer size
+	 */
+	public int getBufferSize();
+	
+	/**
+	 * Returns the maximum number of names resolved in one store call
+	 * @return the resolution batch size
+	 */
+	public int getBatchSize();
+	
+	/**
+	 * Returns the number of names resolved
+	 * @return the number of resolved names
+	 */
+	public long getResolvedCount();
+	
+	/**
+	 * Returns the number of store resolution calls made
+	 * @return the number of resolution batches
+	 */
+	public long getBatchCount();
+	
+	/**
+	 * Returns the number of buffered values replayed after their name was resolved
+	 * @return the number of replayed values
+	 */
+	public long getReplayedCount();
+	
+	/**
+	 * Returns the number of values dropped because their name's buffer was full
+	 * @return the number of overflowed values
+	 */
+	public long getOverflowCount();
+	
+	/**
+	 * Returns the number of names that failed to resolve, discarding their buffered values
+	 * @return the number of failed resolutions
+	 */
+	public long getFailedCount();
+}
@@ -33,7 +33,7 @@ public interface ISubmit {
 	 * Submits an unidentified metric value
 	 * @param name The metric name
 	 * @param value The value
-	 * @return the global id
+	 * @return the global id, or -1 if the name is pending asynchronous resolution
 	 */
 	public long submit(String name, long value);
 	
@@ -41,7 +41,7 @@ public interface ISubmit {
 	 * Submits an unidentified metric value
 	 * @param name The metric name
 	 * @param value The value
-	 * @return the global id
+	 * @return the global id, or -1 if the name is pending asynchronous resolution
 	 */
 	public long submit(String name, double value);
 	
@@ -76,4 +76,40 @@ public interface ISubmit {
 	 * @return the global id
 	 */
 	public void submit(long globalId, double value);
+	
+	/**
+	 * Submits a batch of unidentified metric values in columnar form.
+	 * All the names are resolved in one pass and the values are applied grouped by global id.
+	 * @param names The metric names
+	 * @param values The values, parallel to the names
+	 * @param timestamps The optional timestamps, parallel to the names. If null, the current time is used.
+	 * @return the global ids, parallel to the names
+	 */
+	public long[] submit(String[] names, long[] values, long[] timestamps);
+	
+	/**
+	 * Submits a batch of unidentified metric values in columnar form.
+	 * All the names are resolved in one pass and the values are applied grouped by global id.
+	 * @param names The metric names
+	 * @param values The values, parallel to the names
+	 * @param timestamps The optional timestamps, parallel to the names. If null, the current time is used.
+	 * @return the global ids, parallel to the names
+	 */
+	public long[] submit(String[] names, double[] values, long[] timestamps);
+	
+	/**
+	 * Submits a batch of identified metric values in columnar form, applied grouped by global id.
+	 * @param globalIds The global ids of the metrics
+	 * @param values The values, parallel to the global ids
+	 * @param timestamps The optional timestamps, parallel to the global ids. If null, the current time is used.
+	 */
+	public void submit(long[] globalIds, long[] values, long[] timestamps);
+	
+	/**
+	 * Submits a batch of identified metric values in columnar form, applied grouped by global id.
+	 * @param globalIds The global ids of the metrics
+	 * @param values The values, parallel to the global ids
+	 * @param timestamps The optional timestamps, parallel to the global ids. If null, the current time is used.
+	 */
+	public void submit(long[] globalIds, double[] values, long[] timestamps);
 }
@@ -3,8 +3,13 @@
  */
 package org.helios.rindle.submit;
 
+import org.helios.rindle.Constants;
+import org.helios.rindle.control.AdmissionController;
 import org.helios.rindle.control.Registry;
+import org.helios.rindle.ingest.IngestionPipeline;
+import org.helios.rindle.store.GlobalIdCache;
 import org.helios.rindle.store.IStore;
+import org.helios.rindle.util.ConfigurationHelper;
 
 /**
  * <p>Title: SubmitImpl</p>
@@ -17,6 +22,17 @@ import org.helios.rindle.store.IStore;
 public class SubmitImpl implements ISubmit {
 	protected final Registry registry;
 	protected final IStore istore;
+	/** The near-cache of global id resolutions in front of the istore */
+	protected final GlobalIdCache gidCache;
+	/** The optional ring buffer ingestion pipeline. If null, values are applied to the registry inline */
+	protected final IngestionPipeline pipeline;
+	/** The optional async resolver for unseen metric names. If null, names are resolved on the submitting thread */
+	protected final AsyncNameResolver asyncResolver;
+	/** The admission controller single values must pass before they are dispatched */
+	protected final AdmissionController admission = AdmissionController.getInstance();
+	
+	/** The admission control client id of in-process submitters */
+	public static final String CLIENT_ID = "local";
 	
 	
 	/**
@@ -25,8 +41,79 @@ public class SubmitImpl implements ISubmit {
 	 * @param istore The istore implementation
 	 */
 	public SubmitImpl(Registry registry, IStore istore) {
+		this(registry, istore, null);
+	}
+	
+	/**
+	 * Creates a new SubmitImpl 
+	 * @param registry the underlying registry
+	 * @param istore The istore implementation
+	 * @param pipeline The optional ingestion pipeline single values are published to. If null, values are applied to the registry inline.
+	 */
+	public SubmitImpl(Registry registry, IStore istore, IngestionPipeline pipeline) {
 		this.registry = registry;
 		this.istore = istore;
+		this.gidCache = new GlobalIdCache(istore);
+		this.pipeline = pipeline;
+		this.asyncResolver = ConfigurationHelper.getBooleanSystemThenEnvProperty(Constants.ASYNC_RESOLVE_ENABLED, Constants.DEFAULT_ASYNC_RESOLVE_ENABLED) ? new AsyncNameResolver(this, gidCache) : null;
+	}
+	
+	/**
+	 * Dispatches a single long value to the ingestion pipeline if one is configured, otherwise to the registry,
+	 * if the admission controller admits it
+	 * @param globalId The global id
+	 * @param value The value
+	 */
+	protected void dispatch(long globalId, long value) {
+		if(!admission.admit(CLIENT_ID, globalId, value)) return;
+		if(pipeline!=null) pipeline.publish(globalId, value);
+		else registry.processValue(globalId, value);
+	}
+	
+	/**
+	 * Dispatches a single double value to the ingestion pipeline if one is configured, otherwise to the registry,
+	 * if the admission controller admits it
+	 * @param globalId The global id
+	 * @param value The value
+	 */
+	protected void dispatch(long globalId, double value) {
+		if(!admission.admit(CLIENT_ID, globalId, value)) return;
+		if(pipeline!=null) pipeline.publish(globalId, value);
+		else registry.processValue(globalId, value);
+	}
+
+	/**
+	 * Passes each value of a columnar batch through the admission controller
+	 * @param globalIds The global ids of the batch
+	 * @param values The long values of the batch
+	 * @return the global ids to process, with -1 in place of the values that were not admitted
+	 */
+	protected long[] admit(long[] globalIds, long[] values) {
+		if(!admission.isEnabled()) return globalIds;
+		long[] admitted = globalIds;
+		for(int i = 0; i < globalIds.length && i < values.length; i++) {
+			if(globalIds[i]==-1L || admission.admit(CLIENT_ID, globalIds[i], values[i])) continue;
+			if(admitted==globalIds) admitted = globalIds.clone();
+			admitted[i] = -1L;
+		}
+		return admitted;
+	}
+	
+	/**
+	 * Passes each value of a columnar batch through the admission controller
+	 * @param globalIds The global ids of the batch
+	 * @param values The double values of the batch
+	 * @return the global ids to process, with -1 in place of the values that were not admitted
+	 */
+	protected long[] admit(long[] globalIds, double[] values) {
+		if(!admission.isEnabled()) return globalIds;
+		long[] admitted = globalIds;
+		for(int i = 0; i < globalIds.length && i < values.length; i++) {
+			if(globalIds[i]==-1L || admission.admit(CLIENT_ID, globalIds[i], values[i])) continue;
+			if(admitted==globalIds) admitted = globalIds.clone();
+			admitted[i] = -1L;
+		}
+		return admitted;
 	}
 
 	/**
@@ -35,8 +122,8 @@ public class SubmitImpl implements ISubmit {
 	 */
 	@Override
 	public long submit(String name, byte[] opaqueKey, long value) {
-		long globalId = istore.getGlobalId(name, opaqueKey);
-		registry.processValue(globalId, value);
+		long globalId = gidCache.getGlobalId(name, opaqueKey);
+		dispatch(globalId, value);
 		return globalId;
 	}
 
@@ -46,8 +133,8 @@ public class SubmitImpl implements ISubmit {
 	 */
 	@Override
 	public long submit(String name, byte[] opaqueKey, double value) {
-		long globalId = istore.getGlobalId(name, opaqueKey);
-		registry.processValue(globalId, value);
+		long globalId = gidCache.getGlobalId(name, opaqueKey);
+		dispatch(globalId, value);
 		return globalId;
 	}
 
@@ -57,8 +144,9 @@ public class SubmitImpl implements ISubmit {
 	 */
 	@Override
 	public long submit(String name, long value) {
-		long globalId = istore.getGlobalId(name);
-		registry.processValue(globalId, value);
+		if(asyncResolver!=null) return asyncResolver.submit(name, value);
+		long globalId = gidCache.getGlobalId(name);
+		dispatch(globalId, value);
 		return globalId;
 	}
 
@@ -68,8 +156,9 @@ public class SubmitImpl implements ISubmit {
 	 */
 	@Override
 	public long submit(String name, double value) {
-		long globalId = istore.getGlobalId(name);
-		registry.processValue(globalId, value);
+		if(asyncResolver!=null) return asyncResolver.submit(name, value);
+		long globalId = gidCache.getGlobalId(name);
+		dispatch(globalId, value);
 		return globalId;
 	}
 
@@ -79,8 +168,8 @@ public class SubmitImpl implements ISubmit {
 	 */
 	@Override
 	public long submit(byte[] opaqueKey, long value) {
-		long globalId = istore.getGlobalId(opaqueKey);
-		registry.processValue(globalId, value);
+		long globalId = gidCache.getGlobalId(opaqueKey);
+		dispatch(globalId, value);
 		return globalId;
 	}
 
@@ -90,8 +179,8 @@ public class SubmitImpl implements ISubmit {
 	 */
 	@Override
 	public long submit(byte[] opaqueKey, double value) {
-		long globalId = istore.getGlobalId(opaqueKey);
-		registry.processValue(globalId, value);
+		long globalId = gidCache.getGlobalId(opaqueKey);
+		dispatch(globalId, value);
 		return globalId;
 	}
 
@@ -101,7 +190,7 @@ public class SubmitImpl implements ISubmit {
 	 */
 	@Override
 	public void submit(long globalId, long value) {
-		registry.processValue(globalId, value);
+		dispatch(globalId, value);
 	}
 
 	/**
@@ -110,7 +199,47 @@ public class SubmitImpl implements ISubmit {
 	 */
 	@Override
 	public void submit(long globalId, double value) {
-		registry.processValue(globalId, value);
+		dispatch(globalId, value);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.submit.ISubmit#submit(java.lang.String[], long[], long[])
+	 */
+	@Override
+	public long[] submit(String[] names, long[] values, long[] timestamps) {
+		final long[] globalIds = gidCache.getGlobalIds(names);
+		registry.processValues(admit(globalIds, values), values, timestamps);
+		return globalIds;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.submit.ISubmit#submit(java.lang.String[], double[], long[])
+	 */
+	@Override
+	public long[] submit(String[] names, double[] values, long[] timestamps) {
+		final long[] globalIds = gidCache.getGlobalIds(names);
+		registry.processValues(admit(globalIds, values), values, timestamps);
+		return globalIds;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.submit.ISubmit#submit(long[], long[], long[])
+	 */
+	@Override
+	public void submit(long[] globalIds, long[] values, long[] timestamps) {
+		registry.processValues(admit(globalIds, values), values, timestamps);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.rindle.submit.ISubmit#submit(long[], double[], long[])
+	 */
+	@Override
+	public void submit(long[] globalIds, double[] values, long[] timestamps) {
+		registry.processValues(admit(globalIds, values), values, timestamps);
 	}
 
 }
@@ -45,7 +45,11 @@ public enum DataContent implements PickMask<DataContent> {
 	/** The metric opaque key */
 	OPAQUE_KEY,
 	/** The metric data */
-	DATA;	
+	DATA,
+	/** Streaming quantile estimates of the metric data, from a fixed size sketch that does not require raw data */
+	QUANTILES,
+	/** HyperLogLog estimates of the number of distinct values of the metric data, from a fixed size counter that does not require raw data */
+	DISTINCT;	
 	
 	/** A map of DataContents keyed by the enum ordinal */
 	public static final Map<Integer, DataContent> ORD2ENUM = BitMaskedEnum.Support.generateIntOrdinalMap(DataContent.values());
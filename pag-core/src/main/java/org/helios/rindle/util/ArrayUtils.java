@@ -54,6 +54,94 @@ public class ArrayUtils {
 	
 	
 	
+	/**
+	 * Returns an int array populated with the sequence <b><code>0..size-1</code></b>
+	 * @param size The size of the array
+	 * @return the sequence array
+	 */
+	public static int[] sequence(int size) {
+		int[] seq = new int[size];
+		for(int i = 0; i < size; i++) seq[i] = i;
+		return seq;
+	}
+	
+	/**
+	 * Sorts the passed keys in ascending order, applying the same permutation to the passed parallel index array,
+	 * so that after the sort, <b><code>indexes[i]</code></b> is the original position of <b><code>keys[i]</code></b>
+	 * when the index array was initialized with {@link #sequence(int)}.
+	 * <p>Equal keys are ordered by their index, so with a {@link #sequence(int)} index array the sort is stable
+	 * and values for the same key keep their submission order.</p>
+	 * @param keys The keys to sort
+	 * @param indexes The parallel index array
+	 */
+	public static void sortParallel(long[] keys, int[] indexes) {
+		if(keys.length!=indexes.length) throw new IllegalArgumentException("Key array length [" + keys.length + "] != index array length [" + indexes.length + "]");
+		sortParallel(keys, indexes, 0, keys.length-1);
+	}
+	
+	/**
+	 * Quick sorts the passed range of keys and parallel indexes
+	 * @param keys The keys to sort
+	 * @param indexes The parallel index array
+	 * @param lo The low index of the range, inclusive
+	 * @param hi The high index of the range, inclusive
+	 */
+	private static void sortParallel(long[] keys, int[] indexes, int lo, int hi) {
+		while(lo < hi) {
+			if(hi - lo < 16) {
+				for(int i = lo + 1; i <= hi; i++) {
+					for(int j = i; j > lo && less(keys[j], indexes[j], keys[j-1], indexes[j-1]); j--) swap(keys, indexes, j, j-1);
+				}
+				return;
+			}
+			final int mid = (lo + hi) >>> 1;
+			final long pivot = keys[mid];
+			final int pivotIndex = indexes[mid];
+			int i = lo, j = hi;
+			while(i <= j) {
+				while(less(keys[i], indexes[i], pivot, pivotIndex)) i++;
+				while(less(pivot, pivotIndex, keys[j], indexes[j])) j--;
+				if(i <= j) {
+					swap(keys, indexes, i, j);
+					i++; j--;
+				}
+			}
+			// recurse into the smaller partition, loop on the larger
+			if(j - lo < hi - i) {
+				sortParallel(keys, indexes, lo, j);
+				lo = i;
+			} else {
+				sortParallel(keys, indexes, i, hi);
+				hi = j;
+			}
+		}
+	}
+	
+	/**
+	 * Compares two key and index pairs by key, then by index
+	 * @param keyA The first key
+	 * @param indexA The first index
+	 * @param keyB The second key
+	 * @param indexB The second index
+	 * @return true if the first pair sorts before the second
+	 */
+	private static boolean less(long keyA, int indexA, long keyB, int indexB) {
+		return keyA < keyB || (keyA==keyB && indexA < indexB);
+	}
+	
+	/**
+	 * Swaps two positions in the parallel key and index arrays
+	 * @param keys The key array
+	 * @param indexes The index array
+	 * @param a The first position
+	 * @param b The second position
+	 */
+	private static void swap(long[] keys, int[] indexes, int a, int b) {
+		final long k = keys[a]; keys[a] = keys[b]; keys[b] = k;
+		final int x = indexes[a]; indexes[a] = indexes[b]; indexes[b] = x;
+	}
+	
+	
 	/**
 	 * Prints a formatted matrix from the passed array
 	 * @param arr The array to print
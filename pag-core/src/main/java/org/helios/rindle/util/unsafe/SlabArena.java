@@ -0,0 +1,153 @@
+/**
+ * 
+ */
+package org.helios.rindle.util.unsafe;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.BitSet;
+
+/**
+ * <p>Title: SlabArena</p>
+ * <p>Description: An off-heap slab allocator that packs fixed size records contiguously in large slabs,
+ * addressed by slot index. Reclaimed slots are kept on a free list and reused before the arena grows.</p>
+ * <p>Records allocated from an arena are not tracked by the {@link DeAllocateMe} reference queue, so they must be
+ * explicitly returned with {@link #free(int)}. Slabs are never returned to the OS, since a freed slot is always reused.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>org.helios.rindle.util.unsafe.SlabArena</code></b>
+ */
+
+public class SlabArena {
+	/** The size of a slot in bytes, the record size rounded up to a multiple of 8 */
+	protected final int slotSize;
+	/** The number of slots in each slab, a power of 2 */
+	protected final int slotsPerSlab;
+	/** The shift that converts a slot index to a slab index */
+	protected final int shift;
+	/** The mask that converts a slot index to a slot offset in its slab */
+	protected final int mask;
+	/** The addresses of the allocated slabs */
+	protected volatile long[] slabs = new long[0];
+	/** The reclaimed slots available for reuse */
+	protected final TIntArrayList freeSlots = new TIntArrayList();
+	/** The currently allocated slots */
+	protected final BitSet allocatedSlots = new BitSet();
+	/** The next never-allocated slot */
+	protected int nextSlot = 0;
+	/** The number of currently allocated slots */
+	protected volatile int allocated = 0;
+	
+	/**
+	 * Creates a new SlabArena
+	 * @param recordSize The size of the records in bytes
+	 * @param slotsPerSlab The number of slots in each slab. If not a power of 2, the next highest power of 2 will be used.
+	 */
+	public SlabArena(int recordSize, int slotsPerSlab) {
+		if(recordSize < 1) throw new IllegalArgumentException("Invalid record size [" + recordSize + "]", new Throwable());
+		slotSize = (recordSize + 7) & ~7;
+		this.slotsPerSlab = UnsafeAdapter.findNextPositivePowerOfTwo(Math.max(1, slotsPerSlab));
+		shift = Integer.numberOfTrailingZeros(this.slotsPerSlab);
+		mask = this.slotsPerSlab - 1;
+	}
+	
+	/**
+	 * Allocates a zeroed slot, reusing a reclaimed slot if one is available
+	 * @return the allocated slot index
+	 */
+	public synchronized int allocate() {
+		final int slot;
+		if(!freeSlots.isEmpty()) {
+			slot = freeSlots.removeAt(freeSlots.size()-1);
+		} else {
+			if(nextSlot==slabs.length * slotsPerSlab) grow();
+			slot = nextSlot++;
+		}
+		allocatedSlots.set(slot);
+		allocated++;
+		UnsafeAdapter.setMemory(address(slot), slotSize, (byte)0);
+		return slot;
+	}
+	
+	/**
+	 * Returns a slot to the arena for reuse. The slot's record must not be accessed after it has been freed.
+	 * @param slot The slot index to free
+	 */
+	public synchronized void free(int slot) {
+		if(slot < 0 || !allocatedSlots.get(slot)) throw new IllegalStateException("Slot [" + slot + "] is not allocated", new Throwable());
+		allocatedSlots.clear(slot);
+		freeSlots.add(slot);
+		allocated--;
+	}
+	
+	/**
+	 * Returns the address of the passed slot
+	 * @param slot The slot index
+	 * @return the address of the slot's record
+	 */
+	public long address(int slot) {
+		return slabs[slot >>> shift] + ((long)(slot & mask) * slotSize);
+	}
+	
+	/**
+	 * Adds a new slab to the arena
+	 */
+	protected void grow() {
+		if(nextSlot + slotsPerSlab < 0) throw new IllegalStateException("Slab arena is full at [" + nextSlot + "] slots", new Throwable());
+		final long[] current = slabs;
+		final long[] grown = new long[current.length + 1];
+		System.arraycopy(current, 0, grown, 0, current.length);
+		grown[current.length] = UnsafeAdapter.allocateMemory((long)slotSize * slotsPerSlab);
+		slabs = grown;
+	}
+	
+	/**
+	 * Returns the size of a slot in bytes
+	 * @return the slot size
+	 */
+	public int getSlotSize() {
+		return slotSize;
+	}
+	
+	/**
+	 * Returns the number of slabs allocated
+	 * @return the number of slabs
+	 */
+	public int getSlabCount() {
+		return slabs.length;
+	}
+	
+	/**
+	 * Returns the total number of slots in the allocated slabs
+	 * @return the slot capacity
+	 */
+	public int getCapacity() {
+		return slabs.length * slotsPerSlab;
+	}
+	
+	/**
+	 * Returns the number of currently allocated slots
+	 * @return the number of allocated slots
+	 */
+	public int getAllocated() {
+		return allocated;
+	}
+	
+	/**
+	 * Returns the number of reclaimed slots waiting to be reused
+	 * @return the number of free slots
+	 */
+	public synchronized int getFreeCount() {
+		return freeSlots.size();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("SlabArena [slotSize=%s, slabs=%s, capacity=%s, allocated=%s]", slotSize, getSlabCount(), getCapacity(), getAllocated());
+	}
+
+}
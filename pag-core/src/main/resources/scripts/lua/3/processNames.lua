@@ -0,0 +1,12 @@
+redis.call("SELECT", rindle.db)
+
+local timestamp = ARGV[1]
+local results = {}
+for i=1, #KEYS do
+  local metricName = rindle.nprefix(KEYS[i])
+  local mnId = (metricName ~= nil and redis.call('get',metricName) or nil)
+  local gid = rindle.gunfix(rindle.process(metricName, mnId, nil, nil, timestamp))
+  results[#results+1] = (gid ~= nil and tostring(gid) or '-1')
+end
+rlog.debug("---> processNames resolved " .. #results .. " names")
+return results
@@ -0,0 +1,124 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package benchmarks.aggregator;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+
+/**
+ * <p>Title: AggregatorUpdateBenchmark</p>
+ * <p>Description: Compares updating one hot {@link PeriodAggregatorImpl} through the spin lock path and through the 
+ * lock-free CAS path with 1, 4 and 16 writer threads. Reports the elapsed time, the nanos per update and the
+ * throughput for each mode and thread count, and checks that no updates were lost.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>benchmarks.aggregator.AggregatorUpdateBenchmark</code></p>
+ */
+
+public class AggregatorUpdateBenchmark {
+	/** The total number of updates per run, split across the writer threads */
+	static final int UPDATES = 8000000;
+	/** The writer thread counts to run */
+	static final int[] THREAD_COUNTS = {1, 4, 16};
+	/** The number of warmup runs per mode */
+	static final int WARMUPS = 3;
+	
+	/**
+	 * Runs the benchmark
+	 * @param args None
+	 */
+	public static void main(String[] args) {
+		log("Warming up");
+		for(int i = 0; i < WARMUPS; i++) {
+			run(false, 4, false);
+			run(true, 4, false);
+		}
+		log("Warmup Complete");
+		for(int threads: THREAD_COUNTS) {
+			run(false, threads, true);
+			run(true, threads, true);
+		}
+	}
+	
+	/**
+	 * Runs one timed run
+	 * @param lockFree true for the CAS path, false for the spin lock path
+	 * @param threads The number of writer threads
+	 * @param report true to print the results
+	 */
+	static void run(final boolean lockFree, final int threads, final boolean report) {
+		final PeriodAggregatorImpl pai = new PeriodAggregatorImpl(false, lockFree);
+		final int perThread = UPDATES / threads;
+		final CyclicBarrier startBarrier = new CyclicBarrier(threads + 1);
+		final CountDownLatch endLatch = new CountDownLatch(threads);
+		final long[] values = new long[1024];
+		final Random R = new Random(System.currentTimeMillis());
+		for(int i = 0; i < values.length; i++) values[i] = R.nextInt(1000);
+		for(int t = 0; t < threads; t++) {
+			final int offset = t;
+			Thread writer = new Thread("Writer#" + t) {
+				public void run() {
+					try {
+						startBarrier.await();
+						for(int i = 0; i < perThread; i++) {
+							pai.processDataPoint(values[(i + offset) & 1023]);
+						}
+					} catch (Exception ex) {
+						ex.printStackTrace(System.err);
+					} finally {
+						endLatch.countDown();
+					}
+				}
+			};
+			writer.setDaemon(true);
+			writer.start();
+		}
+		try {
+			startBarrier.await();
+			final long start = System.nanoTime();
+			endLatch.await();
+			final long elapsed = System.nanoTime() - start;
+			if(report) {
+				final long total = (long)perThread * threads;
+				log(String.format("%-9s threads:%3d  elapsed:%6d ms  ns/update:%7.2f  Mupdates/s:%7.2f  count:%s  mean:%s",
+						lockFree ? "CAS" : "SpinLock", threads, elapsed / 1000000, (double)elapsed / total, total * 1000D / elapsed, 
+						pai.getCount()==total ? "ok" : ("LOST " + (total - pai.getCount())), pai.getMean()));
+			}
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Out printer
+	 * @param msg the message to print
+	 */
+	public static void log(Object msg) {
+		System.out.println(msg);
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package benchmarks.protobuf;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.core.datapoints.Core.DataPoint;
+import org.helios.rindle.core.datapoints.Core.DataPoints;
+import org.helios.rindle.ingest.netty.DataPointsWireDecoder;
+import org.helios.rindle.util.SystemClock;
+import org.helios.rindle.util.SystemClock.ElapsedTime;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * <p>Title: DataPointDecodeBenchmark</p>
+ * <p>Description: Compares applying data points to the registry through the <b><code>DataPoint.newBuilder()</code></b> path 
+ * used in <b><code>Registry.main</code></b>, through <b><code>DataPoints.parseFrom</code></b>, and through the in place 
+ * {@link DataPointsWireDecoder}. Reports the elapsed time and the bytes allocated by the benchmark thread per data point.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>benchmarks.protobuf.DataPointDecodeBenchmark</code></p>
+ */
+
+public class DataPointDecodeBenchmark {
+	/** The number of data points per frame */
+	static final int FRAME_SIZE = 1000;
+	/** The number of frames per run */
+	static final int FRAMES = 1000;
+	/** The number of distinct global ids */
+	static final int METRICS = 100;
+	/** The thread mx bean for allocation accounting */
+	static final com.sun.management.ThreadMXBean TMX = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Runs the benchmark
+	 * @param args None
+	 */
+	public static void main(String[] args) {
+		final Registry reg = Registry.getInstance();
+		final Random R = new Random(System.currentTimeMillis());
+		final long[] gids = new long[FRAME_SIZE];
+		final long[] values = new long[FRAME_SIZE];
+		DataPoints.Builder builder = DataPoints.newBuilder();
+		for(int i = 0; i < FRAME_SIZE; i++) {
+			gids[i] = 1000 + R.nextInt(METRICS);
+			values[i] = Math.abs(R.nextInt(100));
+			builder.addDataPoints(DataPoint.newBuilder()
+					.setGlobalID(gids[i])
+					.setLongValue(values[i])
+					.setTimestamp(System.currentTimeMillis())
+					.setValueType(DataPoint.ValueType.LONG)
+					.build());
+		}
+		final byte[] frame = builder.build().toByteArray();
+		final ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(frame);
+		log("Frame: %s data points, %s bytes", FRAME_SIZE, frame.length);
+		for(int warmup = 0; warmup < 3; warmup++) {
+			runBuilder(reg, gids, values);
+			runParse(reg, frame);
+			runWire(reg, buffer);
+		}
+		log("Warmup Complete");
+		for(int run = 0; run < 3; run++) {
+			runBuilder(reg, gids, values);
+			runParse(reg, frame);
+			runWire(reg, buffer);
+		}
+	}
+	
+	/**
+	 * Builds a DataPoint per sample and applies it with {@link Registry#processDataPoint(DataPoint)}
+	 * @param reg The registry
+	 * @param gids The global ids
+	 * @param values The values
+	 */
+	static void runBuilder(Registry reg, long[] gids, long[] values) {
+		final long startBytes = allocated();
+		final ElapsedTime et = SystemClock.startClock();
+		for(int f = 0; f < FRAMES; f++) {
+			for(int i = 0; i < FRAME_SIZE; i++) {
+				reg.processDataPoint(DataPoint.newBuilder()
+						.setGlobalID(gids[i])
+						.setLongValue(values[i])
+						.setTimestamp(System.currentTimeMillis())
+						.setValueType(DataPoint.ValueType.LONG)
+						.build());
+			}
+		}
+		report("newBuilder", et, startBytes);
+	}
+	
+	/**
+	 * Parses each frame with <b><code>DataPoints.parseFrom</code></b> and applies it with {@link Registry#processDataPoints(DataPoints)}
+	 * @param reg The registry
+	 * @param frame The serialized frame
+	 */
+	static void runParse(Registry reg, byte[] frame) {
+		final long startBytes = allocated();
+		final ElapsedTime et = SystemClock.startClock();
+		try {
+			for(int f = 0; f < FRAMES; f++) {
+				reg.processDataPoints(DataPoints.parseFrom(frame));
+			}
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+		report("parseFrom", et, startBytes);
+	}
+	
+	/**
+	 * Decodes each frame in place with {@link DataPointsWireDecoder}
+	 * @param reg The registry
+	 * @param buffer The buffer containing the serialized frame
+	 */
+	static void runWire(Registry reg, ChannelBuffer buffer) {
+		final long startBytes = allocated();
+		final ElapsedTime et = SystemClock.startClock();
+		for(int f = 0; f < FRAMES; f++) {
+			DataPointsWireDecoder.decode(buffer, reg);
+		}
+		report("wireDecoder", et, startBytes);
+	}
+	
+	/**
+	 * Logs the results of a run
+	 * @param name The run name
+	 * @param et The run's elapsed time
+	 * @param startBytes The thread's allocated bytes at the start of the run
+	 */
+	static void report(String name, ElapsedTime et, long startBytes) {
+		final long points = (long)FRAMES * FRAME_SIZE;
+		final String elapsed = et.printAvg("DataPoints", points);
+		final long bytes = allocated() - startBytes;
+		log("%-12s %s, alloc/point: %.2f bytes", name, elapsed, (double)bytes / points);
+	}
+	
+	/**
+	 * Returns the bytes allocated by the current thread
+	 * @return the allocated bytes
+	 */
+	static long allocated() {
+		return TMX.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	public static void log(Object format, Object...args) {
+		System.out.println(String.format(format.toString(), args));
+	}
+
+}
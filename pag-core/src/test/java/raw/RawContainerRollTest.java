@@ -26,16 +26,26 @@ package raw;
 
 import org.helios.rindle.Constants;
 import org.helios.rindle.period.impl.RawDataContainer;
+import org.helios.rindle.util.unsafe.UnsafeAdapter;
 
 /**
  * <p>Title: RawContainerRollTest</p>
- * <p>Description: </p> 
+ * <p>Description: Logs a small container as it grows and rolls, then benchmarks appends to a full container.
+ * The ring buffer roll is compared with the previous roll, which shifted the whole array down one slot per append.
+ * Run with <b><code>bench</code></b> as the first argument to benchmark, and pass <b><code>-Dhelios.rindle.raw.max=&lt;slots&gt;</code></b>
+ * to change the benchmarked capacity.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>raw.RawContainerRollTest</code></p>
  */
 
 public class RawContainerRollTest {
+	/** The capacity of the benchmarked container */
+	static final int BENCH_SLOTS = Integer.getInteger(Constants.MAX_SLOTS_ALLOC, 1048576);
+	/** The number of appends timed for the ring buffer */
+	static final int RING_APPENDS = 10000000;
+	/** The number of appends timed for the shifting roll */
+	static final int SHIFT_APPENDS = 1000;
 
 	/**
 	 * Creates a new RawContainerRollTest
@@ -45,9 +55,16 @@ public class RawContainerRollTest {
 	}
 
 	/**
-	 * @param args
+	 * @param args <b><code>bench</code></b> to run the benchmark, otherwise logs a small growing container
 	 */
 	public static void main(String[] args) {
+		if(args.length > 0 && "bench".equals(args[0])) {
+			System.setProperty(Constants.INIT_SLOTS_ALLOC, "1024");
+			System.setProperty(Constants.RESIZE_SLOTS_ALLOC, "65536");
+			System.setProperty(Constants.MAX_SLOTS_ALLOC, "" + BENCH_SLOTS);
+			benchmark();
+			return;
+		}
 		System.setProperty(Constants.INIT_SLOTS_ALLOC, "4");
 		System.setProperty(Constants.RESIZE_SLOTS_ALLOC, "2");
 		RawDataContainer rdc = RawDataContainer.newInstance();
@@ -56,7 +73,65 @@ public class RawContainerRollTest {
 			rdc.append(i);
 			log(rdc);
 		}
-
+	}
+	
+	/**
+	 * Fills a container to the maximum capacity and times appends in roll mode against the previous shifting roll
+	 */
+	public static void benchmark() {
+		final RawDataContainer rdc = RawDataContainer.newInstance();
+		while(rdc.size() < BENCH_SLOTS) rdc.append(rdc.size());
+		log("Benchmarking a full container of %s slots", rdc.capacity());
+		for(int w = 0; w < 3; w++) {
+			timeRing(rdc, RING_APPENDS / 10);
+			timeShift(BENCH_SLOTS, SHIFT_APPENDS / 10);
+		}
+		final double ring = timeRing(rdc, RING_APPENDS);
+		final double shift = timeShift(BENCH_SLOTS, SHIFT_APPENDS);
+		log("Ring buffer roll:  %s ns per append", ring);
+		log("Shifting roll:     %s ns per append", shift);
+		log("Speedup:           %sx", Math.round(shift / ring));
+		final long[] values = rdc.getLongs();
+		for(int i = 1; i < values.length; i++) {
+			if(values[i]!=values[i-1]+1) throw new RuntimeException("Values out of order at index " + i);
+		}
+		log("Order verified, oldest: %s, newest: %s, median: %s", values[0], values[values.length-1], rdc.getLongMedian());
+	}
+	
+	/**
+	 * Times appends to a full ring buffer container
+	 * @param rdc The full container
+	 * @param appends The number of appends to time
+	 * @return the nanos per append
+	 */
+	static double timeRing(RawDataContainer rdc, int appends) {
+		long next = rdc.getLong(rdc.size()-1) + 1;
+		final long start = System.nanoTime();
+		for(int i = 0; i < appends; i++) {
+			rdc.append(next++);
+		}
+		return (double)(System.nanoTime() - start) / appends;
+	}
+	
+	/**
+	 * Times appends to a full array that is shifted down one slot per append, as the container rolled before
+	 * @param slots The number of slots in the array
+	 * @param appends The number of appends to time
+	 * @return the nanos per append
+	 */
+	static double timeShift(int slots, int appends) {
+		final long address = UnsafeAdapter.allocateAlignedMemory(slots << 3);
+		try {
+			final long last = address + ((slots - 1) << 3);
+			final long start = System.nanoTime();
+			for(int i = 0; i < appends; i++) {
+				UnsafeAdapter.copyMemory(address + UnsafeAdapter.LONG_SIZE, address, (slots << 3) - UnsafeAdapter.LONG_SIZE);
+				UnsafeAdapter.putLong(last, i);
+			}
+			return (double)(System.nanoTime() - start) / appends;
+		} finally {
+			UnsafeAdapter.freeMemory(address);
+		}
 	}
 	
 	public static void log(Object format, Object...args) {
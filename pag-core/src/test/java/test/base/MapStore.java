@@ -0,0 +1,324 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.base;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.helios.rindle.RindleService;
+import org.helios.rindle.control.RindleMain;
+import org.helios.rindle.metric.IMetricDefinition;
+import org.helios.rindle.store.IMetricDefinitionListener;
+import org.helios.rindle.store.IStore;
+
+import com.google.common.util.concurrent.AbstractService;
+
+/**
+ * <p>Title: MapStore</p>
+ * <p>Description: An in-memory {@link IStore} metric dictionary for tests, which counts the calls that resolve global ids,
+ * can be made to fail or block resolutions, and fires metric definition events on demand. Sessions are not supported.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.base.MapStore</code></p>
+ */
+public class MapStore extends AbstractService implements IStore {
+	/** The global id sequence, shared by all stores so ids are unique in the shared registry */
+	protected static final AtomicLong sequence = new AtomicLong(0L);
+	/** The global ids keyed by name */
+	protected final Map<String, Long> names = new ConcurrentHashMap<String, Long>();
+	/** The global ids keyed by opaque key */
+	protected final Map<ByteBuffer, Long> opaqueKeys = new ConcurrentHashMap<ByteBuffer, Long>();
+	/** The global ids keyed by name and opaque key */
+	protected final Map<String, Long> pairs = new ConcurrentHashMap<String, Long>();
+	/** The registered metric definition listeners */
+	protected final Collection<IMetricDefinitionListener> listeners = new CopyOnWriteArrayList<IMetricDefinitionListener>();
+	/** The number of calls that resolved global ids */
+	protected final AtomicInteger calls = new AtomicInteger(0);
+	/** If true, resolutions throw */
+	protected volatile boolean failing = false;
+	/** If not null, resolutions wait for this latch */
+	protected volatile CountDownLatch gate = null;
+
+	/**
+	 * Returns the number of calls that resolved global ids
+	 * @return the number of calls
+	 */
+	public int getCalls() {
+		return calls.get();
+	}
+	
+	/**
+	 * Sets the failing state. While failing, resolutions throw a runtime exception
+	 * @param failing true to fail resolutions, false to resolve them
+	 */
+	public void setFailing(final boolean failing) {
+		this.failing = failing;
+	}
+	
+	/**
+	 * Blocks resolutions until {@link #open()} is called
+	 */
+	public void close() {
+		gate = new CountDownLatch(1);
+	}
+	
+	/**
+	 * Releases blocked resolutions
+	 */
+	public void open() {
+		final CountDownLatch latch = gate;
+		gate = null;
+		if(latch!=null) latch.countDown();
+	}
+	
+	/**
+	 * Deletes the metric with the passed global id and notifies the listeners
+	 * @param globalId The global id of the metric to delete
+	 */
+	public void delete(final long globalId) {
+		final Long gid = globalId;
+		names.values().removeAll(Collections.singleton(gid));
+		opaqueKeys.values().removeAll(Collections.singleton(gid));
+		pairs.values().removeAll(Collections.singleton(gid));
+		for(IMetricDefinitionListener listener: listeners) listener.onMetricDeleted(globalId);
+	}
+	
+	/**
+	 * Counts a resolution call and applies the failing and blocking states
+	 */
+	protected void call() {
+		calls.incrementAndGet();
+		final CountDownLatch latch = gate;
+		if(latch!=null) {
+			try {
+				latch.await();
+			} catch (InterruptedException iex) {
+				throw new RuntimeException("Interrupted waiting for the gate", iex);
+			}
+		}
+		if(failing) throw new RuntimeException("Store resolution failed");
+	}
+	
+	/**
+	 * Returns the global id keyed by the passed key, creating one if the key is new
+	 * @param map The map to look up the key in
+	 * @param key The key
+	 * @return the global id
+	 */
+	protected <K> long resolve(final Map<K, Long> map, final K key) {
+		synchronized(map) {
+			Long gid = map.get(key);
+			if(gid==null) {
+				gid = sequence.incrementAndGet();
+				map.put(key, gid);
+			}
+			return gid;
+		}
+	}
+
+	@Override
+	public void purge() {
+		names.clear();
+		opaqueKeys.clear();
+		pairs.clear();
+		for(IMetricDefinitionListener listener: listeners) listener.onPurge();
+	}
+
+	@Override
+	public long getGlobalId(final String name, final byte[] opaqueKey) {
+		if(name==null) return getGlobalId(opaqueKey);
+		if(opaqueKey==null) return getGlobalId(name);
+		call();
+		return resolve(pairs, name + ":" + Arrays.toString(opaqueKey));
+	}
+
+	@Override
+	public long getGlobalId(final String name) {
+		if(name==null) return -1L;
+		call();
+		return resolve(names, name);
+	}
+
+	@Override
+	public long getGlobalId(final byte[] opaqueKey) {
+		if(opaqueKey==null) return -1L;
+		call();
+		return resolve(opaqueKeys, ByteBuffer.wrap(opaqueKey.clone()));
+	}
+
+	@Override
+	public long[] resolveGlobalIds(final String... metricNames) {
+		call();
+		final long[] gids = new long[metricNames.length];
+		for(int i = 0; i < metricNames.length; i++) {
+			gids[i] = metricNames[i]==null ? -1L : resolve(names, metricNames[i]);
+		}
+		return gids;
+	}
+
+	@Override
+	public void addMetricDefinitionListener(final IMetricDefinitionListener listener) {
+		if(listener!=null) listeners.add(listener);
+	}
+
+	@Override
+	public void removeMetricDefinitionListener(final IMetricDefinitionListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public String getMetricName(final long globalId) {
+		for(Map.Entry<String, Long> entry: names.entrySet()) {
+			if(entry.getValue()==globalId) return entry.getKey();
+		}
+		return null;
+	}
+
+	@Override
+	public byte[] getOpaqueKey(final long globalId) {
+		for(Map.Entry<ByteBuffer, Long> entry: opaqueKeys.entrySet()) {
+			if(entry.getValue()==globalId) return entry.getKey().array().clone();
+		}
+		return null;
+	}
+
+	@Override
+	public String getMetricsJSON(final long... globalIds) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public IMetricDefinition[] getMetrics(final long... globalIds) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long[] getGlobalIds(final String metricNamePattern) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void initSession(final long sessionId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void addGlobalIds(final long sessionId, final long... globalIds) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void removeGlobalIds(final long sessionId, final long... globalIds) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void addMatchedIds(final long sessionId, final long... globalIds) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void removeMatchedIds(final long sessionId, final long... globalIds) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void addPatterns(final long sessionId, final String... patterns) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void removePatterns(final long sessionId, final String... patterns) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long[] getGlobalIds(final long sessionId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long[] getMatchedIds(final long sessionId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String[] getPatterns(final long sessionId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void terminateSession(final long sessionId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long ttl(final long sessionId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long[] getCurrentSessions() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Map<String, String> getSessionKeys(final long sessionId) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Collection<RindleService> getDependentServices() {
+		return Collections.emptySet();
+	}
+
+	@Override
+	public void addDependentServices(final RindleService... dependencies) {
+		/* No Op */
+	}
+
+	@Override
+	public void onRindleStarted(final RindleMain rindleMain) {
+		/* No Op */
+	}
+
+	@Override
+	protected void doStart() {
+		notifyStarted();
+	}
+
+	@Override
+	protected void doStop() {
+		notifyStopped();
+	}
+}
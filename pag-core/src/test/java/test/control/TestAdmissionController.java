@@ -0,0 +1,211 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.control;
+
+import org.helios.rindle.control.AdmissionController;
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.period.IPeriodAggregator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestAdmissionController</p>
+ * <p>Description: Test cases for the {@link AdmissionController}, covering the client, global and new metric rate limits 
+ * and the shed, queue and block policies. Each test starts in a fresh one second rate window.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.control.TestAdmissionController</code></p>
+ */
+public class TestAdmissionController extends BaseTest {
+	/** The admission controller singleton */
+	static final AdmissionController admission = AdmissionController.getInstance();
+	/** The registry admitted values are applied to */
+	static final Registry registry = Registry.getInstance();
+	
+	/** The policy before the test */
+	String policy;
+	/** The global rate limit before the test */
+	long globalRate;
+	/** The client rate limit before the test */
+	long clientRate;
+	/** The new metric rate limit before the test */
+	long newMetricRate;
+	
+	/**
+	 * Saves the admission settings, enables admission control and waits for a fresh rate window
+	 * @throws Exception thrown if interrupted
+	 */
+	@Before
+	public void enable() throws Exception {
+		policy = admission.getPolicy();
+		globalRate = admission.getGlobalRateLimit();
+		clientRate = admission.getClientRateLimit();
+		newMetricRate = admission.getNewMetricRateLimit();
+		admission.setPolicy("SHED");
+		admission.setGlobalRateLimit(0L);
+		admission.setClientRateLimit(0L);
+		admission.setNewMetricRateLimit(0L);
+		admission.setEnabled(true);
+		Thread.sleep(1005L - (System.currentTimeMillis() % 1000L));
+	}
+	
+	/**
+	 * Disables admission control and restores the saved settings
+	 */
+	@After
+	public void restore() {
+		admission.setEnabled(false);
+		admission.setPolicy(policy);
+		admission.setGlobalRateLimit(globalRate);
+		admission.setClientRateLimit(clientRate);
+		admission.setNewMetricRateLimit(newMetricRate);
+	}
+	
+	/**
+	 * Returns a client id unique to this test run
+	 * @return a client id
+	 */
+	static String clientId() {
+		return "test:" + nextPosLong();
+	}
+	
+	/**
+	 * Tests that each client is limited to its own rate and values over it are shed
+	 */
+	@Test
+	public void testClientLimit() {
+		admission.setClientRateLimit(3L);
+		final String a = clientId(), b = clientId();
+		final long shed = admission.getShedCount();
+		int admittedA = 0, admittedB = 0;
+		for(int i = 0; i < 5; i++) {
+			if(admission.admit(a, 1L, (long)i)) admittedA++;
+			if(admission.admit(b, 1L, (double)i)) admittedB++;
+		}
+		Assert.assertEquals("Admitted for a", 3, admittedA);
+		Assert.assertEquals("Admitted for b", 3, admittedB);
+		Assert.assertEquals("Shed", shed + 4L, admission.getShedCount());
+		Assert.assertEquals("Client a rate", Long.valueOf(3L), admission.getClientRates().get(a));
+	}
+	
+	/**
+	 * Tests that values refused by the global limit do not count against the client's rate
+	 */
+	@Test
+	public void testGlobalLimitKeepsClientPermits() {
+		admission.setClientRateLimit(3L);
+		admission.setGlobalRateLimit(2L);
+		final String a = clientId(), b = clientId();
+		Assert.assertTrue("First for a", admission.admit(a, 1L, 1L));
+		Assert.assertTrue("First for b", admission.admit(b, 1L, 1L));
+		Assert.assertFalse("Over the global limit", admission.admit(a, 1L, 1L));
+		Assert.assertFalse("Over the global limit", admission.admit(a, 1L, 1L));
+		Assert.assertEquals("Global rate", 2L, admission.getGlobalRate());
+		Assert.assertEquals("Client a rate", Long.valueOf(1L), admission.getClientRates().get(a));
+	}
+	
+	/**
+	 * Tests that values over the limits are queued under the QUEUE policy and applied when capacity frees up
+	 */
+	@Test(timeout=10000)
+	public void testQueuePolicy() throws Exception {
+		admission.setPolicy("QUEUE");
+		admission.setGlobalRateLimit(2L);
+		final long globalId = nextPosLong();
+		final long queued = admission.getQueuedCount();
+		int admitted = 0;
+		for(long v = 1; v <= 5; v++) {
+			if(admission.admit(clientId(), globalId, v)) {
+				registry.processValue(globalId, v);
+				admitted++;
+			}
+		}
+		Assert.assertEquals("Admitted", 2, admitted);
+		Assert.assertEquals("Queued", queued + 3L, admission.getQueuedCount());
+		// the deferred values are applied 2 per second by the drain thread
+		while(admission.getQueueDepth() > 0) Thread.sleep(10L);
+		final long deadline = System.currentTimeMillis() + 2000L;
+		while(registry.getPeriodAggregator(globalId, false).getLongSum() + rolledSum(globalId) < 15L && System.currentTimeMillis() < deadline) Thread.sleep(10L);
+		Assert.assertEquals("Sum of all values", 15L, registry.getPeriodAggregator(globalId, false).getLongSum() + rolledSum(globalId));
+	}
+	
+	/**
+	 * Returns the sum of the last completed finest granularity period of the identified aggregator
+	 * @param globalId The global id of the aggregator
+	 * @return the rolled sum, or 0 if no period has completed
+	 */
+	static long rolledSum(long globalId) {
+		final IPeriodAggregator rolled = registry.getRolledPeriod(globalId, registry.getRollupPeriods()[0]);
+		return rolled==null ? 0L : rolled.getLongSum();
+	}
+	
+	/**
+	 * Tests that a value over the limit waits for the next rate window under the BLOCK policy
+	 */
+	@Test(timeout=10000)
+	public void testBlockPolicy() {
+		admission.setPolicy("BLOCK");
+		admission.setGlobalRateLimit(1L);
+		final long blocked = admission.getBlockedCount();
+		Assert.assertTrue("First", admission.admit(clientId(), 1L, 1L));
+		final long second = System.currentTimeMillis() / 1000L;
+		Assert.assertTrue("Blocked", admission.admit(clientId(), 1L, 2L));
+		Assert.assertTrue("Admitted in the next window", System.currentTimeMillis() / 1000L > second);
+		Assert.assertEquals("Blocked count", blocked + 1L, admission.getBlockedCount());
+	}
+	
+	/**
+	 * Tests that the creation of new aggregators is capped, while existing aggregators keep receiving values
+	 */
+	@Test
+	public void testNewMetricLimit() {
+		admission.setNewMetricRateLimit(2L);
+		final long refused = admission.getRefusedNewMetricCount();
+		final long a = nextPosLong(), b = nextPosLong(), c = nextPosLong();
+		Assert.assertNotNull("First new metric", registry.processValue(a, 1L));
+		Assert.assertNotNull("Second new metric", registry.processValue(b, 1L));
+		Assert.assertNull("Third new metric", registry.processValue(c, 1L));
+		Assert.assertNull("Third new metric by lookup", registry.getPeriodAggregator(c, true));
+		Assert.assertNotNull("Existing metric", registry.processValue(a, 2L));
+		Assert.assertEquals("Refused", refused + 2L, admission.getRefusedNewMetricCount());
+	}
+	
+	/**
+	 * Tests that everything is admitted while admission control is disabled
+	 */
+	@Test
+	public void testDisabled() {
+		admission.setGlobalRateLimit(1L);
+		admission.setEnabled(false);
+		for(int i = 0; i < 10; i++) {
+			Assert.assertTrue("Admitted", admission.admit(clientId(), 1L, (long)i));
+			Assert.assertTrue("New metric", admission.admitNewMetric());
+		}
+	}
+}
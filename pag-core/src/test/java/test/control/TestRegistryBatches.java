@@ -0,0 +1,148 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.control;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.helios.rindle.util.ArrayUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestRegistryBatches</p>
+ * <p>Description: Test cases for the columnar batch processing of {@link Registry}, covering the grouping of values
+ * by global id and the order in which the readings of a counter in one batch are applied</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.control.TestRegistryBatches</code></p>
+ */
+public class TestRegistryBatches extends BaseTest {
+	/** The registry the batches are applied to */
+	static final Registry registry = Registry.getInstance();
+	
+	/**
+	 * Tests that the parallel sort orders equal keys by their original index
+	 */
+	@Test
+	public void testSortParallelIsStable() {
+		for(int size: new int[]{0, 1, 15, 16, 17, 100, 5000}) {
+			final long[] keys = new long[size];
+			for(int i = 0; i < size; i++) keys[i] = RANDOM.nextInt(7);
+			final long[] sorted = keys.clone();
+			final int[] indexes = ArrayUtils.sequence(size);
+			ArrayUtils.sortParallel(sorted, indexes);
+			for(int i = 0; i < size; i++) {
+				Assert.assertEquals("Key at [" + i + "] of " + size, keys[indexes[i]], sorted[i]);
+				if(i > 0) {
+					Assert.assertTrue("Keys out of order at [" + i + "] of " + size, sorted[i-1] <= sorted[i]);
+					if(sorted[i-1]==sorted[i]) Assert.assertTrue("Equal keys reordered at [" + i + "] of " + size, indexes[i-1] < indexes[i]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Tests that values in a long batch are grouped into their aggregators and ids of -1 are skipped
+	 */
+	@Test
+	public void testLongBatch() {
+		final long a = nextPosLong(), b = nextPosLong();
+		registry.processValues(new long[]{a, b, -1L, a, b, a}, new long[]{1L, 10L, 99L, 2L, 20L, 3L}, null);
+		final PeriodAggregatorImpl pa = registry.getPeriodAggregator(a, false);
+		final PeriodAggregatorImpl pb = registry.getPeriodAggregator(b, false);
+		Assert.assertEquals("A count", 3, pa.getCount());
+		Assert.assertEquals("A sum", 6L, pa.getLongSum());
+		Assert.assertEquals("B count", 2, pb.getCount());
+		Assert.assertEquals("B max", 20L, pb.getLongMax());
+	}
+	
+	/**
+	 * Tests that the lengths of the columns of a batch must match
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testMismatchedBatch() {
+		registry.processValues(new long[]{1L, 2L}, new long[]{1L}, null);
+	}
+	
+	/**
+	 * Tests that the readings of several counters interleaved in one long batch are applied in submission order,
+	 * so no reading is mistaken for a reset and each counter's sum is its increase
+	 */
+	@Test
+	public void testLongCounterReadingsInOneBatch() {
+		final int counters = 3, readings = 200;
+		final long[] ids = new long[counters];
+		final long[] first = new long[counters], last = new long[counters];
+		for(int c = 0; c < counters; c++) {
+			ids[c] = nextPosLong();
+			registry.getPeriodAggregator(ids[c], false).enableCounter();
+			first[c] = last[c] = nextPosInt(1000);
+		}
+		final List<Long> gids = new ArrayList<Long>();
+		final List<Long> values = new ArrayList<Long>();
+		for(int c = 0; c < counters; c++) { gids.add(ids[c]); values.add(first[c]); }
+		for(int r = 0; r < readings * counters; r++) {
+			final int c = RANDOM.nextInt(counters);
+			last[c] += 1 + nextPosInt(50);
+			gids.add(ids[c]); values.add(last[c]);
+			if(RANDOM.nextInt(10)==0) { gids.add(-1L); values.add(0L); }
+		}
+		final long[] gidArr = new long[gids.size()], valueArr = new long[gids.size()];
+		for(int i = 0; i < gidArr.length; i++) { gidArr[i] = gids.get(i); valueArr[i] = values.get(i); }
+		registry.processValues(gidArr, valueArr, null);
+		for(int c = 0; c < counters; c++) {
+			final PeriodAggregatorImpl pai = registry.getPeriodAggregator(ids[c], false);
+			Assert.assertEquals("Resets of counter " + c, 0L, pai.getCounterResets());
+			Assert.assertEquals("Increase of counter " + c, last[c] - first[c], pai.getLongSum());
+		}
+	}
+	
+	/**
+	 * Tests that the readings of a counter in a double batch are applied in submission order
+	 */
+	@Test
+	public void testDoubleCounterReadingsInOneBatch() {
+		final long gid = nextPosLong();
+		registry.getPeriodAggregator(gid, true).enableCounter();
+		final int readings = 500;
+		final long[] gids = new long[readings];
+		final double[] values = new double[readings];
+		double reading = 0D;
+		for(int i = 0; i < readings; i++) {
+			gids[i] = gid;
+			reading += 0.5D;
+			values[i] = reading;
+		}
+		registry.processValues(gids, values, null);
+		final PeriodAggregatorImpl pai = registry.getPeriodAggregator(gid, true);
+		Assert.assertEquals("Resets", 0L, pai.getCounterResets());
+		Assert.assertEquals("Increase", reading - values[0], pai.getDoubleSum(), 0.000001D);
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.control;
+
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.period.IPeriodAggregator;
+import org.helios.rindle.subscription.criteria.Retention;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestRegistryRetention</p>
+ * <p>Description: Test cases for the {@link Retention} semantics of the {@link Registry}, covering the reset of aggregators 
+ * on each roll of the finest granularity when no coarser periods are configured, and sticky periods carrying across rolls</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.control.TestRegistryRetention</code></p>
+ */
+public class TestRegistryRetention extends BaseTest {
+	/** The registry under test */
+	static final Registry registry = Registry.getInstance();
+	
+	/**
+	 * Returns the finest granularity period, which is always rolled
+	 * @return the finest granularity period in seconds
+	 */
+	static int granularity() {
+		final int[] periods = registry.getRollupPeriods();
+		Assert.assertTrue("The finest granularity is rolled", periods.length > 0);
+		return periods[0];
+	}
+	
+	/**
+	 * Tests that each roll resets the aggregators and completes the interval reset instance of the finest granularity
+	 * with the values applied since the previous roll, and that a sticky period carries the min, max and last value
+	 */
+	@Test(timeout=30000)
+	public void testResetAndStickyOnRoll() {
+		final int granularity = granularity();
+		final long globalId = nextPosLong();
+		registry.applyRetention(globalId, false, granularity, Retention.STICKY);
+		long values = 0, sum = 0;
+		for(int attempt = 0; attempt < 5; attempt++) {
+			final long ticks = registry.getRollTicks();
+			for(long v = 1; v <= 10; v++) registry.processValue(globalId, v * (attempt + 1));
+			values += 10;
+			sum += 55 * (attempt + 1);
+			final long tick = registry.roll();
+			Assert.assertEquals("Live count after the roll", 0L, registry.getPeriodAggregator(globalId, false).getCount());
+			final IPeriodAggregator sticky = registry.getRolledPeriod(globalId, granularity, Retention.STICKY);
+			Assert.assertEquals("Sticky count", values, sticky.getCount());
+			Assert.assertEquals("Sticky sum", sum, sticky.getLongSum());
+			Assert.assertEquals("Sticky min", 1L, sticky.getLongMin());
+			Assert.assertEquals("Sticky last", 10L * (attempt + 1), sticky.getLongLast());
+			if(tick!=ticks + 1) {
+				log("The flush rolled while applying values, retrying");
+				continue;
+			}
+			final IPeriodAggregator completed = registry.getRolledPeriod(globalId, granularity);
+			Assert.assertEquals("Completed count", 10L, completed.getCount());
+			Assert.assertEquals("Completed sum", 55L * (attempt + 1), completed.getLongSum());
+			Assert.assertEquals("Completed min", attempt + 1L, completed.getLongMin());
+			Assert.assertEquals("Completed last", 10L * (attempt + 1), completed.getLongLast());
+			return;
+		}
+		Assert.fail("The flush rolled during every attempt");
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.control;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.helios.rindle.control.RegistryShard;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestRegistryShard</p>
+ * <p>Description: Test cases for the single-writer {@link RegistryShard}, verifying that values from concurrent publishers
+ * and handed off tasks are all applied on the shard's own thread, in the order they were published</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.control.TestRegistryShard</code></p>
+ */
+public class TestRegistryShard extends BaseTest {
+	
+	/**
+	 * Tests that values from concurrent publishers are all applied, creating one aggregator per global id, 
+	 * and values without a global id are skipped
+	 */
+	@Test(timeout=30000)
+	public void testConcurrentPublishers() throws Exception {
+		final RegistryShard shard = new RegistryShard(7, 64, 16);
+		try {
+			final int publishers = 4, ids = 8, values = 10000;
+			final long[] globalIds = new long[ids];
+			for(int i = 0; i < ids; i++) globalIds[i] = nextPosLong();
+			final CountDownLatch done = new CountDownLatch(publishers);
+			for(int p = 0; p < publishers; p++) {
+				final boolean doubles = p % 2==1;
+				final Thread t = new Thread("ShardPublisher#" + p) {
+					@Override
+					public void run() {
+						for(int v = 0; v < values; v++) {
+							if(doubles) shard.publish(globalIds[v % ids], 1D);
+							else shard.publish(globalIds[v % ids], 1L);
+							if(v % 100==0) shard.publish(-1L, 1L);
+						}
+						done.countDown();
+					}
+				};
+				t.setDaemon(true);
+				t.start();
+			}
+			Assert.assertTrue("Publishers finished", done.await(20, TimeUnit.SECONDS));
+			final long processed = shard.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					return shard.getProcessed();
+				}
+			}).get();
+			Assert.assertEquals("Processed", (long)publishers * values, processed);
+			Assert.assertEquals("Aggregators", ids, shard.getAggregatorCount());
+			Assert.assertEquals("Backlog", 0L, shard.getBacklog());
+		} finally {
+			shard.shutdown();
+		}
+	}
+	
+	/**
+	 * Tests that a handed off task runs on the shard thread after the values published before it
+	 */
+	@Test(timeout=30000)
+	public void testTaskOrdering() throws Exception {
+		final RegistryShard shard = new RegistryShard(3, 1024, 16);
+		try {
+			final long globalId = nextPosLong();
+			for(int round = 1; round <= 5; round++) {
+				for(int v = 0; v < 500; v++) shard.publish(globalId, (long)v);
+				final long expected = round * 500L;
+				final Future<String> future = shard.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						Assert.assertEquals("Processed before the task", expected, shard.getProcessed());
+						return Thread.currentThread().getName();
+					}
+				});
+				Assert.assertEquals("Task thread", "RegistryShardThread#3", future.get());
+			}
+			Assert.assertEquals("Aggregators", 1, shard.getAggregatorCount());
+			Assert.assertEquals("Index", 3, shard.getIndex());
+		} finally {
+			shard.shutdown();
+		}
+	}
+	
+	/**
+	 * Tests that a task failure is reported through its future and the shard keeps processing
+	 */
+	@Test(timeout=30000)
+	public void testTaskFailure() throws Exception {
+		final RegistryShard shard = new RegistryShard(0, 64, 16);
+		try {
+			final Future<Object> failed = shard.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					throw new IllegalStateException("Task failure");
+				}
+			});
+			try {
+				failed.get();
+				Assert.fail("The task failure was not reported");
+			} catch (ExecutionException eex) {
+				Assert.assertTrue("Cause", eex.getCause() instanceof IllegalStateException);
+			}
+			shard.publish(nextPosLong(), 1L);
+			Assert.assertEquals("Processed after the failure", Long.valueOf(1L), shard.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws Exception {
+					return shard.getProcessed();
+				}
+			}).get());
+		} finally {
+			shard.shutdown();
+		}
+	}
+}
@@ -0,0 +1,275 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.ingest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.core.datapoints.Core.DataPoint;
+import org.helios.rindle.core.datapoints.Core.DataPoints;
+import org.helios.rindle.ingest.netty.DataPointsWireDecoder;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestDataPointsWireDecoder</p>
+ * <p>Description: Test cases for the in place protobuf {@link DataPointsWireDecoder}, covering well formed,
+ * unknown field, truncated and malformed frames and the timestamps of points</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.ingest.TestDataPointsWireDecoder</code></p>
+ */
+public class TestDataPointsWireDecoder extends BaseTest {
+	/** The registry the decoded points are applied to */
+	static final Registry registry = Registry.getInstance();
+	
+	/**
+	 * Tests that long and double points in big and little endian buffers are applied with their values
+	 */
+	@Test
+	public void testWellFormedFrame() {
+		for(ByteOrder order: new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+			final long longId = nextPosLong(), doubleId = nextPosLong();
+			final byte[] frame = DataPoints.newBuilder()
+				.addDataPoints(longPoint(longId, 42L))
+				.addDataPoints(longPoint(longId, 7L))
+				.addDataPoints(doublePoint(doubleId, -3.5D))
+				.build().toByteArray();
+			Assert.assertEquals("Applied points", 3, DataPointsWireDecoder.decode(ChannelBuffers.wrappedBuffer(order, frame), registry));
+			final PeriodAggregatorImpl longs = registry.getPeriodAggregator(longId, false);
+			Assert.assertEquals("Long count", 2, longs.getCount());
+			Assert.assertEquals("Long min", 7L, longs.getMin().longValue());
+			Assert.assertEquals("Long max", 42L, longs.getMax().longValue());
+			final PeriodAggregatorImpl doubles = registry.getPeriodAggregator(doubleId, true);
+			Assert.assertEquals("Double count", 1, doubles.getCount());
+			Assert.assertEquals("Double value", -3.5D, doubles.getMax().doubleValue(), 0D);
+		}
+	}
+	
+	/**
+	 * Tests that unknown fields of every wire type are skipped at the frame and the point level
+	 */
+	@Test
+	public void testUnknownFields() {
+		final long gid = nextPosLong();
+		final ByteArrayOutputStream point = new ByteArrayOutputStream();
+		write(point, longPoint(gid, 99L).toByteArray());
+		writeUnknownFields(point);
+		final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		writeUnknownFields(frame);
+		writeLengthDelimited(frame, DataPointsWireDecoder.DATAPOINTS_FIELD, point.toByteArray());
+		writeUnknownFields(frame);
+		Assert.assertEquals("Applied points", 1, DataPointsWireDecoder.decode(ChannelBuffers.wrappedBuffer(frame.toByteArray()), registry));
+		Assert.assertEquals("Value", 99L, registry.getPeriodAggregator(gid, false).getMax().longValue());
+	}
+	
+	/**
+	 * Tests that a point without a global id or without a value is skipped and not counted
+	 */
+	@Test
+	public void testIncompletePoints() {
+		final byte[] frame = DataPoints.newBuilder()
+			.addDataPoints(DataPoint.newBuilder().setGlobalID(nextPosLong()).setTimestamp(System.currentTimeMillis()).setValueType(DataPoint.ValueType.LONG).buildPartial())
+			.addDataPoints(DataPoint.newBuilder().setLongValue(1L).setTimestamp(System.currentTimeMillis()).setValueType(DataPoint.ValueType.LONG).buildPartial())
+			.buildPartial().toByteArray();
+		Assert.assertEquals("Applied points", 0, DataPointsWireDecoder.decode(ChannelBuffers.wrappedBuffer(frame), registry));
+	}
+	
+	/**
+	 * Tests that a point's timestamp is passed through to an aggregator in event time mode,
+	 * so a point older than the watermark is dropped rather than applied at the time it arrives
+	 */
+	@Test
+	public void testEventTimestamps() {
+		final long gid = nextPosLong();
+		final PeriodAggregatorImpl pai = registry.getPeriodAggregator(gid, false);
+		pai.enableEventTime(1000L, 1);
+		final long now = System.currentTimeMillis();
+		final byte[] frame = DataPoints.newBuilder()
+			.addDataPoints(DataPoint.newBuilder().setGlobalID(gid).setLongValue(5L).setTimestamp(now - 3600000L).setValueType(DataPoint.ValueType.LONG).build())
+			.addDataPoints(DataPoint.newBuilder().setGlobalID(gid).setLongValue(6L).setTimestamp(now).setValueType(DataPoint.ValueType.LONG).build())
+			.build().toByteArray();
+		Assert.assertEquals("Applied points", 2, DataPointsWireDecoder.decode(ChannelBuffers.wrappedBuffer(frame), registry));
+		Assert.assertEquals("Dropped points", 1, pai.getDroppedCount());
+	}
+	
+	/**
+	 * Tests that every truncation of a well formed frame either decodes the complete points or is rejected,
+	 * and never reads outside the frame
+	 */
+	@Test(timeout=10000)
+	public void testTruncatedFrames() {
+		final byte[] frame = DataPoints.newBuilder()
+			.addDataPoints(longPoint(nextPosLong(), Long.MAX_VALUE))
+			.addDataPoints(doublePoint(nextPosLong(), Math.PI))
+			.build().toByteArray();
+		int rejected = 0;
+		for(int length = 0; length < frame.length; length++) {
+			// pad the buffer so reads past the frame length would not fail on their own
+			final byte[] padded = Arrays.copyOf(frame, frame.length + 16);
+			try {
+				final int applied = DataPointsWireDecoder.decode(ChannelBuffers.wrappedBuffer(padded), 0, length, registry, null);
+				Assert.assertTrue("Applied [" + applied + "] points from a frame truncated to " + length, applied < 2);
+			} catch (IllegalArgumentException iae) {
+				rejected++;
+			}
+		}
+		Assert.assertTrue("No truncated frame was rejected", rejected > 0);
+	}
+	
+	/**
+	 * Tests that an unknown length delimited field whose length wraps negative when narrowed to an int is rejected
+	 * instead of moving the decoder backwards
+	 */
+	@Test(timeout=10000)
+	public void testWrappingFieldLength() {
+		for(long len: new long[]{0xFFFFFFFFL, 0xFFFFFFF0L, 0x80000000L, Long.MAX_VALUE, 0x7FFFFFFFL}) {
+			final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+			writeVarint(frame, (15 << 3) | DataPointsWireDecoder.WIRETYPE_LENGTH_DELIMITED);
+			writeVarint(frame, len);
+			write(frame, new byte[8]);
+			assertRejected("Unknown field length " + len, frame.toByteArray());
+			final ByteArrayOutputStream point = new ByteArrayOutputStream();
+			writeVarint(point, (DataPointsWireDecoder.DATAPOINTS_FIELD << 3) | DataPointsWireDecoder.WIRETYPE_LENGTH_DELIMITED);
+			writeVarint(point, len);
+			write(point, new byte[8]);
+			assertRejected("DataPoint length " + len, point.toByteArray());
+		}
+	}
+	
+	/**
+	 * Tests that malformed varints, unsupported wire types and overrunning fixed width fields are rejected
+	 */
+	@Test(timeout=10000)
+	public void testMalformedFrames() {
+		final byte[] longVarint = new byte[12];
+		Arrays.fill(longVarint, (byte)0xFF);
+		assertRejected("Malformed varint", longVarint);
+		assertRejected("Truncated varint", new byte[]{(byte)0x80});
+		// start group (3) and end group (4) wire types
+		assertRejected("Wire type 3", new byte[]{(byte)((15 << 3) | 3)});
+		assertRejected("Wire type 4", new byte[]{(byte)((15 << 3) | 4)});
+		assertRejected("Fixed64 overrun", new byte[]{(byte)((15 << 3) | DataPointsWireDecoder.WIRETYPE_FIXED64), 1, 2, 3});
+		assertRejected("Fixed32 overrun", new byte[]{(byte)((15 << 3) | DataPointsWireDecoder.WIRETYPE_FIXED32), 1, 2});
+		final ByteArrayOutputStream point = new ByteArrayOutputStream();
+		writeVarint(point, (DataPointsWireDecoder.GLOBAL_ID_FIELD << 3) | DataPointsWireDecoder.WIRETYPE_VARINT);
+		writeVarint(point, 1L);
+		writeVarint(point, (DataPointsWireDecoder.DOUBLE_VALUE_FIELD << 3) | DataPointsWireDecoder.WIRETYPE_FIXED64);
+		write(point, new byte[]{1, 2, 3, 4});
+		final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		writeLengthDelimited(frame, DataPointsWireDecoder.DATAPOINTS_FIELD, point.toByteArray());
+		assertRejected("Double value overrun", frame.toByteArray());
+	}
+	
+	/**
+	 * Asserts that decoding the passed frame throws an {@link IllegalArgumentException}
+	 * @param message The assertion message
+	 * @param frame The frame
+	 */
+	protected static void assertRejected(String message, byte[] frame) {
+		try {
+			DataPointsWireDecoder.decode(ChannelBuffers.wrappedBuffer(frame), registry);
+			Assert.fail(message + " was not rejected");
+		} catch (IllegalArgumentException expected) {
+			/* No Op */
+		}
+	}
+	
+	/**
+	 * Builds a long data point
+	 * @param globalId The global id
+	 * @param value The value
+	 * @return the data point
+	 */
+	protected static DataPoint longPoint(long globalId, long value) {
+		return DataPoint.newBuilder().setGlobalID(globalId).setLongValue(value)
+			.setTimestamp(System.currentTimeMillis()).setValueType(DataPoint.ValueType.LONG).build();
+	}
+	
+	/**
+	 * Builds a double data point
+	 * @param globalId The global id
+	 * @param value The value
+	 * @return the data point
+	 */
+	protected static DataPoint doublePoint(long globalId, double value) {
+		return DataPoint.newBuilder().setGlobalID(globalId).setDoubleValue(value)
+			.setTimestamp(System.currentTimeMillis()).setValueType(DataPoint.ValueType.DOUBLE).build();
+	}
+	
+	/**
+	 * Writes one unknown field of each supported wire type
+	 * @param out The stream to write to
+	 */
+	protected static void writeUnknownFields(ByteArrayOutputStream out) {
+		writeVarint(out, (20 << 3) | DataPointsWireDecoder.WIRETYPE_VARINT);
+		writeVarint(out, Long.MIN_VALUE);
+		writeVarint(out, (21 << 3) | DataPointsWireDecoder.WIRETYPE_FIXED64);
+		write(out, new byte[8]);
+		writeLengthDelimited(out, 22, new byte[]{1, 2, 3});
+		writeVarint(out, (23 << 3) | DataPointsWireDecoder.WIRETYPE_FIXED32);
+		write(out, new byte[4]);
+	}
+	
+	/**
+	 * Writes a length delimited field
+	 * @param out The stream to write to
+	 * @param field The field number
+	 * @param bytes The field value
+	 */
+	protected static void writeLengthDelimited(ByteArrayOutputStream out, int field, byte[] bytes) {
+		writeVarint(out, (field << 3) | DataPointsWireDecoder.WIRETYPE_LENGTH_DELIMITED);
+		writeVarint(out, bytes.length);
+		write(out, bytes);
+	}
+	
+	/**
+	 * Writes a base 128 varint
+	 * @param out The stream to write to
+	 * @param value The value to write
+	 */
+	protected static void writeVarint(ByteArrayOutputStream out, long value) {
+		while((value & ~0x7FL)!=0) {
+			out.write((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int)value);
+	}
+	
+	/**
+	 * Writes raw bytes
+	 * @param out The stream to write to
+	 * @param bytes The bytes to write
+	 */
+	protected static void write(ByteArrayOutputStream out, byte[] bytes) {
+		out.write(bytes, 0, bytes.length);
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.ingest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.helios.rindle.Constants;
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.ingest.IngestionPipeline;
+import org.helios.rindle.ingest.PartitionedEventHandler;
+import org.helios.rindle.period.IPeriodAggregator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestIngestionPipeline</p>
+ * <p>Description: Test cases for the {@link IngestionPipeline}, verifying that values published by concurrent producers
+ * are all applied to the {@link Registry}, each by the consumer that owns its global id's partition</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.ingest.TestIngestionPipeline</code></p>
+ */
+public class TestIngestionPipeline extends BaseTest {
+	/** The number of consumers */
+	static final int CONSUMERS = 4;
+	/** The registry the values are applied to */
+	static final Registry registry = Registry.getInstance();
+	/** The pipeline, shared since it registers a singleton MBean */
+	static final IngestionPipeline pipeline;
+	
+	static {
+		System.setProperty(Constants.INGEST_CONSUMERS, "" + CONSUMERS);
+		System.setProperty(Constants.RING_BUFFER_SIZE, "256");
+		try {
+			pipeline = new IngestionPipeline(registry);
+		} finally {
+			System.clearProperty(Constants.INGEST_CONSUMERS);
+			System.clearProperty(Constants.RING_BUFFER_SIZE);
+		}
+		pipeline.startAsync().awaitRunning();
+	}
+	
+	/**
+	 * Waits for the pipeline consumers to process the passed total number of events
+	 * @param total The expected total
+	 * @throws InterruptedException thrown if interrupted while waiting
+	 */
+	static void awaitProcessed(long total) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000L;
+		while(pipeline.getProcessedCount() < total && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10L);
+		}
+		Assert.assertEquals("Processed events", total, pipeline.getProcessedCount());
+	}
+	
+	/**
+	 * Returns the number of values applied to a new aggregator, including those a background flush may have rolled 
+	 * into the finest granularity since the aggregator was created
+	 * @param globalId The global id of the aggregator
+	 * @return the number of values
+	 */
+	static long applied(long globalId) {
+		final IPeriodAggregator rolled = registry.getRolledPeriod(globalId, registry.getRollupPeriods()[0]);
+		return registry.getPeriodAggregator(globalId, false).getCount() + (rolled==null ? 0L : rolled.getCount());
+	}
+	
+	/**
+	 * Tests that values published by concurrent producers into a ring smaller than the number of values 
+	 * are all applied, and each consumer processes exactly the values of its partition
+	 */
+	@Test(timeout=30000)
+	public void testConcurrentProducers() throws Exception {
+		final int producers = 4, ids = 16, values = 20000;
+		final long[] globalIds = new long[ids];
+		final long[] partitionCounts = new long[CONSUMERS];
+		for(int i = 0; i < ids; i++) {
+			globalIds[i] = nextPosLong();
+			partitionCounts[PartitionedEventHandler.partitionFor(globalIds[i], CONSUMERS)] += producers * (values / ids);
+		}
+		final long[] before = pipeline.getProcessedCounts();
+		final long processed = pipeline.getProcessedCount();
+		final CountDownLatch done = new CountDownLatch(producers);
+		for(int p = 0; p < producers; p++) {
+			final boolean doubles = p % 2==1;
+			final Thread t = new Thread("Producer#" + p) {
+				@Override
+				public void run() {
+					for(int v = 0; v < values; v++) {
+						final long globalId = globalIds[v % ids];
+						if(doubles) pipeline.publish(globalId, 1D);
+						else pipeline.publish(globalId, 1L);
+					}
+					done.countDown();
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+		Assert.assertTrue("Producers finished", done.await(20, TimeUnit.SECONDS));
+		awaitProcessed(processed + (producers * values));
+		final long[] after = pipeline.getProcessedCounts();
+		for(int c = 0; c < CONSUMERS; c++) {
+			Assert.assertEquals("Events processed by consumer " + c, partitionCounts[c], after[c] - before[c]);
+		}
+		for(int i = 0; i < ids; i++) {
+			Assert.assertEquals("Count of " + globalIds[i], producers * (values / ids), applied(globalIds[i]));
+		}
+	}
+	
+	/**
+	 * Tests that an event with no global id is consumed without being applied
+	 */
+	@Test(timeout=30000)
+	public void testUnresolvedGlobalId() throws Exception {
+		final long published = pipeline.getPublishedCount();
+		final long processed = pipeline.getProcessedCount();
+		final long globalId = nextPosLong();
+		pipeline.publish(-1L, 5L);
+		pipeline.publish(globalId, 5L);
+		awaitProcessed(processed + 1);
+		Assert.assertEquals("Published events", published + 2, pipeline.getPublishedCount());
+		Assert.assertEquals("Count", 1L, applied(globalId));
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.ingest;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.ingest.ipc.SharedMemoryRing;
+import org.helios.rindle.period.IPeriodAggregator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestSharedMemoryRing</p>
+ * <p>Description: Test cases for the {@link SharedMemoryRing} ingestion ring, covering rejection when full, 
+ * producers writing through their own mappings of the ring file, reattaching to a ring with a backlog and header validation</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.ingest.TestSharedMemoryRing</code></p>
+ */
+public class TestSharedMemoryRing extends BaseTest {
+	/** The registry the records are drained into */
+	static final Registry registry = Registry.getInstance();
+	
+	/**
+	 * Creates a temp ring file
+	 * @return the file
+	 * @throws Exception thrown on any error
+	 */
+	static File ringFile() throws Exception {
+		final File file = File.createTempFile("rindle-ring", ".ipc");
+		file.deleteOnExit();
+		return file;
+	}
+	
+	/**
+	 * Returns the number of values applied to a new aggregator, including those a background flush may have rolled 
+	 * into the finest granularity since the aggregator was created
+	 * @param globalId The global id of the aggregator
+	 * @return the number of values
+	 */
+	static long applied(long globalId) {
+		final IPeriodAggregator rolled = registry.getRolledPeriod(globalId, registry.getRollupPeriods()[0]);
+		return registry.getPeriodAggregator(globalId, false).getCount() + (rolled==null ? 0L : rolled.getCount());
+	}
+	
+	/**
+	 * Tests that offers to a full ring are rejected and counted, and draining frees the slots
+	 */
+	@Test
+	public void testFullRing() throws Exception {
+		final SharedMemoryRing ring = SharedMemoryRing.create(ringFile(), 5);
+		Assert.assertEquals("Capacity", 8, ring.getCapacity());
+		final long globalId = nextPosLong();
+		for(int i = 0; i < 8; i++) {
+			Assert.assertTrue("Offer " + i, ring.offer(globalId, (long)i));
+		}
+		Assert.assertFalse("Offer to a full ring", ring.offer(globalId, 8L));
+		Assert.assertFalse("Double offer to a full ring", ring.offer(globalId, 8D));
+		Assert.assertEquals("Rejected", 2L, ring.getRejectedCount());
+		Assert.assertEquals("Backlog", 8L, ring.getBacklog());
+		Assert.assertEquals("Drained", 3, ring.drain(registry, 3));
+		for(int i = 0; i < 3; i++) {
+			Assert.assertTrue("Offer after drain " + i, ring.offer(globalId, 10L));
+		}
+		Assert.assertFalse("Offer to a full ring after drain", ring.offer(globalId, 8L));
+		Assert.assertEquals("Drained the rest", 8, ring.drain(registry, 100));
+		Assert.assertEquals("Drained an empty ring", 0, ring.drain(registry, 100));
+		Assert.assertEquals("Applied", 11L, applied(globalId));
+		Assert.assertEquals("Read sequence", 11L, ring.getReadSequence());
+	}
+	
+	/**
+	 * Tests that concurrent producers, each writing through its own mapping of the ring file, 
+	 * deliver every value to a reader draining concurrently
+	 */
+	@Test(timeout=60000)
+	public void testProducersOnAttachedMappings() throws Exception {
+		final File file = ringFile();
+		final SharedMemoryRing reader = SharedMemoryRing.create(file, 256);
+		final int producers = 4, values = 50000;
+		final long[] globalIds = new long[producers];
+		final CountDownLatch done = new CountDownLatch(producers);
+		for(int p = 0; p < producers; p++) {
+			globalIds[p] = nextPosLong();
+			final long globalId = globalIds[p];
+			final SharedMemoryRing producer = SharedMemoryRing.attach(file);
+			final Thread t = new Thread("RingProducer#" + p) {
+				@Override
+				public void run() {
+					for(int v = 0; v < values; v++) {
+						while(!producer.offer(globalId, 1L)) Thread.yield();
+					}
+					done.countDown();
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+		long drained = 0;
+		while(drained < producers * values) {
+			final int n = reader.drain(registry, 64);
+			if(n==0) Thread.yield();
+			drained += n;
+		}
+		done.await();
+		Assert.assertEquals("Drained", (long)producers * values, drained);
+		Assert.assertEquals("Backlog", 0L, reader.getBacklog());
+		for(long globalId: globalIds) {
+			Assert.assertEquals("Applied for " + globalId, (long)values, applied(globalId));
+		}
+	}
+	
+	/**
+	 * Tests that a reader reattaching to a ring file picks up the records not yet drained
+	 */
+	@Test
+	public void testReattachWithBacklog() throws Exception {
+		final File file = ringFile();
+		final SharedMemoryRing first = SharedMemoryRing.create(file, 16);
+		final long globalId = nextPosLong();
+		Assert.assertTrue("Offer", first.offer(globalId, 1L));
+		Assert.assertTrue("Offer", first.offer(globalId, 2L));
+		Assert.assertEquals("Drained", 1, first.drain(registry, 1));
+		Assert.assertTrue("Offer", SharedMemoryRing.attach(file).offer(globalId, 3L));
+		final SharedMemoryRing second = SharedMemoryRing.create(file, 16);
+		Assert.assertEquals("Backlog after reattaching", 2L, second.getBacklog());
+		Assert.assertEquals("Drained after reattaching", 2, second.drain(registry, 16));
+		Assert.assertEquals("Applied", 3L, applied(globalId));
+	}
+	
+	/**
+	 * Tests that attaching to a missing, uninitialized or differently sized ring file is rejected
+	 */
+	@Test
+	public void testHeaderValidation() throws Exception {
+		final File missing = ringFile();
+		Assert.assertTrue("Deleted", missing.delete());
+		assertRejected(missing, -1);
+		final File zeros = ringFile();
+		final RandomAccessFile raf = new RandomAccessFile(zeros, "rw");
+		try {
+			raf.setLength(SharedMemoryRing.HEADER_SIZE);
+		} finally {
+			raf.close();
+		}
+		assertRejected(zeros, -1);
+		final File sized = ringFile();
+		SharedMemoryRing.create(sized, 16);
+		assertRejected(sized, 32);
+	}
+	
+	/**
+	 * Asserts that attaching to, or creating with a capacity, the passed ring file is rejected
+	 * @param file The ring file
+	 * @param capacity The capacity to create with, or -1 to attach
+	 */
+	static void assertRejected(File file, int capacity) {
+		try {
+			if(capacity==-1) SharedMemoryRing.attach(file);
+			else SharedMemoryRing.create(file, capacity);
+			Assert.fail("Ring file [" + file + "] was not rejected");
+		} catch (IllegalArgumentException iae) {
+			/* expected */
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.ingest;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.helios.rindle.ingest.statsd.StatsdListener;
+import org.helios.rindle.submit.ISubmit;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestStatsdListener</p>
+ * <p>Description: Test cases for the in place statsd line parsing of {@link StatsdListener}, covering sample rates,
+ * CRLF line endings, missing types and integers too long for a long</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.ingest.TestStatsdListener</code></p>
+ */
+public class TestStatsdListener extends BaseTest {
+	/** The listener under test. Only one is created since the listener registers an MBean */
+	static final RecordingListener listener = new RecordingListener();
+	/** The line handler datagrams are passed to */
+	static final SimpleChannelUpstreamHandler handler = listener.newHandler();
+	/** The submitter recording the submitted values */
+	Recorder recorder = null;
+	
+	/**
+	 * Installs a new recorder before each test
+	 */
+	@Before
+	public void newRecorder() {
+		recorder = new Recorder();
+		listener.setSubmitter(recorder);
+	}
+	
+	/**
+	 * Tests that a counter with a sample rate is scaled up by the rate, a rate of 1 leaves the value as is
+	 * and a sample rate on any other type is ignored
+	 */
+	@Test
+	public void testSampleRate() throws Exception {
+		final String name = "rate." + nextPosLong();
+		send(name + ":10|c|@0.1\n" + name + ":3|c|@1\n" + name + ":7|ms|@0.1");
+		Assert.assertEquals("Submitted lines", 3, recorder.values.size());
+		Assert.assertEquals("Scaled value", 100D, recorder.values.get(0).doubleValue(), 0.000001D);
+		Assert.assertTrue("Scaled value is a double", recorder.values.get(0) instanceof Double);
+		Assert.assertEquals("Unscaled value", Long.valueOf(3L), recorder.values.get(1));
+		Assert.assertEquals("Timer value", Long.valueOf(7L), recorder.values.get(2));
+		for(String n: recorder.names) Assert.assertEquals("Name", name, n);
+	}
+	
+	/**
+	 * Tests that sample rates that are missing the <b><code>@</code></b>, out of range or not numbers are malformed
+	 */
+	@Test
+	public void testInvalidSampleRate() throws Exception {
+		final String name = "badrate." + nextPosLong();
+		final long malformed = listener.getMalformedCount();
+		send(name + ":10|c|0.1\n" + name + ":10|c|@0\n" + name + ":10|c|@1.5\n" + name + ":10|c|@\n" + name + ":10|c|@x");
+		Assert.assertEquals("Submitted lines", 0, recorder.values.size());
+		Assert.assertEquals("Malformed lines", 5, listener.getMalformedCount() - malformed);
+	}
+	
+	/**
+	 * Tests that CRLF terminated lines are parsed without the carriage return in the name or value,
+	 * and that empty lines are skipped without being counted as malformed
+	 */
+	@Test
+	public void testCrLf() throws Exception {
+		final String a = "crlf.a." + nextPosLong(), b = "crlf.b." + nextPosLong();
+		final long malformed = listener.getMalformedCount();
+		send(a + ":1|c\r\n\r\n" + b + ":2.5|g\r\n" + a + ":4|c|@0.5\r\n");
+		Assert.assertEquals("Malformed lines", 0, listener.getMalformedCount() - malformed);
+		Assert.assertEquals("Submitted lines", 3, recorder.values.size());
+		Assert.assertEquals("First name", a, recorder.names.get(0));
+		Assert.assertEquals("First value", Long.valueOf(1L), recorder.values.get(0));
+		Assert.assertEquals("Second name", b, recorder.names.get(1));
+		Assert.assertEquals("Second value", 2.5D, recorder.values.get(1).doubleValue(), 0D);
+		Assert.assertEquals("Third name", a, recorder.names.get(2));
+		Assert.assertEquals("Third value", 8D, recorder.values.get(2).doubleValue(), 0D);
+	}
+	
+	/**
+	 * Tests that lines without a type, without a value or without a name are malformed
+	 * and do not stop the following lines in the datagram from being submitted
+	 */
+	@Test
+	public void testMissingType() throws Exception {
+		final String name = "notype." + nextPosLong();
+		final long malformed = listener.getMalformedCount();
+		send(name + ":1\n" + name + ":1|\n" + name + ":|c\n:1|c\n" + name + "\n" + name + ":5|c");
+		Assert.assertEquals("Malformed lines", 5, listener.getMalformedCount() - malformed);
+		Assert.assertEquals("Submitted lines", 1, recorder.values.size());
+		Assert.assertEquals("Value", Long.valueOf(5L), recorder.values.get(0));
+	}
+	
+	/**
+	 * Tests that integers with more digits than a long can hold exactly are malformed, while the longest
+	 * accepted integers and long fractions are parsed
+	 */
+	@Test
+	public void testLongNumbers() throws Exception {
+		final String name = "long." + nextPosLong();
+		final long malformed = listener.getMalformedCount();
+		send(name + ":1234567890123456789|g\n" + name + ":-99999999999999999999999|g\n" + name + ":9223372036854775808|g");
+		Assert.assertEquals("Malformed lines", 3, listener.getMalformedCount() - malformed);
+		Assert.assertEquals("Submitted lines", 0, recorder.values.size());
+		send(name + ":999999999999999999|g\n" + name + ":-999999999999999999|g\n" + name + ":0.12345678901234567890123|g\n" + name + ":+12.5|g");
+		Assert.assertEquals("Malformed lines", 3, listener.getMalformedCount() - malformed);
+		Assert.assertEquals("Submitted lines", 4, recorder.values.size());
+		Assert.assertEquals("Max digits", Long.valueOf(999999999999999999L), recorder.values.get(0));
+		Assert.assertEquals("Negative max digits", Long.valueOf(-999999999999999999L), recorder.values.get(1));
+		Assert.assertEquals("Long fraction", 0.123456789012345678D, recorder.values.get(2).doubleValue(), 1e-15D);
+		Assert.assertEquals("Signed fraction", 12.5D, recorder.values.get(3).doubleValue(), 0D);
+	}
+	
+	/**
+	 * Passes the passed lines to the line handler as one datagram
+	 * @param lines The datagram content
+	 * @throws Exception thrown on any error in the handler
+	 */
+	protected static void send(final String lines) throws Exception {
+		handler.messageReceived(null, new MessageEvent() {
+			final Object message = ChannelBuffers.wrappedBuffer(lines.getBytes(StatsdListener.UTF8));
+			public Object getMessage() { return message; }
+			public SocketAddress getRemoteAddress() { return null; }
+			public Channel getChannel() { return null; }
+			public ChannelFuture getFuture() { return null; }
+		});
+	}
+	
+	/**
+	 * <p>Title: RecordingListener</p>
+	 * <p>Description: Exposes the listener's line handler and submitter without binding a channel</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>test.ingest.TestStatsdListener.RecordingListener</code></p>
+	 */
+	static class RecordingListener extends StatsdListener {
+		/**
+		 * Creates a new line handler for this listener
+		 * @return the line handler
+		 */
+		SimpleChannelUpstreamHandler newHandler() {
+			return new LineHandler() {};
+		}
+		
+		/**
+		 * Sets the submitter lines are submitted to
+		 * @param submitter the submitter
+		 */
+		void setSubmitter(ISubmit submitter) {
+			this.submitter = submitter;
+		}
+	}
+	
+	/**
+	 * <p>Title: Recorder</p>
+	 * <p>Description: An {@link ISubmit} that records the names and values submitted one at a time,
+	 * assigning a new global id to each new name</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>test.ingest.TestStatsdListener.Recorder</code></p>
+	 */
+	static class Recorder implements ISubmit {
+		/** The submitted names in submission order */
+		final List<String> names = new ArrayList<String>();
+		/** The submitted values in submission order */
+		final List<Number> values = new ArrayList<Number>();
+		/** The assigned global ids keyed by name */
+		final Map<String, Long> ids = new HashMap<String, Long>();
+		/** The names keyed by assigned global id */
+		final Map<Long, String> idNames = new HashMap<Long, String>();
+		
+		/**
+		 * Records a value submitted by name
+		 * @param name The metric name
+		 * @param value The value
+		 * @return the global id assigned to the name
+		 */
+		long record(String name, Number value) {
+			Long id = ids.get(name);
+			if(id==null) {
+				id = nextPosLong();
+				ids.put(name, id);
+				idNames.put(id, name);
+			}
+			names.add(name);
+			values.add(value);
+			return id;
+		}
+		
+		/**
+		 * Records a value submitted by a global id the listener has cached
+		 * @param globalId The global id
+		 * @param value The value
+		 */
+		void record(long globalId, Number value) {
+			names.add(idNames.get(globalId));
+			values.add(value);
+		}
+		
+		public long submit(String name, long value) { return record(name, value); }
+		public long submit(String name, double value) { return record(name, value); }
+		public void submit(long globalId, long value) { record(globalId, value); }
+		public void submit(long globalId, double value) { record(globalId, value); }
+		public long submit(String name, byte[] opaqueKey, long value) { throw new UnsupportedOperationException(); }
+		public long submit(String name, byte[] opaqueKey, double value) { throw new UnsupportedOperationException(); }
+		public long submit(byte[] opaqueKey, long value) { throw new UnsupportedOperationException(); }
+		public long submit(byte[] opaqueKey, double value) { throw new UnsupportedOperationException(); }
+		public long[] submit(String[] names, long[] values, long[] timestamps) { throw new UnsupportedOperationException(); }
+		public long[] submit(String[] names, double[] values, long[] timestamps) { throw new UnsupportedOperationException(); }
+		public void submit(long[] globalIds, long[] values, long[] timestamps) { throw new UnsupportedOperationException(); }
+		public void submit(long[] globalIds, double[] values, long[] timestamps) { throw new UnsupportedOperationException(); }
+	}
+}
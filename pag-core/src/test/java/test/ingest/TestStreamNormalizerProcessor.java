@@ -0,0 +1,166 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.ingest;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TSet;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.ingest.thrift.StreamNormalizerProcessor;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestStreamNormalizerProcessor</p>
+ * <p>Description: Test cases for the {@link StreamNormalizerProcessor}, which decodes StreamNormalizer calls
+ * written with the binary protocol straight into the {@link Registry}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.ingest.TestStreamNormalizerProcessor</code></p>
+ */
+public class TestStreamNormalizerProcessor extends BaseTest {
+	/** The registry the data points are applied to */
+	static final Registry registry = Registry.getInstance();
+	/** The processor under test. The session manager is not needed by the calls tested */
+	static final StreamNormalizerProcessor processor = new StreamNormalizerProcessor(registry, null);
+	
+	/**
+	 * Writes a data point struct
+	 * @param out The protocol to write to
+	 * @param globalId The global id, or -1 to omit it
+	 * @param value A Long or Double value, or null to omit it
+	 * @throws Exception thrown on any error
+	 */
+	static void writeDataPoint(TProtocol out, long globalId, Number value) throws Exception {
+		out.writeStructBegin(new TStruct("DataPoint"));
+		if(globalId!=-1L) {
+			out.writeFieldBegin(new TField("globalId", TType.I64, StreamNormalizerProcessor.DP_GLOBAL_ID));
+			out.writeI64(globalId);
+			out.writeFieldEnd();
+		}
+		out.writeFieldBegin(new TField("timestamp", TType.I64, StreamNormalizerProcessor.DP_TIMESTAMP));
+		out.writeI64(System.currentTimeMillis());
+		out.writeFieldEnd();
+		// an unknown field, which must be skipped
+		out.writeFieldBegin(new TField("unknown", TType.STRING, (short)9));
+		out.writeString("skipped");
+		out.writeFieldEnd();
+		if(value!=null) {
+			out.writeFieldBegin(new TField("value", TType.STRUCT, StreamNormalizerProcessor.DP_VALUE));
+			out.writeStructBegin(new TStruct("DataPointValue"));
+			if(value instanceof Double) {
+				out.writeFieldBegin(new TField("doubleValue", TType.DOUBLE, StreamNormalizerProcessor.DPV_DOUBLE));
+				out.writeDouble(value.doubleValue());
+			} else {
+				out.writeFieldBegin(new TField("longValue", TType.I64, StreamNormalizerProcessor.DPV_LONG));
+				out.writeI64(value.longValue());
+			}
+			out.writeFieldEnd();
+			out.writeFieldStop();
+			out.writeStructEnd();
+			out.writeFieldEnd();
+		}
+		out.writeFieldStop();
+		out.writeStructEnd();
+	}
+	
+	/**
+	 * Tests that a oneway submitDataPoints call applies each complete data point and skips the incomplete ones
+	 */
+	@Test
+	public void testSubmitDataPoints() throws Exception {
+		final long a = nextPosLong(), b = nextPosLong();
+		final TMemoryBuffer buffer = new TMemoryBuffer(1024);
+		final TProtocol in = new TBinaryProtocol(buffer);
+		in.writeMessageBegin(new TMessage("submitDataPoints", TMessageType.ONEWAY, 1));
+		in.writeStructBegin(new TStruct("submitDataPoints_args"));
+		in.writeFieldBegin(new TField("clientId", TType.I64, (short)1));
+		in.writeI64(77L);
+		in.writeFieldEnd();
+		in.writeFieldBegin(new TField("dataPoints", TType.SET, (short)2));
+		in.writeSetBegin(new TSet(TType.STRUCT, 5));
+		writeDataPoint(in, a, 3L);
+		writeDataPoint(in, a, 4L);
+		writeDataPoint(in, b, 2.5D);
+		writeDataPoint(in, -1L, 1L);
+		writeDataPoint(in, b, null);
+		in.writeSetEnd();
+		in.writeFieldEnd();
+		in.writeFieldStop();
+		in.writeStructEnd();
+		in.writeMessageEnd();
+		final long dataPoints = processor.getDataPointCount();
+		final TMemoryBuffer outBuffer = new TMemoryBuffer(64);
+		Assert.assertTrue("Processed", processor.process(in, new TBinaryProtocol(outBuffer)));
+		Assert.assertEquals("Reply bytes to a oneway call", 0, outBuffer.length());
+		Assert.assertEquals("Data points", dataPoints + 3, processor.getDataPointCount());
+		final PeriodAggregatorImpl pa = registry.getPeriodAggregator(a, false);
+		Assert.assertEquals("A count", 2, pa.getCount());
+		Assert.assertEquals("A sum", 7L, pa.getLongSum());
+		final PeriodAggregatorImpl pb = registry.getPeriodAggregator(b, true);
+		Assert.assertEquals("B max", 2.5D, pb.getDoubleMax(), 0D);
+	}
+	
+	/**
+	 * Tests that an unknown method and a subscription with unsupported options are answered with an exception reply
+	 */
+	@Test
+	public void testExceptionReplies() throws Exception {
+		for(String method: new String[]{"noSuchMethod", "subscribe"}) {
+			final TMemoryBuffer buffer = new TMemoryBuffer(256);
+			final TProtocol in = new TBinaryProtocol(buffer);
+			in.writeMessageBegin(new TMessage(method, TMessageType.CALL, 9));
+			in.writeStructBegin(new TStruct(method + "_args"));
+			in.writeFieldBegin(new TField("clientId", TType.I64, (short)1));
+			in.writeI64(1L);
+			in.writeFieldEnd();
+			in.writeFieldBegin(new TField("options", TType.I32, StreamNormalizerProcessor.SUB_OPTIONS));
+			in.writeI32(1);
+			in.writeFieldEnd();
+			in.writeFieldStop();
+			in.writeStructEnd();
+			in.writeMessageEnd();
+			final TMemoryBuffer outBuffer = new TMemoryBuffer(256);
+			final TProtocol out = new TBinaryProtocol(outBuffer);
+			Assert.assertTrue("Processed " + method, processor.process(in, out));
+			final TMessage reply = out.readMessageBegin();
+			Assert.assertEquals("Reply name", method, reply.name);
+			Assert.assertEquals("Reply type", TMessageType.EXCEPTION, reply.type);
+			Assert.assertEquals("Reply seqid", 9, reply.seqid);
+			final TApplicationException ex = TApplicationException.read(out);
+			Assert.assertEquals("Exception type", method.equals("subscribe") ? TApplicationException.UNKNOWN : TApplicationException.UNKNOWN_METHOD, ex.getType());
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.ingest;
+
+import java.io.File;
+
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.ingest.DataPointEvent;
+import org.helios.rindle.ingest.PartitionedEventHandler;
+import org.helios.rindle.ingest.ipc.SharedMemoryRing;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestTimestampedIngest</p>
+ * <p>Description: Test cases verifying that the ingestion pipeline consumers and the shared memory ring pass the timestamp
+ * of each value through to the {@link Registry}, so event time aggregators bucket and drop values by their own time</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.ingest.TestTimestampedIngest</code></p>
+ */
+public class TestTimestampedIngest extends BaseTest {
+	/** The registry the values are applied to */
+	static final Registry registry = Registry.getInstance();
+	/** The event time bucket size in ms */
+	static final long BUCKET_MS = 60000L;
+	
+	/**
+	 * Creates an aggregator in event time mode
+	 * @param globalId The global id of the aggregator
+	 * @return the aggregator
+	 */
+	static PeriodAggregatorImpl eventTimeAggregator(long globalId) {
+		final PeriodAggregatorImpl pai = registry.getPeriodAggregator(globalId, false);
+		pai.enableEventTime(BUCKET_MS, 1);
+		return pai;
+	}
+	
+	/**
+	 * Tests that a partitioned consumer applies events with their timestamps
+	 */
+	@Test
+	public void testPartitionedEventTimestamps() throws Exception {
+		final long globalId = nextPosLong();
+		final PeriodAggregatorImpl pai = eventTimeAggregator(globalId);
+		final long now = System.currentTimeMillis();
+		final PartitionedEventHandler handler = new PartitionedEventHandler(registry, 0, 1);
+		final DataPointEvent event = new DataPointEvent();
+		handler.onEvent(event.set(globalId, 5L, now - (BUCKET_MS * 10)), 0L, false);
+		handler.onEvent(event.set(globalId, 7L, now), 1L, true);
+		handler.onEvent(event.set(globalId, 9L), 2L, true);
+		Assert.assertEquals("Processed events", 3L, handler.getProcessed());
+		Assert.assertEquals("Dropped values", 1L, pai.getDroppedCount());
+	}
+	
+	/**
+	 * Tests that ring records carry their timestamps to the registry and untimed offers stay untimed
+	 */
+	@Test
+	public void testRingTimestamps() throws Exception {
+		final File file = File.createTempFile("rindle-ring", ".ipc");
+		file.deleteOnExit();
+		final SharedMemoryRing ring = SharedMemoryRing.create(file, 16);
+		final long globalId = nextPosLong();
+		final PeriodAggregatorImpl pai = eventTimeAggregator(globalId);
+		final long now = System.currentTimeMillis();
+		Assert.assertTrue("Stale offer", ring.offer(globalId, 5L, now - (BUCKET_MS * 10)));
+		Assert.assertTrue("Stale double offer", ring.offer(globalId, 6D, now - (BUCKET_MS * 10)));
+		Assert.assertTrue("Timed offer", ring.offer(globalId, 7L, now));
+		Assert.assertTrue("Untimed offer", ring.offer(globalId, 9L));
+		Assert.assertEquals("Drained records", 4, ring.drain(registry, 16));
+		Assert.assertEquals("Dropped values", 2L, pai.getDroppedCount());
+		Assert.assertEquals("Backlog", 0L, ring.getBacklog());
+	}
+}
@@ -0,0 +1,236 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.period;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.helios.rindle.period.IPeriodAggregator;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.helios.rindle.subscription.criteria.Retention;
+import org.helios.rindle.util.ArrayUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestAggregatorModes</p>
+ * <p>Description: Test cases for the update modes of {@link PeriodAggregatorImpl}, the locked, CAS and striped modes,
+ * covering the count, sum, min, max and variance of each, and the double buffered roll flipping writers while they write</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.period.TestAggregatorModes</code></p>
+ */
+public class TestAggregatorModes extends BaseTest {
+	/** The number of writer threads */
+	static final int WRITERS = 4;
+	/** The number of values each writer applies */
+	static final int VALUES = 500000;
+	/** The roll-up periods, the finest granularity only */
+	static final int[] PERIODS = {1};
+	
+	/**
+	 * Creates an aggregator in the passed mode
+	 * @param isDouble true for a double, false for a long
+	 * @param lockFree true for CAS updates, false for locked updates
+	 * @param striped true to stripe the aggregator
+	 * @return the aggregator
+	 */
+	static PeriodAggregatorImpl aggregator(boolean isDouble, boolean lockFree, boolean striped) {
+		final PeriodAggregatorImpl pai = new PeriodAggregatorImpl(isDouble, lockFree);
+		if(striped) pai.enableStriping();
+		Assert.assertEquals("Lock free", lockFree, pai.isLockFree());
+		Assert.assertEquals("Striped", striped, pai.isStriped());
+		return pai;
+	}
+	
+	/**
+	 * Tests the count, sum, min, max, mean and variance of a sequence of long values in every mode
+	 */
+	@Test
+	public void testLongStats() {
+		for(int mode = 0; mode < 4; mode++) {
+			final PeriodAggregatorImpl pai = aggregator(false, mode%2==1, mode > 1);
+			for(long v = 1; v <= 100; v++) pai.processDataPoint(v);
+			final String m = "Mode " + mode + " ";
+			Assert.assertEquals(m + "count", 100L, pai.getCount());
+			Assert.assertEquals(m + "sum", 5050L, pai.getLongSum());
+			Assert.assertEquals(m + "min", 1L, pai.getLongMin());
+			Assert.assertEquals(m + "max", 100L, pai.getLongMax());
+			Assert.assertEquals(m + "mean", 50.5D, pai.getDoubleMean(), 0.0000001D);
+			Assert.assertEquals(m + "variance", (100D * 100D - 1) / 12, pai.getVariance(), 0.0000001D);
+		}
+	}
+	
+	/**
+	 * Tests the variance of double values with a mean that is large relative to their standard deviation in every mode
+	 */
+	@Test
+	public void testDoubleVarianceWithLargeMean() {
+		for(int mode = 0; mode < 4; mode++) {
+			final PeriodAggregatorImpl pai = aggregator(true, mode%2==1, mode > 1);
+			for(int i = 0; i < 1000; i++) pai.processDataPoint(1000000000D + (i%2==0 ? 0.5D : -0.5D));
+			final String m = "Mode " + mode + " ";
+			Assert.assertEquals(m + "count", 1000L, pai.getCount());
+			Assert.assertEquals(m + "mean", 1000000000D, pai.getDoubleMean(), 0.000001D);
+			Assert.assertEquals(m + "stddev", 0.5D, pai.getStdDev(), 0.000001D);
+			Assert.assertEquals(m + "min", 1000000000D - 0.5D, pai.getDoubleMin(), 0D);
+			Assert.assertEquals(m + "max", 1000000000D + 0.5D, pai.getDoubleMax(), 0D);
+		}
+	}
+	
+	/**
+	 * Tests that the last value is kept live and rolled in every mode, and that a sticky period carries it
+	 * across a bucket with no values while the completed period of that bucket has none
+	 */
+	@Test
+	public void testLastValue() {
+		for(int mode = 0; mode < 4; mode++) {
+			final PeriodAggregatorImpl pai = aggregator(true, mode%2==1, mode > 1);
+			pai.enableSticky(1);
+			final long globalId = nextPosLong();
+			pai.processDataPoint(5.5D);
+			pai.processDataPoint(9.5D);
+			pai.processDataPoint(3.5D);
+			final String m = "Mode " + mode + " ";
+			Assert.assertEquals(m + "live last", 3.5D, pai.getDoubleLast(), 0D);
+			pai.roll(globalId, 1L, 1, PERIODS);
+			Assert.assertEquals(m + "rolled last", 3.5D, pai.getRolledPeriod(1).getDoubleLast(), 0D);
+			for(long tick = 2; tick <= 3; tick++) {
+				pai.roll(globalId, tick, 1, PERIODS);
+				final IPeriodAggregator empty = pai.getRolledPeriod(1);
+				Assert.assertEquals(m + "empty count", 0L, empty.getCount());
+				Assert.assertEquals(m + "empty last time", 0L, empty.getLastTime());
+			}
+			final IPeriodAggregator sticky = pai.getRolledPeriod(1, Retention.STICKY);
+			Assert.assertEquals(m + "sticky count", 3L, sticky.getCount());
+			Assert.assertEquals(m + "sticky last", 3.5D, sticky.getDoubleLast(), 0D);
+			Assert.assertEquals(m + "sticky max", 9.5D, sticky.getDoubleMax(), 0D);
+		}
+	}
+	
+	/**
+	 * Tests that raw values applied singly and in batches by concurrent writers are all kept in every mode
+	 */
+	@Test(timeout=60000)
+	public void testRawValues() throws Exception {
+		final int batch = 100;
+		final long[] values = new long[batch];
+		final long[] timestamps = new long[batch];
+		for(int i = 0; i < batch; i++) {
+			values[i] = i + 1;
+			timestamps[i] = i;
+		}
+		final int[] indexes = ArrayUtils.sequence(batch);
+		for(int mode = 0; mode < 4; mode++) {
+			final PeriodAggregatorImpl pai = aggregator(false, mode%2==1, mode > 1);
+			pai.setRawEnabled(true);
+			final CountDownLatch done = new CountDownLatch(WRITERS);
+			for(int t = 0; t < WRITERS; t++) {
+				final Thread writer = new Thread("RawWriter#" + t) {
+					@Override
+					public void run() {
+						try {
+							for(long v = 1; v <= 1000; v++) pai.processDataPoint(v);
+							pai.processDataPoints(values, timestamps, indexes, 0, batch);
+						} finally {
+							done.countDown();
+						}
+					}
+				};
+				writer.setDaemon(true);
+				writer.start();
+			}
+			done.await();
+			final String m = "Mode " + mode + " ";
+			final long[] raw = pai.getLongs();
+			long sum = 0;
+			for(long v: raw) sum += v;
+			Assert.assertEquals(m + "raw values", WRITERS * (1000 + batch), raw.length);
+			Assert.assertEquals(m + "count", (long)raw.length, pai.getCount());
+			Assert.assertEquals(m + "raw sum", pai.getLongSum(), sum);
+		}
+	}
+	
+	/**
+	 * Tests that rolls flipping the aggregator while writers apply values lose and duplicate no values in every mode,
+	 * with each value rolled whole by the roll after the one it raced
+	 */
+	@Test(timeout=60000)
+	public void testRollWhileWriting() throws Exception {
+		for(int mode = 0; mode < 4; mode++) {
+			final PeriodAggregatorImpl pai = aggregator(false, mode%2==1, mode > 1);
+			final long globalId = nextPosLong();
+			final CountDownLatch start = new CountDownLatch(1);
+			final CountDownLatch done = new CountDownLatch(WRITERS);
+			final AtomicBoolean failed = new AtomicBoolean(false);
+			for(int t = 0; t < WRITERS; t++) {
+				final Thread writer = new Thread("Writer#" + t) {
+					@Override
+					public void run() {
+						try {
+							start.await();
+							for(long v = 1; v <= VALUES; v++) pai.processDataPoint(v);
+						} catch (Throwable ex) {
+							failed.set(true);
+						} finally {
+							done.countDown();
+						}
+					}
+				};
+				writer.setDaemon(true);
+				writer.start();
+			}
+			long count = 0, sum = 0, min = Long.MAX_VALUE, max = Long.MIN_VALUE, tick = 0, rolls = 0;
+			start.countDown();
+			// once the writers are done, two more rolls drain both records, since a writer that raced a flip may have 
+			// applied part of its value to the record that became active
+			int trailing = 2;
+			while(trailing > 0) {
+				if(done.getCount()==0) trailing--;
+				pai.roll(globalId, ++tick, 1, PERIODS);
+				final IPeriodAggregator rolled = pai.getRolledPeriod(1);
+				// a roll can carry the sum of a raced value without its count
+				sum += rolled.getLongSum();
+				if(rolled.getCount() > 0) {
+					rolls++;
+					count += rolled.getCount();
+					min = Math.min(min, rolled.getLongMin());
+					max = Math.max(max, rolled.getLongMax());
+				}
+			}
+			final String m = "Mode " + mode + " ";
+			Assert.assertFalse(m + "writer failed", failed.get());
+			Assert.assertEquals(m + "count", (long)WRITERS * VALUES, count);
+			Assert.assertEquals(m + "sum", (long)WRITERS * VALUES * (VALUES + 1) / 2, sum);
+			Assert.assertEquals(m + "min", 1L, min);
+			Assert.assertEquals(m + "max", (long)VALUES, max);
+			Assert.assertEquals(m + "live count after the last roll", 0L, pai.getCount());
+			Assert.assertEquals(m + "live sum after the last roll", 0L, pai.getLongSum());
+			log("Mode %s: %s values over %s rolls", mode, count, rolls);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.period;
+
+import org.helios.rindle.period.IPeriodAggregator;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestCounters</p>
+ * <p>Description: Test cases for the counter mode of {@link PeriodAggregatorImpl}, where values are readings of a monotonic
+ * counter and their deltas are aggregated, covering resets, 32 bit wraps and readings carried across rolls</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.period.TestCounters</code></p>
+ */
+public class TestCounters extends BaseTest {
+	/** The roll-up periods, the finest granularity only */
+	static final int[] PERIODS = {1};
+	/** The largest reading of a 32 bit counter as a double */
+	static final double MAX_COUNTER32_D = PeriodAggregatorImpl.MAX_COUNTER32;
+	
+	/**
+	 * Creates a counter aggregator
+	 * @param isDouble true for a double, false for a long
+	 * @param lockFree true for CAS updates, false for locked updates
+	 * @return the aggregator
+	 */
+	static PeriodAggregatorImpl counter(boolean isDouble, boolean lockFree) {
+		final PeriodAggregatorImpl pai = new PeriodAggregatorImpl(isDouble, lockFree);
+		pai.enableCounter();
+		Assert.assertTrue("Counter mode", pai.isCounter());
+		return pai;
+	}
+	
+	/**
+	 * Tests that the first reading only sets the previous reading and the deltas of later readings are aggregated
+	 */
+	@Test
+	public void testDeltas() {
+		for(int mode = 0; mode < 2; mode++) {
+			final PeriodAggregatorImpl pai = counter(false, mode==1);
+			final String m = "Mode " + mode + " ";
+			pai.processDataPoint(100L);
+			Assert.assertEquals(m + "count after the first reading", 0L, pai.getCount());
+			pai.processDataPoint(110L);
+			pai.processDataPoint(110L);
+			pai.processDataPoint(135L);
+			pai.processDataPoint(-5L);
+			Assert.assertEquals(m + "count", 3L, pai.getCount());
+			Assert.assertEquals(m + "sum", 35L, pai.getLongSum());
+			Assert.assertEquals(m + "min", 0L, pai.getLongMin());
+			Assert.assertEquals(m + "max", 25L, pai.getLongMax());
+			Assert.assertEquals(m + "resets", 0L, pai.getCounterResets());
+		}
+	}
+	
+	/**
+	 * Tests that a lower reading is a reset whose delta is the reading, unless it looks like a 32 bit counter wrapping
+	 */
+	@Test
+	public void testResetsAndWraps() {
+		for(int mode = 0; mode < 2; mode++) {
+			final PeriodAggregatorImpl pai = counter(false, mode==1);
+			final String m = "Mode " + mode + " ";
+			pai.processDataPoint(1000L);
+			pai.processDataPoint(10L);
+			Assert.assertEquals(m + "resets", 1L, pai.getCounterResets());
+			Assert.assertEquals(m + "sum after the reset", 10L, pai.getLongSum());
+			pai.processDataPoint(PeriodAggregatorImpl.MAX_COUNTER32 - 4);
+			pai.processDataPoint(5L);
+			Assert.assertEquals(m + "wraps", 1L, pai.getCounterWraps());
+			Assert.assertEquals(m + "resets after the wrap", 1L, pai.getCounterResets());
+			Assert.assertEquals(m + "max", PeriodAggregatorImpl.MAX_COUNTER32 - 14, pai.getLongMax());
+			Assert.assertEquals(m + "min", 10L, pai.getLongMin());
+			Assert.assertEquals(m + "count", 3L, pai.getCount());
+		}
+	}
+	
+	/**
+	 * Tests the deltas, resets and wraps of double counter readings
+	 */
+	@Test
+	public void testDoubleCounter() {
+		final PeriodAggregatorImpl pai = counter(true, false);
+		pai.processDataPoint(1.5D);
+		pai.processDataPoint(4D);
+		pai.processDataPoint(Double.NaN);
+		pai.processDataPoint(1D);
+		pai.processDataPoint(MAX_COUNTER32_D - 0.5D);
+		pai.processDataPoint(0.5D);
+		Assert.assertEquals("Count", 4L, pai.getCount());
+		Assert.assertEquals("Resets", 1L, pai.getCounterResets());
+		Assert.assertEquals("Wraps", 1L, pai.getCounterWraps());
+		Assert.assertEquals("Sum", 2.5D + 1D + (MAX_COUNTER32_D - 1.5D) + 2D, pai.getDoubleSum(), 0.000001D);
+	}
+	
+	/**
+	 * Tests that the previous reading is carried across a roll, so the completed period holds the increase within it
+	 * and the next bucket starts from the last reading
+	 */
+	@Test
+	public void testReadingsAcrossRolls() {
+		final PeriodAggregatorImpl pai = counter(false, false);
+		final long globalId = nextPosLong();
+		pai.processDataPoint(50L);
+		pai.processDataPoint(80L);
+		pai.roll(globalId, 1L, 1, PERIODS);
+		pai.processDataPoint(100L);
+		final IPeriodAggregator completed = pai.getRolledPeriod(1);
+		Assert.assertEquals("Completed sum", 30L, completed.getLongSum());
+		Assert.assertEquals("Completed rate", 30D, completed.getRate(), 0.0000001D);
+		Assert.assertEquals("Live sum after the roll", 20L, pai.getLongSum());
+		Assert.assertEquals("Live count after the roll", 1L, pai.getCount());
+	}
+}
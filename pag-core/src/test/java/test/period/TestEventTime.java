@@ -0,0 +1,152 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.period;
+
+import org.helios.rindle.period.IPeriodAggregator;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.helios.rindle.subscription.criteria.Retention;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestEventTime</p>
+ * <p>Description: Test cases for the event time mode of {@link PeriodAggregatorImpl}, covering late and dropped values
+ * and the roll-up of each closed event time bucket into the periods of its own epoch</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.period.TestEventTime</code></p>
+ */
+public class TestEventTime extends BaseTest {
+	/** The roll-up granularity in seconds */
+	static final int GRANULARITY = 1;
+	/** The roll-up periods, the finest granularity and two buckets */
+	static final int[] PERIODS = {1, 2};
+	
+	/**
+	 * Tests that each closed bucket is rolled into the periods of its own epoch, with its own quantiles and distinct count,
+	 * even when several buckets are closed by one roll
+	 */
+	@Test(timeout=30000)
+	public void testEpochAttribution() throws Exception {
+		final long bucketMs = 200L;
+		for(int attempt = 0; attempt < 5; attempt++) {
+			final PeriodAggregatorImpl pai = new PeriodAggregatorImpl(false);
+			pai.setQuantilesEnabled(true);
+			pai.setDistinctEnabled(true);
+			pai.enableEventTime(bucketMs, 1);
+			final long w = pai.getWatermark() / bucketMs;
+			pai.processDataPoint(99L, ((w - 1) * bucketMs) + 1);
+			for(int i = 0; i < 3; i++) pai.processDataPoint(1000L + i, (w * bucketMs) + 1 + i);
+			for(int i = 1; i <= 5; i++) pai.processDataPoint((long)i, ((w + 1) * bucketMs) + i);
+			Assert.assertEquals("Dropped values", 1L, pai.getDroppedCount());
+			Assert.assertEquals("Late values", 3L, pai.getLateCount());
+			// closing both open buckets in one roll needs the epoch after the newest open bucket to be open
+			sleepUntilEpoch(w + 3, bucketMs);
+			pai.roll(nextPosLong(), 1L, GRANULARITY, PERIODS);
+			if(pai.getWatermark()!=(w + 2) * bucketMs) {
+				log("Roll was delayed past the next bucket, retrying");
+				continue;
+			}
+			final IPeriodAggregator finest = pai.getRolledPeriod(1);
+			Assert.assertEquals("Finest count", 5L, finest.getCount());
+			Assert.assertEquals("Finest min", 1L, finest.getLongMin());
+			Assert.assertEquals("Finest max", 5L, finest.getLongMax());
+			Assert.assertEquals("Finest last time", ((w + 1) * bucketMs) + 5, finest.getLastTime());
+			Assert.assertEquals("Finest median", 3D, finest.getQuantile(0.5D), 0.1D);
+			Assert.assertEquals("Finest distinct", 5L, finest.getDistinctCount());
+			final IPeriodAggregator coarse = pai.getRolledPeriod(2);
+			if(w % 2==0) {
+				// epoch w+1 is the last bucket of the period [w, w+1]
+				Assert.assertEquals("Coarse count", 8L, coarse.getCount());
+				Assert.assertEquals("Coarse min", 1L, coarse.getLongMin());
+				Assert.assertEquals("Coarse max", 1002L, coarse.getLongMax());
+				Assert.assertEquals("Coarse distinct", 8L, coarse.getDistinctCount());
+			} else {
+				// epoch w is the last bucket of the period [w-1, w], and epoch w+1 starts the next period
+				Assert.assertEquals("Coarse count", 3L, coarse.getCount());
+				Assert.assertEquals("Coarse min", 1000L, coarse.getLongMin());
+				Assert.assertEquals("Coarse max", 1002L, coarse.getLongMax());
+				Assert.assertEquals("Coarse median", 1001D, coarse.getQuantile(0.5D), 20D);
+				Assert.assertEquals("Coarse distinct", 3L, coarse.getDistinctCount());
+			}
+			return;
+		}
+		Assert.fail("Every roll was delayed past the next bucket");
+	}
+	
+	/**
+	 * Tests that epochs skipped over by the watermark are rolled as empty, so completed periods do not repeat
+	 * old values, and that a sticky period's duration counts every period the skipped epochs complete
+	 */
+	@Test(timeout=30000)
+	public void testSkippedEpochs() throws Exception {
+		final long bucketMs = 100L;
+		final PeriodAggregatorImpl pai = new PeriodAggregatorImpl(false);
+		pai.enableSticky(2);
+		pai.enableEventTime(bucketMs, 1);
+		final long w = pai.getWatermark() / bucketMs;
+		pai.processDataPoint(40L, ((w + 1) * bucketMs) + 1);
+		sleepUntilEpoch(w + 10, bucketMs);
+		pai.roll(nextPosLong(), 1L, GRANULARITY, PERIODS);
+		final long target = pai.getWatermark() / bucketMs;
+		Assert.assertTrue("Watermark advanced", target >= w + 9);
+		Assert.assertEquals("Finest count", 0L, pai.getRolledPeriod(1).getCount());
+		Assert.assertEquals("Coarse count", 0L, pai.getRolledPeriod(2).getCount());
+		final IPeriodAggregator sticky = pai.getRolledPeriod(2, Retention.STICKY);
+		Assert.assertEquals("Sticky count", 1L, sticky.getCount());
+		Assert.assertEquals("Sticky max", 40L, sticky.getLongMax());
+		// epochs w to target-1 are rolled as ticks w+1 to target
+		final long completed = (target / 2) - (w / 2);
+		Assert.assertEquals("Sticky rate", 40D / (completed * 2), sticky.getRate(), 0.0000001D);
+	}
+	
+	/**
+	 * Tests that values without a timestamp are applied to the current bucket in event time mode
+	 */
+	@Test
+	public void testUntimedValues() {
+		final PeriodAggregatorImpl pai = new PeriodAggregatorImpl(true);
+		pai.enableEventTime(60000L, 2);
+		pai.processDataPoint(1.5D);
+		pai.processDataPoint(2L);
+		Assert.assertEquals("Late values", 0L, pai.getLateCount());
+		Assert.assertEquals("Dropped values", 0L, pai.getDroppedCount());
+	}
+	
+	/**
+	 * Sleeps until the current time is in the passed epoch or later
+	 * @param epoch The epoch to sleep until
+	 * @param bucketMs The duration of an epoch in ms
+	 * @throws InterruptedException thrown if the sleep is interrupted
+	 */
+	protected static void sleepUntilEpoch(final long epoch, final long bucketMs) throws InterruptedException {
+		long remaining;
+		while((remaining = (epoch * bucketMs) - System.currentTimeMillis()) > 0) {
+			Thread.sleep(remaining);
+		}
+	}
+}
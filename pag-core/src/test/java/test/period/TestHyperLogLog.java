@@ -0,0 +1,162 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.period;
+
+import org.helios.rindle.period.impl.HyperLogLog;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestHyperLogLog</p>
+ * <p>Description: Test cases for the accuracy, merging and draining of the {@link HyperLogLog} distinct value counter</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.period.TestHyperLogLog</code></p>
+ */
+public class TestHyperLogLog extends BaseTest {
+	/** The relative standard error of the estimate */
+	static final double SIGMA = 1.04D / Math.sqrt(HyperLogLog.REGISTERS);
+	
+	/**
+	 * Tests that the estimate of a thousand distinct values, each added twice, is within 3 standard errors
+	 */
+	@Test
+	public void testThousandDistinct() {
+		assertEstimate(1000);
+	}
+	
+	/**
+	 * Tests that the estimate of a million distinct values, each added twice, is within 3 standard errors
+	 */
+	@Test
+	public void testMillionDistinct() {
+		assertEstimate(1000000);
+	}
+	
+	/**
+	 * Tests that an empty counter estimates zero and that integral doubles count as the equal long
+	 */
+	@Test
+	public void testEmptyAndIntegralDoubles() {
+		final HyperLogLog hll = new HyperLogLog();
+		Assert.assertEquals("Empty count", 0L, hll.getCount());
+		hll.add(42L);
+		hll.add(42D);
+		Assert.assertEquals("Count of 42 and 42.0", 1L, hll.getCount());
+		hll.add(42.5D);
+		Assert.assertEquals("Count with 42.5", 2L, hll.getCount());
+	}
+	
+	/**
+	 * Tests that merging two counters, draining them into one and counting their union in one counter
+	 * all produce the same registers
+	 */
+	@Test
+	public void testMergeAndDrainEquivalence() {
+		final HyperLogLog a = new HyperLogLog(), b = new HyperLogLog(), union = new HyperLogLog();
+		final long start = nextPosLong() >>> 2;
+		// a and b overlap on half of their values
+		for(long v = start; v < start + 20000; v++) {
+			a.add(v);
+			union.add(v);
+		}
+		for(long v = start + 10000; v < start + 30000; v++) {
+			b.add(v);
+			union.add(v);
+		}
+		final HyperLogLog merged = new HyperLogLog();
+		merged.merge(a);
+		merged.merge(b);
+		Assert.assertArrayEquals("Merged registers", union.registers(), merged.registers());
+		Assert.assertEquals("Merged count", union.getCount(), merged.getCount());
+		final HyperLogLog copy = new HyperLogLog();
+		copy.copyFrom(a);
+		Assert.assertArrayEquals("Copied registers", a.registers(), copy.registers());
+		final HyperLogLog drained = new HyperLogLog();
+		a.drainInto(drained);
+		b.drainInto(drained);
+		Assert.assertArrayEquals("Drained registers", union.registers(), drained.registers());
+		Assert.assertEquals("Drained count", union.getCount(), drained.getCount());
+		Assert.assertEquals("Count left after draining", 0L, a.getCount());
+		Assert.assertEquals("Count left after draining", 0L, b.getCount());
+		Assert.assertEquals("Estimate of the registers", union.getCount(), HyperLogLog.estimate(union.registers()));
+		// merging is idempotent
+		merged.merge(copy);
+		Assert.assertArrayEquals("Registers after merging a subset", union.registers(), merged.registers());
+	}
+	
+	/**
+	 * Tests that the live distinct count of an aggregator is over the values applied since the last roll, 
+	 * and the rolled period keeps the completed count
+	 */
+	@Test
+	public void testLiveDistinctResetOnRoll() {
+		final PeriodAggregatorImpl pai = new PeriodAggregatorImpl(false);
+		pai.setDistinctEnabled(true);
+		for(long v = 0; v < 10; v++) pai.processDataPoint(v);
+		Assert.assertEquals("Live distinct", 10L, pai.getDistinctCount());
+		pai.roll(nextPosLong(), 1L, 1, new int[]{1});
+		for(long v = 0; v < 3; v++) pai.processDataPoint(v);
+		Assert.assertEquals("Live distinct after the roll", 3L, pai.getDistinctCount());
+		Assert.assertEquals("Completed distinct", 10L, pai.getRolledPeriod(1).getDistinctCount());
+	}
+	
+	/**
+	 * Tests that the live distinct count of an event time aggregator is over its open buckets
+	 */
+	@Test
+	public void testEventTimeLiveDistinct() {
+		final long bucketMs = 60000L;
+		final PeriodAggregatorImpl pai = new PeriodAggregatorImpl(false);
+		pai.setDistinctEnabled(true);
+		pai.enableEventTime(bucketMs, 1);
+		final long now = System.currentTimeMillis();
+		for(long v = 0; v < 5; v++) pai.processDataPoint(v, now);
+		for(long v = 3; v < 8; v++) pai.processDataPoint(v, now - bucketMs);
+		Assert.assertEquals("Live distinct over the open buckets", 8L, pai.getDistinctCount());
+	}
+	
+	/**
+	 * Adds the passed number of distinct values to a new counter, each twice, and checks the estimate 
+	 * is within 3 standard errors
+	 * @param distinct The number of distinct values
+	 */
+	protected static void assertEstimate(int distinct) {
+		final HyperLogLog hll = new HyperLogLog();
+		final long start = nextPosLong() >>> 2;
+		for(int pass = 0; pass < 2; pass++) {
+			for(long v = start; v < start + distinct; v++) {
+				hll.add(v);
+			}
+		}
+		final long estimate = hll.getCount();
+		final double error = Math.abs(estimate - distinct) / (double)distinct;
+		log("Distinct: %s, Estimate: %s, Error: %s, 3 sigma: %s", distinct, estimate, error, 3 * SIGMA);
+		Assert.assertTrue("Estimate [" + estimate + "] of " + distinct + " distinct values is off by " + error, error <= 3 * SIGMA);
+	}
+}
@@ -0,0 +1,180 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.period;
+
+import org.helios.rindle.period.IPeriodAggregator;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.helios.rindle.period.impl.PeriodRollup;
+import org.helios.rindle.subscription.criteria.Retention;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestPeriodRollup</p>
+ * <p>Description: Test cases for {@link PeriodRollup}, covering the completion of coarser periods, sticky periods,
+ * the folding of buckets drained without a count and the periods rolled up from an aggregator</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.period.TestPeriodRollup</code></p>
+ */
+public class TestPeriodRollup extends BaseTest {
+	/** The initial min of a long slot */
+	static final long EMPTY_MIN = Long.MAX_VALUE;
+	/** The initial max of a long slot */
+	static final long EMPTY_MAX = Long.MIN_VALUE;
+	
+	/**
+	 * Tests that each period completes when the tick closes it, and holds the buckets folded in since it last completed
+	 */
+	@Test
+	public void testPeriodCompletion() {
+		final PeriodRollup rollup = new PeriodRollup(false, 1, new int[]{1, 3});
+		final long globalId = nextPosLong();
+		for(long tick = 1; tick <= 3; tick++) {
+			rollup.roll(tick, 2L, tick, tick * 10, tick + (tick * 10), 0D, tick * 100, tick * 10);
+		}
+		final IPeriodAggregator finest = rollup.getPeriod(globalId, 1);
+		Assert.assertEquals("Finest count", 2L, finest.getCount());
+		Assert.assertEquals("Finest min", 3L, finest.getLongMin());
+		Assert.assertEquals("Finest max", 30L, finest.getLongMax());
+		final IPeriodAggregator coarse = rollup.getPeriod(globalId, 3);
+		Assert.assertEquals("Coarse count", 6L, coarse.getCount());
+		Assert.assertEquals("Coarse min", 1L, coarse.getLongMin());
+		Assert.assertEquals("Coarse max", 30L, coarse.getLongMax());
+		Assert.assertEquals("Coarse sum", 66L, coarse.getLongSum());
+		Assert.assertEquals("Coarse last time", 300L, coarse.getLastTime());
+		Assert.assertEquals("Coarse last", 30L, coarse.getLongLast());
+		rollup.roll(4L, 1L, 7L, 7L, 7D, 0D, 400L, 7L);
+		Assert.assertEquals("Coarse count before completion", 6L, rollup.getPeriod(globalId, 3).getCount());
+		Assert.assertNull("Unknown period", rollup.getPeriod(globalId, 2));
+	}
+	
+	/**
+	 * Tests that a bucket drained with a sum but no count still has its sum, min, max and last time folded in
+	 */
+	@Test
+	public void testFoldWithoutCount() {
+		final PeriodRollup rollup = new PeriodRollup(false, 1, new int[]{2});
+		final long globalId = nextPosLong();
+		rollup.roll(1L, 2L, 4L, 6L, 10D, 2D, 100L, 6L);
+		rollup.roll(2L, 0L, 3L, 8L, 8D, 0D, 200L, 8L);
+		final IPeriodAggregator period = rollup.getPeriod(globalId, 2);
+		Assert.assertEquals("Count", 2L, period.getCount());
+		Assert.assertEquals("Sum", 18L, period.getLongSum());
+		Assert.assertEquals("Min", 3L, period.getLongMin());
+		Assert.assertEquals("Max", 8L, period.getLongMax());
+		Assert.assertEquals("Last time", 200L, period.getLastTime());
+		Assert.assertEquals("Last", 8L, period.getLongLast());
+		Assert.assertEquals("Variance", 1D, period.getVariance(), 0D);
+		// a countless bucket folded into an empty period keeps its sum too
+		rollup.accumulate(0L, EMPTY_MIN, EMPTY_MAX, 5D, 0D, 300L, 5L);
+		rollup.roll(3L, 1L, 1L, 1L, 1D, 0D, 310L, 1L);
+		rollup.roll(4L, 0L, EMPTY_MIN, EMPTY_MAX, 0D, 0D, 0L, 0L);
+		Assert.assertEquals("Sum with countless accumulate", 6L, rollup.getPeriod(globalId, 2).getLongSum());
+	}
+	
+	/**
+	 * Tests that a sticky period folds in every completed instance, reports its rate over their total duration
+	 * and carries its last value across completed instances with no values
+	 */
+	@Test
+	public void testStickyPeriod() {
+		final PeriodRollup rollup = new PeriodRollup(true, 1, new int[]{2});
+		Assert.assertTrue("Sticky enabled", rollup.enableSticky(2));
+		Assert.assertFalse("Unknown period", rollup.enableSticky(5));
+		final long globalId = nextPosLong();
+		for(long tick = 1; tick <= 4; tick++) {
+			final double value = tick * 1.5D;
+			rollup.roll(tick, 1L, Double.doubleToRawLongBits(value), Double.doubleToRawLongBits(value), value, 0D, tick, Double.doubleToRawLongBits(value));
+		}
+		final IPeriodAggregator sticky = rollup.getPeriod(globalId, 2, Retention.STICKY);
+		Assert.assertEquals("Sticky count", 4L, sticky.getCount());
+		Assert.assertEquals("Sticky min", 1.5D, sticky.getDoubleMin(), 0D);
+		Assert.assertEquals("Sticky max", 6D, sticky.getDoubleMax(), 0D);
+		Assert.assertEquals("Sticky rate", 15D / 4, sticky.getRate(), 0.0000001D);
+		Assert.assertEquals("Sticky last", 6D, sticky.getDoubleLast(), 0D);
+		Assert.assertEquals("Completed count", 2L, rollup.getPeriod(globalId, 2).getCount());
+		rollup.rollEmpty(5L, 6L);
+		final IPeriodAggregator empty = rollup.getPeriod(globalId, 2);
+		Assert.assertEquals("Empty completed count", 0L, empty.getCount());
+		Assert.assertEquals("Empty completed last", 0D, empty.getDoubleLast(), 0D);
+		final IPeriodAggregator carried = rollup.getPeriod(globalId, 2, Retention.STICKY);
+		Assert.assertEquals("Carried count", 4L, carried.getCount());
+		Assert.assertEquals("Carried last", 6D, carried.getDoubleLast(), 0D);
+		Assert.assertEquals("Carried last time", 4L, carried.getLastTime());
+		Assert.assertEquals("Carried rate", 15D / 6, carried.getRate(), 0.0000001D);
+	}
+	
+	/**
+	 * Tests that values applied once to an aggregator are rolled into every configured period in every update mode,
+	 * each period holding the count, sum, extremes and variance of the buckets it spans
+	 */
+	@Test
+	public void testAggregatorPeriods() {
+		final int[] periods = {1, 2, 6};
+		for(int mode = 0; mode < 4; mode++) {
+			final PeriodAggregatorImpl pai = new PeriodAggregatorImpl(false, mode%2==1);
+			if(mode > 1) pai.enableStriping();
+			final long globalId = nextPosLong();
+			for(long tick = 1; tick <= 6; tick++) {
+				pai.processDataPoint(tick);
+				pai.processDataPoint(tick * 2);
+				pai.roll(globalId, tick, 1, periods);
+			}
+			final String m = "Mode " + mode + " ";
+			assertPeriod(m + "period 1", pai.getRolledPeriod(1), 6L, 12L);
+			assertPeriod(m + "period 2", pai.getRolledPeriod(2), 5L, 6L, 10L, 12L);
+			assertPeriod(m + "period 6", pai.getRolledPeriod(6), 1L, 2L, 2L, 4L, 3L, 6L, 4L, 8L, 5L, 10L, 6L, 12L);
+			Assert.assertEquals(m + "live count", 0L, pai.getCount());
+		}
+	}
+	
+	/**
+	 * Asserts that a completed period holds exactly the passed values
+	 * @param message The assertion message prefix
+	 * @param period The completed period
+	 * @param values The values the period should hold
+	 */
+	static void assertPeriod(String message, IPeriodAggregator period, long...values) {
+		long sum = 0L, min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+		for(long v: values) {
+			sum += v;
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+		}
+		final double mean = (double)sum / values.length;
+		double variance = 0D;
+		for(long v: values) variance += (v - mean) * (v - mean);
+		variance /= values.length;
+		Assert.assertNotNull(message + " completed", period);
+		Assert.assertEquals(message + " count", values.length, period.getCount());
+		Assert.assertEquals(message + " sum", sum, period.getLongSum());
+		Assert.assertEquals(message + " min", min, period.getLongMin());
+		Assert.assertEquals(message + " max", max, period.getLongMax());
+		Assert.assertEquals(message + " variance", variance, period.getVariance(), 0.0000001D);
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.period;
+
+import org.helios.rindle.period.IPeriodAggregator;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.helios.rindle.period.impl.QuantileSketch;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestQuantiles</p>
+ * <p>Description: Test cases for the streaming quantile sketch of {@link PeriodAggregatorImpl}, covering its accuracy,
+ * the reset of the live quantiles on each roll, and the live quantiles of an event time aggregator</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.period.TestQuantiles</code></p>
+ */
+public class TestQuantiles extends BaseTest {
+	/** The roll-up periods, the finest granularity only */
+	static final int[] PERIODS = {1};
+	
+	/**
+	 * Tests that sketch quantiles are within the configured relative accuracy, for positive and negative values
+	 */
+	@Test
+	public void testAccuracy() {
+		final QuantileSketch qs = new QuantileSketch();
+		for(int i = 1; i <= 10000; i++) {
+			qs.record(i);
+			qs.record(-i);
+		}
+		Assert.assertEquals("Count", 20000L, qs.getCount());
+		for(double q: new double[]{0.6D, 0.75D, 0.9D, 0.99D, 0.999D}) {
+			final double expected = (q - 0.5D) * 20000D;
+			Assert.assertEquals("Quantile " + q, expected, qs.getQuantile(q), expected * QuantileSketch.ACCURACY * 2);
+			Assert.assertEquals("Quantile " + (1 - q), -expected, qs.getQuantile(1 - q), expected * QuantileSketch.ACCURACY * 2);
+		}
+		qs.reset();
+		Assert.assertEquals("Empty quantile", 0D, qs.getQuantile(0.5D), 0D);
+	}
+	
+	/**
+	 * Tests that the live quantiles are over the values applied since the last roll, and the rolled period keeps the completed ones
+	 */
+	@Test
+	public void testLiveQuantilesResetOnRoll() {
+		final PeriodAggregatorImpl pai = new PeriodAggregatorImpl(false);
+		pai.setQuantilesEnabled(true);
+		final long globalId = nextPosLong();
+		for(long v = 1; v <= 1000; v++) pai.processDataPoint(v);
+		Assert.assertEquals("Live median", 500D, pai.getQuantile(0.5D), 500D * QuantileSketch.ACCURACY * 2);
+		pai.roll(globalId, 1L, 1, PERIODS);
+		for(long v = 5001; v <= 6000; v++) pai.processDataPoint(v);
+		Assert.assertEquals("Live median after the roll", 5500D, pai.getQuantile(0.5D), 5500D * QuantileSketch.ACCURACY * 2);
+		final IPeriodAggregator completed = pai.getRolledPeriod(1);
+		Assert.assertEquals("Completed median", 500D, completed.getQuantile(0.5D), 500D * QuantileSketch.ACCURACY * 2);
+	}
+	
+	/**
+	 * Tests that the live quantiles of an event time aggregator are over its open buckets
+	 */
+	@Test
+	public void testEventTimeLiveQuantiles() {
+		final long bucketMs = 60000L;
+		final PeriodAggregatorImpl pai = new PeriodAggregatorImpl(false);
+		pai.setQuantilesEnabled(true);
+		pai.enableEventTime(bucketMs, 1);
+		final long now = System.currentTimeMillis();
+		for(long v = 1; v <= 100; v++) pai.processDataPoint(v, now);
+		for(long v = 101; v <= 200; v++) pai.processDataPoint(v, now - bucketMs);
+		final double median = pai.getQuantile(0.5D);
+		Assert.assertTrue("Median [" + median + "] is over the open buckets", median > 50D);
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.period;
+
+import java.util.Arrays;
+
+import org.helios.rindle.period.impl.TopK;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestTopK</p>
+ * <p>Description: Test cases for the ranking and publishing of {@link TopK} heavy hitters</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.period.TestTopK</code></p>
+ */
+public class TestTopK extends BaseTest {
+	
+	/**
+	 * Tests that fewer than K offers are all published, highest score first
+	 */
+	@Test
+	public void testFewerThanK() {
+		final ScoredTopK topK = new ScoredTopK(5);
+		topK.score(1L, 2.5D);
+		topK.score(2L, 9D);
+		topK.score(3L, -4D);
+		topK.complete(1L);
+		Assert.assertArrayEquals("Ids", new long[]{2L, 1L, 3L}, topK.getGlobalIds());
+		Assert.assertArrayEquals("Scores", new double[]{9D, 2.5D, -4D}, topK.getScores(), 0D);
+	}
+	
+	/**
+	 * Tests that of many more than K offers, only the K highest are published, highest score first
+	 */
+	@Test
+	public void testMoreThanK() {
+		final int k = 10, offers = 1000;
+		final ScoredTopK topK = new ScoredTopK(k);
+		final double[] scores = new double[offers];
+		for(int i = 0; i < offers; i++) {
+			scores[i] = i;
+		}
+		// shuffle so the heap sees the scores in random order
+		for(int i = offers - 1; i > 0; i--) {
+			final int j = nextPosInt(i + 1);
+			final double t = scores[i];
+			scores[i] = scores[j];
+			scores[j] = t;
+		}
+		for(int i = 0; i < offers; i++) {
+			// the id of each score is derived from it so the expected ids are known
+			topK.score((long)scores[i] + 10000L, scores[i]);
+		}
+		topK.complete(1L);
+		final long[] ids = topK.getGlobalIds();
+		final double[] published = topK.getScores();
+		Assert.assertEquals("Published ids", k, ids.length);
+		for(int i = 0; i < k; i++) {
+			final double expected = offers - 1 - i;
+			Assert.assertEquals("Score at " + i, expected, published[i], 0D);
+			Assert.assertEquals("Id at " + i, (long)expected + 10000L, ids[i]);
+		}
+	}
+	
+	/**
+	 * Tests that equal scores are all kept when they fit, and that the published scores never increase
+	 */
+	@Test
+	public void testRandomScoresAreOrdered() {
+		for(int t = 0; t < 100; t++) {
+			final int k = 1 + nextPosInt(20);
+			final int offers = nextPosInt(100);
+			final ScoredTopK topK = new ScoredTopK(k);
+			final double[] scores = new double[offers];
+			for(int i = 0; i < offers; i++) {
+				scores[i] = RANDOM.nextInt(10);
+				topK.score(i, scores[i]);
+			}
+			topK.complete(1L);
+			Arrays.sort(scores);
+			final double[] published = topK.getScores();
+			Assert.assertEquals("Published size", Math.min(k, offers), published.length);
+			for(int i = 0; i < published.length; i++) {
+				Assert.assertEquals("Score at " + i, scores[offers - 1 - i], published[i], 0D);
+			}
+		}
+	}
+	
+	/**
+	 * Tests that a result is only published on a tick that completes the period, 
+	 * and that each period starts with an empty heap
+	 */
+	@Test
+	public void testPeriodCompletion() {
+		final ScoredTopK topK = new ScoredTopK(3, 3);
+		Assert.assertEquals("Initial result tick", 0L, topK.getResultTick());
+		topK.score(1L, 1D);
+		topK.complete(1L);
+		topK.score(2L, 2D);
+		topK.complete(2L);
+		Assert.assertEquals("Ids before the period completes", 0, topK.getGlobalIds().length);
+		topK.score(3L, 3D);
+		topK.complete(3L);
+		Assert.assertEquals("Result tick", 3L, topK.getResultTick());
+		Assert.assertArrayEquals("First period ids", new long[]{3L, 2L, 1L}, topK.getGlobalIds());
+		topK.score(4L, 0.5D);
+		topK.complete(6L);
+		Assert.assertEquals("Result tick", 6L, topK.getResultTick());
+		Assert.assertArrayEquals("Second period ids", new long[]{4L}, topK.getGlobalIds());
+	}
+	
+	/**
+	 * Tests that an aggregator offered on a tick that does not complete the period, or that is not selected, is ignored
+	 */
+	@Test
+	public void testIgnoredOffers() {
+		final ScoredTopK topK = new ScoredTopK(3, 3);
+		// neither offer reaches the aggregator, so none is needed
+		topK.offer(1L, 2L, null);
+		topK.offer(99L, 3L, null);
+		topK.complete(3L);
+		Assert.assertEquals("Published ids", 0, topK.getGlobalIds().length);
+		Assert.assertEquals("Selected count", 3, topK.getSelectedCount());
+	}
+	
+	/**
+	 * Tests that invalid definitions are rejected
+	 */
+	@Test
+	public void testInvalidDefinitions() {
+		try {
+			new TopK("zero", 1, 1, 0, TopK.Measure.MAX);
+			Assert.fail("A K of 0 was not rejected");
+		} catch (IllegalArgumentException iae) {
+			/* expected */
+		}
+		try {
+			new TopK("misaligned", 15, 20, 5, TopK.Measure.MAX);
+			Assert.fail("A period that is not a multiple of the granularity was not rejected");
+		} catch (IllegalArgumentException iae) {
+			/* expected */
+		}
+	}
+	
+	/**
+	 * <p>Title: ScoredTopK</p>
+	 * <p>Description: A top-K over the global ids 1 to 3 that is offered scores directly</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>test.period.TestTopK.ScoredTopK</code></p>
+	 */
+	static class ScoredTopK extends TopK {
+		/**
+		 * Creates a new ScoredTopK completing on every tick
+		 * @param k The maximum number of entries
+		 */
+		ScoredTopK(int k) {
+			this(k, 1);
+		}
+		
+		/**
+		 * Creates a new ScoredTopK
+		 * @param k The maximum number of entries
+		 * @param buckets The number of ticks in the period
+		 */
+		ScoredTopK(int k, int buckets) {
+			super("test", 1, buckets, k, TopK.Measure.MAX, 1L, 2L, 3L);
+		}
+		
+		/**
+		 * Offers a score to the heap being built
+		 * @param globalId The global id of the scored aggregator
+		 * @param score The score
+		 */
+		void score(long globalId, double score) {
+			offer(globalId, score);
+		}
+	}
+}
@@ -0,0 +1,264 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.stats;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import org.helios.rindle.Stats;
+import org.helios.rindle.util.unsafe.UnsafeAdapter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestStats</p>
+ * <p>Description: Test cases for the off-heap introselect medians and percentiles of {@link Stats},
+ * checked against a sorted copy of the values, with and without the heap sort fallback</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.stats.TestStats</code></p>
+ */
+public class TestStats extends BaseTest {
+	/** The percentiles checked for each array, unsorted and with a repeat */
+	static final double[] PERCENTILES = {99D, 50D, 0D, 90D, 100D, 50D, 33.3D, 1D};
+	
+	/**
+	 * Tests random longs of random sizes
+	 */
+	@Test
+	public void testRandomLongs() {
+		for(int t = 0; t < 200; t++) {
+			final long[] values = new long[1 + nextPosInt(2000)];
+			for(int i = 0; i < values.length; i++) {
+				values[i] = RANDOM.nextLong();
+			}
+			checkLongs(values);
+		}
+	}
+	
+	/**
+	 * Tests longs with very few distinct values
+	 */
+	@Test
+	public void testDuplicateLongs() {
+		for(int t = 0; t < 200; t++) {
+			final long[] values = new long[1 + nextPosInt(2000)];
+			for(int i = 0; i < values.length; i++) {
+				values[i] = RANDOM.nextInt(3);
+			}
+			checkLongs(values);
+		}
+		final long[] same = new long[1000];
+		Arrays.fill(same, 42L);
+		checkLongs(same);
+	}
+	
+	/**
+	 * Tests ascending and descending sorted longs
+	 */
+	@Test
+	public void testSortedLongs() {
+		for(int size: new int[]{3, 17, 18, 100, 1001, 4096}) {
+			final long[] ascending = new long[size];
+			final long[] descending = new long[size];
+			for(int i = 0; i < size; i++) {
+				ascending[i] = i - (size / 2);
+				descending[i] = size - i;
+			}
+			checkLongs(ascending);
+			checkLongs(descending);
+		}
+	}
+	
+	/**
+	 * Tests random doubles of both signs, including runs of negative values and signed zeros
+	 */
+	@Test
+	public void testNegativeDoubles() {
+		for(int t = 0; t < 200; t++) {
+			final double[] values = new double[1 + nextPosInt(2000)];
+			for(int i = 0; i < values.length; i++) {
+				values[i] = t % 2==0 ? RANDOM.nextGaussian() * 1000D : -Math.abs(RANDOM.nextGaussian()) - 1D;
+			}
+			checkDoubles(values);
+		}
+		checkDoubles(new double[]{-0D, 0D, -1D, 1D, -Double.MAX_VALUE, Double.MAX_VALUE, -Double.MIN_VALUE});
+	}
+	
+	/**
+	 * Tests doubles with very few distinct values
+	 */
+	@Test
+	public void testDuplicateDoubles() {
+		for(int t = 0; t < 100; t++) {
+			final double[] values = new double[1 + nextPosInt(2000)];
+			for(int i = 0; i < values.length; i++) {
+				values[i] = RANDOM.nextInt(3) - 1.5D;
+			}
+			checkDoubles(values);
+		}
+	}
+	
+	/**
+	 * Tests arrays of size 0, 1 and 2, where the median of 2 values is their mean
+	 */
+	@Test
+	public void testSmallSizes() {
+		Assert.assertEquals("Empty long median", 0L, Stats.medianl(0L, 0));
+		Assert.assertEquals("Empty double median", 0D, Stats.mediand(0L, 0), 0D);
+		checkLongs(new long[]{7L});
+		checkLongs(new long[]{9L, -3L});
+		checkDoubles(new double[]{-2.5D});
+		checkDoubles(new double[]{4D, -1D});
+		final long address = UnsafeAdapter.allocateMemory(16);
+		try {
+			UnsafeAdapter.putLong(address, 9L);
+			UnsafeAdapter.putLong(address + 8, -3L);
+			Assert.assertEquals("Median of 2 longs", 3L, Stats.medianl(address, 2));
+			UnsafeAdapter.putDouble(address, 4D);
+			UnsafeAdapter.putDouble(address + 8, -1D);
+			Assert.assertEquals("Median of 2 doubles", 1.5D, Stats.mediand(address, 2), 0D);
+		} finally {
+			UnsafeAdapter.freeMemory(address);
+		}
+	}
+	
+	/**
+	 * Tests that selections forced onto the heap sort fallback, with a depth factor of 0, select the same values as a sort
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testHeapSortFallback() throws Exception {
+		final Method select = Stats.class.getDeclaredMethod("select", long.class, int.class, int.class, int.class, int.class);
+		select.setAccessible(true);
+		for(int t = 0; t < 200; t++) {
+			final int n = 1 + nextPosInt(2000);
+			final long[] values = new long[n];
+			final int range = t % 2==0 ? Integer.MAX_VALUE : 10;
+			for(int i = 0; i < n; i++) {
+				values[i] = nextPosInt(range) - (range >> 1);
+			}
+			if(t % 5==0) Arrays.sort(values);
+			final long[] sorted = values.clone();
+			Arrays.sort(sorted);
+			final int k = nextPosInt(n);
+			final long address = UnsafeAdapter.allocateMemory(((long)n) << 3);
+			try {
+				for(int i = 0; i < n; i++) {
+					UnsafeAdapter.putLong(address + (i << 3), values[i]);
+				}
+				select.invoke(null, address, 0, n - 1, k, 0);
+				Assert.assertEquals("Selected index " + k + " of " + n + " longs", sorted[k], UnsafeAdapter.getLong(address + (k << 3)));
+				for(int i = 0; i < n; i++) {
+					final long v = UnsafeAdapter.getLong(address + (i << 3));
+					if(i < k) Assert.assertTrue("Value at " + i + " is greater than the selected value", v <= sorted[k]);
+					else if(i > k) Assert.assertTrue("Value at " + i + " is less than the selected value", v >= sorted[k]);
+				}
+			} finally {
+				UnsafeAdapter.freeMemory(address);
+			}
+		}
+	}
+	
+	/**
+	 * Tests that a NaN percentile is rejected and out of range percentiles are clamped to the ends
+	 */
+	@Test
+	public void testRanks() {
+		Assert.assertEquals("Rank of 0", 0, Stats.rank(0D, 10));
+		Assert.assertEquals("Rank of -5", 0, Stats.rank(-5D, 10));
+		Assert.assertEquals("Rank of 50", 4, Stats.rank(50D, 10));
+		Assert.assertEquals("Rank of 100", 9, Stats.rank(100D, 10));
+		Assert.assertEquals("Rank of 150", 9, Stats.rank(150D, 10));
+		try {
+			Stats.rank(Double.NaN, 10);
+			Assert.fail("A NaN percentile was not rejected");
+		} catch (IllegalArgumentException iae) {
+			/* expected */
+		}
+	}
+	
+	/**
+	 * Checks the median and percentiles of the passed longs against a sorted copy, 
+	 * and that the off-heap source array is not modified
+	 * @param values The values to check
+	 */
+	protected static void checkLongs(long[] values) {
+		final int n = values.length;
+		final long address = UnsafeAdapter.allocateMemory(((long)n) << 3);
+		try {
+			for(int i = 0; i < n; i++) {
+				UnsafeAdapter.putLong(address + (i << 3), values[i]);
+			}
+			final long[] sorted = values.clone();
+			Arrays.sort(sorted);
+			final long median = n % 2==1 ? sorted[n / 2] : (long)Stats.miniMedian(sorted[(n / 2) - 1], sorted[n / 2]);
+			Assert.assertEquals("Median of " + n + " longs", median, Stats.medianl(address, n));
+			final long[] percentiles = Stats.percentilesl(address, n, PERCENTILES);
+			for(int i = 0; i < PERCENTILES.length; i++) {
+				final long expected = sorted[Stats.rank(PERCENTILES[i], n)];
+				Assert.assertEquals("Percentile " + PERCENTILES[i] + " of " + n + " longs", expected, percentiles[i]);
+				Assert.assertEquals("Single percentile " + PERCENTILES[i] + " of " + n + " longs", expected, Stats.percentilel(address, n, PERCENTILES[i]));
+			}
+			for(int i = 0; i < n; i++) {
+				Assert.assertEquals("Source long at " + i, values[i], UnsafeAdapter.getLong(address + (i << 3)));
+			}
+		} finally {
+			UnsafeAdapter.freeMemory(address);
+		}
+	}
+	
+	/**
+	 * Checks the median and percentiles of the passed doubles against a sorted copy, 
+	 * and that the off-heap source array is not modified
+	 * @param values The values to check, none of which may be NaN
+	 */
+	protected static void checkDoubles(double[] values) {
+		final int n = values.length;
+		final long address = UnsafeAdapter.allocateMemory(((long)n) << 3);
+		try {
+			for(int i = 0; i < n; i++) {
+				UnsafeAdapter.putDouble(address + (i << 3), values[i]);
+			}
+			final double[] sorted = values.clone();
+			Arrays.sort(sorted);
+			final double median = n % 2==1 ? sorted[n / 2] : Stats.miniMedian(sorted[(n / 2) - 1], sorted[n / 2]);
+			Assert.assertEquals("Median of " + n + " doubles", median, Stats.mediand(address, n), 0D);
+			final double[] percentiles = Stats.percentilesd(address, n, PERCENTILES);
+			for(int i = 0; i < PERCENTILES.length; i++) {
+				final double expected = sorted[Stats.rank(PERCENTILES[i], n)];
+				Assert.assertEquals("Percentile " + PERCENTILES[i] + " of " + n + " doubles", expected, percentiles[i], 0D);
+				Assert.assertEquals("Single percentile " + PERCENTILES[i] + " of " + n + " doubles", expected, Stats.percentiled(address, n, PERCENTILES[i]), 0D);
+			}
+			for(int i = 0; i < n; i++) {
+				Assert.assertEquals("Source double at " + i, Double.doubleToRawLongBits(values[i]), UnsafeAdapter.getLong(address + (i << 3)));
+			}
+		} finally {
+			UnsafeAdapter.freeMemory(address);
+		}
+	}
+}
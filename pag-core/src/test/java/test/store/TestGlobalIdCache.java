@@ -0,0 +1,108 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.store;
+
+import org.helios.rindle.store.GlobalIdCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+import test.base.MapStore;
+
+/**
+ * <p>Title: TestGlobalIdCache</p>
+ * <p>Description: Test cases for the {@link GlobalIdCache} near-cache of global id resolutions, covering hits, 
+ * batched resolution of misses and invalidation on metric definition events</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.store.TestGlobalIdCache</code></p>
+ */
+public class TestGlobalIdCache extends BaseTest {
+	
+	/**
+	 * Tests that repeated resolutions of names, opaque keys and pairs are served from the cache
+	 */
+	@Test
+	public void testHits() {
+		final MapStore store = new MapStore();
+		final GlobalIdCache cache = new GlobalIdCache(store);
+		final byte[] key = {1, 2, 3};
+		final long byName = cache.getGlobalId("foo.bar");
+		final long byKey = cache.getGlobalId(key);
+		final long byPair = cache.getGlobalId("foo.bar", key);
+		Assert.assertEquals("Store calls", 3, store.getCalls());
+		for(int i = 0; i < 10; i++) {
+			Assert.assertEquals("Name gid", byName, cache.getGlobalId("foo.bar"));
+			Assert.assertEquals("Opaque key gid", byKey, cache.getGlobalId(new byte[]{1, 2, 3}));
+			Assert.assertEquals("Pair gid", byPair, cache.getGlobalId("foo.bar", new byte[]{1, 2, 3}));
+		}
+		Assert.assertEquals("Store calls after hits", 3, store.getCalls());
+		Assert.assertEquals("Hit count", 30L, cache.getHitCount());
+		Assert.assertEquals("Cached name gid", byName, cache.getCachedGlobalId("foo.bar"));
+		Assert.assertEquals("Uncached name gid", -1L, cache.getCachedGlobalId("foo.baz"));
+		Assert.assertEquals("Store calls after cached lookups", 3, store.getCalls());
+	}
+	
+	/**
+	 * Tests that a batch resolves all its misses in one store call and serves the rest from the cache
+	 */
+	@Test
+	public void testBatchResolvesMissesInOneCall() {
+		final MapStore store = new MapStore();
+		final GlobalIdCache cache = new GlobalIdCache(store);
+		final long a = cache.getGlobalId("a");
+		final long[] gids = cache.getGlobalIds(new String[]{"b", "a", null, "c", "b"});
+		Assert.assertEquals("Store calls", 2, store.getCalls());
+		Assert.assertEquals("Cached gid", a, gids[1]);
+		Assert.assertEquals("Null name gid", -1L, gids[2]);
+		Assert.assertEquals("Repeated name gid", gids[0], gids[4]);
+		Assert.assertEquals("b gid", gids[0], cache.getGlobalId("b"));
+		Assert.assertEquals("c gid", gids[3], cache.getGlobalId("c"));
+		Assert.assertArrayEquals("All hits", gids, cache.getGlobalIds(new String[]{"b", "a", null, "c", "b"}));
+		Assert.assertEquals("Store calls after hits", 2, store.getCalls());
+	}
+	
+	/**
+	 * Tests that deleting a metric discards only its cached resolutions and a purge discards all of them
+	 */
+	@Test
+	public void testInvalidation() {
+		final MapStore store = new MapStore();
+		final GlobalIdCache cache = new GlobalIdCache(store);
+		final long a = cache.getGlobalId("a");
+		final long b = cache.getGlobalId("b");
+		cache.getGlobalId(new byte[]{7});
+		store.delete(a);
+		Assert.assertEquals("Deleted name", -1L, cache.getCachedGlobalId("a"));
+		Assert.assertEquals("Kept name", b, cache.getCachedGlobalId("b"));
+		Assert.assertEquals("Invalidations", 1L, cache.getInvalidationCount());
+		final long a2 = cache.getGlobalId("a");
+		Assert.assertTrue("Deleted name was resolved again", a2!=a);
+		store.purge();
+		Assert.assertEquals("Name cache size", 0L, cache.getNameCacheSize());
+		Assert.assertEquals("Opaque cache size", 0L, cache.getOpaqueCacheSize());
+		Assert.assertEquals("Invalidations after purge", 4L, cache.getInvalidationCount());
+	}
+}
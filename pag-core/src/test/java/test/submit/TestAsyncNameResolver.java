@@ -0,0 +1,180 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.submit;
+
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.period.IPeriodAggregator;
+import org.helios.rindle.store.GlobalIdCache;
+import org.helios.rindle.submit.AsyncNameResolver;
+import org.helios.rindle.submit.SubmitImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+import test.base.MapStore;
+
+/**
+ * <p>Title: TestAsyncNameResolver</p>
+ * <p>Description: Test cases for the {@link AsyncNameResolver}, covering the buffering and replay of values for names
+ * pending resolution, batched resolution, buffer overflows and failed resolutions</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.submit.TestAsyncNameResolver</code></p>
+ */
+public class TestAsyncNameResolver extends BaseTest {
+	/** The registry resolved values are applied to */
+	static final Registry registry = Registry.getInstance();
+	
+	/** The store names are resolved through */
+	final MapStore store = new MapStore();
+	/** The global id cache the resolver resolves through */
+	final GlobalIdCache gidCache = new GlobalIdCache(store);
+	/** The resolver under test */
+	final AsyncNameResolver resolver = new AsyncNameResolver(new SubmitImpl(registry, store), gidCache);
+	
+	/**
+	 * Returns the number of values applied to a new aggregator, including those a background flush may have rolled 
+	 * into the finest granularity since the aggregator was created
+	 * @param globalId The global id of the aggregator
+	 * @return the number of values
+	 */
+	static long applied(long globalId) {
+		final IPeriodAggregator rolled = registry.getRolledPeriod(globalId, registry.getRollupPeriods()[0]);
+		return registry.getPeriodAggregator(globalId, false).getCount() + (rolled==null ? 0L : rolled.getCount());
+	}
+	
+	/**
+	 * Waits until the resolver has resolved or failed the passed total number of names
+	 * @param total The expected number of resolved and failed names
+	 * @throws InterruptedException thrown if interrupted while waiting
+	 */
+	void awaitResolutions(long total) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000L;
+		while(resolver.getResolvedCount() + resolver.getFailedCount() < total && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5L);
+		}
+		Assert.assertEquals("Resolutions", total, resolver.getResolvedCount() + resolver.getFailedCount());
+		Assert.assertEquals("Pending names", 0, resolver.getPendingNameCount());
+	}
+	
+	/**
+	 * Tests that values submitted while a name is pending are buffered and replayed once it resolves,
+	 * and later values are dispatched directly
+	 */
+	@Test(timeout=30000)
+	public void testBufferedValuesReplayed() throws Exception {
+		final String name = "async." + nextPosLong();
+		store.close();
+		try {
+			for(long v = 1; v <= 5; v++) {
+				Assert.assertEquals("Pending gid", -1L, resolver.submit(name, v));
+			}
+			Assert.assertEquals("Pending names", 1, resolver.getPendingNameCount());
+		} finally {
+			store.open();
+		}
+		awaitResolutions(1);
+		final long globalId = gidCache.getCachedGlobalId(name);
+		Assert.assertTrue("Resolved gid", globalId!=-1L);
+		Assert.assertEquals("Replayed", 5L, resolver.getReplayedCount());
+		Assert.assertEquals("Applied", 5L, applied(globalId));
+		Assert.assertEquals("Resolved submit", globalId, resolver.submit(name, 6L));
+		Assert.assertEquals("Applied after resolution", 6L, applied(globalId));
+		Assert.assertEquals("Store calls", 1, store.getCalls());
+	}
+	
+	/**
+	 * Tests that names queued while a resolution is in progress are resolved together in the next batch
+	 */
+	@Test(timeout=30000)
+	public void testBatchedResolution() throws Exception {
+		final String prefix = "async." + nextPosLong() + ".";
+		store.close();
+		try {
+			Assert.assertEquals("Pending gid", -1L, resolver.submit(prefix + 0, 1L));
+			// wait for the resolver to block in the store on the first name
+			final long deadline = System.currentTimeMillis() + 10000L;
+			while(store.getCalls()==0 && System.currentTimeMillis() < deadline) Thread.sleep(5L);
+			for(int i = 1; i < 10; i++) {
+				Assert.assertEquals("Pending gid", -1L, resolver.submit(prefix + i, (double)i));
+			}
+		} finally {
+			store.open();
+		}
+		awaitResolutions(10);
+		Assert.assertEquals("Batches", 2L, resolver.getBatchCount());
+		Assert.assertEquals("Store calls", 2, store.getCalls());
+		for(int i = 0; i < 10; i++) {
+			Assert.assertTrue("Resolved " + i, gidCache.getCachedGlobalId(prefix + i)!=-1L);
+		}
+	}
+	
+	/**
+	 * Tests that values beyond the per name buffer are dropped and counted
+	 */
+	@Test(timeout=30000)
+	public void testOverflow() throws Exception {
+		final String name = "async." + nextPosLong();
+		final int buffer = resolver.getBufferSize();
+		store.close();
+		try {
+			for(int v = 0; v < buffer + 3; v++) {
+				resolver.submit(name, (long)v);
+			}
+		} finally {
+			store.open();
+		}
+		awaitResolutions(1);
+		Assert.assertEquals("Overflows", 3L, resolver.getOverflowCount());
+		Assert.assertEquals("Applied", (long)buffer, applied(gidCache.getCachedGlobalId(name)));
+	}
+	
+	/**
+	 * Tests that the buffered values of a name that fails to resolve are discarded, 
+	 * and the next value for the name queues it again
+	 */
+	@Test(timeout=30000)
+	public void testFailedResolution() throws Exception {
+		final String name = "async." + nextPosLong();
+		store.setFailing(true);
+		store.close();
+		try {
+			resolver.submit(name, 1L);
+			resolver.submit(name, 2L);
+		} finally {
+			store.open();
+		}
+		awaitResolutions(1);
+		Assert.assertEquals("Failed", 1L, resolver.getFailedCount());
+		Assert.assertEquals("Cached gid", -1L, gidCache.getCachedGlobalId(name));
+		store.setFailing(false);
+		// the resolver may resolve the name again before this call returns, so the returned gid is not checked
+		resolver.submit(name, 3L);
+		awaitResolutions(2);
+		final long globalId = gidCache.getCachedGlobalId(name);
+		Assert.assertEquals("Resolved", 1L, resolver.getResolvedCount());
+		Assert.assertEquals("Applied", 1L, applied(globalId));
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.submit;
+
+import org.helios.rindle.control.AdmissionController;
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.helios.rindle.submit.SubmitImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+import test.base.MapStore;
+
+/**
+ * <p>Title: TestSubmitBatches</p>
+ * <p>Description: Test cases for the columnar batch submit API of {@link SubmitImpl}, covering name resolution,
+ * the grouping of values into their aggregators and admission control of batched values</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.submit.TestSubmitBatches</code></p>
+ */
+public class TestSubmitBatches extends BaseTest {
+	/** The registry the batches are applied to */
+	static final Registry registry = Registry.getInstance();
+	
+	/**
+	 * Tests that a batch of named long values is resolved in one store call and applied to the named aggregators
+	 */
+	@Test
+	public void testNamedLongBatch() {
+		final MapStore store = new MapStore();
+		final SubmitImpl submit = new SubmitImpl(registry, store);
+		final long[] gids = submit.submit(new String[]{"a", "b", null, "a", "a"}, new long[]{1L, 10L, 99L, 2L, 3L}, null);
+		Assert.assertEquals("Store calls", 1, store.getCalls());
+		Assert.assertEquals("Null name gid", -1L, gids[2]);
+		Assert.assertEquals("Repeated name gid", gids[0], gids[3]);
+		final PeriodAggregatorImpl a = registry.getPeriodAggregator(gids[0], false);
+		final PeriodAggregatorImpl b = registry.getPeriodAggregator(gids[1], false);
+		Assert.assertEquals("A count", 3, a.getCount());
+		Assert.assertEquals("A sum", 6L, a.getLongSum());
+		Assert.assertEquals("B count", 1, b.getCount());
+		Assert.assertEquals("B max", 10L, b.getLongMax());
+		submit.submit(new String[]{"b", "a"}, new long[]{20L, 4L}, null);
+		Assert.assertEquals("Store calls after a cached batch", 1, store.getCalls());
+		Assert.assertEquals("A count after a cached batch", 4, a.getCount());
+		Assert.assertEquals("B sum after a cached batch", 30L, b.getLongSum());
+	}
+	
+	/**
+	 * Tests that a batch of double values by global id is applied to the identified aggregators
+	 */
+	@Test
+	public void testDoubleBatchByGlobalId() {
+		final long a = nextPosLong(), b = nextPosLong();
+		new SubmitImpl(registry, new MapStore()).submit(new long[]{a, b, -1L, a}, new double[]{1.5D, 2.5D, 7D, 3.5D}, null);
+		final PeriodAggregatorImpl pa = registry.getPeriodAggregator(a, true);
+		final PeriodAggregatorImpl pb = registry.getPeriodAggregator(b, true);
+		Assert.assertEquals("A count", 2, pa.getCount());
+		Assert.assertEquals("A sum", 5D, pa.getDoubleSum(), 0D);
+		Assert.assertEquals("B count", 1, pb.getCount());
+		Assert.assertEquals("B min", 2.5D, pb.getDoubleMin(), 0D);
+	}
+	
+	/**
+	 * Tests that values of a batch over the client rate limit are shed and the rest are applied
+	 */
+	@Test
+	public void testBatchAdmission() throws Exception {
+		final AdmissionController admission = AdmissionController.getInstance();
+		final String policy = admission.getPolicy();
+		final long clientRate = admission.getClientRateLimit();
+		final long globalId = nextPosLong();
+		final long[] gids = new long[10];
+		final long[] values = new long[10];
+		for(int i = 0; i < gids.length; i++) { gids[i] = globalId; values[i] = i; }
+		final long shed = admission.getShedCount();
+		admission.setPolicy("SHED");
+		admission.setClientRateLimit(4L);
+		admission.setEnabled(true);
+		try {
+			// start in a fresh one second window
+			Thread.sleep(1005L - (System.currentTimeMillis() % 1000L));
+			new SubmitImpl(registry, new MapStore()).submit(gids, values, null);
+		} finally {
+			admission.setEnabled(false);
+			admission.setClientRateLimit(clientRate);
+			admission.setPolicy(policy);
+		}
+		Assert.assertEquals("Count", 4, registry.getPeriodAggregator(globalId, false).getCount());
+		Assert.assertEquals("Max", 3L, registry.getPeriodAggregator(globalId, false).getLongMax());
+		Assert.assertEquals("Shed values", shed + 6L, admission.getShedCount());
+	}
+}
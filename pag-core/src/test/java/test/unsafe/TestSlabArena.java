@@ -0,0 +1,138 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.unsafe;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.helios.rindle.control.Registry;
+import org.helios.rindle.period.impl.PeriodAggregatorImpl;
+import org.helios.rindle.util.unsafe.SlabArena;
+import org.helios.rindle.util.unsafe.UnsafeAdapter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import test.base.BaseTest;
+
+/**
+ * <p>Title: TestSlabArena</p>
+ * <p>Description: Test cases for the {@link SlabArena} aggregator record allocator, covering slab growth, slot reuse 
+ * and zeroing, and the deferred release of aggregators removed from the {@link Registry}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.unsafe.TestSlabArena</code></p>
+ */
+public class TestSlabArena extends BaseTest {
+	
+	/**
+	 * Tests that slots are aligned, distinct and do not overlap, and that slabs are added as slots are allocated
+	 */
+	@Test
+	public void testGrowth() {
+		final SlabArena arena = new SlabArena(20, 3);
+		Assert.assertEquals("Slot size", 24, arena.getSlotSize());
+		Assert.assertEquals("Slabs before allocation", 0, arena.getSlabCount());
+		final Set<Long> addresses = new HashSet<Long>();
+		for(int i = 0; i < 10; i++) {
+			final int slot = arena.allocate();
+			Assert.assertEquals("Slot", i, slot);
+			final long address = arena.address(slot);
+			Assert.assertEquals("Alignment of slot " + slot, 0L, address & 7L);
+			Assert.assertTrue("Distinct address of slot " + slot, addresses.add(address));
+			UnsafeAdapter.setMemory(address, 24, (byte)slot);
+		}
+		Assert.assertEquals("Slabs", 3, arena.getSlabCount());
+		Assert.assertEquals("Capacity", 12, arena.getCapacity());
+		Assert.assertEquals("Allocated", 10, arena.getAllocated());
+		for(int slot = 0; slot < 10; slot++) {
+			for(int b = 0; b < 24; b++) {
+				Assert.assertEquals("Byte " + b + " of slot " + slot, (byte)slot, UnsafeAdapter.getByte(arena.address(slot) + b));
+			}
+		}
+	}
+	
+	/**
+	 * Tests that freed slots are reused before the arena grows and are zeroed when reallocated
+	 */
+	@Test
+	public void testReuse() {
+		final SlabArena arena = new SlabArena(16, 4);
+		for(int i = 0; i < 4; i++) {
+			UnsafeAdapter.putLong(arena.address(arena.allocate()), -1L);
+		}
+		arena.free(2);
+		arena.free(1);
+		Assert.assertEquals("Free slots", 2, arena.getFreeCount());
+		Assert.assertEquals("Allocated after free", 2, arena.getAllocated());
+		Assert.assertEquals("Reused slot", 1, arena.allocate());
+		Assert.assertEquals("Reused slot", 2, arena.allocate());
+		Assert.assertEquals("Zeroed reused slot", 0L, UnsafeAdapter.getLong(arena.address(2)));
+		Assert.assertEquals("Slabs after reuse", 1, arena.getSlabCount());
+		Assert.assertEquals("New slot", 4, arena.allocate());
+		Assert.assertEquals("Slabs after growth", 2, arena.getSlabCount());
+	}
+	
+	/**
+	 * Tests that freeing a slot that is not allocated is rejected
+	 */
+	@Test
+	public void testDoubleFree() {
+		final SlabArena arena = new SlabArena(8, 4);
+		final int slot = arena.allocate();
+		arena.free(slot);
+		for(int bad: new int[]{slot, 3, -1}) {
+			try {
+				arena.free(bad);
+				Assert.fail("Freeing slot " + bad + " was not rejected");
+			} catch (IllegalStateException ise) {
+				/* expected */
+			}
+		}
+		Assert.assertEquals("Free slots", 1, arena.getFreeCount());
+	}
+	
+	/**
+	 * Tests that a removed aggregator is released only after the grace period of two reclaims, 
+	 * and a value for the removed global id creates a new aggregator
+	 */
+	@Test
+	public void testRemovalGracePeriod() {
+		final Registry registry = Registry.getInstance();
+		final long globalId = nextPosLong();
+		final PeriodAggregatorImpl removed = registry.getPeriodAggregator(globalId, false);
+		removed.processDataPoint(5L);
+		Assert.assertTrue("Removed", registry.removeAggregator(globalId));
+		Assert.assertFalse("Removed twice", registry.removeAggregator(globalId));
+		Assert.assertTrue("Pending release", registry.getPendingReleaseCount() > 0);
+		// the record of the removed aggregator stays readable until it is released
+		Assert.assertEquals("Removed count", 1L, removed.getCount());
+		registry.reclaim();
+		registry.reclaim();
+		Assert.assertEquals("Pending release after the grace period", 0, registry.getPendingReleaseCount());
+		final PeriodAggregatorImpl created = registry.getPeriodAggregator(globalId, false);
+		Assert.assertTrue("New aggregator", removed!=created);
+		Assert.assertEquals("New aggregator count", 0L, created.getCount());
+	}
+}